@@ -1,11 +1,16 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
 
 import fr.mikeb.learning.hogwarts_artifacts_online.wizard.Wizard;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Version;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import java.io.Serializable;
+import java.time.Instant;
 
 @Entity
 public class Artifact implements Serializable {
@@ -16,6 +21,12 @@ public class Artifact implements Serializable {
   private String imgUrl;
   @ManyToOne
   private Wizard owner;
+  @Version
+  @Column(nullable = false)
+  @ColumnDefault("0")
+  private Long version;
+  @UpdateTimestamp
+  private Instant lastModified;
 
   public Artifact() {}
 
@@ -59,6 +70,22 @@ public class Artifact implements Serializable {
     this.owner = owner;
   }
 
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
+
+  public Instant getLastModified() {
+    return lastModified;
+  }
+
+  public void setLastModified(Instant lastModified) {
+    this.lastModified = lastModified;
+  }
+
   public boolean hasOwner() {
     return owner != null;
   }
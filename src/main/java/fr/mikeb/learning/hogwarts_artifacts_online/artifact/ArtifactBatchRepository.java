@@ -0,0 +1,15 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import java.util.List;
+
+/**
+ * Repository fragment inserting many new artifacts through JDBC batches.
+ */
+public interface ArtifactBatchRepository {
+  /**
+   * Persists artifacts whose ids are already assigned. Unlike save(), it never issues the SELECT that merge()
+   * runs to tell a new entity from a detached one. The persistence context is flushed and cleared every batch,
+   * so the artifacts are detached once this returns.
+   */
+  void insertAll(List<Artifact> artifacts);
+}
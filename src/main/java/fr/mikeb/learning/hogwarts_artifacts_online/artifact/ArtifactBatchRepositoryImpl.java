@@ -0,0 +1,31 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.List;
+
+class ArtifactBatchRepositoryImpl implements ArtifactBatchRepository {
+  private final EntityManager entityManager;
+  private final int batchSize;
+
+  ArtifactBatchRepositoryImpl(EntityManager entityManager,
+                              @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}") int batchSize) {
+    this.entityManager = entityManager;
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public void insertAll(List<Artifact> artifacts) {
+    for (int i = 0; i < artifacts.size(); i++) {
+      entityManager.persist(artifacts.get(i));
+      // Flushing on batch boundaries sends exactly one JDBC batch, clearing keeps the persistence context small.
+      if ((i + 1) % batchSize == 0) {
+        entityManager.flush();
+        entityManager.clear();
+      }
+    }
+    entityManager.flush();
+    entityManager.clear();
+  }
+}
@@ -0,0 +1,88 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.converter.ArtifactDtoToArtifactConverter;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.dto.ArtifactDto;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.dto.BulkItemResult;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validates artifacts one by one and creates the valid ones in chunks, each chunk being one transaction
+ * of batched INSERTs. A failing chunk doesn't roll back the chunks committed before it: its items are reported as
+ * failed, next to the ones created by the other chunks, and the import goes on with the next chunk.
+ */
+@Component
+public class ArtifactBulkImporter {
+  private static final Logger log = LoggerFactory.getLogger(ArtifactBulkImporter.class);
+
+  private final ArtifactService artifactService;
+  private final ArtifactDtoToArtifactConverter artifactDtoToArtifactConverter;
+  private final Validator validator;
+  private final int chunkSize;
+
+  public ArtifactBulkImporter(ArtifactService artifactService,
+                              ArtifactDtoToArtifactConverter artifactDtoToArtifactConverter,
+                              Validator validator,
+                              @Value("${artifact.bulk.chunk-size:5000}") int chunkSize) {
+    this.artifactService = artifactService;
+    this.artifactDtoToArtifactConverter = artifactDtoToArtifactConverter;
+    this.validator = validator;
+    this.chunkSize = chunkSize;
+  }
+
+  public List<BulkItemResult> importAll(Iterator<ArtifactDto> artifactDtos) {
+    var results = new ArrayList<BulkItemResult>();
+    var chunk = new ArrayList<Artifact>(chunkSize);
+    var chunkIndexes = new ArrayList<Integer>(chunkSize);
+    int index = 0;
+    while (artifactDtos.hasNext()) {
+      var artifactDto = artifactDtos.next();
+      var violations = validator.validate(artifactDto);
+      if (violations.isEmpty()) {
+        chunk.add(artifactDtoToArtifactConverter.convert(artifactDto));
+        chunkIndexes.add(index);
+      } else {
+        var errors = new HashMap<String, String>(violations.size());
+        violations.forEach(violation -> errors.put(violation.getPropertyPath().toString(), violation.getMessage()));
+        results.add(BulkItemResult.rejected(index, errors));
+      }
+      if (chunk.size() == chunkSize) {
+        saveChunk(chunk, chunkIndexes, results);
+      }
+      index++;
+    }
+    saveChunk(chunk, chunkIndexes, results);
+    results.sort(Comparator.comparingInt(BulkItemResult::index));
+    return results;
+  }
+
+  private void saveChunk(List<Artifact> chunk, List<Integer> chunkIndexes, List<BulkItemResult> results) {
+    if (chunk.isEmpty()) {
+      return;
+    }
+    try {
+      var savedArtifacts = artifactService.saveAll(chunk);
+      for (int i = 0; i < savedArtifacts.size(); i++) {
+        results.add(BulkItemResult.created(chunkIndexes.get(i), savedArtifacts.get(i).getId()));
+      }
+    } catch (RuntimeException e) {
+      log.warn("Bulk import of {} artifacts from item {} rolled back", chunk.size(), chunkIndexes.getFirst(), e);
+      var errors = Map.of("chunk", "Not saved, the chunk of this item failed: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+      chunkIndexes.forEach(index -> results.add(BulkItemResult.rejected(index, errors)));
+    } finally {
+      chunk.clear();
+      chunkIndexes.clear();
+    }
+  }
+}
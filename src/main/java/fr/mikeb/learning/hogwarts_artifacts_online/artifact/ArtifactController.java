@@ -1,16 +1,32 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.mikeb.learning.hogwarts_artifacts_online.artifact.converter.ArtifactDtoToArtifactConverter;
 import fr.mikeb.learning.hogwarts_artifacts_online.artifact.converter.ArtifactToArtifactDtoConverter;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.converter.ArtifactViewToArtifactDtoConverter;
 import fr.mikeb.learning.hogwarts_artifacts_online.artifact.dto.ArtifactDto;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.dto.BulkItemResult;
 import fr.mikeb.learning.hogwarts_artifacts_online.client.imagestorage.ImageStorageClient;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.AcceptEncoding;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.CursorPage;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.ETags;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.Result;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.SerializedJson;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.StatusCode;
-import io.micrometer.core.instrument.MeterRegistry;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.PreconditionFailedException;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -18,11 +34,17 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -31,45 +53,139 @@ public class ArtifactController {
   private final ArtifactService artifactService;
   private final ArtifactToArtifactDtoConverter artifactToArtifactDtoConverter;
   private final ArtifactDtoToArtifactConverter artifactDtoToArtifactConverter;
-  private final MeterRegistry meterRegistry;
+  private final ArtifactViewToArtifactDtoConverter artifactViewToArtifactDtoConverter;
+  private final ArtifactViewsTracker artifactViewsTracker;
   private final ImageStorageClient imageStorageClient;
+  private final ArtifactBulkImporter artifactBulkImporter;
+  private final ObjectMapper objectMapper;
+  private final ArtifactResponseCache artifactResponseCache;
+  private final CacheControl publicCacheControl;
 
-  public ArtifactController(ArtifactService artifactService, ArtifactToArtifactDtoConverter artifactToArtifactDtoConverter, ArtifactDtoToArtifactConverter artifactDtoToArtifactConverter, MeterRegistry meterRegistry, ImageStorageClient imageStorageClient) {
+  public ArtifactController(ArtifactService artifactService, ArtifactToArtifactDtoConverter artifactToArtifactDtoConverter, ArtifactDtoToArtifactConverter artifactDtoToArtifactConverter, ArtifactViewToArtifactDtoConverter artifactViewToArtifactDtoConverter, ArtifactViewsTracker artifactViewsTracker, ImageStorageClient imageStorageClient, ArtifactBulkImporter artifactBulkImporter, ObjectMapper objectMapper, ArtifactResponseCache artifactResponseCache, @Value("${artifact.http.max-age:10s}") Duration maxAge) {
     this.artifactService = artifactService;
     this.artifactToArtifactDtoConverter = artifactToArtifactDtoConverter;
     this.artifactDtoToArtifactConverter = artifactDtoToArtifactConverter;
-    this.meterRegistry = meterRegistry;
+    this.artifactViewToArtifactDtoConverter = artifactViewToArtifactDtoConverter;
+    this.artifactViewsTracker = artifactViewsTracker;
     this.imageStorageClient = imageStorageClient;
+    this.artifactBulkImporter = artifactBulkImporter;
+    this.objectMapper = objectMapper;
+    this.artifactResponseCache = artifactResponseCache;
+    // Artifact reads are public: shared caches may keep them for maxAge, then revalidate them with the ETag.
+    this.publicCacheControl = CacheControl.maxAge(maxAge).cachePublic().mustRevalidate();
   }
 
+  /**
+   * Served from the ArtifactResponseCache when the artifact was read recently: a hit writes the cached bytes as they
+   * are, gzip-compressed if the client accepts it and the cache keeps them compressed.
+   */
   @GetMapping("/{artifactId}")
-  public Result<ArtifactDto> findArtifactById(@PathVariable String artifactId) {
-    var foundArtifact = artifactService.findById(artifactId);
-    meterRegistry.counter("artifact.id." + artifactId).increment();
-    var converted = artifactToArtifactDtoConverter.convert(foundArtifact);
-    return new Result<>(true, StatusCode.SUCCESS, "Find One Success", converted);
+  public ResponseEntity<SerializedJson> findArtifactById(@PathVariable String artifactId, WebRequest webRequest) throws JsonProcessingException {
+    var response = artifactResponseCache.get(artifactId);
+    if (response == null) {
+      var generation = artifactResponseCache.generation();
+      var foundArtifact = artifactService.findViewById(artifactId);
+      var converted = artifactViewToArtifactDtoConverter.convert(foundArtifact);
+      var json = objectMapper.writeValueAsBytes(new Result<>(true, StatusCode.SUCCESS, "Find One Success", converted));
+      response = artifactResponseCache.put(foundArtifact, json, generation);
+    }
+    artifactViewsTracker.recordView(artifactId);
+    if (response.gzipped() == null) {
+      // Answers If-None-Match / If-Modified-Since, and sets the ETag and Last-Modified headers.
+      if (webRequest.checkNotModified(response.eTag(), response.lastModified())) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(publicCacheControl).build();
+      }
+      return ResponseEntity.ok().cacheControl(publicCacheControl).body(new SerializedJson(response.json()));
+    }
+
+    var gzipped = AcceptEncoding.accepts(webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING), "gzip");
+    var eTag = gzipped ? ETags.gzipped(response.eTag()) : response.eTag();
+    // A copy cached in the other encoding is of the same version: it is still valid, under its own tag.
+    var otherETag = gzipped ? response.eTag() : ETags.gzipped(response.eTag());
+    var ifNoneMatch = webRequest.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch != null && !ETags.matches(ifNoneMatch, eTag) && ETags.matches(ifNoneMatch, otherETag)) {
+      eTag = otherETag;
+    }
+    if (webRequest.checkNotModified(eTag, response.lastModified())) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(publicCacheControl).varyBy(HttpHeaders.ACCEPT_ENCODING).build();
+    }
+    var ok = ResponseEntity.ok().cacheControl(publicCacheControl).varyBy(HttpHeaders.ACCEPT_ENCODING);
+    if (gzipped) {
+      return ok.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(new SerializedJson(response.gzipped()));
+    }
+    return ok.body(new SerializedJson(response.json()));
   }
 
   @GetMapping
-  public Result<Page<ArtifactDto>> findAllArtifacts(Pageable pageable) {
+  public ResponseEntity<Result<Page<ArtifactDto>>> findAllArtifacts(Pageable pageable) {
     var artifactPage = artifactService.findAll(pageable);
     var artifactDtoPage = artifactPage
-        .map(artifactToArtifactDtoConverter::convert);
-    return new Result<>(true, StatusCode.SUCCESS, "Find All Success", artifactDtoPage);
+        .map(artifactViewToArtifactDtoConverter::convert);
+    return ResponseEntity.ok().cacheControl(publicCacheControl)
+        .body(new Result<>(true, StatusCode.SUCCESS, "Find All Success", artifactDtoPage));
+  }
+
+  @GetMapping(params = {"count=false", "!after"}) // Slice mode: no total, so no COUNT query, for e.g. infinite scrolling
+  public ResponseEntity<Result<Slice<ArtifactDto>>> findAllArtifactsWithoutCount(Pageable pageable) {
+    var artifactSlice = artifactService.findAllSlice(pageable);
+    var artifactDtoSlice = artifactSlice.map(artifactViewToArtifactDtoConverter::convert);
+    return ResponseEntity.ok().cacheControl(publicCacheControl)
+        .body(new Result<>(true, StatusCode.SUCCESS, "Find All Success", artifactDtoSlice));
+  }
+
+  @GetMapping(params = "after") // Cursor mode: pass an empty "after" for the first chunk, then the returned nextCursor
+  public ResponseEntity<Result<CursorPage<ArtifactDto>>> findAllArtifactsByCursor(@RequestParam String after, Pageable pageable) {
+    var artifactCursorPage = artifactService.findAll(after, pageable);
+    var artifactDtoCursorPage = artifactCursorPage.map(artifactViewToArtifactDtoConverter::convert);
+    return ResponseEntity.ok().cacheControl(publicCacheControl)
+        .body(new Result<>(true, StatusCode.SUCCESS, "Find All Success", artifactDtoCursorPage));
   }
 
   @PostMapping("/search")
   public Result<Page<ArtifactDto>> findArtifactsByCriteria(@RequestBody Map<String, String> searchCriteria, Pageable pageable) {
     var artifactPage = artifactService.findByCriteria(searchCriteria, pageable);
-    var artifactDtoPage = artifactPage.map(artifactToArtifactDtoConverter::convert);
+    var artifactDtoPage = artifactPage.map(artifactViewToArtifactDtoConverter::convert);
     return new Result<>(true, StatusCode.SUCCESS, "Search Success", artifactDtoPage);
   }
 
+  @PostMapping(value = "/search", params = {"count=false", "!after"})
+  public Result<Slice<ArtifactDto>> findArtifactsByCriteriaWithoutCount(@RequestBody Map<String, String> searchCriteria, Pageable pageable) {
+    var artifactSlice = artifactService.findSliceByCriteria(searchCriteria, pageable);
+    var artifactDtoSlice = artifactSlice.map(artifactViewToArtifactDtoConverter::convert);
+    return new Result<>(true, StatusCode.SUCCESS, "Search Success", artifactDtoSlice);
+  }
+
+  @PostMapping(value = "/search", params = "after")
+  public Result<CursorPage<ArtifactDto>> findArtifactsByCriteriaByCursor(@RequestBody Map<String, String> searchCriteria, @RequestParam String after, Pageable pageable) {
+    var artifactCursorPage = artifactService.findByCriteria(searchCriteria, after, pageable);
+    var artifactDtoCursorPage = artifactCursorPage.map(artifactViewToArtifactDtoConverter::convert);
+    return new Result<>(true, StatusCode.SUCCESS, "Search Success", artifactDtoCursorPage);
+  }
+
   @GetMapping("/summary")
-  public Result<String> summarizeArtifacts() throws JsonProcessingException {
+  public ResponseEntity<Result<String>> summarizeArtifacts() throws JsonProcessingException {
     var artifactDtos = artifactService.findAll().stream().map(artifactToArtifactDtoConverter::convert).toList();
     var summary = artifactService.summarize(artifactDtos);
-    return new Result<>(true, StatusCode.SUCCESS, "Summarize Success", summary);
+    return ResponseEntity.ok().cacheControl(publicCacheControl)
+        .body(new Result<>(true, StatusCode.SUCCESS, "Summarize Success", summary));
+  }
+
+  /**
+   * Streams the whole catalog as newline-delimited JSON, one artifact per line.
+   */
+  @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public void exportArtifacts(HttpServletResponse response) throws IOException {
+    response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+    try (var generator = objectMapper.createGenerator(response.getOutputStream())) {
+      artifactService.exportAll(artifactView -> {
+        try {
+          generator.writeObject(artifactViewToArtifactDtoConverter.convert(artifactView));
+          generator.writeRaw('\n');
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    }
   }
 
   @PostMapping
@@ -80,12 +196,41 @@ public class ArtifactController {
     return new Result<>(true, StatusCode.SUCCESS, "Add Success", savedArtifactDto);
   }
 
+  @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public Result<List<BulkItemResult>> addArtifacts(@RequestBody List<ArtifactDto> artifactDtos) {
+    var results = artifactBulkImporter.importAll(artifactDtos.iterator());
+    return new Result<>(true, StatusCode.SUCCESS, "Bulk Add Success", results);
+  }
+
+  /**
+   * Same as addArtifacts, reading one artifact per line so that the request is never held in memory as a whole.
+   */
+  @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+  public Result<List<BulkItemResult>> addArtifactsFromNdjson(InputStream body) throws IOException {
+    try (MappingIterator<ArtifactDto> artifactDtos = objectMapper.readerFor(ArtifactDto.class).readValues(body)) {
+      var results = artifactBulkImporter.importAll(artifactDtos);
+      return new Result<>(true, StatusCode.SUCCESS, "Bulk Add Success", results);
+    }
+  }
+
   @PutMapping("/{artifactId}")
-  public Result<ArtifactDto> updateArtifact(@PathVariable String artifactId, @Valid @RequestBody ArtifactDto artifactDto) {
+  public ResponseEntity<Result<ArtifactDto>> updateArtifact(@PathVariable String artifactId, @Valid @RequestBody ArtifactDto artifactDto,
+                                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    Long expectedVersion = null;
+    if (ifMatch != null) {
+      var currentArtifact = artifactService.findViewById(artifactId);
+      if (!ETags.matches(ifMatch, currentArtifact.eTag())) {
+        throw new PreconditionFailedException("artifact", artifactId);
+      }
+      expectedVersion = currentArtifact.version();
+    }
     var updateArtifact = artifactDtoToArtifactConverter.convert(artifactDto);
-    var updatedArtifact = artifactService.update(artifactId, updateArtifact);
-    var updatedArtifactDto = artifactToArtifactDtoConverter.convert(updatedArtifact);
-    return new Result<>(true, StatusCode.SUCCESS, "Update Success", updatedArtifactDto);
+    artifactService.update(artifactId, updateArtifact, expectedVersion);
+    // Read back as a view, for the owner's number of artifacts and the new ETag.
+    var updatedArtifact = artifactService.findViewById(artifactId);
+    var updatedArtifactDto = artifactViewToArtifactDtoConverter.convert(updatedArtifact);
+    return ResponseEntity.ok().eTag(updatedArtifact.eTag())
+        .body(new Result<>(true, StatusCode.SUCCESS, "Update Success", updatedArtifactDto));
   }
 
   @DeleteMapping("/{artifactId}")
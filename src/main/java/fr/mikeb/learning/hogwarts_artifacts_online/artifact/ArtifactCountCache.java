@@ -0,0 +1,93 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.system.AfterCommit;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the total number of artifacts matching a search, so that paging through the results runs the COUNT query
+ * once instead of once per page.
+ * <p>
+ * Totals are keyed by the shape and the parameter values of the search filter, so criteria that only differ by case or
+ * by their order share an entry. Every committed write to artifacts, or to the wizards owning them, starts a new
+ * generation, and totals counted in a previous one are ignored. The cache is local to each node: writes made on another
+ * node are only seen once the entries expire, after the ttl.
+ */
+@Component
+public class ArtifactCountCache {
+  // Past this number of entries, the cache is emptied rather than growing with every new search.
+  private static final int MAX_ENTRIES = 10_000;
+
+  private final AsyncTaskExecutor taskExecutor;
+  private final boolean concurrent;
+  private final long ttlNanos;
+  private final Map<String, Total> totals = new ConcurrentHashMap<>();
+  private final AtomicLong generation = new AtomicLong();
+
+  record Total(long count, long generation, long countedAt) {}
+
+  public ArtifactCountCache(@Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) AsyncTaskExecutor taskExecutor,
+                            @Value("${artifact.page.count.concurrent:false}") boolean concurrent,
+                            @Value("${artifact.page.count.ttl:30s}") Duration ttl) {
+    this.taskExecutor = taskExecutor;
+    this.concurrent = concurrent;
+    this.ttlNanos = ttl.toNanos();
+  }
+
+  /**
+   * Returns the total of the given search. On a miss, the count is run when the total is asked for, or, in concurrent
+   * mode, right away on another thread while the caller fetches the page content. The count then uses its own
+   * connection, outside the caller's transaction.
+   */
+  public LongSupplier total(ArtifactQuery filter, LongSupplier count) {
+    var key = key(filter);
+    var currentGeneration = generation.get();
+    var cached = totals.get(key);
+    if (cached != null && cached.generation() == currentGeneration && System.nanoTime() - cached.countedAt() < ttlNanos) {
+      return cached::count;
+    }
+    // Read before counting: if a write commits meanwhile, this total is already outdated and won't be served.
+    if (concurrent) {
+      var future = CompletableFuture.supplyAsync(() -> store(key, count.getAsLong(), currentGeneration), taskExecutor);
+      return future::join;
+    }
+    return () -> store(key, count.getAsLong(), currentGeneration);
+  }
+
+  /**
+   * Drops every total once the surrounding transaction (if any) has committed.
+   */
+  public void invalidate() {
+    AfterCommit.run(generation::incrementAndGet);
+  }
+
+  private long store(String key, long count, long countedGeneration) {
+    if (totals.size() >= MAX_ENTRIES) {
+      totals.clear();
+    }
+    totals.put(key, new Total(count, countedGeneration, System.nanoTime()));
+    return count;
+  }
+
+  static String key(ArtifactQuery filter) {
+    if (filter == null) {
+      return "";
+    }
+    var shape = new StringBuilder();
+    filter.appendShape(shape);
+    var parameters = new ArrayList<>();
+    filter.bind(parameters);
+    return shape.append(parameters).toString();
+  }
+}
@@ -0,0 +1,93 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.InvalidCursorException;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The decoded form of the opaque "after" token used by keyset pagination.
+ * The token carries the sort it was created with and the sort key values of the last returned artifact,
+ * so the next chunk is fetched with a seek predicate (sortKey, id) > (?, ?) instead of an OFFSET.
+ */
+public record ArtifactCursor(Sort sort, KeysetScrollPosition position) {
+  // Only these columns can be used as a keyset, the id is always appended by Spring Data as a tie-breaker.
+  private static final Map<String, SortKey> SORTABLE_PROPERTIES = Map.of(
+      "id", new SortKey(String.class, ArtifactView::id),
+      "name", new SortKey(String.class, ArtifactView::name)
+  );
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  record Token(List<String> sort, Map<String, Object> keys) {}
+
+  private record SortKey(Class<?> type, Function<ArtifactView, Object> getter) {}
+
+  /**
+   * An empty token starts from the beginning using the requested sort, otherwise the sort stored in the token wins.
+   */
+  public static ArtifactCursor decode(String after, Sort requestedSort) {
+    if (!StringUtils.hasLength(after)) {
+      return new ArtifactCursor(validate(requestedSort), ScrollPosition.keyset());
+    }
+    try {
+      var json = Base64.getUrlDecoder().decode(after);
+      var token = OBJECT_MAPPER.readValue(json, Token.class);
+      var sort = validate(Sort.by(token.sort().stream()
+          .map(order -> order.split(":", 2))
+          .map(parts -> new Sort.Order(Sort.Direction.fromString(parts[1]), parts[0]))
+          .toList()));
+      // The keys are bound as is to the seek predicate: one of another type would fail in the database.
+      validateKeys(sort, token.keys());
+      return new ArtifactCursor(sort, ScrollPosition.forward(token.keys()));
+    } catch (IllegalArgumentException | IndexOutOfBoundsException | NullPointerException | IOException e) {
+      throw new InvalidCursorException("The provided cursor is malformed.");
+    }
+  }
+
+  /**
+   * Creates the opaque token pointing right after the given position, keeping the sort of this cursor.
+   */
+  public String encode(KeysetScrollPosition position) {
+    var orders = sort.stream().map(order -> order.getProperty() + ":" + order.getDirection()).toList();
+    try {
+      var json = OBJECT_MAPPER.writeValueAsBytes(new Token(orders, position.getKeys()));
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Could not encode cursor", e);
+    }
+  }
+
+  /**
+   * Returns the value of a sortable property of the given artifact, to be stored in the next cursor.
+   */
+  static Object keyOf(ArtifactView artifactView, String property) {
+    return SORTABLE_PROPERTIES.get(property).getter().apply(artifactView);
+  }
+
+  private static Sort validate(Sort sort) {
+    sort.forEach(order -> {
+      if (!SORTABLE_PROPERTIES.containsKey(order.getProperty())) {
+        throw new InvalidCursorException("Cursor pagination cannot sort by " + order.getProperty() + ".");
+      }
+    });
+    return sort;
+  }
+
+  private static void validateKeys(Sort sort, Map<String, Object> keys) {
+    var properties = sort.and(Sort.by("id")).stream().map(Sort.Order::getProperty).distinct().toList();
+    for (var property : properties) {
+      if (!SORTABLE_PROPERTIES.get(property).type().isInstance(keys.get(property))) {
+        throw new InvalidCursorException("The provided cursor is malformed.");
+      }
+    }
+  }
+}
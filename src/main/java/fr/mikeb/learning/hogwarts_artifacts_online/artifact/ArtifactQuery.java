@@ -0,0 +1,217 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A search filter on artifacts, see ArtifactSearch for the query language that produces it.
+ * <p>
+ * A filter compiles to a JPQL condition over the artifact "a" and its owner "o", with positional parameters.
+ * The condition only depends on the shape of the filter (its structure, fields and operators), never on the searched
+ * values: two searches of the same shape give the same JPQL string, so Hibernate parses and translates it only once,
+ * and only the parameter values change from one execution to the next.
+ * <p>
+ * NOT follows SQL: a term on a missing value, such as the owner name of an ownerless artifact, is neither true nor false.
+ */
+public sealed interface ArtifactQuery {
+
+  /**
+   * Appends a signature which is the same for two filters if and only if they compile to the same condition.
+   */
+  void appendShape(StringBuilder shape);
+
+  /**
+   * Appends the JPQL condition, adding each parameter value to parameters as its ?n placeholder is written.
+   */
+  void appendJpql(StringBuilder jpql, List<Object> parameters);
+
+  /**
+   * Adds the parameter values in the order appendJpql numbers them, for a condition that is already compiled.
+   */
+  void bind(List<Object> parameters);
+
+  enum Field {
+    ID("id", "a.id", false),
+    NAME("name", "a.name", true),
+    DESCRIPTION("description", "a.description", true),
+    OWNER_NAME("ownerName", "o.name", true),
+    OWNER("owner", "o.id", false);
+
+    private final String property;
+    private final String path;
+    private final boolean ignoreCase;
+
+    Field(String property, String path, boolean ignoreCase) {
+      this.property = property;
+      this.path = path;
+      this.ignoreCase = ignoreCase;
+    }
+
+    public String property() {
+      return property;
+    }
+  }
+
+  enum Operator {
+    EQUALS("="),
+    STARTS_WITH("^="),
+    CONTAINS("~");
+
+    private final String symbol;
+
+    Operator(String symbol) {
+      this.symbol = symbol;
+    }
+
+    public String symbol() {
+      return symbol;
+    }
+  }
+
+  /**
+   * Compares a field with a value: text fields are compared ignoring case, the owner is compared by id.
+   */
+  record Term(Field field, Operator operator, Object value) implements ArtifactQuery {
+    @Override
+    public void appendShape(StringBuilder shape) {
+      shape.append(field.property).append(operator.symbol).append('?');
+    }
+
+    @Override
+    public void appendJpql(StringBuilder jpql, List<Object> parameters) {
+      jpql.append(field.ignoreCase ? "lower(" + field.path + ")" : field.path)
+          .append(operator == Operator.EQUALS ? " = ?" : " like ?");
+      bind(parameters);
+      jpql.append(parameters.size());
+      if (operator != Operator.EQUALS) {
+        jpql.append(" escape '!'");
+      }
+    }
+
+    @Override
+    public void bind(List<Object> parameters) {
+      if (operator == Operator.EQUALS) {
+        parameters.add(field.ignoreCase ? value.toString().toLowerCase() : value);
+        return;
+      }
+      var text = field.ignoreCase ? value.toString().toLowerCase() : value.toString();
+      var pattern = text.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+      parameters.add(operator == Operator.CONTAINS ? "%" + pattern : pattern);
+    }
+  }
+
+  record HasOwner() implements ArtifactQuery {
+    @Override
+    public void appendShape(StringBuilder shape) {
+      shape.append("has(owner)");
+    }
+
+    @Override
+    public void appendJpql(StringBuilder jpql, List<Object> parameters) {
+      jpql.append("o.id is not null");
+    }
+
+    @Override
+    public void bind(List<Object> parameters) {
+    }
+  }
+
+  /**
+   * Restricts the search to known artifact ids, e.g. the candidates found by ArtifactTextIndex. However many ids,
+   * the collection is bound to a single parameter.
+   */
+  record IdIn(Collection<String> ids) implements ArtifactQuery {
+    @Override
+    public void appendShape(StringBuilder shape) {
+      shape.append("id in ?");
+    }
+
+    @Override
+    public void appendJpql(StringBuilder jpql, List<Object> parameters) {
+      bind(parameters);
+      jpql.append("a.id in (?").append(parameters.size()).append(')');
+    }
+
+    @Override
+    public void bind(List<Object> parameters) {
+      parameters.add(ids);
+    }
+  }
+
+  record Not(ArtifactQuery operand) implements ArtifactQuery {
+    @Override
+    public void appendShape(StringBuilder shape) {
+      shape.append("not(");
+      operand.appendShape(shape);
+      shape.append(')');
+    }
+
+    @Override
+    public void appendJpql(StringBuilder jpql, List<Object> parameters) {
+      jpql.append("not (");
+      operand.appendJpql(jpql, parameters);
+      jpql.append(')');
+    }
+
+    @Override
+    public void bind(List<Object> parameters) {
+      operand.bind(parameters);
+    }
+  }
+
+  record And(List<ArtifactQuery> operands) implements ArtifactQuery {
+    @Override
+    public void appendShape(StringBuilder shape) {
+      appendShapes("and(", operands, shape);
+    }
+
+    @Override
+    public void appendJpql(StringBuilder jpql, List<Object> parameters) {
+      appendJpqls(" and ", operands, jpql, parameters);
+    }
+
+    @Override
+    public void bind(List<Object> parameters) {
+      operands.forEach(operand -> operand.bind(parameters));
+    }
+  }
+
+  record Or(List<ArtifactQuery> operands) implements ArtifactQuery {
+    @Override
+    public void appendShape(StringBuilder shape) {
+      appendShapes("or(", operands, shape);
+    }
+
+    @Override
+    public void appendJpql(StringBuilder jpql, List<Object> parameters) {
+      appendJpqls(" or ", operands, jpql, parameters);
+    }
+
+    @Override
+    public void bind(List<Object> parameters) {
+      operands.forEach(operand -> operand.bind(parameters));
+    }
+  }
+
+  private static void appendShapes(String prefix, List<ArtifactQuery> operands, StringBuilder shape) {
+    shape.append(prefix);
+    for (int i = 0; i < operands.size(); i++) {
+      if (i > 0) {
+        shape.append(',');
+      }
+      operands.get(i).appendShape(shape);
+    }
+    shape.append(')');
+  }
+
+  private static void appendJpqls(String separator, List<ArtifactQuery> operands, StringBuilder jpql, List<Object> parameters) {
+    jpql.append('(');
+    for (int i = 0; i < operands.size(); i++) {
+      if (i > 0) {
+        jpql.append(separator);
+      }
+      operands.get(i).appendJpql(jpql, parameters);
+    }
+    jpql.append(')');
+  }
+}
@@ -1,9 +1,92 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
 
+import fr.mikeb.learning.hogwarts_artifacts_online.wizard.Wizard;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
 @Repository
-public interface ArtifactRepository extends JpaRepository<Artifact, String>, JpaSpecificationExecutor<Artifact> {
+public interface ArtifactRepository extends JpaRepository<Artifact, String>, JpaSpecificationExecutor<Artifact>, ArtifactViewRepository, ArtifactBatchRepository {
+
+  /**
+   * Streams the whole catalog in id order, with the owner's denormalized number of artifacts. It must be consumed
+   * inside a transaction and closed afterward.
+   * Rows are projections, so nothing piles up in the persistence context while streaming.
+   * On MySQL, the fetch size is only honored with useCursorFetch, set on the prod datasource; otherwise Connector/J
+   * buffers the full result set on the client.
+   */
+  @QueryHints({
+      @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+      @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+      @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+  })
+  @Query("""
+      select new fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactView(
+          a.id, a.name, a.description, a.imgUrl, o.id, o.name, cast(o.artifactCount as Long))
+      from Artifact a left join a.owner o
+      order by a.id""")
+  Stream<ArtifactView> streamAllViews();
+
+  @Query("select a.id as artifactId, a.owner.id as ownerId from Artifact a where a.id in :artifactIds")
+  List<ArtifactOwnership> findOwnerships(Collection<String> artifactIds);
+
+  /**
+   * Gives to owner, in a single UPDATE, those of the artifacts that previousOwnerId still has, and returns how many
+   * changed hands. Like save(), it increments their version, so that a concurrent update of a stale copy fails.
+   */
+  @Modifying
+  @Query("""
+      update versioned Artifact a set a.owner = :owner, a.lastModified = :now
+      where a.id in :artifactIds and a.owner.id = :previousOwnerId""")
+  int assignOwner(Collection<String> artifactIds, Integer previousOwnerId, Wizard owner, Instant now);
+
+  /**
+   * Same as assignOwner, for those of the artifacts that still have no owner.
+   */
+  @Modifying
+  @Query("""
+      update versioned Artifact a set a.owner = :owner, a.lastModified = :now
+      where a.id in :artifactIds and a.owner is null""")
+  int assignOwnerless(Collection<String> artifactIds, Wizard owner, Instant now);
+
+  /**
+   * Gives all the artifacts of owner to newOwner in a single UPDATE, and returns how many there were.
+   */
+  @Modifying
+  @Query("update versioned Artifact a set a.owner = :newOwner, a.lastModified = :now where a.owner = :owner")
+  int transferOwner(Wizard owner, Wizard newOwner, Instant now);
+
+  @Query("select a.id from Artifact a where a.owner.id = :ownerId")
+  List<String> findIdsByOwnerId(Integer ownerId, Limit limit);
+
+  /**
+   * Leaves all the artifacts of owner without one, in a single UPDATE, and returns how many there were.
+   */
+  @Modifying
+  @Query("update versioned Artifact a set a.owner = null, a.lastModified = :now where a.owner.id = :ownerId")
+  int unassignOwner(Integer ownerId, Instant now);
+
+  /**
+   * Same as unassignOwner, for those of the given artifacts that owner still has.
+   */
+  @Modifying
+  @Query("update versioned Artifact a set a.owner = null, a.lastModified = :now where a.id in :artifactIds and a.owner.id = :ownerId")
+  int unassignOwner(Collection<String> artifactIds, Integer ownerId, Instant now);
+
+  interface ArtifactOwnership {
+    String getArtifactId();
+
+    Integer getOwnerId(); // null when the artifact has no owner
+  }
 }
@@ -0,0 +1,230 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.system.AfterCommit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The fully serialized GET /artifacts/{id} responses of the most read artifacts, with their ETag and Last-Modified,
+ * so that a hit neither queries the database nor converts nor serializes anything.
+ * <p>
+ * The bytes held are bounded by max-size: past it, the least recently read responses are evicted. Since they live
+ * as long as their artifact is hot, they end up in the old generation and cost the young collections nothing.
+ * <p>
+ * ArtifactService and WizardService invalidate the responses an artifact or wizard write changes, once committed. A
+ * response read while a write commits is not kept. The cache is local to each node: writes made on another node are
+ * only seen once the responses expire, after the ttl.
+ */
+@Component
+public class ArtifactResponseCache {
+  private static final int ENTRY_OVERHEAD = 128;
+
+  private final boolean enabled;
+  private final boolean gzip;
+  private final long maxBytes;
+  private final long ttlNanos;
+  private final Map<String, CachedResponse> responses = new ConcurrentHashMap<>();
+  private final AtomicLong usedBytes = new AtomicLong();
+  private final AtomicLong generation = new AtomicLong();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  public ArtifactResponseCache(@Value("${artifact.response-cache.enabled:true}") boolean enabled,
+                               @Value("${artifact.response-cache.gzip:false}") boolean gzip,
+                               @Value("${artifact.response-cache.max-size:8MB}") DataSize maxSize,
+                               @Value("${artifact.response-cache.ttl:10s}") Duration ttl) {
+    this.enabled = enabled;
+    this.gzip = gzip;
+    this.maxBytes = maxSize.toBytes();
+    this.ttlNanos = ttl.toNanos();
+  }
+
+  public static final class CachedResponse {
+    private final String eTag;
+    private final long lastModified;
+    private final Integer ownerId;
+    private final byte[] json;
+    private final byte[] gzipped;
+    private final long createdAt;
+    private volatile long lastReadAt;
+
+    CachedResponse(String eTag, long lastModified, Integer ownerId, byte[] json, byte[] gzipped, long createdAt) {
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+      this.ownerId = ownerId;
+      this.json = json;
+      this.gzipped = gzipped;
+      this.createdAt = createdAt;
+      this.lastReadAt = createdAt;
+    }
+
+    public String eTag() {
+      return eTag;
+    }
+
+    /**
+     * Epoch millis, -1 when unknown.
+     */
+    public long lastModified() {
+      return lastModified;
+    }
+
+    public byte[] json() {
+      return json;
+    }
+
+    /**
+     * The gzip-compressed JSON, null unless artifact.response-cache.gzip is on.
+     */
+    public byte[] gzipped() {
+      return gzipped;
+    }
+
+    int size() {
+      return ENTRY_OVERHEAD + json.length + (gzipped == null ? 0 : gzipped.length);
+    }
+  }
+
+  public CachedResponse get(String artifactId) {
+    var response = responses.get(artifactId);
+    if (response == null) {
+      return null;
+    }
+    var now = System.nanoTime();
+    if (now - response.createdAt >= ttlNanos) {
+      remove(artifactId, response);
+      return null;
+    }
+    response.lastReadAt = now;
+    return response;
+  }
+
+  /**
+   * To be read before the artifact is, and given back to put.
+   */
+  public long generation() {
+    return generation.get();
+  }
+
+  /**
+   * Wraps the serialized response of the given artifact, and keeps it unless a write committed since readGeneration.
+   */
+  public CachedResponse put(ArtifactView artifactView, byte[] json, long readGeneration) {
+    var latestModification = artifactView.latestModification();
+    var response = new CachedResponse(artifactView.eTag(), latestModification == null ? -1 : latestModification.toEpochMilli(),
+        artifactView.ownerId(), json, gzip ? gzip(json) : null, System.nanoTime());
+    if (!enabled || response.size() > maxBytes / 16) {
+      return response;
+    }
+    var previous = responses.put(artifactView.id(), response);
+    usedBytes.addAndGet(response.size() - (previous == null ? 0 : previous.size()));
+    // Checked after the put: an invalidation that comes later removes the response by itself.
+    if (generation.get() != readGeneration) {
+      remove(artifactView.id(), response);
+    } else if (usedBytes.get() > maxBytes) {
+      evict();
+    }
+    return response;
+  }
+
+  /**
+   * Drops the response of an artifact that is updated or deleted, once the transaction commits.
+   */
+  public void invalidate(String artifactId) {
+    AfterCommit.run(() -> {
+      generation.incrementAndGet();
+      var response = responses.get(artifactId);
+      if (response != null) {
+        remove(artifactId, response);
+      }
+    });
+  }
+
+  /**
+   * Drops the responses of the artifacts owned by a wizard whose name or artifacts change, once the transaction
+   * commits: they show the owner's name and number of artifacts.
+   */
+  public void invalidateOwner(Integer ownerId) {
+    if (ownerId == null) {
+      return;
+    }
+    invalidateAll(List.of(), List.of(ownerId));
+  }
+
+  /**
+   * Same as invalidate and invalidateOwner for many artifacts and owners, in a single pass over the cache.
+   */
+  public void invalidateAll(Collection<String> artifactIds, Collection<Integer> ownerIds) {
+    var artifactIdSet = new HashSet<>(artifactIds);
+    var ownerIdSet = new HashSet<>(ownerIds);
+    AfterCommit.run(() -> {
+      generation.incrementAndGet();
+      responses.forEach((artifactId, response) -> {
+        if (artifactIdSet.contains(artifactId) || ownerIdSet.contains(response.ownerId)) {
+          remove(artifactId, response);
+        }
+      });
+    });
+  }
+
+  public void clear() {
+    generation.incrementAndGet();
+    responses.forEach(this::remove);
+  }
+
+  long usedBytes() {
+    return usedBytes.get();
+  }
+
+  private void remove(String artifactId, CachedResponse response) {
+    if (responses.remove(artifactId, response)) {
+      usedBytes.addAndGet(-response.size());
+    }
+  }
+
+  /**
+   * Removes the least recently read responses until a quarter of the budget is free. One thread evicts at a time,
+   * the others go on serving.
+   */
+  private void evict() {
+    if (!evictionLock.tryLock()) {
+      return;
+    }
+    try {
+      var target = maxBytes * 3 / 4;
+      var leastRecentlyRead = responses.entrySet().stream()
+          .sorted(Comparator.comparingLong(entry -> entry.getValue().lastReadAt))
+          .iterator();
+      while (usedBytes.get() > target && leastRecentlyRead.hasNext()) {
+        var entry = leastRecentlyRead.next();
+        remove(entry.getKey(), entry.getValue());
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private static byte[] gzip(byte[] json) {
+    var bytes = new ByteArrayOutputStream(json.length / 2);
+    try (var gzipOutputStream = new GZIPOutputStream(bytes)) {
+      gzipOutputStream.write(json);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,330 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.InvalidSearchQueryException;
+import org.springframework.data.domain.Sort;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A parsed /artifacts/search request: a filter (null to match every artifact) and an optional sort.
+ * <p>
+ * The search criteria may hold the flat keys id, name, description and ownerName, all combined with AND, and/or a
+ * query "q" in a small language, for instance:
+ * <pre>
+ *   name ~ "cloak" AND (owner = 2 OR NOT HAS owner) SORT BY name DESC, id
+ * </pre>
+ * Terms are field op value, with the fields id, name, description, ownerName and owner (the owner's id), and the
+ * operators = (equals), ^= (starts with) and ~ (contains). Text comparisons ignore case. Values are quoted strings,
+ * or single words. Keywords are case-insensitive, NOT binds tighter than AND, which binds tighter than OR.
+ */
+public record ArtifactSearch(ArtifactQuery filter, Sort sort) {
+  private static final String QUERY_KEY = "q";
+  private static final int MAX_DEPTH = 32;
+
+  /**
+   * Combines the flat criteria and the query of a search request.
+   */
+  public static ArtifactSearch of(Map<String, String> searchCriteria) {
+    var operands = new ArrayList<ArtifactQuery>();
+    var sort = Sort.unsorted();
+    // In key order, so that the same criteria always give the same filter.
+    for (var entry : new TreeMap<>(searchCriteria).entrySet()) {
+      if (!StringUtils.hasLength(entry.getValue())) {
+        continue;
+      }
+      switch (entry.getKey()) {
+        case "id" -> operands.add(new ArtifactQuery.Term(ArtifactQuery.Field.ID, ArtifactQuery.Operator.EQUALS, entry.getValue()));
+        case "name" -> operands.add(new ArtifactQuery.Term(ArtifactQuery.Field.NAME, ArtifactQuery.Operator.CONTAINS, entry.getValue()));
+        case "description" -> operands.add(new ArtifactQuery.Term(ArtifactQuery.Field.DESCRIPTION, ArtifactQuery.Operator.CONTAINS, entry.getValue()));
+        case "ownerName" -> operands.add(new ArtifactQuery.Term(ArtifactQuery.Field.OWNER_NAME, ArtifactQuery.Operator.EQUALS, entry.getValue()));
+        case QUERY_KEY -> {
+          var search = parse(entry.getValue());
+          if (search.filter() != null) {
+            operands.add(search.filter());
+          }
+          sort = search.sort();
+        }
+        default -> {
+          // Unknown criteria are ignored, as they always were.
+        }
+      }
+    }
+    return new ArtifactSearch(conjunction(operands), sort);
+  }
+
+  public static ArtifactSearch parse(String query) {
+    return new Parser(query).parseSearch();
+  }
+
+  /**
+   * Adds a condition that must hold as well.
+   */
+  public ArtifactSearch and(ArtifactQuery condition) {
+    return new ArtifactSearch(filter == null ? condition : new ArtifactQuery.And(List.of(condition, filter)), sort);
+  }
+
+  /**
+   * The sort of the query if it has one, otherwise the requested one.
+   */
+  public Sort sortOr(Sort requestedSort) {
+    return sort.isSorted() ? sort : requestedSort;
+  }
+
+  /**
+   * The name and description texts every match must contain, in the form ArtifactTextIndex.findCandidateIds takes.
+   * Only the terms ANDed at the top of the filter qualify: any artifact they exclude is excluded by the filter too.
+   */
+  public Map<String, String> textTerms() {
+    var textTerms = new HashMap<String, String>();
+    var conjuncts = filter instanceof ArtifactQuery.And and ? and.operands() : filter == null ? List.<ArtifactQuery>of() : List.of(filter);
+    for (var conjunct : conjuncts) {
+      if (conjunct instanceof ArtifactQuery.Term term
+          && (term.field() == ArtifactQuery.Field.NAME || term.field() == ArtifactQuery.Field.DESCRIPTION)) {
+        textTerms.putIfAbsent(term.field().property(), term.value().toString());
+      }
+    }
+    return textTerms;
+  }
+
+  private static ArtifactQuery conjunction(List<ArtifactQuery> operands) {
+    return switch (operands.size()) {
+      case 0 -> null;
+      case 1 -> operands.getFirst();
+      default -> new ArtifactQuery.And(List.copyOf(operands));
+    };
+  }
+
+  /**
+   * Recursive descent parser of the query language:
+   * <pre>
+   *   search := [or] [SORT BY order {, order}]
+   *   or     := and {OR and}
+   *   and    := unary {AND unary}
+   *   unary  := NOT unary | ( or ) | HAS owner | field op value
+   *   order  := property [ASC | DESC]
+   * </pre>
+   */
+  private static final class Parser {
+    private static final Map<String, ArtifactQuery.Field> FIELDS = Map.of(
+        "id", ArtifactQuery.Field.ID,
+        "name", ArtifactQuery.Field.NAME,
+        "description", ArtifactQuery.Field.DESCRIPTION,
+        "ownerName", ArtifactQuery.Field.OWNER_NAME,
+        "owner", ArtifactQuery.Field.OWNER
+    );
+    private static final List<String> SYMBOLS = List.of("(", ")", ",", "^=", "=", "~");
+
+    private final String query;
+    private int position = 0;
+    private int depth = 0;
+    private String token;
+    private boolean quoted;
+
+    Parser(String query) {
+      this.query = query;
+      next();
+    }
+
+    ArtifactSearch parseSearch() {
+      ArtifactQuery filter = null;
+      if (token != null && !isKeyword("SORT")) {
+        filter = parseOr();
+      }
+      var sort = Sort.unsorted();
+      if (isKeyword("SORT")) {
+        next();
+        expectKeyword("BY");
+        var orders = new ArrayList<Sort.Order>();
+        do {
+          if (!orders.isEmpty()) {
+            next();
+          }
+          orders.add(parseOrder());
+        } while (isSymbol(","));
+        sort = Sort.by(orders);
+      }
+      if (token != null) {
+        throw error("Unexpected '" + token + "'");
+      }
+      return new ArtifactSearch(filter, sort);
+    }
+
+    private ArtifactQuery parseOr() {
+      var operands = new ArrayList<ArtifactQuery>();
+      operands.add(parseAnd());
+      while (isKeyword("OR")) {
+        next();
+        operands.add(parseAnd());
+      }
+      return operands.size() == 1 ? operands.getFirst() : new ArtifactQuery.Or(List.copyOf(operands));
+    }
+
+    private ArtifactQuery parseAnd() {
+      var operands = new ArrayList<ArtifactQuery>();
+      operands.add(parseUnary());
+      while (isKeyword("AND")) {
+        next();
+        operands.add(parseUnary());
+      }
+      return conjunction(operands);
+    }
+
+    private ArtifactQuery parseUnary() {
+      if (++depth > MAX_DEPTH) {
+        throw error("The query is nested too deeply");
+      }
+      try {
+        if (isKeyword("NOT")) {
+          next();
+          return new ArtifactQuery.Not(parseUnary());
+        }
+        if (isSymbol("(")) {
+          next();
+          var operand = parseOr();
+          expectSymbol(")");
+          return operand;
+        }
+        if (isKeyword("HAS")) {
+          next();
+          expectField(ArtifactQuery.Field.OWNER);
+          return new ArtifactQuery.HasOwner();
+        }
+        return parseTerm();
+      } finally {
+        depth--;
+      }
+    }
+
+    private ArtifactQuery parseTerm() {
+      var field = token == null || quoted ? null : FIELDS.get(token);
+      if (field == null) {
+        throw error("Expected a field among " + FIELDS.keySet() + " but found " + describe());
+      }
+      next();
+      var operator = Arrays.stream(ArtifactQuery.Operator.values())
+          .filter(candidate -> isSymbol(candidate.symbol()))
+          .findFirst()
+          .orElseThrow(() -> error("Expected =, ^= or ~ but found " + describe()));
+      next();
+      if (token == null || (!quoted && SYMBOLS.contains(token))) {
+        throw error("Expected a value but found " + describe());
+      }
+      Object value = token;
+      if (field == ArtifactQuery.Field.OWNER) {
+        if (operator != ArtifactQuery.Operator.EQUALS) {
+          throw error("The owner can only be compared with =");
+        }
+        try {
+          value = Integer.valueOf(token);
+        } catch (NumberFormatException e) {
+          throw error("The owner must be a wizard id, not '" + token + "'");
+        }
+      }
+      next();
+      return new ArtifactQuery.Term(field, operator, value);
+    }
+
+    private Sort.Order parseOrder() {
+      if (token == null || quoted || SYMBOLS.contains(token)) {
+        throw error("Expected a property to sort by but found " + describe());
+      }
+      var property = token;
+      next();
+      var direction = Sort.Direction.ASC;
+      if (isKeyword("ASC") || isKeyword("DESC")) {
+        direction = Sort.Direction.fromString(token);
+        next();
+      }
+      return new Sort.Order(direction, property);
+    }
+
+    private void expectField(ArtifactQuery.Field field) {
+      if (token == null || quoted || !token.equals(field.property())) {
+        throw error("Expected " + field.property() + " but found " + describe());
+      }
+      next();
+    }
+
+    private void expectKeyword(String keyword) {
+      if (!isKeyword(keyword)) {
+        throw error("Expected " + keyword + " but found " + describe());
+      }
+      next();
+    }
+
+    private void expectSymbol(String symbol) {
+      if (!isSymbol(symbol)) {
+        throw error("Expected '" + symbol + "' but found " + describe());
+      }
+      next();
+    }
+
+    private boolean isKeyword(String keyword) {
+      return token != null && !quoted && token.equalsIgnoreCase(keyword);
+    }
+
+    private boolean isSymbol(String symbol) {
+      return token != null && !quoted && token.equals(symbol);
+    }
+
+    private String describe() {
+      return token == null ? "the end of the query" : "'" + token + "'";
+    }
+
+    private InvalidSearchQueryException error(String message) {
+      return new InvalidSearchQueryException(message + " at position " + position + " of the search query.");
+    }
+
+    /**
+     * Reads the next token: a symbol, a "quoted string" (\ escapes the next character), or a word. null at the end.
+     */
+    private void next() {
+      while (position < query.length() && Character.isWhitespace(query.charAt(position))) {
+        position++;
+      }
+      quoted = false;
+      if (position == query.length()) {
+        token = null;
+        return;
+      }
+      for (var symbol : SYMBOLS) {
+        if (query.startsWith(symbol, position)) {
+          token = symbol;
+          position += symbol.length();
+          return;
+        }
+      }
+      if (query.charAt(position) == '"') {
+        var text = new StringBuilder();
+        position++;
+        while (position < query.length() && query.charAt(position) != '"') {
+          if (query.charAt(position) == '\\' && position + 1 < query.length()) {
+            position++;
+          }
+          text.append(query.charAt(position++));
+        }
+        if (position == query.length()) {
+          throw error("Unterminated string");
+        }
+        position++;
+        token = text.toString();
+        quoted = true;
+        return;
+      }
+      int start = position;
+      while (position < query.length()
+          && !Character.isWhitespace(query.charAt(position))
+          && query.charAt(position) != '"'
+          && SYMBOLS.stream().noneMatch(symbol -> query.startsWith(symbol, position))) {
+        position++;
+      }
+      token = query.substring(start, position);
+    }
+  }
+}
@@ -7,40 +7,46 @@ import fr.mikeb.learning.hogwarts_artifacts_online.artifact.utils.IdWorker;
 import fr.mikeb.learning.hogwarts_artifacts_online.client.ai.chat.ChatClient;
 import fr.mikeb.learning.hogwarts_artifacts_online.client.ai.chat.dto.ChatRequest;
 import fr.mikeb.learning.hogwarts_artifacts_online.client.ai.chat.dto.Message;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.CursorPage;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.NotFoundException;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.PreconditionFailedException;
+import fr.mikeb.learning.hogwarts_artifacts_online.wizard.WizardRepository;
 import io.micrometer.core.annotation.Timed;
 import io.micrometer.observation.annotation.Observed;
 import jakarta.transaction.Transactional;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StringUtils;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.function.Function;
+import java.util.function.Consumer;
 
 @Service
 @Transactional
 public class ArtifactService {
   private final ArtifactRepository artifactRepository;
+  private final WizardRepository wizardRepository;
   private final IdWorker idWorker;
   private final ChatClient chatClient;
+  private final ArtifactTextIndex artifactTextIndex;
+  private final ArtifactCountCache artifactCountCache;
+  private final ArtifactResponseCache artifactResponseCache;
 
-  // Define a map of functions that map criteria keys to their respective specifications
-  private static final Map<String, Function<String, Specification<Artifact>>> SPEC_MAP = Map.of(
-      "id", ArtifactSpecs::hasId,
-      "name", ArtifactSpecs::containsName,
-      "description", ArtifactSpecs::containsDescription,
-      "ownerName", ArtifactSpecs::hasOwnerName
-  );
-
-  public ArtifactService(ArtifactRepository artifactRepository, IdWorker idWorker, ChatClient chatClient) {
+  public ArtifactService(ArtifactRepository artifactRepository, WizardRepository wizardRepository, IdWorker idWorker, ChatClient chatClient, ArtifactTextIndex artifactTextIndex, ArtifactCountCache artifactCountCache, ArtifactResponseCache artifactResponseCache) {
     this.artifactRepository = artifactRepository;
+    this.wizardRepository = wizardRepository;
     this.idWorker = idWorker;
     this.chatClient = chatClient;
+    this.artifactTextIndex = artifactTextIndex;
+    this.artifactCountCache = artifactCountCache;
+    this.artifactResponseCache = artifactResponseCache;
   }
 
   @Observed(name = "artifact", contextualName = "findByIdService")
@@ -49,22 +55,78 @@ public class ArtifactService {
         .orElseThrow(() -> new NotFoundException("artifact", artifactId));
   }
 
+  public ArtifactView findViewById(String artifactId) {
+    return artifactRepository.findViewById(artifactId)
+        .orElseThrow(() -> new NotFoundException("artifact", artifactId));
+  }
+
   @Timed("findAllArtifactsService.time")
   public List<Artifact> findAll() {
     return artifactRepository.findAll();
   }
 
-  public Page<Artifact> findByCriteria(Map<String, String> searchCriteria, Pageable pageable) {
-    var spec = searchCriteria.entrySet().stream()
-        .filter(entry -> StringUtils.hasLength(entry.getValue()))
-        .map(entry -> SPEC_MAP.getOrDefault(entry.getKey(), s -> null).apply(entry.getValue()))
-        .filter(Objects::nonNull)
-        .reduce(Specification::and)
-        .orElse(Specification.where(null));
+  /**
+   * Hands every artifact to the given action, one row at a time, without loading the catalog in memory.
+   */
+  public void exportAll(Consumer<ArtifactView> action) {
+    try (var artifactViews = artifactRepository.streamAllViews()) {
+      artifactViews.forEach(action);
+    }
+  }
+
+  public Page<ArtifactView> findByCriteria(Map<String, String> searchCriteria, Pageable pageable) {
+    var search = ArtifactSearch.of(searchCriteria);
+    var narrowedSearch = narrow(search);
+    // Keyed by the search as requested: the text index candidates change with every write, like the total does.
+    var total = artifactCountCache.total(search.filter(), () -> artifactRepository.countViews(narrowedSearch.filter()));
+    var slice = artifactRepository.findViewSlice(narrowedSearch.filter(), sorted(pageable, search));
+
+    var offset = pageable.isPaged() ? pageable.getOffset() : 0;
+    // Unless past the end, a page without a next one tells the total by itself.
+    if (!slice.hasNext() && (slice.hasContent() || offset == 0)) {
+      return new PageImpl<>(slice.getContent(), slice.getPageable(), offset + slice.getNumberOfElements());
+    }
+    return new PageImpl<>(slice.getContent(), slice.getPageable(), total.getAsLong());
+  }
+
+  /**
+   * Like findByCriteria, without the total: for clients that only need to know if there is a next page.
+   */
+  public Slice<ArtifactView> findSliceByCriteria(Map<String, String> searchCriteria, Pageable pageable) {
+    var search = narrow(ArtifactSearch.of(searchCriteria));
+    return artifactRepository.findViewSlice(search.filter(), sorted(pageable, search));
+  }
 
-    return artifactRepository.findAll(spec, pageable);
+  public CursorPage<ArtifactView> findByCriteria(Map<String, String> searchCriteria, String after, Pageable pageable) {
+    var search = narrow(ArtifactSearch.of(searchCriteria));
+    return findByCursor(search.filter(), after, search.sortOr(pageable.getSort()), pageable.getPageSize());
   }
 
+  private ArtifactSearch narrow(ArtifactSearch search) {
+    // When the text index can narrow the search, the LIKE predicates are only re-checked on the candidate rows.
+    var candidateIds = artifactTextIndex.findCandidateIds(search.textTerms());
+    return candidateIds == null ? search : search.and(new ArtifactQuery.IdIn(candidateIds));
+  }
+
+  private static Pageable sorted(Pageable pageable, ArtifactSearch search) {
+    var sort = search.sortOr(pageable.getSort());
+    return pageable.isPaged() ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort) : Pageable.unpaged(sort);
+  }
+
+  /**
+   * Keyset pagination: seeks past the last returned sort key + id instead of using an OFFSET, and never runs a COUNT query.
+   */
+  private CursorPage<ArtifactView> findByCursor(ArtifactQuery filter, String after, Sort sort, int pageSize) {
+    var cursor = ArtifactCursor.decode(after, sort);
+    var window = artifactRepository.findViews(filter, cursor.sort(), cursor.position(), pageSize);
+
+    var nextCursor = window.hasNext()
+        ? cursor.encode((KeysetScrollPosition) window.positionAt(window.size() - 1))
+        : null;
+    return new CursorPage<>(window.getContent(), window.size(), window.hasNext(), nextCursor);
+  }
+
+  @Transactional(Transactional.TxType.SUPPORTS) // No database access: don't hold a connection while waiting for the LLM.
   public String summarize(List<ArtifactDto> artifacts) throws JsonProcessingException {
     var objectMapper = new ObjectMapper();
     var jsonArray = objectMapper.writeValueAsString(artifacts);
@@ -79,29 +141,76 @@ public class ArtifactService {
 
   public Artifact save(Artifact newArtifact) {
     newArtifact.setId(idWorker.nextId() + "");
-    return artifactRepository.save(newArtifact);
+    var savedArtifact = artifactRepository.save(newArtifact);
+    artifactTextIndex.index(savedArtifact);
+    artifactCountCache.invalidate();
+    return savedArtifact;
+  }
+
+  /**
+   * Creates new artifacts with batched INSERTs. The ids are all reserved at once, before the first INSERT is sent.
+   */
+  public List<Artifact> saveAll(List<Artifact> newArtifacts) {
+    var ids = idWorker.nextIds(newArtifacts.size());
+    var digits = new char[IdWorker.MAX_ID_LENGTH];
+    for (int i = 0; i < ids.length; i++) {
+      newArtifacts.get(i).setId(new String(digits, 0, IdWorker.formatId(ids[i], digits, 0)));
+    }
+    artifactRepository.insertAll(newArtifacts);
+    artifactTextIndex.indexAll(newArtifacts);
+    artifactCountCache.invalidate();
+    return newArtifacts;
   }
 
   public Artifact update(String artifactId, Artifact update) {
+    return update(artifactId, update, null);
+  }
+
+  /**
+   * Updates the artifact only if it is still at expectedVersion, unless expectedVersion is null.
+   */
+  public Artifact update(String artifactId, Artifact update, Long expectedVersion) {
     return artifactRepository.findById(artifactId)
         .map(oldArtifact -> {
+          if (expectedVersion != null && !expectedVersion.equals(oldArtifact.getVersion())) {
+            throw new PreconditionFailedException("artifact", artifactId);
+          }
           oldArtifact.setName(update.getName());
           oldArtifact.setDescription(update.getDescription());
           oldArtifact.setImgUrl(update.getImgUrl());
 
-          return artifactRepository.save(oldArtifact);
+          var updatedArtifact = artifactRepository.save(oldArtifact);
+          artifactTextIndex.index(updatedArtifact);
+          artifactCountCache.invalidate();
+          artifactResponseCache.invalidate(artifactId);
+          return updatedArtifact;
         })
         .orElseThrow(() -> new NotFoundException("artifact", artifactId));
   }
 
   public void delete(String artifactId) {
-    artifactRepository.findById(artifactId)
+    var artifactToBeDeleted = artifactRepository.findById(artifactId)
         .orElseThrow(() -> new NotFoundException("artifact", artifactId));
 
     artifactRepository.deleteById(artifactId);
+    artifactTextIndex.remove(artifactId);
+    artifactCountCache.invalidate();
+    artifactResponseCache.invalidate(artifactId);
+    if (artifactToBeDeleted.hasOwner()) {
+      wizardRepository.adjustArtifactCount(artifactToBeDeleted.getOwner().getId(), -1, Instant.now());
+      artifactResponseCache.invalidateOwner(artifactToBeDeleted.getOwner().getId()); // Its owner has one artifact less.
+    }
+  }
+
+  public Page<ArtifactView> findAll(Pageable pageable) {
+    return findByCriteria(Map.of(), pageable);
+  }
+
+  public Slice<ArtifactView> findAllSlice(Pageable pageable) {
+    return findSliceByCriteria(Map.of(), pageable);
   }
 
-  public Page<Artifact> findAll(Pageable pageable) {
-    return artifactRepository.findAll(pageable);
+  public CursorPage<ArtifactView> findAll(String after, Pageable pageable) {
+    return findByCursor(null, after, pageable.getSort(), pageable.getPageSize());
   }
 }
@@ -0,0 +1,434 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache.RedisCacheClient;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.AfterCommit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram inverted index over Artifact.name and Artifact.description.
+ * <p>
+ * The search criteria use a case-insensitive "contains" semantic (LIKE '%x%'), which no B-tree index can serve.
+ * Every lowercased text is split into overlapping 3-character grams, and each gram points to a sorted int array of
+ * internal document numbers. A query is answered by intersecting the postings of its own grams, which gives a small
+ * superset of the matching artifacts; the database then only re-checks those rows by primary key.
+ * <p>
+ * The index is built when the application is ready and maintained by ArtifactService after each committed write.
+ * Each instance keeps its own copy: the ids of the artifacts written are published on UPDATES_CHANNEL, and the other
+ * instances read those artifacts again (see ArtifactTextIndexConfiguration). The updates lost while an instance wasn't
+ * subscribed, and the writes that bypass ArtifactService, are picked up by the rebuild every rebuild-interval.
+ */
+@Component
+public class ArtifactTextIndex {
+  public static final String UPDATES_CHANNEL = "artifacts:text-index";
+  private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactTextIndex.class);
+  private static final int GRAM_LENGTH = 3;
+  private static final int REBUILD_CHUNK_SIZE = 1_000;
+
+  private final ArtifactRepository artifactRepository;
+  private final RedisCacheClient redisCacheClient;
+  private final boolean enabled;
+  private final boolean shared;
+  // Above this number of candidates an IN (...) list costs more than the scan it replaces.
+  private final int maxCandidates;
+  // Prefixes the updates published, so that this instance skips its own.
+  private final String instanceId = UUID.randomUUID().toString();
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private Docs docs = new Docs();
+  // Set while rebuilding, with the artifacts written meanwhile, which the rows read by the rebuild must not overwrite.
+  private Docs building;
+  private Set<String> writtenDuringRebuild;
+  private volatile boolean ready = false;
+
+  public ArtifactTextIndex(ArtifactRepository artifactRepository, RedisCacheClient redisCacheClient,
+                           @Value("${artifact.search.index.enabled:true}") boolean enabled,
+                           @Value("${artifact.search.index.shared:false}") boolean shared,
+                           @Value("${artifact.search.index.max-candidates:1000}") int maxCandidates) {
+    this.artifactRepository = artifactRepository;
+    this.redisCacheClient = redisCacheClient;
+    this.enabled = enabled;
+    this.shared = shared;
+    this.maxCandidates = maxCandidates;
+  }
+
+  /**
+   * Builds a new index aside, the searches still being served by the current one, and swaps them at the end.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  @Scheduled(initialDelayString = "${artifact.search.index.rebuild-interval:PT1H}", fixedDelayString = "${artifact.search.index.rebuild-interval:PT1H}")
+  public synchronized void rebuild() {
+    if (!enabled) {
+      return;
+    }
+    var rebuilt = new Docs();
+    lock.writeLock().lock();
+    try {
+      building = rebuilt;
+      writtenDuringRebuild = new HashSet<>();
+    } finally {
+      lock.writeLock().unlock();
+    }
+    try {
+      // Walk the table in id order, one chunk at a time, so the whole catalog is never loaded at once.
+      ScrollPosition position = ScrollPosition.keyset();
+      Window<ArtifactView> window;
+      do {
+        window = artifactRepository.findViews((ArtifactQuery) null, Sort.by("id"), (KeysetScrollPosition) position, REBUILD_CHUNK_SIZE);
+        lock.writeLock().lock();
+        try {
+          for (var artifact : window) {
+            if (!writtenDuringRebuild.contains(artifact.id())) {
+              rebuilt.index(artifact.id(), artifact.name(), artifact.description());
+            }
+          }
+        } finally {
+          lock.writeLock().unlock();
+        }
+        if (!window.isEmpty()) {
+          position = window.positionAt(window.size() - 1);
+        }
+      } while (window.hasNext());
+
+      lock.writeLock().lock();
+      try {
+        docs = rebuilt;
+        ready = true;
+      } finally {
+        lock.writeLock().unlock();
+      }
+      LOGGER.info("Artifact text index built with {} artifacts", rebuilt.size());
+    } finally {
+      lock.writeLock().lock();
+      try {
+        building = null;
+        writtenDuringRebuild = null;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * Adds or re-indexes an artifact once the surrounding transaction (if any) has committed.
+   */
+  public void index(Artifact artifact) {
+    indexAll(List.of(artifact));
+  }
+
+  /**
+   * Adds or re-indexes artifacts once the surrounding transaction (if any) has committed, under a single lock acquisition.
+   */
+  public void indexAll(List<Artifact> artifacts) {
+    // Copied now, the entities may be modified before the commit.
+    var snapshots = artifacts.stream().map(artifact -> new Snapshot(artifact.getId(), artifact.getName(), artifact.getDescription())).toList();
+    AfterCommit.run(() -> {
+      lock.writeLock().lock();
+      try {
+        snapshots.forEach(snapshot -> doIndex(snapshot.artifactId(), snapshot.name(), snapshot.description()));
+      } finally {
+        lock.writeLock().unlock();
+      }
+      publish(snapshots.stream().map(Snapshot::artifactId).toList());
+    });
+  }
+
+  /**
+   * Removes an artifact once the surrounding transaction (if any) has committed.
+   */
+  public void remove(String artifactId) {
+    AfterCommit.run(() -> {
+      lock.writeLock().lock();
+      try {
+        doRemove(artifactId);
+      } finally {
+        lock.writeLock().unlock();
+      }
+      publish(List.of(artifactId));
+    });
+  }
+
+  /**
+   * Re-indexes the artifacts another instance wrote, as they now are in the database. Called for every message on
+   * UPDATES_CHANNEL; one that isn't "{instanceId}:{artifactIds}" is ignored.
+   */
+  public void onUpdate(String message) {
+    var separator = message.indexOf(':');
+    if (!enabled || separator < 0 || message.substring(0, separator).equals(instanceId)) {
+      return;
+    }
+    var artifactIds = List.of(message.substring(separator + 1).split(","));
+    var artifacts = artifactRepository.findAllById(artifactIds);
+    lock.writeLock().lock();
+    try {
+      var found = new HashSet<String>();
+      for (var artifact : artifacts) {
+        doIndex(artifact.getId(), artifact.getName(), artifact.getDescription());
+        found.add(artifact.getId());
+      }
+      artifactIds.stream().filter(artifactId -> !found.contains(artifactId)).forEach(this::doRemove);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the ids of the artifacts that may match the "name" and "description" criteria,
+   * or null when the index cannot narrow the search (not built, no usable criterion, or too many candidates).
+   */
+  public List<String> findCandidateIds(Map<String, String> searchCriteria) {
+    if (!ready) {
+      return null;
+    }
+    lock.readLock().lock();
+    try {
+      return docs.findCandidateIds(searchCriteria, maxCandidates);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void publish(List<String> artifactIds) {
+    if (shared) {
+      redisCacheClient.publish(UPDATES_CHANNEL, instanceId + ":" + String.join(",", artifactIds));
+    }
+  }
+
+  private void doIndex(String artifactId, String name, String description) {
+    docs.index(artifactId, name, description);
+    if (building != null) {
+      building.index(artifactId, name, description);
+      writtenDuringRebuild.add(artifactId);
+    }
+  }
+
+  private void doRemove(String artifactId) {
+    docs.remove(artifactId);
+    if (building != null) {
+      building.remove(artifactId);
+      writtenDuringRebuild.add(artifactId);
+    }
+  }
+
+  /**
+   * The indexed artifacts, by doc number. The doc numbers freed by removals are given again to the next artifacts
+   * indexed, so that artifactIdByDoc doesn't grow with every artifact ever created.
+   */
+  private static final class Docs {
+    private final Map<String, Integer> docByArtifactId = new HashMap<>();
+    private String[] artifactIdByDoc = new String[1024];
+    private int nextDoc = 0;
+    private int[] freeDocs = new int[16];
+    private int freeDocCount = 0;
+    private final FieldIndex names = new FieldIndex();
+    private final FieldIndex descriptions = new FieldIndex();
+
+    void index(String artifactId, String name, String description) {
+      var doc = docByArtifactId.get(artifactId);
+      if (doc == null) {
+        doc = freeDocCount > 0 ? freeDocs[--freeDocCount] : nextDoc++;
+        if (doc == artifactIdByDoc.length) {
+          artifactIdByDoc = Arrays.copyOf(artifactIdByDoc, doc * 2);
+        }
+        artifactIdByDoc[doc] = artifactId;
+        docByArtifactId.put(artifactId, doc);
+      }
+      names.put(doc, name);
+      descriptions.put(doc, description);
+    }
+
+    void remove(String artifactId) {
+      var doc = docByArtifactId.remove(artifactId);
+      if (doc == null) {
+        return;
+      }
+      names.remove(doc);
+      descriptions.remove(doc);
+      artifactIdByDoc[doc] = null;
+      if (freeDocCount == freeDocs.length) {
+        freeDocs = Arrays.copyOf(freeDocs, freeDocCount * 2);
+      }
+      freeDocs[freeDocCount++] = doc;
+    }
+
+    int size() {
+      return docByArtifactId.size();
+    }
+
+    List<String> findCandidateIds(Map<String, String> searchCriteria, int maxCandidates) {
+      int[] candidates = null;
+      candidates = intersect(candidates, names.search(searchCriteria.get("name")));
+      candidates = intersect(candidates, descriptions.search(searchCriteria.get("description")));
+      if (candidates == null || candidates.length > maxCandidates) {
+        return null;
+      }
+      var artifactIds = new ArrayList<String>(candidates.length);
+      for (int doc : candidates) {
+        artifactIds.add(artifactIdByDoc[doc]);
+      }
+      return artifactIds;
+    }
+  }
+
+  /**
+   * Intersects two sorted doc arrays, null meaning "no constraint".
+   */
+  private static int[] intersect(int[] left, int[] right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    var result = new int[Math.min(left.length, right.length)];
+    int i = 0, j = 0, size = 0;
+    while (i < left.length && j < right.length) {
+      if (left[i] < right[j]) {
+        i++;
+      } else if (left[i] > right[j]) {
+        j++;
+      } else {
+        result[size++] = left[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  /**
+   * Packs three UTF-16 chars into one long, so grams are compared without creating strings.
+   */
+  static long[] grams(String text) {
+    if (text == null || text.length() < GRAM_LENGTH) {
+      return new long[0];
+    }
+    var lowerCase = text.toLowerCase(Locale.ROOT);
+    var grams = new long[lowerCase.length() - GRAM_LENGTH + 1];
+    for (int i = 0; i < grams.length; i++) {
+      grams[i] = ((long) lowerCase.charAt(i) << 32) | ((long) lowerCase.charAt(i + 1) << 16) | lowerCase.charAt(i + 2);
+    }
+    // Sorted and deduplicated so that each doc appears once per posting list.
+    Arrays.sort(grams);
+    int size = 0;
+    for (int i = 0; i < grams.length; i++) {
+      if (i == 0 || grams[i] != grams[i - 1]) {
+        grams[size++] = grams[i];
+      }
+    }
+    return Arrays.copyOf(grams, size);
+  }
+
+  private static final class FieldIndex {
+    private final Map<Long, Postings> postingsByGram = new HashMap<>();
+    private final Map<Integer, long[]> gramsByDoc = new HashMap<>();
+
+    void put(int doc, String text) {
+      remove(doc);
+      var grams = grams(text);
+      for (long gram : grams) {
+        postingsByGram.computeIfAbsent(gram, g -> new Postings()).add(doc);
+      }
+      gramsByDoc.put(doc, grams);
+    }
+
+    void remove(int doc) {
+      var grams = gramsByDoc.remove(doc);
+      if (grams == null) {
+        return;
+      }
+      for (long gram : grams) {
+        var postings = postingsByGram.get(gram);
+        postings.remove(doc);
+        if (postings.size == 0) {
+          postingsByGram.remove(gram);
+        }
+      }
+    }
+
+    /**
+     * Returns null when the query is too short to be answered by the index.
+     */
+    int[] search(String query) {
+      if (!StringUtils.hasLength(query) || query.length() < GRAM_LENGTH) {
+        return null;
+      }
+      var queryGrams = grams(query);
+      var postingsList = new Postings[queryGrams.length];
+      for (int i = 0; i < queryGrams.length; i++) {
+        postingsList[i] = postingsByGram.get(queryGrams[i]);
+        if (postingsList[i] == null) {
+          return new int[0];
+        }
+      }
+      // Start from the rarest gram so the intermediate results stay small.
+      Arrays.sort(postingsList, (p1, p2) -> Integer.compare(p1.size, p2.size));
+      var docs = Arrays.copyOf(postingsList[0].docs, postingsList[0].size);
+      for (int i = 1; i < postingsList.length && docs.length > 0; i++) {
+        docs = intersect(docs, Arrays.copyOf(postingsList[i].docs, postingsList[i].size));
+      }
+      return docs;
+    }
+  }
+
+  private record Snapshot(String artifactId, String name, String description) {}
+
+  /**
+   * A sorted, growable array of doc numbers.
+   */
+  private static final class Postings {
+    private int[] docs = new int[4];
+    private int size = 0;
+
+    void add(int doc) {
+      if (size > 0 && docs[size - 1] >= doc) { // Not an append: an artifact re-indexed, or a doc number reused
+        int position = Arrays.binarySearch(docs, 0, size, doc);
+        if (position >= 0) {
+          return;
+        }
+        insertAt(-position - 1, doc);
+      } else {
+        insertAt(size, doc);
+      }
+    }
+
+    void remove(int doc) {
+      int position = Arrays.binarySearch(docs, 0, size, doc);
+      if (position >= 0) {
+        System.arraycopy(docs, position + 1, docs, position, size - position - 1);
+        size--;
+      }
+    }
+
+    private void insertAt(int position, int doc) {
+      if (size == docs.length) {
+        docs = Arrays.copyOf(docs, size * 2);
+      }
+      System.arraycopy(docs, position, docs, position + 1, size - position);
+      docs[position] = doc;
+      size++;
+    }
+  }
+}
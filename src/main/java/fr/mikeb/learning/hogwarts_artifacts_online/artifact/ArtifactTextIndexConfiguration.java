@@ -0,0 +1,27 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+@Configuration
+public class ArtifactTextIndexConfiguration {
+
+  /**
+   * Re-indexes in this instance's text index the artifacts written on any other instance.
+   */
+  @Bean
+  @ConditionalOnProperty(name = "artifact.search.index.shared", havingValue = "true")
+  public RedisMessageListenerContainer artifactTextIndexListenerContainer(RedisConnectionFactory redisConnectionFactory, ArtifactTextIndex artifactTextIndex) {
+    var container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(redisConnectionFactory);
+    container.addMessageListener((message, pattern) -> artifactTextIndex.onUpdate(new String(message.getBody(), StandardCharsets.UTF_8)),
+        new ChannelTopic(ArtifactTextIndex.UPDATES_CHANNEL));
+    return container;
+  }
+}
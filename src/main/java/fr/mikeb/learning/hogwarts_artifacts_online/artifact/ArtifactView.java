@@ -0,0 +1,51 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.system.ETags;
+
+import java.time.Instant;
+
+/**
+ * Read model of an artifact: its columns, its owner's id and name, and the owner's number of artifacts,
+ * all fetched by a single query so that listing artifacts never initializes an owner or its artifacts collection.
+ */
+public record ArtifactView(
+    String id,
+    String name,
+    String description,
+    String imgUrl,
+    Integer ownerId, // null when the artifact has no owner
+    String ownerName,
+    Long ownerNumberOfArtifacts,
+    Long version,
+    Instant lastModified,
+    Long ownerVersion,
+    Instant ownerLastModified
+) {
+  /**
+   * A view without version information, for the reads that never answer conditional requests.
+   */
+  public ArtifactView(String id, String name, String description, String imgUrl, Integer ownerId, String ownerName, Long ownerNumberOfArtifacts) {
+    this(id, name, description, imgUrl, ownerId, ownerName, ownerNumberOfArtifacts, null, null, null, null);
+  }
+
+  public boolean hasOwner() {
+    return ownerId != null;
+  }
+
+  /**
+   * Changes whenever the artifact, its owner or the owner's number of artifacts changes.
+   */
+  public String eTag() {
+    return ETags.of(version, ownerId, ownerVersion, ownerNumberOfArtifacts);
+  }
+
+  /**
+   * The latest modification of the artifact or its owner, null when unknown.
+   */
+  public Instant latestModification() {
+    if (ownerLastModified == null) {
+      return lastModified;
+    }
+    return lastModified == null || ownerLastModified.isAfter(lastModified) ? ownerLastModified : lastModified;
+  }
+}
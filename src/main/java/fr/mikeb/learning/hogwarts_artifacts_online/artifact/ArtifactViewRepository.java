@@ -0,0 +1,27 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+
+import java.util.Optional;
+
+/**
+ * Repository fragment returning ArtifactView projections instead of Artifact entities.
+ * Searches use ArtifactQuery filters.
+ */
+public interface ArtifactViewRepository {
+  Optional<ArtifactView> findViewById(String artifactId);
+
+  /**
+   * Runs a JPQL query compiled once per shape of filter and sort, fetching one more row than the page size to tell if
+   * there is a next page, and never counts the matches. A null filter matches every artifact.
+   */
+  Slice<ArtifactView> findViewSlice(ArtifactQuery filter, Pageable pageable);
+
+  long countViews(ArtifactQuery filter);
+
+  Window<ArtifactView> findViews(ArtifactQuery filter, Sort sort, KeysetScrollPosition position, int limit);
+}
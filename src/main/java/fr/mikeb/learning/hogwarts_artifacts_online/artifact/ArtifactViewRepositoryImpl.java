@@ -0,0 +1,184 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.InvalidSearchQueryException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.repository.query.KeysetScrollSpecification;
+import org.springframework.data.jpa.repository.support.JpaEntityInformationSupport;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds JPQL queries that select the artifact columns, and left join the owner for its id, its name and its
+ * denormalized number of artifacts.
+ * <p>
+ * Hibernate interprets a Criteria query anew each time it runs, whereas it caches the interpretation of a JPQL string.
+ * Searches are therefore compiled to JPQL, which is kept here by shape: a search of a known shape skips both the JPQL
+ * building and Hibernate's parsing and SQL translation, and only binds its parameters.
+ */
+class ArtifactViewRepositoryImpl implements ArtifactViewRepository {
+  private static final String SELECT = "select new " + ArtifactView.class.getName()
+      + "(a.id, a.name, a.description, a.imgUrl, o.id, o.name, cast(o.artifactCount as Long),"
+      + " a.version, a.lastModified, o.version, o.lastModified) from Artifact a left join a.owner o";
+  private static final String COUNT = "select count(a) from Artifact a left join a.owner o";
+  private static final String FIND_BY_ID = SELECT + " where a.id = ?1";
+  private static final Map<String, String> SORT_PATHS = Map.of(
+      "id", "a.id",
+      "name", "a.name",
+      "description", "a.description",
+      "imgUrl", "a.imgUrl",
+      "ownerId", "o.id",
+      "owner.id", "o.id",
+      "ownerName", "o.name",
+      "owner.name", "o.name"
+  );
+  // Shapes come from clients: past this number, new ones are compiled for each search instead of being kept.
+  private static final int MAX_PLANS = 512;
+
+  private final EntityManager entityManager;
+  private final Map<String, Plan> plans = new ConcurrentHashMap<>();
+
+  record Plan(String select, String count) {}
+
+  ArtifactViewRepositoryImpl(EntityManager entityManager) {
+    this.entityManager = entityManager;
+  }
+
+  @Override
+  public Optional<ArtifactView> findViewById(String artifactId) {
+    return entityManager.createQuery(FIND_BY_ID, ArtifactView.class).setParameter(1, artifactId).getResultStream().findFirst();
+  }
+
+  @Override
+  public Slice<ArtifactView> findViewSlice(ArtifactQuery filter, Pageable pageable) {
+    var parameters = new ArrayList<>();
+    var plan = plan(filter, pageable.getSort(), false, parameters);
+    var query = bind(entityManager.createQuery(plan.select(), ArtifactView.class), parameters);
+    if (pageable.isUnpaged()) {
+      return new SliceImpl<>(query.getResultList(), pageable, false);
+    }
+    query.setFirstResult((int) pageable.getOffset());
+    query.setMaxResults(pageable.getPageSize() + 1);
+    var content = query.getResultList();
+    var hasNext = content.size() > pageable.getPageSize();
+    return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+  }
+
+  @Override
+  public long countViews(ArtifactQuery filter) {
+    var parameters = new ArrayList<>();
+    var plan = plan(filter, Sort.unsorted(), false, parameters);
+    return bind(entityManager.createQuery(plan.count(), Long.class), parameters).getSingleResult();
+  }
+
+  @Override
+  public Window<ArtifactView> findViews(ArtifactQuery filter, Sort sort, KeysetScrollPosition position, int limit) {
+    var entityInformation = JpaEntityInformationSupport.getEntityInformation(Artifact.class, entityManager);
+    var keysetSort = KeysetScrollSpecification.createSort(position, sort, entityInformation);
+
+    var parameters = new ArrayList<>();
+    var plan = plan(filter, keysetSort, !position.isInitial(), parameters);
+    if (!position.isInitial()) {
+      keysetSort.forEach(order -> parameters.add(position.getKeys().get(order.getProperty())));
+    }
+    var query = bind(entityManager.createQuery(plan.select(), ArtifactView.class), parameters);
+    query.setMaxResults(limit + 1); // One more row tells if there is a next window.
+    var content = query.getResultList();
+
+    var hasNext = content.size() > limit;
+    var windowContent = hasNext ? content.subList(0, limit) : content;
+    return Window.from(windowContent, index -> {
+      var keys = new LinkedHashMap<String, Object>();
+      keysetSort.forEach(order -> keys.put(order.getProperty(), ArtifactCursor.keyOf(windowContent.get(index), order.getProperty())));
+      return ScrollPosition.forward(keys);
+    }, hasNext);
+  }
+
+  /**
+   * Returns the compiled queries for this shape of search, and adds the filter's parameter values to parameters.
+   * With seek, the condition also holds a keyset predicate whose parameters, one per order, come after the filter's.
+   */
+  private Plan plan(ArtifactQuery filter, Sort sort, boolean seek, List<Object> parameters) {
+    var shape = new StringBuilder();
+    if (filter != null) {
+      filter.appendShape(shape);
+    }
+    sort.forEach(order -> shape.append('|').append(order.getProperty()).append(' ').append(order.getDirection()));
+    if (seek) {
+      shape.append("|seek");
+    }
+    var key = shape.toString();
+    var plan = plans.get(key);
+    if (plan != null) {
+      if (filter != null) {
+        filter.bind(parameters);
+      }
+      return plan;
+    }
+
+    var where = new StringBuilder();
+    if (filter != null) {
+      filter.appendJpql(where, parameters);
+    }
+    if (seek) {
+      appendSeek(where, sort, parameters.size());
+    }
+    var condition = where.isEmpty() ? "" : " where " + where;
+    var orderBy = new StringBuilder();
+    sort.forEach(order -> orderBy.append(orderBy.isEmpty() ? " order by " : ", ").append(path(order.getProperty())).append(' ').append(order.getDirection()));
+    plan = new Plan(SELECT + condition + orderBy, COUNT + condition);
+    if (plans.size() < MAX_PLANS) {
+      plans.putIfAbsent(key, plan);
+    }
+    return plan;
+  }
+
+  /**
+   * Appends (p1 > ?1) or (p1 = ?1 and p2 > ?2) or ..., with < for the descending orders.
+   */
+  private static void appendSeek(StringBuilder where, Sort sort, int parameterCount) {
+    if (!where.isEmpty()) {
+      where.append(" and ");
+    }
+    var orders = sort.toList();
+    where.append('(');
+    for (int i = 0; i < orders.size(); i++) {
+      where.append(i == 0 ? "(" : " or (");
+      for (int j = 0; j < i; j++) {
+        where.append(path(orders.get(j).getProperty())).append(" = ?").append(parameterCount + j + 1).append(" and ");
+      }
+      where.append(path(orders.get(i).getProperty()))
+          .append(orders.get(i).isAscending() ? " > ?" : " < ?")
+          .append(parameterCount + i + 1)
+          .append(')');
+    }
+    where.append(')');
+  }
+
+  private static String path(String property) {
+    var path = SORT_PATHS.get(property);
+    if (path == null) {
+      throw new InvalidSearchQueryException("Cannot sort by " + property + ".");
+    }
+    return path;
+  }
+
+  private static <T> TypedQuery<T> bind(TypedQuery<T> query, List<Object> parameters) {
+    for (int i = 0; i < parameters.size(); i++) {
+      query.setParameter(i + 1, parameters.get(i));
+    }
+    return query;
+  }
+}
@@ -0,0 +1,58 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.utils.TopKSketch;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Tracks the most viewed artifacts in a fixed amount of memory.
+ * A meter per artifact id would grow the registry (and every Prometheus scrape) with the size of the catalog,
+ * so only k gauges are registered: artifact.views.top{rank="1"} up to artifact.views.top{rank="k"}.
+ * The artifact ids behind the ranks are listed by the topartifacts actuator endpoint.
+ * <p>
+ * The counts are halved every decay-interval: a view counts for half after one interval, for a quarter after two, and
+ * so on, so that the ranking follows what is viewed now rather than since the application started.
+ */
+@Component
+public class ArtifactViewsTracker {
+  private final TopKSketch topKSketch;
+
+  public ArtifactViewsTracker(MeterRegistry meterRegistry,
+                              @Value("${artifact.views.top-k:10}") int k,
+                              @Value("${artifact.views.sketch-width:2048}") int width,
+                              @Value("${artifact.views.sketch-depth:4}") int depth) {
+    this.topKSketch = new TopKSketch(k, width, depth);
+    for (int rank = 1; rank <= k; rank++) {
+      int index = rank - 1;
+      Gauge.builder("artifact.views.top", topKSketch, sketch -> {
+            var top = sketch.top();
+            return index < top.size() ? top.get(index).estimatedCount() : 0;
+          })
+          .tag("rank", String.valueOf(rank))
+          .description("Estimated number of views of the artifact at this rank")
+          .register(meterRegistry);
+    }
+  }
+
+  @Scheduled(initialDelayString = "${artifact.views.decay-interval:PT1H}", fixedDelayString = "${artifact.views.decay-interval:PT1H}")
+  public void decay() {
+    topKSketch.decay();
+  }
+
+  public void recordView(String artifactId) {
+    topKSketch.offer(artifactId);
+  }
+
+  public List<TopKSketch.RankedEntry> topViews() {
+    return topKSketch.top();
+  }
+
+  public long totalViews() {
+    return topKSketch.total();
+  }
+}
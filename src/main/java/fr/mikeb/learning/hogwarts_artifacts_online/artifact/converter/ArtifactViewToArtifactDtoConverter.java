@@ -0,0 +1,21 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact.converter;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactView;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.dto.ArtifactDto;
+import fr.mikeb.learning.hogwarts_artifacts_online.wizard.dto.WizardDto;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ArtifactViewToArtifactDtoConverter implements Converter<ArtifactView, ArtifactDto> {
+
+    @Override
+    public ArtifactDto convert(ArtifactView source) {
+        return new ArtifactDto(source.id(),
+                source.name(),
+                source.description(),
+                source.imgUrl(),
+                source.hasOwner() ? new WizardDto(source.ownerId(), source.ownerName(), source.ownerNumberOfArtifacts().intValue()) : null
+        );
+    }
+}
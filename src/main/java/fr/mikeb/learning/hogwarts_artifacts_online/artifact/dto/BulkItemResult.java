@@ -0,0 +1,21 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact.dto;
+
+import java.util.Map;
+
+/**
+ * Outcome of one item of a bulk request, index being its position in the request.
+ */
+public record BulkItemResult(
+    int index,
+    boolean success,
+    String id, // null when the item was rejected
+    Map<String, String> errors // null when the item was created
+) {
+  public static BulkItemResult created(int index, String id) {
+    return new BulkItemResult(index, true, id, null);
+  }
+
+  public static BulkItemResult rejected(int index, Map<String, String> errors) {
+    return new BulkItemResult(index, false, null, errors);
+  }
+}
@@ -3,10 +3,18 @@ package fr.mikeb.learning.hogwarts_artifacts_online.artifact.utils;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
 
 /**
- * This piece of code is from the Internet. The quality is unknown.
- * Only for demoing purpose. Use with caution!
+ * Snowflake-style id generator: 41 bits of milliseconds since twepoch, 5 bits of datacenter id, 5 bits of worker id
+ * and 12 bits of sequence, so up to 4096 ids per millisecond and per worker.
+ * <p>
+ * Lock-free: the last timestamp and the sequence are packed in a single AtomicLong, and each id is claimed with one
+ * compare-and-set. Ids of an instance are strictly increasing. When the clock steps back by at most
+ * maxBackwardMillis, ids keep being issued from the last timestamp, larger steps are refused.
  */
 public class IdWorker {
 
@@ -30,60 +38,177 @@ public class IdWorker {
 
     private final static long sequenceMask = ~(-1L << sequenceBits);
 
-    private static long lastTimestamp = -1L;
+    private final static long workerMask = ~(-1L << (datacenterIdBits + workerIdBits)) << workerIdShift;
 
-    private long sequence = 0L;
+    public final static int MAX_ID_LENGTH = 19;
 
-    private final long workerId;
+    private final static long defaultMaxBackwardMillis = 10L;
 
-    private final long datacenterId;
+    // Spins before yielding, while waiting for the next millisecond once its 4096 sequence numbers are used.
+    // Parking would overshoot it: the shortest park lasts tens of microseconds.
+    private final static int maxSpins = 1_000;
 
+    // The last id issued, per instance: its timestamp, worker bits and sequence.
+    private final AtomicLong state = new AtomicLong(-1L);
+
+    private final long maxBackwardMillis;
+
+    private final LongSupplier clock;
+
+    // Replaced as a whole when the worker id is leased (see WorkerIdLease), so that an id is checked against the
+    // window of the worker bits it carries.
+    private volatile Lease lease;
 
     public IdWorker() {
-        this.datacenterId = getDatacenterId(maxDatacenterId);
-        this.workerId = getMaxWorkerId(datacenterId, maxWorkerId);
+        long datacenterId = getDatacenterId(maxDatacenterId);
+        this.lease = new Lease(Long.MIN_VALUE, Long.MAX_VALUE, workerBits(getMaxWorkerId(datacenterId, maxWorkerId), datacenterId));
+        this.maxBackwardMillis = defaultMaxBackwardMillis;
+        this.clock = System::currentTimeMillis;
     }
 
     public IdWorker(long workerId, long datacenterId) {
+        this(workerId, datacenterId, defaultMaxBackwardMillis, System::currentTimeMillis);
+    }
+
+    IdWorker(long workerId, long datacenterId, long maxBackwardMillis, LongSupplier clock) {
+        this.lease = new Lease(Long.MIN_VALUE, Long.MAX_VALUE, workerBits(workerId, datacenterId));
+        this.maxBackwardMillis = maxBackwardMillis;
+        this.clock = clock;
+    }
+
+    public long nextId() {
+        return reserve(1);
+    }
+
+    /**
+     * Returns n new ids, in increasing order. Each CAS reserves all the sequence numbers needed from the current
+     * millisecond, so a batch costs one CAS per millisecond it spans instead of one per id.
+     */
+    public long[] nextIds(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n can't be negative");
+        }
+        var ids = new long[n];
+        int filled = 0;
+        while (filled < n) {
+            long first = reserve(n - filled);
+            int count = reservedCount(first, n - filled);
+            for (int i = 0; i < count; i++) {
+                ids[filled++] = first + i;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Writes the decimal digits of a (non-negative) id into buffer, from offset, and returns the offset after the
+     * last digit. The buffer needs MAX_ID_LENGTH free chars. Unlike id + "", nothing is allocated, so one buffer
+     * can format a whole batch of ids.
+     */
+    public static int formatId(long id, char[] buffer, int offset) {
+        if (id < 0) {
+            throw new IllegalArgumentException("id can't be negative");
+        }
+        int length = 1;
+        for (long rest = id / 10; rest > 0; rest /= 10) {
+            length++;
+        }
+        int end = offset + length;
+        for (int position = end - 1; position >= offset; position--) {
+            buffer[position] = (char) ('0' + id % 10);
+            id /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Restricts id generation to [fromMillis, untilMillis). Before fromMillis, callers wait; from untilMillis on,
+     * they get an IllegalStateException: the worker id may be in use somewhere else.
+     */
+    public void lease(long fromMillis, long untilMillis) {
+        this.lease = new Lease(fromMillis, untilMillis, lease.workerBits());
+    }
+
+    /**
+     * Moves to another worker id, leased for [fromMillis, untilMillis). The ids keep increasing across the move, and
+     * the callers generating ids meanwhile wait for fromMillis like after the first lease.
+     */
+    public void lease(long workerId, long datacenterId, long fromMillis, long untilMillis) {
+        this.lease = new Lease(fromMillis, untilMillis, workerBits(workerId, datacenterId));
+    }
+
+    private static long workerBits(long workerId, long datacenterId) {
         if (workerId > maxWorkerId || workerId < 0) {
             throw new IllegalArgumentException(String.format("worker Id can't be greater than %d or less than 0", maxWorkerId));
         }
         if (datacenterId > maxDatacenterId || datacenterId < 0) {
             throw new IllegalArgumentException(String.format("datacenter Id can't be greater than %d or less than 0", maxDatacenterId));
         }
-        this.workerId = workerId;
-        this.datacenterId = datacenterId;
+        return (datacenterId << datacenterIdShift) | (workerId << workerIdShift);
     }
 
-    public synchronized long nextId() {
-        long timestamp = timeGen();
-        if (timestamp < lastTimestamp) {
-            throw new RuntimeException(String.format("Clock moved backwards.  Refusing to generate id for %d milliseconds", lastTimestamp - timestamp));
-        }
-        if (lastTimestamp == timestamp) {
-            sequence = (sequence + 1) & sequenceMask;
-            if (sequence == 0) {
-                timestamp = tilNextMillis(lastTimestamp);
+    /**
+     * Claims up to max consecutive ids of a single millisecond and returns the first one. reservedCount(first, max)
+     * tells how many were claimed.
+     */
+    private long reserve(int max) {
+        int spins = 0;
+        while (true) {
+            long current = state.get();
+            long lastTimestamp = current >> timestampLeftShift; // -1 before the first id
+            long now = timeGen();
+            var lease = this.lease; // Read once: the window checked is the one of the worker bits used.
+            if (now < lease.start() || now >= lease.end()) {
+                awaitLease(now, lease);
+                continue;
+            }
+            long timestamp = now - twepoch;
+            if (timestamp < lastTimestamp - maxBackwardMillis) {
+                throw new IllegalStateException(String.format("Clock moved backwards.  Refusing to generate id for %d milliseconds", lastTimestamp - timestamp));
+            }
+            long first;
+            if (timestamp > lastTimestamp) {
+                first = (timestamp << timestampLeftShift) | lease.workerBits();
+            } else if ((current & workerMask) != lease.workerBits()) {
+                // Just moved to another worker id, with a clock slightly behind the last id: its sequence can't go on.
+                spins = awaitNextMillis(spins);
+                continue;
+            } else if ((current & sequenceMask) < sequenceMask) {
+                first = current + 1; // Same millisecond as the last id, or a clock slightly behind it: keep counting.
+            } else {
+                spins = awaitNextMillis(spins);
+                continue;
+            }
+            if (state.compareAndSet(current, first + reservedCount(first, max) - 1)) {
+                return first;
             }
-        } else {
-            sequence = 0L;
         }
-        lastTimestamp = timestamp;
-      return ((timestamp - twepoch) << timestampLeftShift)
-                | (datacenterId << datacenterIdShift)
-                | (workerId << workerIdShift) | sequence;
     }
 
-    private long tilNextMillis(final long lastTimestamp) {
-        long timestamp = this.timeGen();
-        while (timestamp <= lastTimestamp) {
-            timestamp = this.timeGen();
+    private static void awaitLease(long now, Lease lease) {
+        if (now >= lease.end()) {
+            throw new IllegalStateException(String.format("Worker id lease expired at %d, refusing to generate ids", lease.end()));
         }
-        return timestamp;
+        if (now < lease.start()) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(lease.start() - now));
+        }
+    }
+
+    private static int reservedCount(long first, int max) {
+        return (int) Math.min(sequenceMask - (first & sequenceMask) + 1, max);
+    }
+
+    private static int awaitNextMillis(int spins) {
+        if (spins < maxSpins) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+        return spins + 1;
     }
 
     private long timeGen() {
-        return System.currentTimeMillis();
+        return clock.getAsLong();
     }
 
     protected static long getMaxWorkerId(long datacenterId, long maxWorkerId) {
@@ -115,4 +240,10 @@ public class IdWorker {
         return id;
     }
 
-}
\ No newline at end of file
+    /**
+     * Epoch millis between which the ids carrying workerBits may be generated.
+     */
+    private record Lease(long start, long end, long workerBits) {
+    }
+
+}
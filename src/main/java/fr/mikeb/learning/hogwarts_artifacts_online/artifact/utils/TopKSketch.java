@@ -0,0 +1,143 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-memory, lock-free heavy-hitter tracker: a Count-Min sketch estimates the frequency of every key,
+ * and a table of k slots keeps the keys with the highest estimates seen so far.
+ * <p>
+ * Estimates never under-count. With a width w and a depth d, an estimate exceeds the true count by more than
+ * (e / w) * N, N being the total number of offers, with a probability of at most e^-d.
+ * The memory used is d * w longs plus k slots, whatever the number of distinct keys.
+ * <p>
+ * decay() halves every count, so that a key that was offered often long ago gives way to the keys offered now.
+ */
+public class TopKSketch {
+  private final int depth;
+  private final int width;
+  private final AtomicLongArray counters;
+  private final AtomicReferenceArray<Entry> topEntries;
+  private final LongAdder total = new LongAdder();
+
+  private record Entry(String key, long estimatedCount) {}
+
+  public record RankedEntry(int rank, String key, long estimatedCount, long errorBound) {}
+
+  public TopKSketch(int k, int width, int depth) {
+    if (k <= 0 || width <= 0 || depth <= 0) {
+      throw new IllegalArgumentException("k, width and depth must be positive");
+    }
+    this.depth = depth;
+    this.width = width;
+    this.counters = new AtomicLongArray(depth * width);
+    this.topEntries = new AtomicReferenceArray<>(k);
+  }
+
+  public void offer(String key) {
+    total.increment();
+    // Rows come from the two halves of one 64-bit hash (Kirsch-Mitzenmacher), so keys sharing a String.hashCode()
+    // still land in different buckets.
+    long hash = hash(key);
+    int hash1 = (int) hash;
+    int hash2 = (int) (hash >>> 32);
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      estimate = Math.min(estimate, counters.incrementAndGet(row * width + Math.floorMod(hash1 + row * hash2, width)));
+    }
+    updateTopEntries(key, estimate);
+  }
+
+  /**
+   * Returns the tracked keys, highest estimate first. Each estimate may exceed the true count by at most errorBound
+   * (with high probability), a key entering the table late may also be missing a few of its early offers.
+   */
+  public List<RankedEntry> top() {
+    var bestByKey = new HashMap<String, Long>();
+    for (int i = 0; i < topEntries.length(); i++) {
+      var entry = topEntries.get(i);
+      if (entry != null) {
+        bestByKey.merge(entry.key(), entry.estimatedCount(), Math::max); // Racing threads may have used two slots.
+      }
+    }
+    var sorted = new ArrayList<>(bestByKey.entrySet());
+    sorted.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+
+    long errorBound = (long) Math.ceil(Math.E / width * total.sum());
+    var ranked = new ArrayList<RankedEntry>(sorted.size());
+    for (int i = 0; i < sorted.size(); i++) {
+      ranked.add(new RankedEntry(i + 1, sorted.get(i).getKey(), sorted.get(i).getValue(), errorBound));
+    }
+    return ranked;
+  }
+
+  public long total() {
+    return total.sum();
+  }
+
+  /**
+   * Halves the counters, the estimates of the tracked keys and the total. The offers made meanwhile are halved or
+   * not, which keeps the estimates from under-counting the halved counts.
+   */
+  public void decay() {
+    for (int i = 0; i < counters.length(); i++) {
+      counters.getAndUpdate(i, count -> count >> 1);
+    }
+    for (int i = 0; i < topEntries.length(); i++) {
+      topEntries.getAndUpdate(i, entry -> entry == null ? null : new Entry(entry.key(), entry.estimatedCount() >> 1));
+    }
+    total.add(-(total.sum() >> 1));
+  }
+
+  private void updateTopEntries(String key, long estimate) {
+    while (true) {
+      int minSlot = -1;
+      Entry min = null;
+      boolean lostRace = false;
+      for (int i = 0; i < topEntries.length(); i++) {
+        var entry = topEntries.get(i);
+        if (entry == null) {
+          if (minSlot == -1 || min != null) { // The first empty slot beats any entry.
+            minSlot = i;
+            min = null;
+          }
+        } else if (entry.key().equals(key)) {
+          if (entry.estimatedCount() >= estimate || topEntries.compareAndSet(i, entry, new Entry(key, estimate))) {
+            return;
+          }
+          lostRace = true;
+          break;
+        } else if (minSlot == -1 || (min != null && entry.estimatedCount() < min.estimatedCount())) {
+          minSlot = i;
+          min = entry;
+        }
+      }
+      if (lostRace) {
+        continue;
+      }
+      if (min != null && min.estimatedCount() >= estimate) {
+        return; // Not a heavy hitter (yet).
+      }
+      if (topEntries.compareAndSet(minSlot, min, new Entry(key, estimate))) {
+        return;
+      }
+    }
+  }
+
+  private static long hash(String key) {
+    // FNV-1a over the chars, then the 64-bit finalizer of MurmurHash3.
+    var hash = 0xCBF29CE484222325L;
+    for (int i = 0; i < key.length(); i++) {
+      hash = (hash ^ key.charAt(i)) * 0x100000001B3L;
+    }
+    hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+    hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    return hash ^ (hash >>> 33);
+  }
+}
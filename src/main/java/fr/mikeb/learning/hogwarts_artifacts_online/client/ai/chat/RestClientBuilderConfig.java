@@ -1,15 +1,25 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.client.ai.chat;
 
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
+import java.net.http.HttpClient;
+import java.util.concurrent.Executors;
+
 @Configuration
 public class RestClientBuilderConfig {
   @Bean
-  public RestClient.Builder restClient() {
+  public RestClient.Builder restClient(Environment environment) {
+    var httpClient = HttpClient.newBuilder();
+    if (Threading.VIRTUAL.isActive(environment)) {
+      // The client's default executor is a cached pool of platform threads, one per in-flight exchange.
+      httpClient.executor(Executors.newVirtualThreadPerTaskExecutor());
+    }
     return RestClient.builder()
-        .requestFactory(new JdkClientHttpRequestFactory());
+        .requestFactory(new JdkClientHttpRequestFactory(httpClient.build()));
   }
 }
@@ -1,12 +1,17 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache;
 
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 @Service
 public class RedisCacheClient {
+    private static final RedisScript<String> GET_AND_SET = RedisScript.of(
+            "local previous = redis.call('get', KEYS[1]) redis.call('set', KEYS[1], ARGV[1], 'px', ARGV[2]) return previous", String.class);
+
     private final StringRedisTemplate redisTemplate;
 
     public RedisCacheClient(StringRedisTemplate redisTemplate) {
@@ -21,12 +26,25 @@ public class RedisCacheClient {
         return this.redisTemplate.opsForValue().get(key);
     }
 
+    /**
+     * Sets the value and its timeout at once, returning the previous value: the key can't be left without a timeout.
+     */
+    public String getAndSet(String key, String value, long timeout, TimeUnit timeUnit) {
+        return this.redisTemplate.execute(GET_AND_SET, List.of(key), value, String.valueOf(timeUnit.toMillis(timeout)));
+    }
+
+    /**
+     * Deletes the key, returning its value: of two concurrent callers, only one gets it.
+     */
+    public String getAndDelete(String key) {
+        return this.redisTemplate.opsForValue().getAndDelete(key);
+    }
+
     public void delete(String key) {
         this.redisTemplate.delete(key);
     }
 
-    public boolean isUserTokenInWhiteList(String userId, String tokenFromRequest) {
-        var tokenFromRedis = get("whitelist:" + userId);
-        return tokenFromRedis != null && tokenFromRedis.equals(tokenFromRequest);
+    public void publish(String channel, String message) {
+        this.redisTemplate.convertAndSend(channel, message);
     }
 }
\ No newline at end of file
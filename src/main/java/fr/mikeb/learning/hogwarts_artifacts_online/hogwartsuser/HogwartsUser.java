@@ -4,11 +4,14 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import jakarta.validation.constraints.NotEmpty;
 
 import java.io.Serializable;
 
 @Entity
+@Table(indexes = @Index(name = "idx_hogwarts_user_username", columnList = "username")) // Every login looks the user up by username.
 public class HogwartsUser implements Serializable {
   @Id
   @GeneratedValue(strategy = GenerationType.AUTO)
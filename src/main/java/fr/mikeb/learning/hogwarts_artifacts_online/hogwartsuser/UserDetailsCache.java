@@ -0,0 +1,110 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache.RedisCacheClient;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.AfterCommit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The principals loaded for the logins, by username, so that a login neither queries the user table nor parses the
+ * roles again. Each instance keeps its own for at most max-staleness.
+ * <p>
+ * UserService invalidates a user once a change to it is committed, and the invalidation is published on
+ * INVALIDATIONS_CHANNEL for the other instances to drop it too (see UserDetailsCacheConfiguration). Should a message be
+ * lost, an old password or role still can't be used past max-staleness.
+ * <p>
+ * Entries are keyed by the normalized username, so that invalidating a user drops it whatever the spelling it was
+ * loaded with, and hold that spelling: a login with another one loads the user again rather than trusting the
+ * database to compare usernames the way Usernames.normalize does.
+ */
+@Component
+public class UserDetailsCache {
+  public static final String INVALIDATIONS_CHANNEL = "users:invalidations";
+
+  private final RedisCacheClient redisCacheClient;
+  private final boolean enabled;
+  private final int maxEntries; // Past it, the cache is emptied rather than growing with every user.
+  private final long maxStalenessNanos;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong generation = new AtomicLong();
+  private final Counter hits;
+  private final Counter misses;
+
+  record Entry(String username, UserPrincipal principal, long expiresAt) {}
+
+  public UserDetailsCache(RedisCacheClient redisCacheClient, MeterRegistry meterRegistry,
+                          @Value("${security.user-details.cache.enabled:false}") boolean enabled,
+                          @Value("${security.user-details.cache.max-size:10000}") int maxEntries,
+                          @Value("${security.user-details.cache.max-staleness:1m}") Duration maxStaleness) {
+    this.redisCacheClient = redisCacheClient;
+    this.enabled = enabled;
+    this.maxEntries = maxEntries;
+    this.maxStalenessNanos = maxStaleness.toNanos();
+    // The hits are the user table lookups avoided.
+    this.hits = Counter.builder("user.details.cache.requests").tag("result", "hit")
+        .description("Users loaded for a login from the cache or from the database").register(meterRegistry);
+    this.misses = Counter.builder("user.details.cache.requests").tag("result", "miss")
+        .description("Users loaded for a login from the cache or from the database").register(meterRegistry);
+    Gauge.builder("user.details.cache.size", entries, Map::size).register(meterRegistry);
+  }
+
+  /**
+   * Returns the cached principal of the user, or the one the loader returns, which is then cached. Unknown users are
+   * not cached.
+   */
+  public Optional<UserPrincipal> get(String username, Supplier<Optional<UserPrincipal>> loader) {
+    if (!enabled) {
+      return loader.get();
+    }
+    var now = System.nanoTime();
+    var key = Usernames.normalize(username);
+    var cached = entries.get(key);
+    if (cached != null && cached.username().equals(username) && cached.expiresAt() - now > 0) {
+      hits.increment();
+      return Optional.of(cached.principal());
+    }
+    misses.increment();
+    // Read before loading: if an invalidation comes meanwhile, what was loaded may be outdated already.
+    var currentGeneration = generation.get();
+    var loaded = loader.get();
+    if (loaded.isPresent() && generation.get() == currentGeneration) {
+      if (entries.size() >= maxEntries) {
+        entries.clear();
+      }
+      entries.put(key, new Entry(username, loaded.get(), now + maxStalenessNanos));
+    }
+    return loaded;
+  }
+
+  /**
+   * Drops the users from the cache of every instance, once the surrounding transaction has committed.
+   */
+  public void invalidate(String... usernames) {
+    AfterCommit.run(() -> {
+      for (var username : usernames) {
+        evict(username);
+        if (enabled) {
+          redisCacheClient.publish(INVALIDATIONS_CHANNEL, username);
+        }
+      }
+    });
+  }
+
+  /**
+   * Drops the user from this instance's cache. Called for every message on INVALIDATIONS_CHANNEL.
+   */
+  public void evict(String username) {
+    generation.incrementAndGet();
+    entries.remove(Usernames.normalize(username));
+  }
+}
@@ -0,0 +1,27 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+@Configuration
+public class UserDetailsCacheConfiguration {
+
+  /**
+   * Drops from this instance's cache the users changed on any instance.
+   */
+  @Bean
+  @ConditionalOnProperty(name = "security.user-details.cache.enabled", havingValue = "true")
+  public RedisMessageListenerContainer userDetailsCacheListenerContainer(RedisConnectionFactory redisConnectionFactory, UserDetailsCache userDetailsCache) {
+    var container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(redisConnectionFactory);
+    container.addMessageListener((message, pattern) -> userDetailsCache.evict(new String(message.getBody(), StandardCharsets.UTF_8)),
+        new ChannelTopic(UserDetailsCache.INVALIDATIONS_CHANNEL));
+    return container;
+  }
+}
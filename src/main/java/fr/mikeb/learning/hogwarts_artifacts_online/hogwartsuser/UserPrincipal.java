@@ -7,23 +7,34 @@ import org.springframework.util.StringUtils;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the user, safe to share between threads and to cache: the roles are parsed once, when the
+ * principal is built, rather than at every getAuthorities() call.
+ */
+public record UserPrincipal(Long id, String username, String password, boolean enabled, String roles,
+                            List<GrantedAuthority> authorities) implements UserDetails {
+  public UserPrincipal(HogwartsUser user) {
+    this(user.getId(), user.getUsername(), user.getPassword(), user.isEnabled(), user.getRoles(),
+        Arrays.stream(StringUtils.tokenizeToStringArray(user.getRoles(), " "))
+            .<GrantedAuthority>map(role -> new SimpleGrantedAuthority("ROLE_" + role))
+            .toList());
+  }
 
-public record UserPrincipal(HogwartsUser user) implements UserDetails {
   @Override
   public Collection<? extends GrantedAuthority> getAuthorities() {
-    return Arrays.stream(StringUtils.tokenizeToStringArray(user.getRoles(), " "))
-        .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
-        .toList();
+    return authorities;
   }
 
   @Override
   public String getPassword() {
-    return user.getPassword();
+    return password;
   }
 
   @Override
   public String getUsername() {
-    return user.getUsername();
+    return username;
   }
 
   @Override
@@ -43,6 +54,11 @@ public record UserPrincipal(HogwartsUser user) implements UserDetails {
 
   @Override
   public boolean isEnabled() {
-    return user.isEnabled();
+    return enabled;
+  }
+
+  @Override
+  public String toString() {
+    return "UserPrincipal[id=" + id + ", username=" + username + ", password=[PROTECTED], enabled=" + enabled + ", roles=" + roles + "]";
   }
 }
@@ -1,9 +1,14 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<HogwartsUser, Long> {
   Optional<HogwartsUser> findByUsername(String username);
+
+  @Query("select u.username from HogwartsUser u")
+  List<String> findAllUsernames();
 }
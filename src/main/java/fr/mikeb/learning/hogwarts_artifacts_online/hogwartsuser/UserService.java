@@ -1,12 +1,14 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser;
 
-import fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache.RedisCacheClient;
+import fr.mikeb.learning.hogwarts_artifacts_online.security.RefreshTokens;
+import fr.mikeb.learning.hogwarts_artifacts_online.security.TokenWhitelist;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.NotFoundException;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.PasswordChangeIllegalArgumentException;
 import jakarta.transaction.Transactional;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -16,15 +18,22 @@ import java.util.List;
 
 @Service
 @Transactional
-public class UserService implements UserDetailsService {
+public class UserService implements UserDetailsService, UserDetailsPasswordService {
   private final UserRepository userRepository;
   private final PasswordEncoder passwordEncoder;
-  private final RedisCacheClient redisCacheClient;
+  private final TokenWhitelist tokenWhitelist;
+  private final RefreshTokens refreshTokens;
+  private final UserDetailsCache userDetailsCache;
+  private final UsernameFilter usernameFilter;
 
-  public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, RedisCacheClient redisCacheClient) {
+  public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, TokenWhitelist tokenWhitelist, RefreshTokens refreshTokens,
+                     UserDetailsCache userDetailsCache, UsernameFilter usernameFilter) {
     this.userRepository = userRepository;
     this.passwordEncoder = passwordEncoder;
-    this.redisCacheClient = redisCacheClient;
+    this.tokenWhitelist = tokenWhitelist;
+    this.refreshTokens = refreshTokens;
+    this.userDetailsCache = userDetailsCache;
+    this.usernameFilter = usernameFilter;
   }
 
   public List<HogwartsUser> findAll() {
@@ -38,41 +47,68 @@ public class UserService implements UserDetailsService {
 
   public HogwartsUser save(HogwartsUser newUser) {
     newUser.setPassword(passwordEncoder.encode(newUser.getPassword()));
+    usernameFilter.add(newUser.getUsername());
     return userRepository.save(newUser);
   }
 
   public HogwartsUser update(long userId, HogwartsUser update) {
     var oldUser = userRepository.findById(userId).orElseThrow(() -> new NotFoundException("user", userId + ""));
     var authentication = SecurityContextHolder.getContext().getAuthentication();
+    // Both the old username and the new one, which someone may have tried to log in with
+    userDetailsCache.invalidate(oldUser.getUsername(), update.getUsername());
+    usernameFilter.add(update.getUsername());
+
+    var renamed = !oldUser.getUsername().equals(update.getUsername());
+    var byAdmin = authentication.getAuthorities().stream().anyMatch(grantedAuthority -> grantedAuthority.getAuthority().equals("ROLE_admin"));
 
     // if the user is not an admin, then the user can only update her username
-    if (authentication.getAuthorities().stream().noneMatch(grantedAuthority -> grantedAuthority.getAuthority().equals("ROLE_admin"))) {
+    if (!byAdmin) {
       oldUser.setUsername(update.getUsername());
     } else { // If the user is an admin, then the user can update username, enabled, and roles.
       oldUser.setUsername(update.getUsername());
       oldUser.setEnabled(update.isEnabled());
       oldUser.setRoles(update.getRoles());
+    }
 
-      // Revoke this user's current JWT by deleting it from Redis
-      redisCacheClient.delete("whitelist:" + userId);
+    // Revoke this user's current JWT by deleting it from the whitelist, and the refresh token that would get another:
+    // they carry the old roles, or the old username, which someone else may then register
+    if (byAdmin || renamed) {
+      tokenWhitelist.revoke(userId + "");
+      refreshTokens.revoke(userId);
     }
 
     return userRepository.save(oldUser);
   }
 
   public void delete(long userId) {
-    userRepository.findById(userId)
+    var hogwartsUser = userRepository.findById(userId)
         .orElseThrow(() -> new NotFoundException("user", userId + ""));
 
     userRepository.deleteById(userId);
+    userDetailsCache.invalidate(hogwartsUser.getUsername());
+    refreshTokens.revoke(userId);
   }
 
   @Override
   public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-    return userRepository.findByUsername(username).map(UserPrincipal::new)
+    // An unknown username still costs a password hash, in DaoAuthenticationProvider, just not a query
+    return usernameFilter.get(username, () -> userDetailsCache.get(username, () -> userRepository.findByUsername(username).map(UserPrincipal::new)))
         .orElseThrow(() -> new UsernameNotFoundException("username " + username + " not found"));
   }
 
+  /**
+   * Called by Spring Security after a successful login, with the password hashed again, when the stored hash uses an
+   * older algorithm or cost than the configured ones.
+   */
+  @Override
+  public UserDetails updatePassword(UserDetails user, String newPassword) {
+    var hogwartsUser = userRepository.findByUsername(user.getUsername())
+        .orElseThrow(() -> new UsernameNotFoundException("username " + user.getUsername() + " not found"));
+    hogwartsUser.setPassword(newPassword);
+    userDetailsCache.invalidate(hogwartsUser.getUsername());
+    return new UserPrincipal(userRepository.save(hogwartsUser));
+  }
+
   public void changePassword(long userId, String oldPassword, String newPassword, String confirmNewPassword) {
     var hogwartsUser = userRepository.findById(userId)
         .orElseThrow(() -> new NotFoundException("user", userId + ""));
@@ -96,8 +132,10 @@ public class UserService implements UserDetailsService {
     // Encode and save the new password.
     hogwartsUser.setPassword(passwordEncoder.encode(newPassword));
 
-    // Revoke this user's current JWT by deleting it from Redis
-    redisCacheClient.delete("whitelist:" + userId);
+    // Revoke this user's current JWT by deleting it from the whitelist, and the refresh token that would get another
+    tokenWhitelist.revoke(userId + "");
+    refreshTokens.revoke(userId);
+    userDetailsCache.invalidate(hogwartsUser.getUsername());
     userRepository.save(hogwartsUser);
   }
 }
@@ -0,0 +1,250 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache.RedisCacheClient;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.AfterCommit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * A Bloom filter of every username, so that the logins with an unknown username, most of a credential stuffing, are
+ * turned down without querying the user table. It may say a username exists when it does not: then the user table is
+ * queried, as without the filter. Usernames go through Usernames.normalize, so that one the database would match,
+ * with another case or accents, isn't said to be unknown.
+ * <p>
+ * Turning a login down this way takes as long as before: DaoAuthenticationProvider still hashes the password presented
+ * against a dummy hash for an unknown username, which is what makes both cases indistinguishable.
+ * <p>
+ * The filter is built when the application is ready, then UserService adds the usernames created or changed, here and,
+ * through ADDITIONS_CHANNEL, on the other instances (see UsernameFilterConfiguration). Since a username can't be taken
+ * out of it, the filter is rebuilt every rebuild-interval.
+ * <p>
+ * The additions published while this instance wasn't subscribed to ADDITIONS_CHANNEL, before it started or while
+ * Redis was reconnecting, are lost. So until the filter is rebuilt after the last subscription, a username it says is
+ * unknown is still looked up; UsernameFilterConfiguration triggers that rebuild.
+ */
+@Component
+public class UsernameFilter {
+  public static final String ADDITIONS_CHANNEL = "users:additions";
+  private static final Logger log = LoggerFactory.getLogger(UsernameFilter.class);
+
+  private final UserRepository userRepository;
+  private final RedisCacheClient redisCacheClient;
+  private final boolean enabled;
+  private final int expectedUsernames;
+  private final double falsePositiveRate;
+  // Null until built: every username might then exist.
+  private volatile Bits bits;
+  // Set while rebuilding, so that the usernames added meanwhile are not lost with the previous filter.
+  private volatile Bits building;
+  private final AtomicLong subscriptions = new AtomicLong();
+  private volatile boolean subscribed;
+  // The subscriptions count when the current filter started to be built.
+  private volatile long builtAfterSubscription = -1;
+  private final Counter absent;
+  private final Counter unconfirmed;
+  private final Counter present;
+  private final Counter falsePositives;
+
+  public UsernameFilter(UserRepository userRepository, RedisCacheClient redisCacheClient, MeterRegistry meterRegistry,
+                        @Value("${security.username-filter.enabled:false}") boolean enabled,
+                        @Value("${security.username-filter.expected-usernames:100000}") int expectedUsernames,
+                        @Value("${security.username-filter.false-positive-rate:0.01}") double falsePositiveRate) {
+    this.userRepository = userRepository;
+    this.redisCacheClient = redisCacheClient;
+    this.enabled = enabled;
+    this.expectedUsernames = expectedUsernames;
+    this.falsePositiveRate = falsePositiveRate;
+    // The measured false positive rate is false_positive / (false_positive + absent + unconfirmed).
+    this.absent = Counter.builder("username.filter.requests").tag("result", "absent")
+        .description("Usernames looked up for a login, by what the filter and then the database said").register(meterRegistry);
+    // Said to be absent by a filter that may be missing additions, so looked up anyway.
+    this.unconfirmed = Counter.builder("username.filter.requests").tag("result", "unconfirmed")
+        .description("Usernames looked up for a login, by what the filter and then the database said").register(meterRegistry);
+    this.present = Counter.builder("username.filter.requests").tag("result", "present")
+        .description("Usernames looked up for a login, by what the filter and then the database said").register(meterRegistry);
+    this.falsePositives = Counter.builder("username.filter.requests").tag("result", "false_positive")
+        .description("Usernames looked up for a login, by what the filter and then the database said").register(meterRegistry);
+    Gauge.builder("username.filter.expected.false.positive.rate", this, UsernameFilter::expectedFalsePositiveRate)
+        .description("False positive rate expected from the bits set").register(meterRegistry);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  @Scheduled(initialDelayString = "${security.username-filter.rebuild-interval:PT1H}", fixedDelayString = "${security.username-filter.rebuild-interval:PT1H}")
+  public synchronized void rebuild() {
+    if (!enabled) {
+      return;
+    }
+    var subscription = subscriptions.get();
+    var usernames = userRepository.count();
+    // Sized for twice the current users past the expected number, to leave room for the ones to come.
+    var rebuilt = new Bits(Math.max(expectedUsernames, 2 * usernames), falsePositiveRate);
+    building = rebuilt;
+    // Read after building is set: a username committed after this read is added to rebuilt too.
+    userRepository.findAllUsernames().forEach(rebuilt::put);
+    bits = rebuilt;
+    building = null;
+    builtAfterSubscription = subscription;
+    log.info("Username filter built with {} usernames in {} bits", usernames, rebuilt.size());
+  }
+
+  /**
+   * Returns what the loader returns, without calling it when the username is known not to exist.
+   */
+  public <T> Optional<T> get(String username, Supplier<Optional<T>> loader) {
+    var current = bits;
+    if (!enabled || current == null) {
+      return loader.get();
+    }
+    if (!current.mightContain(username)) {
+      if (isComplete()) {
+        absent.increment();
+        return Optional.empty();
+      }
+      unconfirmed.increment();
+      var loaded = loader.get();
+      if (loaded.isPresent()) {
+        put(username); // Its addition was missed
+      }
+      return loaded;
+    }
+    var loaded = loader.get();
+    (loaded.isPresent() ? present : falsePositives).increment();
+    return loaded;
+  }
+
+  /**
+   * Adds the username to the filter of every instance, once the surrounding transaction has committed.
+   */
+  public void add(String username) {
+    AfterCommit.run(() -> {
+      put(username);
+      if (enabled) {
+        redisCacheClient.publish(ADDITIONS_CHANNEL, username);
+      }
+    });
+  }
+
+  /**
+   * Adds the username to this instance's filter. Called for every message on ADDITIONS_CHANNEL.
+   */
+  public void put(String username) {
+    // building first: rebuild() publishes bits before clearing building, so one of the two reads gets the new filter.
+    var rebuilt = building;
+    if (rebuilt != null) {
+      rebuilt.put(username);
+    }
+    var current = bits;
+    if (current != null && current != rebuilt) {
+      current.put(username);
+    }
+  }
+
+  /**
+   * Called once subscribed to ADDITIONS_CHANNEL, a resubscription after a reconnection included: the usernames said
+   * to be unknown are looked up until the next rebuild.
+   */
+  public void subscribed() {
+    subscriptions.incrementAndGet();
+    subscribed = true;
+  }
+
+  public void unsubscribed() {
+    subscribed = false;
+  }
+
+  /**
+   * Whether the filter holds every username, because it was built after the last subscription and is still receiving
+   * the additions.
+   */
+  boolean isComplete() {
+    return subscribed && builtAfterSubscription == subscriptions.get();
+  }
+
+  double expectedFalsePositiveRate() {
+    var current = bits;
+    return current == null ? 1 : current.expectedFalsePositiveRate();
+  }
+
+  /**
+   * The bit array, with k bit positions per username taken from two halves of a 64-bit hash
+   * (Kirsch and Mitzenmacher, "Less Hashing, Same Performance").
+   */
+  static final class Bits {
+    private final AtomicLongArray words;
+    private final long size;
+    private final int hashes;
+
+    Bits(long expectedInsertions, double falsePositiveRate) {
+      var optimalSize = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+      this.words = new AtomicLongArray((int) Math.max(1, (optimalSize + 63) / 64));
+      this.size = words.length() * 64L;
+      this.hashes = (int) Math.max(1, Math.round((double) size / expectedInsertions * Math.log(2)));
+    }
+
+    void put(String username) {
+      var hash = hash(Usernames.normalize(username));
+      var hash1 = (int) hash;
+      var hash2 = (int) (hash >>> 32);
+      for (int i = 1; i <= hashes; i++) {
+        var bit = Math.floorMod(hash1 + i * hash2, size);
+        var mask = 1L << bit;
+        var word = (int) (bit >>> 6);
+        long previous;
+        do {
+          previous = words.get(word);
+        } while ((previous & mask) == 0 && !words.compareAndSet(word, previous, previous | mask));
+      }
+    }
+
+    boolean mightContain(String username) {
+      var hash = hash(Usernames.normalize(username));
+      var hash1 = (int) hash;
+      var hash2 = (int) (hash >>> 32);
+      for (int i = 1; i <= hashes; i++) {
+        var bit = Math.floorMod(hash1 + i * hash2, size);
+        if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    long size() {
+      return size;
+    }
+
+    double expectedFalsePositiveRate() {
+      long set = 0;
+      for (int i = 0; i < words.length(); i++) {
+        set += Long.bitCount(words.get(i));
+      }
+      return Math.pow((double) set / size, hashes);
+    }
+
+    /**
+     * FNV-1a over the chars, then the MurmurHash3 finalizer, for the high bits to depend on every char.
+     */
+    private static long hash(String username) {
+      var hash = 0xCBF29CE484222325L;
+      for (int i = 0; i < username.length(); i++) {
+        hash = (hash ^ username.charAt(i)) * 0x100000001B3L;
+      }
+      hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+      hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+      return hash ^ (hash >>> 33);
+    }
+  }
+}
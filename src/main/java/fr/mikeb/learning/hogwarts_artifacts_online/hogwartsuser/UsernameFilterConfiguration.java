@@ -0,0 +1,48 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+@Configuration
+public class UsernameFilterConfiguration {
+
+  /**
+   * Adds to this instance's filter the usernames created or changed on any instance.
+   */
+  @Bean
+  @ConditionalOnProperty(name = "security.username-filter.enabled", havingValue = "true")
+  public RedisMessageListenerContainer usernameFilterListenerContainer(RedisConnectionFactory redisConnectionFactory, UsernameFilter usernameFilter) {
+    var container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(redisConnectionFactory);
+    container.addMessageListener(new AdditionsListener(usernameFilter), new ChannelTopic(UsernameFilter.ADDITIONS_CHANNEL));
+    return container;
+  }
+
+  record AdditionsListener(UsernameFilter usernameFilter) implements MessageListener, SubscriptionListener {
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+      usernameFilter.put(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void onChannelSubscribed(byte[] channel, long count) {
+      usernameFilter.subscribed();
+      // Not on the thread notifying the subscription, which is Redis's I/O one.
+      Thread.ofVirtual().name("username-filter-rebuild").start(usernameFilter::rebuild);
+    }
+
+    @Override
+    public void onChannelUnsubscribed(byte[] channel, long count) {
+      usernameFilter.unsubscribed();
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Usernames as the database compares them. MySQL's default collation ignores case and accents, so "Albus", "albus"
+ * and "Älbus" are the same user there: the in-memory structures keyed by username must not tell them apart either.
+ */
+final class Usernames {
+  private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+  private Usernames() {}
+
+  static String normalize(String username) {
+    var withoutAccents = COMBINING_MARKS.matcher(Normalizer.normalize(username, Normalizer.Form.NFD)).replaceAll("");
+    return withoutAccents.toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,20 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser.converter;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser.UserPrincipal;
+import fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser.dto.UserDto;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+
+@Component
+public class UserPrincipalToUserDtoConverter implements Converter<UserPrincipal, UserDto> {
+
+    @Override
+    public UserDto convert(UserPrincipal source) {
+        // We are not setting password in DTO.
+        return new UserDto(source.id(),
+            source.username(),
+            source.enabled(),
+            source.roles());
+    }
+
+}
@@ -6,6 +6,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -29,4 +30,11 @@ public class AuthController {
     var loginInfo = authService.createLoginInfo(authentication);
     return new Result<>(true, StatusCode.SUCCESS, "User Info and JSON Web Token", loginInfo);
   }
+
+  @PostMapping("/token/refresh")
+  public Result<Map<String, Object>> refreshToken(@RequestBody Map<String, String> refreshTokenMap) {
+    var refreshToken = refreshTokenMap.getOrDefault("refreshToken", "");
+    var tokens = authService.refreshLoginInfo(refreshToken);
+    return new Result<>(true, StatusCode.SUCCESS, "Refreshed JSON Web Token", tokens);
+  }
 }
@@ -1,43 +1,75 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.security;
 
-import fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache.RedisCacheClient;
 import fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser.UserPrincipal;
-import fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser.converter.UserToUserDtoConverter;
+import fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser.converter.UserPrincipalToUserDtoConverter;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.InvalidRefreshTokenException;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 @Service
 public class AuthService {
   private final JwtProvider jwtProvider;
-  private final UserToUserDtoConverter userToUserDtoConverter;
-  private final RedisCacheClient redisCacheClient;
+  private final UserPrincipalToUserDtoConverter userPrincipalToUserDtoConverter;
+  private final TokenWhitelist tokenWhitelist;
+  private final RefreshTokens refreshTokens;
+  private final UserDetailsService userDetailsService;
 
-  public AuthService(JwtProvider jwtProvider, UserToUserDtoConverter userToUserDtoConverter, RedisCacheClient redisCacheClient) {
+  public AuthService(JwtProvider jwtProvider, UserPrincipalToUserDtoConverter userPrincipalToUserDtoConverter, TokenWhitelist tokenWhitelist, RefreshTokens refreshTokens,
+                     UserDetailsService userDetailsService) {
     this.jwtProvider = jwtProvider;
-    this.userToUserDtoConverter = userToUserDtoConverter;
-    this.redisCacheClient = redisCacheClient;
+    this.userPrincipalToUserDtoConverter = userPrincipalToUserDtoConverter;
+    this.tokenWhitelist = tokenWhitelist;
+    this.refreshTokens = refreshTokens;
+    this.userDetailsService = userDetailsService;
   }
 
   public Map<String, Object> createLoginInfo(Authentication authentication) {
     // user info
     var principal = (UserPrincipal)authentication.getPrincipal();
-    var user = principal.user();
-    var userDto = userToUserDtoConverter.convert(user);
+    var userDto = userPrincipalToUserDtoConverter.convert(principal);
 
     // then jwt
-    var token = jwtProvider.createToken(authentication);
-
-    // Save the token in Redis. Key is "whitelist:{userId}", value is the token. Expire time in 2 HOURS
-    redisCacheClient.set("whitelist:" + user.getId(), token, 2, TimeUnit.HOURS);
-
-    var loginInfo = new HashMap<String, Object>();
+    var loginInfo = createTokens(JwtProvider.grant(authentication));
     loginInfo.put("userInfo", userDto);
-    loginInfo.put("token", token);
 
     return loginInfo;
   }
+
+  /**
+   * Exchanges a refresh token for a new access token and a new refresh token, without checking the password again.
+   * The tokens are made from the user as it is now, found again by the username it logged in with: a user since
+   * renamed, deleted or disabled has to log in again.
+   */
+  public Map<String, Object> refreshLoginInfo(String refreshToken) {
+    var grant = refreshTokens.use(refreshToken).orElseThrow(InvalidRefreshTokenException::new);
+    UserPrincipal principal;
+    try {
+      principal = (UserPrincipal) userDetailsService.loadUserByUsername(grant.username());
+    } catch (UsernameNotFoundException e) {
+      throw new InvalidRefreshTokenException();
+    }
+    // Another user may have taken the username since
+    if (principal.id() != grant.userId() || !principal.isEnabled()) {
+      throw new InvalidRefreshTokenException();
+    }
+    return createTokens(JwtProvider.grant(principal));
+  }
+
+  private Map<String, Object> createTokens(RefreshTokens.Grant grant) {
+    var token = jwtProvider.createToken(grant);
+
+    // Save the token in the whitelist, in place of the previous one. Expire time in 2 HOURS
+    tokenWhitelist.add(grant.userId() + "", token, Duration.ofHours(2));
+
+    var tokens = new HashMap<String, Object>();
+    tokens.put("token", token);
+    tokens.put("refreshToken", refreshTokens.issue(grant));
+    return tokens;
+  }
 }
@@ -0,0 +1,76 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the tokens decoded by the delegate until they expire, so that a client sending the same bearer token again
+ * doesn't cost another parsing and RSA signature verification. Entries are keyed by a 64-bit hash of the token; a hit
+ * still compares the whole token, in constant time. Revocation is not affected: the whitelist is checked on every
+ * request by JwtInterceptor.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+  private final JwtDecoder delegate;
+  private final int maxEntries; // Past it, the cache is emptied rather than growing with every token.
+  private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+  private final Counter hits;
+  private final Counter misses;
+
+  record Entry(byte[] token, Jwt jwt) {}
+
+  public CachingJwtDecoder(JwtDecoder delegate, int maxEntries, MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.maxEntries = maxEntries;
+    this.hits = Counter.builder("jwt.decoder.cache.requests").tag("result", "hit")
+        .description("Bearer tokens decoded from the cache or by the decoder").register(meterRegistry);
+    this.misses = Counter.builder("jwt.decoder.cache.requests").tag("result", "miss")
+        .description("Bearer tokens decoded from the cache or by the decoder").register(meterRegistry);
+    Gauge.builder("jwt.decoder.cache.size", entries, Map::size).register(meterRegistry);
+  }
+
+  @Override
+  public Jwt decode(String token) throws JwtException {
+    var tokenBytes = token.getBytes(StandardCharsets.UTF_8);
+    var key = hash(tokenBytes);
+    var cached = entries.get(key);
+    if (cached != null && MessageDigest.isEqual(cached.token(), tokenBytes)) {
+      var expiresAt = cached.jwt().getExpiresAt();
+      if (Instant.now().isBefore(expiresAt)) {
+        hits.increment();
+        return cached.jwt();
+      }
+      entries.remove(key, cached);
+    }
+    misses.increment();
+    var jwt = delegate.decode(token); // Throws for an invalid token, which is never cached.
+    if (jwt.getExpiresAt() != null) {
+      if (entries.size() >= maxEntries) {
+        entries.clear();
+      }
+      entries.put(key, new Entry(tokenBytes, jwt));
+    }
+    return jwt;
+  }
+
+  /**
+   * FNV-1a: a few nanoseconds per byte, against tens of microseconds for a signature verification.
+   */
+  static long hash(byte[] bytes) {
+    var hash = 0xcbf29ce484222325L;
+    for (var b : bytes) {
+      hash ^= b & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,30 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Publishes the public keys that verify our tokens, in the standard JWK Set format rather than in a Result, so that
+ * any JWT library can read them.
+ */
+@RestController
+public class JwksController {
+  // Verifiers fetch the set again anyway when they meet an unknown kid, e.g. after a rotation.
+  private static final CacheControl CACHE_CONTROL = CacheControl.maxAge(Duration.ofMinutes(5)).cachePublic();
+
+  private final JwtSigningKeys jwtSigningKeys;
+
+  public JwksController(JwtSigningKeys jwtSigningKeys) {
+    this.jwtSigningKeys = jwtSigningKeys;
+  }
+
+  @GetMapping("/.well-known/jwks.json")
+  public ResponseEntity<Map<String, Object>> findJwkSet() {
+    return ResponseEntity.ok().cacheControl(CACHE_CONTROL).body(jwtSigningKeys.publicJwkSet().toJSONObject());
+  }
+}
@@ -1,6 +1,5 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.security;
 
-import fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache.RedisCacheClient;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -11,10 +10,10 @@ import org.springframework.web.servlet.HandlerInterceptor;
 
 @Component
 public class JwtInterceptor implements HandlerInterceptor {
-    private final RedisCacheClient redisCacheClient;
+    private final TokenWhitelist tokenWhitelist;
 
-    public JwtInterceptor(RedisCacheClient redisCacheClient) {
-        this.redisCacheClient = redisCacheClient;
+    public JwtInterceptor(TokenWhitelist tokenWhitelist) {
+        this.tokenWhitelist = tokenWhitelist;
     }
 
     @Override
@@ -27,9 +26,9 @@ public class JwtInterceptor implements HandlerInterceptor {
             var authentication = SecurityContextHolder.getContext().getAuthentication();
             Jwt jwt = (Jwt) authentication.getPrincipal();
 
-            // Retrieve the userId from the JWT claims and check if the token is in the Redis whitelist or not
+            // Retrieve the userId from the JWT claims and check if the token is in the whitelist or not
             var userId = jwt.getClaim("userId").toString();
-            if (!redisCacheClient.isUserTokenInWhiteList(userId, jwt.getTokenValue())) {
+            if (!tokenWhitelist.contains(userId, jwt.getTokenValue(), jwt.getExpiresAt())) {
                 throw new BadCredentialsException("Invalid token");
             }
         }
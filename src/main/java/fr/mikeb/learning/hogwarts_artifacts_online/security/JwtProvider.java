@@ -21,22 +21,37 @@ public class JwtProvider {
   }
 
   public String createToken(Authentication authentication) {
+    return createToken(grant(authentication));
+  }
+
+  /**
+   * Creates the token from what was granted at login, e.g. kept along with a refresh token.
+   */
+  public String createToken(RefreshTokens.Grant grant) {
     var now = Instant.now();
     long expiresIn = 2; // in 2 hours
-    // prepares claims called authorities
-    var authorities = authentication.getAuthorities().stream()
-        .map(GrantedAuthority::getAuthority)
-        .collect(Collectors.joining(" "));
 
     var claims = JwtClaimsSet.builder()
         .issuer("self")
         .issuedAt(now)
         .expiresAt(now.plus(expiresIn, ChronoUnit.HOURS))
-        .subject(authentication.getName())
-        .claim("userId", ((UserPrincipal)(authentication.getPrincipal())).user().getId())
-        .claim("authorities", authorities)
+        .subject(grant.username())
+        .claim("userId", grant.userId())
+        .claim("authorities", grant.authorities())
         .build();
 
     return jwtEncoder.encode(JwtEncoderParameters.from(claims)).getTokenValue();
   }
+
+  public static RefreshTokens.Grant grant(Authentication authentication) {
+    return grant((UserPrincipal) authentication.getPrincipal());
+  }
+
+  public static RefreshTokens.Grant grant(UserPrincipal principal) {
+    // prepares claims called authorities
+    var authorities = principal.getAuthorities().stream()
+        .map(GrantedAuthority::getAuthority)
+        .collect(Collectors.joining(" "));
+    return new RefreshTokens.Grant(principal.id(), principal.getUsername(), authorities);
+  }
 }
@@ -0,0 +1,264 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The keys that sign and verify the JWTs, stored as PEM files named {kid}.pem holding the PKCS#8 private key and the
+ * X.509 public key, the kid starting with the creation time in epoch milliseconds. The first boot generates one; the
+ * next ones only load them. Instances sharing the directory share the keys, and hence accept each other's tokens.
+ * <p>
+ * The newest key signs. Every check-interval, the directory is read again, a new key is generated once the newest is
+ * older than rotation-interval or uses another algorithm than the configured one, and a key is deleted once it has
+ * been replaced for longer than retention: by then, no token it signed is still valid.
+ * <p>
+ * The algorithm is RS256 (RSA-2048) or ES256 (ECDSA on P-256), which signs much faster and makes tokens about 250 bytes
+ * shorter; JwtSigningAlgorithmsBenchmarkTest compares them.
+ */
+@Component
+public class JwtSigningKeys {
+  private static final Logger log = LoggerFactory.getLogger(JwtSigningKeys.class);
+  private static final String EXTENSION = ".pem";
+  public static final Set<JWSAlgorithm> ALGORITHMS = Set.of(JWSAlgorithm.RS256, JWSAlgorithm.ES256);
+  // A token signed by a key created since the last read is verified after reading the directory again, at most this often.
+  private static final long MIN_RELOAD_INTERVAL_NANOS = Duration.ofSeconds(1).toNanos();
+
+  private final Path directory;
+  private final JWSAlgorithm algorithm;
+  private final Duration rotationInterval;
+  private final Duration retention;
+  private volatile List<JWK> keys = List.of(); // Newest first
+  private volatile long reloadedAt;
+
+  public JwtSigningKeys(@Value("${security.jwt.keys.dir:${user.home}/.hogwarts-artifacts-online/jwt-keys}") Path directory,
+                        @Value("${security.jwt.keys.algorithm:RS256}") JWSAlgorithm algorithm,
+                        @Value("${security.jwt.keys.rotation-interval:P30D}") Duration rotationInterval,
+                        @Value("${security.jwt.keys.retention:PT3H}") Duration retention) throws IOException {
+    if (!ALGORITHMS.contains(algorithm)) {
+      throw new IllegalArgumentException("Unsupported JWT signing algorithm " + algorithm + ", expected one of " + ALGORITHMS);
+    }
+    this.directory = directory;
+    this.algorithm = algorithm;
+    this.rotationInterval = rotationInterval;
+    this.retention = retention;
+    var start = System.nanoTime();
+    Files.createDirectories(directory);
+    refresh();
+    log.info("{} JWT signing key(s) ready in {} ms, from {}, signing with {}", keys.size(), (System.nanoTime() - start) / 1_000_000, directory, signingKey().getAlgorithm());
+  }
+
+  public JWK signingKey() {
+    return keys.getFirst();
+  }
+
+  /**
+   * All the keys, private parts included.
+   */
+  public JWKSet jwkSet() {
+    return new JWKSet(keys);
+  }
+
+  /**
+   * The public keys, as published at /.well-known/jwks.json.
+   */
+  public JWKSet publicJwkSet() {
+    return new JWKSet(keys.stream().map(JWK::toPublicJWK).toList());
+  }
+
+  /**
+   * The keys that verify the tokens. Asked for a kid it doesn't know, e.g. of a key just created by another instance,
+   * it reads the directory again before answering.
+   */
+  public JWKSource<SecurityContext> verificationKeys() {
+    return (jwkSelector, context) -> {
+      var matches = jwkSelector.select(publicJwkSet());
+      if (matches.isEmpty() && System.nanoTime() - reloadedAt > MIN_RELOAD_INTERVAL_NANOS) {
+        reload();
+        matches = jwkSelector.select(publicJwkSet());
+      }
+      return matches;
+    };
+  }
+
+  @Scheduled(initialDelayString = "${security.jwt.keys.check-interval:PT1M}", fixedDelayString = "${security.jwt.keys.check-interval:PT1M}")
+  public synchronized void refresh() {
+    reload();
+    var now = System.currentTimeMillis();
+    if (keys.isEmpty() || now - createdAt(keys.getFirst()) >= rotationInterval.toMillis()
+        || !algorithm.equals(keys.getFirst().getAlgorithm())) {
+      var key = generate(now);
+      log.info("Generated the JWT signing key {}", key.getKeyID());
+      reload();
+    }
+    // Key i was replaced when key i - 1 was created.
+    var current = keys;
+    for (int i = 1; i < current.size(); i++) {
+      if (now - createdAt(current.get(i - 1)) >= retention.toMillis()) {
+        delete(current.get(i));
+      }
+    }
+    reload();
+  }
+
+  private synchronized void reload() {
+    var loaded = new ArrayList<JWK>();
+    try (var files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+      for (var file : files) {
+        try {
+          loaded.add(read(file));
+        } catch (NoSuchFileException e) {
+          // Deleted by another instance meanwhile
+        }
+      }
+    } catch (IOException | GeneralSecurityException e) {
+      throw new IllegalStateException("Could not read the JWT signing keys in " + directory, e);
+    }
+    loaded.sort(Comparator.comparingLong(JwtSigningKeys::createdAt).thenComparing(JWK::getKeyID).reversed());
+    keys = List.copyOf(loaded);
+    reloadedAt = System.nanoTime();
+  }
+
+  private JWK generate(long now) {
+    try {
+      var keyPair = generateKeyPair();
+      var kid = now + "-" + HexFormat.of().toHexDigits(ThreadLocalRandom.current().nextInt());
+      var pem = pem("PRIVATE KEY", keyPair.getPrivate().getEncoded()) + pem("PUBLIC KEY", keyPair.getPublic().getEncoded());
+      // Written aside, then renamed: the other instances never read half a key.
+      var temporary = Files.createTempFile(directory, kid, ".tmp");
+      if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+        Files.setPosixFilePermissions(temporary, PosixFilePermissions.fromString("rw-------"));
+      }
+      Files.writeString(temporary, pem, StandardCharsets.US_ASCII);
+      Files.move(temporary, directory.resolve(kid + EXTENSION), StandardCopyOption.ATOMIC_MOVE);
+      return jwk(kid, keyPair.getPublic(), keyPair.getPrivate());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write a JWT signing key in " + directory, e);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e); // Every JVM has RSA and EC.
+    }
+  }
+
+  private KeyPair generateKeyPair() throws GeneralSecurityException {
+    if (JWSAlgorithm.ES256.equals(algorithm)) {
+      var keyPairGenerator = KeyPairGenerator.getInstance("EC");
+      keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+      return keyPairGenerator.generateKeyPair();
+    }
+    var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+    keyPairGenerator.initialize(2048); // The generated key will have a size of 2048
+    return keyPairGenerator.generateKeyPair();
+  }
+
+  private void delete(JWK key) {
+    try {
+      if (Files.deleteIfExists(directory.resolve(key.getKeyID() + EXTENSION))) {
+        log.info("Deleted the retired JWT signing key {}", key.getKeyID());
+      }
+    } catch (IOException e) {
+      log.warn("Could not delete the retired JWT signing key {}", key.getKeyID(), e);
+    }
+  }
+
+  private static JWK read(Path file) throws IOException, GeneralSecurityException {
+    var pem = Files.readString(file, StandardCharsets.US_ASCII);
+    var privateKeyInfo = new PKCS8EncodedKeySpec(pemBlock(pem, "PRIVATE KEY"));
+    for (var keyAlgorithm : List.of("RSA", "EC")) {
+      var keyFactory = KeyFactory.getInstance(keyAlgorithm);
+      PrivateKey privateKey;
+      try {
+        privateKey = keyFactory.generatePrivate(privateKeyInfo);
+      } catch (InvalidKeySpecException e) {
+        continue; // Another type of key
+      }
+      PublicKey publicKey;
+      if (pem.contains("-----BEGIN PUBLIC KEY-----")) {
+        publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(pemBlock(pem, "PUBLIC KEY")));
+      } else if (privateKey instanceof RSAPrivateCrtKey rsaPrivateKey) { // Written without its public key
+        publicKey = keyFactory.generatePublic(new RSAPublicKeySpec(rsaPrivateKey.getModulus(), rsaPrivateKey.getPublicExponent()));
+      } else {
+        throw new InvalidKeySpecException("No public key in " + file);
+      }
+      var fileName = file.getFileName().toString();
+      return jwk(fileName.substring(0, fileName.length() - EXTENSION.length()), publicKey, privateKey);
+    }
+    throw new InvalidKeySpecException("Neither an RSA nor an EC private key in " + file);
+  }
+
+  private static JWK jwk(String kid, PublicKey publicKey, PrivateKey privateKey) throws InvalidKeySpecException {
+    return switch (publicKey) {
+      case RSAPublicKey rsaPublicKey -> new RSAKey.Builder(rsaPublicKey)
+          .privateKey(privateKey).keyID(kid).keyUse(KeyUse.SIGNATURE).algorithm(JWSAlgorithm.RS256).build();
+      case ECPublicKey ecPublicKey when Curve.P_256.equals(Curve.forECParameterSpec(ecPublicKey.getParams())) ->
+          new ECKey.Builder(Curve.P_256, ecPublicKey).privateKey(privateKey).keyID(kid).keyUse(KeyUse.SIGNATURE).algorithm(JWSAlgorithm.ES256).build();
+      default -> throw new InvalidKeySpecException("Unsupported JWT signing key " + kid + ": " + publicKey.getAlgorithm());
+    };
+  }
+
+  private static String pem(String type, byte[] der) {
+    return "-----BEGIN " + type + "-----\n"
+        + Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(der)
+        + "\n-----END " + type + "-----\n";
+  }
+
+  private static byte[] pemBlock(String pem, String type) throws InvalidKeySpecException {
+    var begin = pem.indexOf("-----BEGIN " + type + "-----");
+    var end = pem.indexOf("-----END " + type + "-----");
+    if (begin < 0 || end < begin) {
+      throw new InvalidKeySpecException("No " + type + " in the PEM file");
+    }
+    return Base64.getMimeDecoder().decode(pem.substring(begin + type.length() + 16, end));
+  }
+
+  private static long createdAt(JWK key) {
+    var kid = key.getKeyID();
+    try {
+      return Long.parseLong(kid.substring(0, kid.indexOf('-')));
+    } catch (RuntimeException e) {
+      return 0; // Not one of ours, e.g. a key put there by hand: the oldest.
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.PasswordHashingBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hashes and checks the passwords with the delegate on a pool of its own, of a few threads and a bounded queue. A burst
+ * of logins then takes that many cores, not every request thread, and the artifact reads keep being served. Once the
+ * queue is full, or the wait longer than the timeout, it fails fast with a PasswordHashingBusyException, answered
+ * with a 503.
+ */
+public class OffloadedPasswordEncoder implements PasswordEncoder, AutoCloseable {
+  private final PasswordEncoder delegate;
+  private final ThreadPoolExecutor executor;
+  private final Duration timeout;
+  private final Timer encodeTimer;
+  private final Timer matchesTimer;
+  private final Counter rejections;
+
+  public OffloadedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity, Duration timeout, MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.timeout = timeout;
+    var threadNumber = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+      var thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.encodeTimer = Timer.builder("password.hashing").tag("operation", "encode")
+        .description("Time spent hashing or checking a password").register(meterRegistry);
+    this.matchesTimer = Timer.builder("password.hashing").tag("operation", "matches")
+        .description("Time spent hashing or checking a password").register(meterRegistry);
+    this.rejections = Counter.builder("password.hashing.rejected")
+        .description("Passwords not hashed or checked because the pool was saturated").register(meterRegistry);
+    Gauge.builder("password.hashing.queue.size", executor, pool -> pool.getQueue().size()).register(meterRegistry);
+  }
+
+  @Override
+  public String encode(CharSequence rawPassword) {
+    return run(encodeTimer, () -> delegate.encode(rawPassword));
+  }
+
+  @Override
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    return run(matchesTimer, () -> delegate.matches(rawPassword, encodedPassword));
+  }
+
+  /**
+   * Spring Security re-hashes the password after a successful login when this says so. Not while the queue is full,
+   * which would turn that login into a 503: the upgrade waits for a later one.
+   */
+  @Override
+  public boolean upgradeEncoding(String encodedPassword) {
+    return executor.getQueue().remainingCapacity() > 0 && delegate.upgradeEncoding(encodedPassword);
+  }
+
+  private <T> T run(Timer timer, Supplier<T> hashing) {
+    Future<T> future;
+    try {
+      future = executor.submit(() -> timer.record(hashing));
+    } catch (RejectedExecutionException e) {
+      rejections.increment();
+      throw new PasswordHashingBusyException();
+    }
+    try {
+      return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(false); // Still queued, it won't run; already running, it can't be stopped anyway.
+      rejections.increment();
+      throw new PasswordHashingBusyException();
+    } catch (InterruptedException e) {
+      future.cancel(false);
+      Thread.currentThread().interrupt();
+      throw new PasswordHashingBusyException();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException; // e.g. an unknown encoding id, thrown by DelegatingPasswordEncoder
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,113 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache.RedisCacheClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The refresh tokens, which get a new access token without the password being sent, and hence checked, again. A
+ * refresh token is "{userId}.{random}", and each user has at most one, like the access tokens in TokenWhitelist.
+ * <p>
+ * Redis holds, under "refresh:{userId}:{SHA-256 of the token}", what the access token was made of at login, whose
+ * username finds the user again when refreshing (see AuthService), and under "refresh:{userId}" that fingerprint, to
+ * replace or revoke the token.
+ * A refresh token is good for one use: refreshing also replaces it.
+ */
+@Component
+public class RefreshTokens {
+  private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+  private final RedisCacheClient redisCacheClient;
+  private final ObjectMapper objectMapper;
+  private final Duration timeToLive;
+
+  /**
+   * What an access token is made of.
+   */
+  public record Grant(long userId, String username, String authorities) {}
+
+  public RefreshTokens(RedisCacheClient redisCacheClient, ObjectMapper objectMapper,
+                       @Value("${security.refresh-token.time-to-live:P14D}") Duration timeToLive) {
+    this.redisCacheClient = redisCacheClient;
+    this.objectMapper = objectMapper;
+    this.timeToLive = timeToLive;
+  }
+
+  /**
+   * Returns a new refresh token for the grant, revoking the user's previous one.
+   */
+  public String issue(Grant grant) {
+    var random = new byte[32];
+    SECURE_RANDOM.nextBytes(random);
+    var refreshToken = grant.userId() + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+    var fingerprint = fingerprint(refreshToken);
+    try {
+      redisCacheClient.set(key(grant.userId(), fingerprint), objectMapper.writeValueAsString(grant), timeToLive.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException(e); // A record of a number and two strings always serializes.
+    }
+    var previous = redisCacheClient.getAndSet(key(grant.userId()), fingerprint, timeToLive.toMillis(), TimeUnit.MILLISECONDS);
+    if (previous != null) {
+      redisCacheClient.delete(key(grant.userId(), previous));
+    }
+    return refreshToken;
+  }
+
+  /**
+   * Takes the refresh token, which can't be used again, and returns its grant; empty when the token is unknown,
+   * expired, revoked or already used.
+   */
+  public Optional<Grant> use(String refreshToken) {
+    var separator = refreshToken.indexOf('.');
+    long userId;
+    try {
+      userId = Long.parseLong(refreshToken.substring(0, Math.max(separator, 0)));
+    } catch (NumberFormatException e) {
+      return Optional.empty();
+    }
+    var grant = redisCacheClient.getAndDelete(key(userId, fingerprint(refreshToken)));
+    if (grant == null) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(objectMapper.readValue(grant, Grant.class));
+    } catch (JsonProcessingException e) {
+      return Optional.empty();
+    }
+  }
+
+  public void revoke(long userId) {
+    var fingerprint = redisCacheClient.getAndDelete(key(userId));
+    if (fingerprint != null) {
+      redisCacheClient.delete(key(userId, fingerprint));
+    }
+  }
+
+  private static String key(long userId) {
+    return "refresh:" + userId;
+  }
+
+  private static String key(long userId, String fingerprint) {
+    return "refresh:" + userId + ":" + fingerprint;
+  }
+
+  private static String fingerprint(String refreshToken) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(refreshToken.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // Every JVM has SHA-256.
+    }
+  }
+}
@@ -1,8 +1,11 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.security;
 
-import com.nimbusds.jose.jwk.JWKSet;
-import com.nimbusds.jose.jwk.RSAKey;
-import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.jwk.source.JWKSourceBuilder;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
@@ -12,10 +15,14 @@ import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwsHeader;
 import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
 import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
@@ -23,15 +30,15 @@ import org.springframework.security.oauth2.server.resource.authentication.JwtGra
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 
-import java.security.KeyPairGenerator;
-import java.security.NoSuchAlgorithmException;
-import java.security.interfaces.RSAPrivateKey;
-import java.security.interfaces.RSAPublicKey;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 public class SecurityConfiguration {
-  private final RSAPublicKey publicKey;
-  private final RSAPrivateKey privateKey;
+  private final JwtSigningKeys jwtSigningKeys;
   private final CustomBasicAuthenticationEntryPoint customBasicAuthenticationEntryPoint;
   private final CustomBearerTokenAuthenticationEntryPoint customBearerTokenAuthenticationEntryPoint;
   private final CustomBearerTokenAccessDeniedHandler customBearerTokenAccessDeniedHandler;
@@ -39,18 +46,12 @@ public class SecurityConfiguration {
   @Value("${api.endpoint.base-url}")
   private String baseUrl;
 
-  public SecurityConfiguration(CustomBasicAuthenticationEntryPoint customBasicAuthenticationEntryPoint, CustomBearerTokenAuthenticationEntryPoint customBearerTokenAuthenticationEntryPoint, CustomBearerTokenAccessDeniedHandler customBearerTokenAccessDeniedHandler, UserRequestAuthorizationManager userRequestAuthorizationManager) throws NoSuchAlgorithmException {
+  public SecurityConfiguration(CustomBasicAuthenticationEntryPoint customBasicAuthenticationEntryPoint, CustomBearerTokenAuthenticationEntryPoint customBearerTokenAuthenticationEntryPoint, CustomBearerTokenAccessDeniedHandler customBearerTokenAccessDeniedHandler, UserRequestAuthorizationManager userRequestAuthorizationManager, JwtSigningKeys jwtSigningKeys) {
     this.customBasicAuthenticationEntryPoint = customBasicAuthenticationEntryPoint;
     this.customBearerTokenAuthenticationEntryPoint = customBearerTokenAuthenticationEntryPoint;
     this.customBearerTokenAccessDeniedHandler = customBearerTokenAccessDeniedHandler;
     this.userRequestAuthorizationManager = userRequestAuthorizationManager;
-
-    // Generate a public/private key pair.
-    var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
-    keyPairGenerator.initialize(2048); // The generated key will have a size of 2048
-    var keyPair = keyPairGenerator.generateKeyPair();
-    this.publicKey = (RSAPublicKey) keyPair.getPublic();
-    this.privateKey = (RSAPrivateKey) keyPair.getPrivate();
+    this.jwtSigningKeys = jwtSigningKeys;
   }
 
   @Bean
@@ -58,7 +59,9 @@ public class SecurityConfiguration {
     return http
         .authorizeHttpRequests(authorizeRequest -> authorizeRequest
             .requestMatchers(HttpMethod.GET, baseUrl + "/artifacts/**").permitAll()
+            .requestMatchers(HttpMethod.GET, "/.well-known/jwks.json").permitAll()
             .requestMatchers(HttpMethod.POST, baseUrl + "/artifacts/search").permitAll()
+            .requestMatchers(HttpMethod.POST, baseUrl + "/users/token/refresh").permitAll() // The refresh token is the credential
             .requestMatchers(HttpMethod.GET, baseUrl + "/users").hasAuthority("ROLE_admin")
             .requestMatchers(HttpMethod.GET, baseUrl + "/users/**").access(userRequestAuthorizationManager) // the authorization rule is defined in the UserRequestAuthorizationManager
             .requestMatchers(HttpMethod.POST, baseUrl + "/users").hasAuthority("ROLE_admin")
@@ -83,21 +86,64 @@ public class SecurityConfiguration {
         .build();
   }
 
+  /**
+   * Hashes the new passwords with security.password.encoding-id, prefixed with it, e.g. {bcrypt}. The hashes of another
+   * algorithm or of a lower bcrypt strength are still checked, and replaced at the next successful login (see
+   * UserService.updatePassword). The hashes stored before the prefix existed are bcrypt ones.
+   */
   @Bean
-  public PasswordEncoder passwordEncoder() {
-    return new BCryptPasswordEncoder(12);
+  public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry,
+                                        @Value("${security.password.encoding-id:bcrypt}") String encodingId,
+                                        @Value("${security.password.bcrypt.strength:12}") int bcryptStrength,
+                                        @Value("${security.password.hashing.threads:0}") int threads,
+                                        @Value("${security.password.hashing.queue-capacity:50}") int queueCapacity,
+                                        @Value("${security.password.hashing.timeout:5s}") Duration timeout) {
+    var bcrypt = new BCryptPasswordEncoder(bcryptStrength);
+    var delegatingPasswordEncoder = new DelegatingPasswordEncoder(encodingId, Map.of(
+        "bcrypt", bcrypt,
+        "argon2", Argon2PasswordEncoder.defaultsForSpringSecurity_v5_8())); // Argon2id
+    delegatingPasswordEncoder.setDefaultPasswordEncoderForMatches(bcrypt);
+    return new OffloadedPasswordEncoder(delegatingPasswordEncoder, threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+        queueCapacity, timeout, meterRegistry);
   }
 
   @Bean
   public JwtEncoder jwtEncoder() {
-    var jwk = new RSAKey.Builder(publicKey).privateKey(privateKey).build();
-    var jwkSet = new ImmutableJWKSet<>(new JWKSet(jwk));
-    return new NimbusJwtEncoder(jwkSet);
+    var nimbusJwtEncoder = new NimbusJwtEncoder((jwkSelector, context) -> jwkSelector.select(jwtSigningKeys.jwkSet()));
+    // Always the newest key, whose algorithm and kid go in the token header.
+    return parameters -> {
+      var signingKey = jwtSigningKeys.signingKey();
+      var headers = JwsHeader.with(() -> signingKey.getAlgorithm().getName()).keyId(signingKey.getKeyID()).build();
+      return nimbusJwtEncoder.encode(JwtEncoderParameters.from(headers, parameters.getClaims()));
+    };
   }
 
+  /**
+   * Verifies the tokens signed with our keys, and, when the instances don't share their key directory, with the keys
+   * published by the others at their /.well-known/jwks.json, listed in security.jwt.trusted-jwk-set-uris.
+   */
   @Bean
-  public JwtDecoder jwtDecoder() {
-    return NimbusJwtDecoder.withPublicKey(publicKey).build();
+  public JwtDecoder jwtDecoder(MeterRegistry meterRegistry,
+                               @Value("${security.jwt.decoder-cache.max-size:10000}") int maxEntries,
+                               @Value("${security.jwt.trusted-jwk-set-uris:}") List<URL> trustedJwkSetUris) {
+    var jwkSources = new ArrayList<JWKSource<SecurityContext>>();
+    jwkSources.add(jwtSigningKeys.verificationKeys());
+    trustedJwkSetUris.forEach(uri -> jwkSources.add(JWKSourceBuilder.create(uri).build())); // Cached, and fetched again for an unknown kid
+    JWKSource<SecurityContext> jwkSource = (jwkSelector, context) -> {
+      for (var source : jwkSources) {
+        var matches = source.get(jwkSelector, context);
+        if (!matches.isEmpty()) {
+          return matches;
+        }
+      }
+      return List.of();
+    };
+    var jwtProcessor = new DefaultJWTProcessor<SecurityContext>();
+    // Every algorithm, for the tokens signed before the configured one changed.
+    jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(JwtSigningKeys.ALGORITHMS, jwkSource));
+    jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {}); // The claims are validated by NimbusJwtDecoder.
+    var jwtDecoder = new NimbusJwtDecoder(jwtProcessor);
+    return maxEntries > 0 ? new CachingJwtDecoder(jwtDecoder, maxEntries, meterRegistry) : jwtDecoder;
   }
 
   @Bean
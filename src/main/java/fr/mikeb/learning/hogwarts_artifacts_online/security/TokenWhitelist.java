@@ -0,0 +1,113 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache.RedisCacheClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The one valid token of each user, stored in Redis under "whitelist:{userId}".
+ * <p>
+ * When the cache is enabled, each instance also keeps the tokens it checked in memory, as SHA-256 fingerprints, until
+ * they expire or max-staleness has passed. Every change of a user's token is published on REVOCATIONS_CHANNEL, and each
+ * instance then drops that user's entry (see TokenWhitelistConfiguration). A revocation whose message is lost, e.g.
+ * while an instance reconnects to Redis, still applies everywhere after max-staleness.
+ */
+@Component
+public class TokenWhitelist {
+  public static final String REVOCATIONS_CHANNEL = "whitelist:revocations";
+
+  private final RedisCacheClient redisCacheClient;
+  private final boolean cacheEnabled;
+  private final int maxEntries; // Past it, the cache is emptied rather than growing with every user.
+  private final long maxStalenessNanos;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong generation = new AtomicLong();
+
+  record Entry(byte[] fingerprint, long expiresAt) {}
+
+  public TokenWhitelist(RedisCacheClient redisCacheClient,
+                        @Value("${security.token-whitelist.cache.enabled:false}") boolean cacheEnabled,
+                        @Value("${security.token-whitelist.cache.max-size:10000}") int maxEntries,
+                        @Value("${security.token-whitelist.cache.max-staleness:10s}") Duration maxStaleness) {
+    this.redisCacheClient = redisCacheClient;
+    this.cacheEnabled = cacheEnabled;
+    this.maxEntries = maxEntries;
+    this.maxStalenessNanos = maxStaleness.toNanos();
+  }
+
+  /**
+   * Makes token the user's only valid one, revoking the previous one.
+   */
+  public void add(String userId, String token, Duration timeToLive) {
+    redisCacheClient.set(key(userId), token, timeToLive.toMillis(), TimeUnit.MILLISECONDS);
+    publishRevocation(userId);
+  }
+
+  public void revoke(String userId) {
+    redisCacheClient.delete(key(userId));
+    publishRevocation(userId);
+  }
+
+  public boolean contains(String userId, String token, Instant expiresAt) {
+    if (!cacheEnabled) {
+      return token.equals(redisCacheClient.get(key(userId)));
+    }
+    var fingerprint = fingerprint(token);
+    var now = System.nanoTime();
+    var cached = entries.get(userId);
+    if (cached != null && cached.expiresAt() - now > 0 && MessageDigest.isEqual(cached.fingerprint(), fingerprint)) {
+      return true;
+    }
+    // Read before asking Redis: if a revocation arrives meanwhile, the token read may be revoked already.
+    var currentGeneration = generation.get();
+    var whitelistedToken = redisCacheClient.get(key(userId));
+    if (!token.equals(whitelistedToken)) {
+      return false;
+    }
+    var expiresIn = expiresAt == null ? maxStalenessNanos : Math.min(maxStalenessNanos, Duration.between(Instant.now(), expiresAt).toNanos());
+    if (expiresIn > 0 && generation.get() == currentGeneration) {
+      if (entries.size() >= maxEntries) {
+        entries.clear();
+      }
+      entries.put(userId, new Entry(fingerprint, now + expiresIn));
+    }
+    return true;
+  }
+
+  /**
+   * Drops the user's entry from this instance's cache. Called for every message on REVOCATIONS_CHANNEL.
+   */
+  public void evict(String userId) {
+    generation.incrementAndGet();
+    entries.remove(userId);
+  }
+
+  private void publishRevocation(String userId) {
+    evict(userId); // This instance at once, without waiting for its own message.
+    if (cacheEnabled) {
+      redisCacheClient.publish(REVOCATIONS_CHANNEL, userId);
+    }
+  }
+
+  private static String key(String userId) {
+    return "whitelist:" + userId;
+  }
+
+  private static byte[] fingerprint(String token) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // Every JVM has SHA-256.
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+@Configuration
+public class TokenWhitelistConfiguration {
+
+  /**
+   * Keeps the in-memory whitelist of this instance in sync with the revocations made by all the instances.
+   */
+  @Bean
+  @ConditionalOnProperty(name = "security.token-whitelist.cache.enabled", havingValue = "true")
+  public RedisMessageListenerContainer tokenWhitelistListenerContainer(RedisConnectionFactory redisConnectionFactory, TokenWhitelist tokenWhitelist) {
+    var container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(redisConnectionFactory);
+    container.addMessageListener((message, pattern) -> tokenWhitelist.evict(new String(message.getBody(), StandardCharsets.UTF_8)),
+        new ChannelTopic(TokenWhitelist.REVOCATIONS_CHANNEL));
+    return container;
+  }
+}
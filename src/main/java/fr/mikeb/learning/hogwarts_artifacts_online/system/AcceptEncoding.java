@@ -0,0 +1,44 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system;
+
+/**
+ * Reads the Accept-Encoding request header (RFC 9110, 12.5.3), whose codings may carry a quality value.
+ */
+public final class AcceptEncoding {
+  private AcceptEncoding() {}
+
+  /**
+   * Tells if the header accepts the coding: listed, or covered by "*", with a quality above 0. "gzip;q=0" refuses
+   * gzip, and so does "*;q=0" unless gzip is listed on its own. No header accepts nothing but the identity.
+   */
+  public static boolean accepts(String acceptEncoding, String coding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    var wildcard = 0.0;
+    for (var element : acceptEncoding.split(",")) {
+      var parameters = element.split(";");
+      var name = parameters[0].trim();
+      if (name.equalsIgnoreCase(coding)) {
+        return quality(parameters) > 0;
+      }
+      if (name.equals("*")) {
+        wildcard = quality(parameters);
+      }
+    }
+    return wildcard > 0;
+  }
+
+  private static double quality(String[] parameters) {
+    for (int i = 1; i < parameters.length; i++) {
+      var parameter = parameters[i].trim();
+      if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+        try {
+          return Double.parseDouble(parameter.substring(2).trim());
+        } catch (NumberFormatException e) {
+          return 0; // Unreadable, so not taken as a preference for the coding.
+        }
+      }
+    }
+    return 1;
+  }
+}
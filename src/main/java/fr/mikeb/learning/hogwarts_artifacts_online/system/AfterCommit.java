@@ -0,0 +1,27 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Defers work on local caches and indexes until the data they mirror is committed.
+ */
+public final class AfterCommit {
+  private AfterCommit() {}
+
+  /**
+   * Runs the action once the surrounding transaction has committed, never if it rolls back, and right away without one.
+   */
+  public static void run(Runnable action) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          action.run();
+        }
+      });
+    } else {
+      action.run();
+    }
+  }
+}
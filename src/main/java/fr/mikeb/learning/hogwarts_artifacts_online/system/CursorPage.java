@@ -0,0 +1,20 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * This class defines the schema of a cursor (keyset) paginated response. Unlike a Page, it carries no total count:
+ * the client asks for the next chunk by sending back the opaque nextCursor as the "after" request parameter.
+ */
+public record CursorPage<T>(
+    List<T> content,
+    int size, // Number of elements in this chunk
+    boolean hasNext,
+    String nextCursor // null when there is no next chunk
+) {
+  public <R> CursorPage<R> map(Function<? super T, ? extends R> converter) {
+    List<R> converted = content.stream().<R>map(converter).toList();
+    return new CursorPage<>(converted, size, hasNext, nextCursor);
+  }
+}
@@ -62,19 +62,16 @@ public class DBDataInitializer implements CommandLineRunner {
     a6.setImgUrl("https://hogwartsartifactsonline.blob.core.windows.net/artifact-image-container/resurrection-stone.jpg");
 
     var w1 = new Wizard();
-    w1.setId(1);
     w1.setName("Albus Dumbledore");
     w1.addArtifact(a1);
     w1.addArtifact(a3);
 
     var w2 = new Wizard();
-    w2.setId(2);
     w2.setName("Harry Potter");
     w2.addArtifact(a2);
     w2.addArtifact(a4);
 
     var w3 = new Wizard();
-    w3.setId(3);
     w3.setName("Neville Longbottom");
     w3.addArtifact(a5);
 
@@ -0,0 +1,38 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Strong entity tags built from entity versions, so they are computed without serializing the response.
+ */
+public final class ETags {
+  private ETags() {}
+
+  /**
+   * Joins the parts, a null part being left empty, e.g. of(3, null, 1) gives "3..1" (quotes included).
+   */
+  public static String of(Object... parts) {
+    return Arrays.stream(parts)
+        .map(part -> Objects.toString(part, ""))
+        .collect(Collectors.joining(".", "\"", "\""));
+  }
+
+  /**
+   * The tag of the gzip-compressed representation, e.g. "3.1-gz" for "3.1": a strong tag must differ between two
+   * encodings of the same version, their bytes being different.
+   */
+  public static String gzipped(String eTag) {
+    return eTag.substring(0, eTag.length() - 1) + "-gz\"";
+  }
+
+  /**
+   * Tells if an If-Match header value is "*" or lists the given tag. Weak tags never match (RFC 9110, 13.1.1).
+   */
+  public static boolean matches(String ifMatch, String eTag) {
+    return Arrays.stream(ifMatch.split(","))
+        .map(String::trim)
+        .anyMatch(tag -> tag.equals("*") || tag.equals(eTag));
+  }
+}
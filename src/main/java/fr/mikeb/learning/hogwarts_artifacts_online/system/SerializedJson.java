@@ -0,0 +1,8 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system;
+
+/**
+ * A response body that is already serialized to JSON, possibly gzip-compressed (then the controller sets the
+ * Content-Encoding header). It is written as is by SerializedJsonHttpMessageConverter.
+ */
+public record SerializedJson(byte[] bytes) {
+}
@@ -0,0 +1,44 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+
+/**
+ * Copies the bytes of a SerializedJson body to the response, bypassing Jackson.
+ */
+public class SerializedJsonHttpMessageConverter extends AbstractHttpMessageConverter<SerializedJson> {
+
+  public SerializedJsonHttpMessageConverter() {
+    super(MediaType.APPLICATION_JSON);
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return SerializedJson.class == clazz;
+  }
+
+  @Override
+  public boolean canRead(Class<?> clazz, MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  protected SerializedJson readInternal(Class<? extends SerializedJson> clazz, HttpInputMessage inputMessage) {
+    throw new HttpMessageNotReadableException("SerializedJson is only written", inputMessage);
+  }
+
+  @Override
+  protected Long getContentLength(SerializedJson serializedJson, MediaType contentType) {
+    return (long) serializedJson.bytes().length;
+  }
+
+  @Override
+  protected void writeInternal(SerializedJson serializedJson, HttpOutputMessage outputMessage) throws IOException {
+    outputMessage.getBody().write(serializedJson.bytes());
+  }
+}
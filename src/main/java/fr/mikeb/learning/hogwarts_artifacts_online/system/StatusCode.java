@@ -12,6 +12,12 @@ public class StatusCode {
 
     public static final int NOT_FOUND = 404; // Not found
 
+    public static final int CONFLICT = 409; // Changed by someone else meanwhile, without the client saying which version it read
+
+    public static final int PRECONDITION_FAILED = 412; // The resource has changed since the client read it
+
     public static final int INTERNAL_SERVER_ERROR = 500; // Server internal error
 
+    public static final int SERVICE_UNAVAILABLE = 503; // Too busy at the moment, try again later
+
 }
\ No newline at end of file
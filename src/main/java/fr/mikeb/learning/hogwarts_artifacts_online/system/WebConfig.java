@@ -2,9 +2,12 @@ package fr.mikeb.learning.hogwarts_artifacts_online.system;
 
 import fr.mikeb.learning.hogwarts_artifacts_online.security.JwtInterceptor;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.List;
+
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
     private final JwtInterceptor jwtInterceptor;
@@ -17,4 +20,9 @@ public class WebConfig implements WebMvcConfigurer {
     public void addInterceptors(InterceptorRegistry registry) {
         registry.addInterceptor(jwtInterceptor).addPathPatterns("/**");
     }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.addFirst(new SerializedJsonHttpMessageConverter());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system.actuator;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactViewsTracker;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+@Endpoint(id = "topartifacts")
+@Component
+public class TopArtifactsEndpoint {
+
+    private final ArtifactViewsTracker artifactViewsTracker;
+
+    public TopArtifactsEndpoint(ArtifactViewsTracker artifactViewsTracker) {
+        this.artifactViewsTracker = artifactViewsTracker;
+    }
+
+    @ReadOperation
+    public Map<String, Object> topArtifacts() {
+        // Each estimatedCount may exceed the true number of views by up to errorBound.
+        return Map.of(
+                "totalViews", artifactViewsTracker.totalViews(),
+                "artifacts", artifactViewsTracker.topViews()
+        );
+    }
+}
@@ -4,8 +4,10 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.Result;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.StatusCode;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.AccountStatusException;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -76,6 +78,12 @@ public class ExceptionHandlerAdvice {
     return new Result<>(false, StatusCode.UNAUTHORIZED, "The access token provided is expired, revoked, malformed or invalid for other reason.", ex.getMessage());
   }
 
+  @ExceptionHandler(InvalidRefreshTokenException.class)
+  @ResponseStatus(HttpStatus.UNAUTHORIZED)
+  Result<String> handleInvalidRefreshTokenException(InvalidRefreshTokenException ex) {
+    return new Result<>(false, StatusCode.UNAUTHORIZED, "The refresh token provided is expired, revoked, already used or malformed.", ex.getMessage());
+  }
+
   @ExceptionHandler(AccessDeniedException.class)
   @ResponseStatus(HttpStatus.FORBIDDEN)
   Result<String> handleAccessDeniedExceptionException(AccessDeniedException ex) {
@@ -125,6 +133,45 @@ public class ExceptionHandlerAdvice {
     return new Result<>(false, StatusCode.INVALID_ARGUMENT, ex.getMessage());
   }
 
+  @ExceptionHandler(InvalidCursorException.class)
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  Result<String> handleInvalidCursorException(InvalidCursorException ex) {
+    return new Result<>(false, StatusCode.INVALID_ARGUMENT, ex.getMessage());
+  }
+
+  @ExceptionHandler(InvalidSearchQueryException.class)
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  Result<String> handleInvalidSearchQueryException(InvalidSearchQueryException ex) {
+    return new Result<>(false, StatusCode.INVALID_ARGUMENT, ex.getMessage());
+  }
+
+  /**
+   * This handles a failed If-Match precondition.
+   */
+  @ExceptionHandler(PreconditionFailedException.class)
+  @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+  Result<String> handlePreconditionFailedException(PreconditionFailedException ex) {
+    return new Result<>(false, StatusCode.PRECONDITION_FAILED, "The resource has been modified by someone else, fetch it again before updating it.", ex.getMessage());
+  }
+
+  /**
+   * This handles a concurrent update caught by the entity version check, when the client sent no precondition.
+   */
+  @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+  @ResponseStatus(HttpStatus.CONFLICT)
+  Result<String> handleObjectOptimisticLockingFailureException(ObjectOptimisticLockingFailureException ex) {
+    return new Result<>(false, StatusCode.CONFLICT, "The resource has been modified by someone else meanwhile, fetch it again before updating it.", ex.getMessage());
+  }
+
+  /**
+   * This handles a login or a password change refused because too many passwords are being hashed.
+   */
+  @ExceptionHandler(PasswordHashingBusyException.class)
+  ResponseEntity<Result<String>> handlePasswordHashingBusyException(PasswordHashingBusyException ex) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, "1")
+        .body(new Result<>(false, StatusCode.SERVICE_UNAVAILABLE, "The server is busy, try again in a moment.", ex.getMessage()));
+  }
 
   /**
    * Fallback handles any unhandled exceptions.
@@ -0,0 +1,7 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system.exception;
+
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system.exception;
+
+public class InvalidRefreshTokenException extends RuntimeException {
+  public InvalidRefreshTokenException() {
+    super("Invalid refresh token");
+  }
+}
@@ -0,0 +1,7 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system.exception;
+
+public class InvalidSearchQueryException extends RuntimeException {
+  public InvalidSearchQueryException(String message) {
+    super(message);
+  }
+}
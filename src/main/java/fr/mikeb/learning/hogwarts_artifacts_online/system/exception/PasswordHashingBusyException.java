@@ -0,0 +1,13 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system.exception;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+/**
+ * An AuthenticationServiceException, so that a login refused for this reason reaches the authentication entry point,
+ * and from there ExceptionHandlerAdvice, like the other authentication failures.
+ */
+public class PasswordHashingBusyException extends AuthenticationServiceException {
+  public PasswordHashingBusyException() {
+    super("Too many passwords are being checked or hashed at the moment.");
+  }
+}
@@ -0,0 +1,7 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system.exception;
+
+public class PreconditionFailedException extends RuntimeException {
+  public PreconditionFailedException(String objectName, String id) {
+    super("The " + objectName + " with Id " + id + " has been modified since it was read.");
+  }
+}
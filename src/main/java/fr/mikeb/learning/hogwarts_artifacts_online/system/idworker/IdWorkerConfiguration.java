@@ -0,0 +1,39 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system.idworker;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.utils.IdWorker;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Duration;
+
+@Configuration
+public class IdWorkerConfiguration {
+
+  /**
+   * Needed as soon as more than one instance creates artifacts.
+   */
+  @Bean
+  @ConditionalOnProperty(name = "id-worker.lease.enabled", havingValue = "true")
+  public WorkerIdLease workerIdLease(StringRedisTemplate redisTemplate, TaskScheduler taskScheduler,
+                                     @Value("${id-worker.lease.ttl:30s}") Duration ttl,
+                                     @Value("${id-worker.lease.max-clock-skew:1s}") Duration maxClockSkew) {
+    return new WorkerIdLease(redisTemplate, taskScheduler, ttl, maxClockSkew);
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = "id-worker.lease.enabled", havingValue = "true")
+  public WorkerIdLeaseHealthIndicator workerIdLeaseHealthIndicator(WorkerIdLease workerIdLease) {
+    return new WorkerIdLeaseHealthIndicator(workerIdLease);
+  }
+
+  @Bean
+  public IdWorker idWorker(ObjectProvider<WorkerIdLease> workerIdLease) {
+    var lease = workerIdLease.getIfAvailable();
+    return lease != null ? lease.idWorker() : new IdWorker(1, 1); // Single node
+  }
+}
@@ -0,0 +1,159 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system.idworker;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.utils.IdWorker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Leases one of the 1024 (datacenterId, workerId) pairs in Redis, so that no two running instances generate ids
+ * with the same worker bits.
+ * <p>
+ * The lease is the key idworker:lease:{slot}, holding a random token and a TTL renewed every ttl / 3. Each renewal
+ * lets the IdWorker generate ids until the renewal time + ttl - maxClockSkew, before the key can expire: a stalled
+ * or partitioned instance stops on its own before another one can take over its slot. A new holder waits
+ * maxClockSkew before its first id, in case the previous one released the slot moments ago.
+ * <p>
+ * When another instance took the slot, the IdWorker moves to a free one; while none is free, it stays fenced and the
+ * next renewals look again. WorkerIdLeaseHealthIndicator reports DOWN meanwhile.
+ */
+public class WorkerIdLease implements SmartLifecycle {
+  private static final Logger log = LoggerFactory.getLogger(WorkerIdLease.class);
+  static final String KEY_PREFIX = "idworker:lease:";
+  static final int SLOTS = 32 * 32;
+  private static final RedisScript<Long> RENEW = RedisScript.of(
+      "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end", Long.class);
+  private static final RedisScript<Long> RELEASE = RedisScript.of(
+      "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+  private final StringRedisTemplate redisTemplate;
+  private final Duration ttl;
+  private final Duration maxClockSkew;
+  private final String token = UUID.randomUUID().toString();
+  private volatile int slot;
+  // Epoch millis until which the IdWorker may generate ids.
+  private volatile long validUntil;
+  private final IdWorker idWorker;
+  private final ScheduledFuture<?> heartbeat;
+  private volatile boolean running = true;
+
+  public WorkerIdLease(StringRedisTemplate redisTemplate, TaskScheduler taskScheduler, Duration ttl, Duration maxClockSkew) {
+    if (maxClockSkew.multipliedBy(3).compareTo(ttl) >= 0) {
+      throw new IllegalArgumentException("The lease ttl must be more than 3 times the max clock skew");
+    }
+    this.redisTemplate = redisTemplate;
+    this.ttl = ttl;
+    this.maxClockSkew = maxClockSkew;
+    var start = System.currentTimeMillis();
+    this.slot = acquire();
+    if (slot < 0) {
+      throw new IllegalStateException(String.format("All %d worker ids are leased", SLOTS));
+    }
+    this.idWorker = new IdWorker(slot % 32, slot / 32);
+    this.validUntil = validUntil(start);
+    idWorker.lease(start + maxClockSkew.toMillis(), validUntil);
+    this.heartbeat = taskScheduler.scheduleAtFixedRate(this::renew, ttl.dividedBy(3));
+    log.info("Leased worker id {} of datacenter {} for {}", slot % 32, slot / 32, ttl);
+  }
+
+  public IdWorker idWorker() {
+    return idWorker;
+  }
+
+  public int slot() {
+    return slot;
+  }
+
+  public long validUntil() {
+    return validUntil;
+  }
+
+  void renew() {
+    var start = System.currentTimeMillis();
+    try {
+      if (Long.valueOf(1).equals(redisTemplate.execute(RENEW, List.of(key(slot)), token, String.valueOf(ttl.toMillis())))) {
+        validUntil = validUntil(start);
+        idWorker.lease(Long.MIN_VALUE, validUntil);
+        return;
+      }
+      validUntil = start;
+      idWorker.lease(Long.MIN_VALUE, start); // Someone else may hold the slot by now.
+      if (tryAcquire(slot)) {
+        log.warn("Lost the lease of worker slot {}, leased it again", slot);
+        validUntil = validUntil(start);
+        idWorker.lease(start + maxClockSkew.toMillis(), validUntil);
+        return;
+      }
+      var newSlot = acquire();
+      if (newSlot < 0) {
+        log.error("Lost the lease of worker slot {} to another instance and no other slot is free, no ids are generated until one is", slot);
+        return;
+      }
+      log.warn("Lost the lease of worker slot {} to another instance, moved to slot {}", slot, newSlot);
+      slot = newSlot;
+      validUntil = validUntil(start);
+      idWorker.lease(newSlot % 32, newSlot / 32, start + maxClockSkew.toMillis(), validUntil);
+    } catch (RuntimeException e) {
+      log.warn("Could not renew the lease of worker slot {}, ids are generated until it expires", slot, e);
+    }
+  }
+
+  /**
+   * The slot is leased as soon as the lease is created, since the IdWorker needs it.
+   */
+  @Override
+  public void start() {
+  }
+
+  /**
+   * Fences the IdWorker and frees the slot. Runs in the default phase, before the Redis connection factory stops.
+   */
+  @Override
+  public void stop() {
+    running = false;
+    heartbeat.cancel(false);
+    validUntil = System.currentTimeMillis();
+    idWorker.lease(Long.MIN_VALUE, validUntil);
+    redisTemplate.execute(RELEASE, List.of(key(slot)), token);
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Returns the slot leased, or -1 when all of them are.
+   */
+  private int acquire() {
+    int first = ThreadLocalRandom.current().nextInt(SLOTS); // Spreads concurrent startups over the slots.
+    for (int i = 0; i < SLOTS; i++) {
+      int candidate = (first + i) % SLOTS;
+      if (tryAcquire(candidate)) {
+        return candidate;
+      }
+    }
+    return -1;
+  }
+
+  private boolean tryAcquire(int candidate) {
+    return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key(candidate), token, ttl));
+  }
+
+  private long validUntil(long renewedAt) {
+    return renewedAt + ttl.toMillis() - maxClockSkew.toMillis();
+  }
+
+  static String key(int slot) {
+    return KEY_PREFIX + slot;
+  }
+}
@@ -0,0 +1,30 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system.idworker;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+import java.time.Instant;
+
+/**
+ * DOWN while the IdWorker can't generate ids: the lease expired before it could be renewed, or it was lost and no
+ * other slot was free.
+ */
+public class WorkerIdLeaseHealthIndicator implements HealthIndicator {
+  private final WorkerIdLease workerIdLease;
+
+  public WorkerIdLeaseHealthIndicator(WorkerIdLease workerIdLease) {
+    this.workerIdLease = workerIdLease;
+  }
+
+  @Override
+  public Health health() {
+    var slot = workerIdLease.slot();
+    var validUntil = workerIdLease.validUntil();
+    var health = System.currentTimeMillis() < validUntil ? Health.up() : Health.down();
+    return health
+        .withDetail("datacenterId", slot / 32)
+        .withDetail("workerId", slot % 32)
+        .withDetail("validUntil", Instant.ofEpochMilli(validUntil))
+        .build();
+  }
+}
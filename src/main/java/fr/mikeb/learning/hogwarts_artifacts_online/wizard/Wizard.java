@@ -2,13 +2,18 @@ package fr.mikeb.learning.hogwarts_artifacts_online.wizard;
 
 import fr.mikeb.learning.hogwarts_artifacts_online.artifact.Artifact;
 import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.Version;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import java.io.Serializable;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -21,6 +26,17 @@ public class Wizard implements Serializable {
   private String name;
   @OneToMany(cascade = {CascadeType.PERSIST, CascadeType.MERGE}, mappedBy = "owner")
   private List<Artifact> artifacts = new ArrayList<>();
+  // Denormalized size of artifacts, so that reading it never loads the collection. Inserted with the wizard, then only
+  // changed in the database by WizardRepository.adjustArtifactCount: never overwritten by a stale copy in memory.
+  @Column(nullable = false, updatable = false)
+  @ColumnDefault("0")
+  private int artifactCount;
+  @Version
+  @Column(nullable = false)
+  @ColumnDefault("0")
+  private Long version; // Not incremented when artifacts join or leave, hence the number of artifacts in the ETag
+  @UpdateTimestamp
+  private Instant lastModified;
 
   public Wizard() {}
 
@@ -46,25 +62,46 @@ public class Wizard implements Serializable {
 
   public void setArtifacts(List<Artifact> artifacts) {
     this.artifacts = artifacts;
+    this.artifactCount = artifacts.size();
+  }
+
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
+
+  public Instant getLastModified() {
+    return lastModified;
+  }
+
+  public void setLastModified(Instant lastModified) {
+    this.lastModified = lastModified;
   }
 
   public void addArtifact(Artifact artifact) {
     Objects.requireNonNull(artifact);
     artifact.setOwner(this);
     artifacts.add(artifact);
+    artifactCount++;
   }
 
   public int getNumberOfArtifacts() {
-    return artifacts.size();
+    return artifactCount;
   }
 
   public void removeAllArtifacts() {
     this.artifacts.forEach(artifact -> artifact.setOwner(null));
     this.artifacts = new ArrayList<>();
+    this.artifactCount = 0;
   }
 
   public void removeArtifact(Artifact artifact) {
     artifact.setOwner(null);
-    artifacts.remove(artifact);
+    if (artifacts.remove(artifact)) {
+      artifactCount--;
+    }
   }
 }
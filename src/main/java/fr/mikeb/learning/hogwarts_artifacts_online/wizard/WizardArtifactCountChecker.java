@@ -0,0 +1,60 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.wizard;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactResponseCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Periodically compares each wizard's artifact count with its rows in the artifact table, and recounts the ones that
+ * drifted, e.g. after an artifact was reassigned or deleted straight in the database. Repairs are logged and counted
+ * by the wizard.artifact.count.repairs meter: it should stay at 0.
+ * <p>
+ * It also runs once the application is ready, so that counts left wrong while the application was down, or by a
+ * migration adding the column, are not served, nor put in the wizards' ETags, until the first scheduled check.
+ */
+@Component
+public class WizardArtifactCountChecker {
+  private static final Logger log = LoggerFactory.getLogger(WizardArtifactCountChecker.class);
+
+  private final WizardRepository wizardRepository;
+  private final ArtifactResponseCache artifactResponseCache;
+  private final Counter repairs;
+
+  public WizardArtifactCountChecker(WizardRepository wizardRepository, ArtifactResponseCache artifactResponseCache, MeterRegistry meterRegistry) {
+    this.wizardRepository = wizardRepository;
+    this.artifactResponseCache = artifactResponseCache;
+    this.repairs = Counter.builder("wizard.artifact.count.repairs")
+        .description("Number of wizard artifact counts found wrong and recounted")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Returns the number of wizards recounted. The lookup only reads; each recount runs again in the UPDATE, so that
+   * an artifact assigned in between is not missed.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  @Scheduled(initialDelayString = "${wizard.artifact-count.check-interval:PT1H}", fixedDelayString = "${wizard.artifact-count.check-interval:PT1H}")
+  @Transactional
+  public int check() {
+    var wizardIds = wizardRepository.findIdsWithWrongArtifactCount();
+    if (wizardIds.isEmpty()) {
+      return 0;
+    }
+    for (var wizardId : wizardIds) {
+      wizardRepository.recountArtifacts(wizardId, Instant.now());
+      artifactResponseCache.invalidateOwner(wizardId);
+    }
+    repairs.increment(wizardIds.size());
+    log.warn("Recounted the artifacts of {} wizard(s) whose artifact count had drifted: {}", wizardIds.size(), wizardIds);
+    return wizardIds.size();
+  }
+}
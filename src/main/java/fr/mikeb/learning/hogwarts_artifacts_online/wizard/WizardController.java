@@ -1,40 +1,60 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.wizard;
 
+import fr.mikeb.learning.hogwarts_artifacts_online.system.ETags;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.Result;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.StatusCode;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.PreconditionFailedException;
 import fr.mikeb.learning.hogwarts_artifacts_online.wizard.converter.WizardDtoToWizardConverter;
 import fr.mikeb.learning.hogwarts_artifacts_online.wizard.converter.WizardToWizardDtoConverter;
+import fr.mikeb.learning.hogwarts_artifacts_online.wizard.dto.WizardDeletionDto;
 import fr.mikeb.learning.hogwarts_artifacts_online.wizard.dto.WizardDto;
 import jakarta.validation.Valid;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
 @RestController
 @RequestMapping("${api.endpoint.base-url}/wizards")
 public class WizardController {
+  // Wizard reads need a token: only the client may cache them, and it must revalidate them each time.
+  private static final CacheControl PRIVATE_CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
   private final WizardService wizardService;
   private final WizardToWizardDtoConverter wizardToWizardDtoConverter;
   private final WizardDtoToWizardConverter wizardDtoToWizardConverter;
+  private final WizardDeleter wizardDeleter;
 
-  public WizardController(WizardService wizardService, WizardToWizardDtoConverter wizardToWizardDtoConverter, WizardDtoToWizardConverter wizardDtoToWizardConverter) {
+  public WizardController(WizardService wizardService, WizardToWizardDtoConverter wizardToWizardDtoConverter, WizardDtoToWizardConverter wizardDtoToWizardConverter, WizardDeleter wizardDeleter) {
     this.wizardService = wizardService;
     this.wizardToWizardDtoConverter = wizardToWizardDtoConverter;
     this.wizardDtoToWizardConverter = wizardDtoToWizardConverter;
+    this.wizardDeleter = wizardDeleter;
   }
 
   @GetMapping("/{wizardId}")
-  public Result<WizardDto> findWizardById(@PathVariable int wizardId) {
+  public ResponseEntity<Result<WizardDto>> findWizardById(@PathVariable int wizardId, WebRequest webRequest) {
     var foundWizard = wizardService.findById(wizardId);
+    var lastModified = foundWizard.getLastModified();
+    // Answers If-None-Match / If-Modified-Since, and sets the ETag and Last-Modified headers.
+    if (webRequest.checkNotModified(eTagOf(foundWizard), lastModified == null ? -1 : lastModified.toEpochMilli())) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(PRIVATE_CACHE_CONTROL).build();
+    }
     var foundWizardDto = wizardToWizardDtoConverter.convert(foundWizard);
-    return new Result<>(true, StatusCode.SUCCESS, "Find One Success", foundWizardDto);
+    return ResponseEntity.ok().cacheControl(PRIVATE_CACHE_CONTROL)
+        .body(new Result<>(true, StatusCode.SUCCESS, "Find One Success", foundWizardDto));
   }
 
   @GetMapping
@@ -54,11 +74,21 @@ public class WizardController {
   }
 
   @PutMapping("/{wizardId}")
-  public Result<WizardDto> updateWizard(@PathVariable int wizardId, @Valid @RequestBody WizardDto wizardDto) {
+  public ResponseEntity<Result<WizardDto>> updateWizard(@PathVariable int wizardId, @Valid @RequestBody WizardDto wizardDto,
+                                                        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    Long expectedVersion = null;
+    if (ifMatch != null) {
+      var currentWizard = wizardService.findById(wizardId);
+      if (!ETags.matches(ifMatch, eTagOf(currentWizard))) {
+        throw new PreconditionFailedException("wizard", wizardId + "");
+      }
+      expectedVersion = currentWizard.getVersion();
+    }
     var updateWizard = wizardDtoToWizardConverter.convert(wizardDto);
-    var updatedWizard = wizardService.update(wizardId, updateWizard);
+    var updatedWizard = wizardService.update(wizardId, updateWizard, expectedVersion);
     var updatedWizardDto = wizardToWizardDtoConverter.convert(updatedWizard);
-    return new Result<>(true, StatusCode.SUCCESS, "Update Success", updatedWizardDto);
+    return ResponseEntity.ok().eTag(eTagOf(updatedWizard))
+        .body(new Result<>(true, StatusCode.SUCCESS, "Update Success", updatedWizardDto));
   }
 
   @PutMapping("/{wizardId}/artifacts/{artifactId}")
@@ -67,9 +97,40 @@ public class WizardController {
     return new Result<>(true, StatusCode.SUCCESS, "Artifact Assignment Success");
   }
 
+  @PutMapping("/{wizardId}/artifacts")
+  public Result<Integer> assignArtifacts(@PathVariable int wizardId, @RequestBody List<String> artifactIds) {
+    var assigned = wizardService.assignArtifacts(wizardId, artifactIds);
+    return new Result<>(true, StatusCode.SUCCESS, "Artifacts Assignment Success", assigned);
+  }
+
+  @PostMapping("/{fromWizardId}/artifacts/transfer/{toWizardId}")
+  public Result<Integer> transferArtifacts(@PathVariable int fromWizardId, @PathVariable int toWizardId) {
+    var transferred = wizardService.transferArtifacts(fromWizardId, toWizardId);
+    return new Result<>(true, StatusCode.SUCCESS, "Artifacts Transfer Success", transferred);
+  }
+
+  private static String eTagOf(Wizard wizard) {
+    return ETags.of(wizard.getVersion(), wizard.getNumberOfArtifacts());
+  }
+
   @DeleteMapping("/{artifactId}")
   public Result<Void> deleteArtifact(@PathVariable int artifactId) {
     wizardService.delete(artifactId);
     return new Result<>(true, StatusCode.SUCCESS, "Delete Success");
   }
+
+  /**
+   * For wizards with very many artifacts: answers 202 right away, the deletion goes on in the background.
+   */
+  @DeleteMapping(value = "/{wizardId}", params = "async=true")
+  public ResponseEntity<Result<WizardDeletionDto>> deleteWizardAsync(@PathVariable int wizardId) {
+    var deletion = wizardDeleter.start(wizardId);
+    return ResponseEntity.accepted().body(new Result<>(true, StatusCode.SUCCESS, "Delete Started", deletion));
+  }
+
+  @GetMapping("/{wizardId}/deletion")
+  public Result<WizardDeletionDto> findWizardDeletion(@PathVariable int wizardId) {
+    var deletion = wizardDeleter.progress(wizardId);
+    return new Result<>(true, StatusCode.SUCCESS, "Find Deletion Success", deletion);
+  }
 }
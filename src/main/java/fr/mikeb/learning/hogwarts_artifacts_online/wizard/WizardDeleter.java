@@ -0,0 +1,108 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.wizard;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.NotFoundException;
+import fr.mikeb.learning.hogwarts_artifacts_online.wizard.dto.WizardDeletionDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes wizards with very many artifacts in the background: their artifacts are unassigned chunk by chunk, each chunk
+ * committing on its own, then the wizard is deleted. The progress of each deletion is kept in memory for an hour after
+ * it ended.
+ */
+@Component
+public class WizardDeleter {
+  private static final Logger log = LoggerFactory.getLogger(WizardDeleter.class);
+  private static final long RETENTION_NANOS = TimeUnit.HOURS.toNanos(1);
+
+  private final WizardService wizardService;
+  private final AsyncTaskExecutor taskExecutor;
+  private final int chunkSize;
+  private final Map<Integer, Deletion> deletions = new ConcurrentHashMap<>();
+
+  public WizardDeleter(WizardService wizardService,
+                       @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) AsyncTaskExecutor taskExecutor,
+                       @Value("${wizard.deletion.chunk-size:5000}") int chunkSize) {
+    this.wizardService = wizardService;
+    this.taskExecutor = taskExecutor;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Starts deleting the wizard, unless it is already being deleted, and returns the progress of its deletion.
+   */
+  public WizardDeletionDto start(int wizardId) {
+    var wizard = wizardService.findById(wizardId);
+    deletions.values().removeIf(deletion -> deletion.endedBefore(System.nanoTime() - RETENTION_NANOS));
+
+    var started = new Deletion(wizardId, wizard.getNumberOfArtifacts());
+    var deletion = deletions.compute(wizardId, (id, current) -> current != null && current.status == Status.RUNNING ? current : started);
+    if (deletion == started) {
+      taskExecutor.execute(() -> run(started));
+    }
+    return deletion.toDto();
+  }
+
+  public WizardDeletionDto progress(int wizardId) {
+    var deletion = deletions.get(wizardId);
+    if (deletion == null) {
+      throw new NotFoundException("wizard deletion", wizardId + "");
+    }
+    return deletion.toDto();
+  }
+
+  private void run(Deletion deletion) {
+    try {
+      int unassigned;
+      while ((unassigned = wizardService.unassignArtifacts(deletion.wizardId, chunkSize)) > 0) {
+        deletion.unassignedArtifacts.addAndGet(unassigned);
+      }
+      // Also unassigns the artifacts given to the wizard since the last chunk.
+      wizardService.delete(deletion.wizardId);
+      deletion.end(Status.DONE, null);
+    } catch (RuntimeException e) {
+      log.warn("Deletion of wizard {} failed after unassigning {} artifact(s)", deletion.wizardId, deletion.unassignedArtifacts.get(), e);
+      deletion.end(Status.FAILED, e.getMessage());
+    }
+  }
+
+  enum Status {RUNNING, DONE, FAILED}
+
+  private static final class Deletion {
+    final int wizardId;
+    final long totalArtifacts;
+    final AtomicLong unassignedArtifacts = new AtomicLong();
+    volatile Status status = Status.RUNNING;
+    volatile String error;
+    volatile long endedAt;
+
+    Deletion(int wizardId, long totalArtifacts) {
+      this.wizardId = wizardId;
+      this.totalArtifacts = totalArtifacts;
+    }
+
+    void end(Status status, String error) {
+      this.error = error;
+      this.endedAt = System.nanoTime();
+      this.status = status; // Last, so that whoever sees the end also sees the error.
+    }
+
+    boolean endedBefore(long nanoTime) {
+      return status != Status.RUNNING && endedAt - nanoTime < 0;
+    }
+
+    WizardDeletionDto toDto() {
+      return new WizardDeletionDto(wizardId, status.name(), totalArtifacts, unassignedArtifacts.get(), error);
+    }
+  }
+}
@@ -1,5 +1,27 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.wizard;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
-public interface WizardRepository extends JpaRepository<Wizard, Integer> { }
+import java.time.Instant;
+import java.util.List;
+
+public interface WizardRepository extends JpaRepository<Wizard, Integer> {
+
+  /**
+   * Adds delta to the artifact count of the wizard in a single UPDATE, so that concurrent adjustments never overwrite
+   * each other. Like any artifact joining or leaving, it doesn't increment the wizard's version, but it does set its
+   * last modification: the count is part of the wizard's representation, which If-Modified-Since must not see unchanged.
+   */
+  @Modifying
+  @Query("update Wizard w set w.artifactCount = w.artifactCount + :delta, w.lastModified = :now where w.id = :wizardId")
+  int adjustArtifactCount(Integer wizardId, int delta, Instant now);
+
+  @Query("select w.id from Wizard w where w.artifactCount <> (select count(a) from Artifact a where a.owner = w)")
+  List<Integer> findIdsWithWrongArtifactCount();
+
+  @Modifying
+  @Query("update Wizard w set w.artifactCount = (select count(a) from Artifact a where a.owner = w), w.lastModified = :now where w.id = :wizardId")
+  int recountArtifacts(Integer wizardId, Instant now);
+}
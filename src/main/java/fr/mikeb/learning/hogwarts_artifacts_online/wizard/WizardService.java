@@ -1,21 +1,42 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.wizard;
 
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactCountCache;
 import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactRepository;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactRepository.ArtifactOwnership;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactResponseCache;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.NotFoundException;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.PreconditionFailedException;
 import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional
 public class WizardService {
+  // Ids per UPDATE ... WHERE id IN (...): padded to 1024 bind parameters, far below the limits of the databases.
+  private static final int CHUNK_SIZE = 1_000;
+
   private final WizardRepository wizardRepository;
   private final ArtifactRepository artifactRepository;
+  private final ArtifactCountCache artifactCountCache;
+  private final ArtifactResponseCache artifactResponseCache;
 
-  public WizardService(WizardRepository wizardRepository, ArtifactRepository artifactRepository) {
+  public WizardService(WizardRepository wizardRepository, ArtifactRepository artifactRepository, ArtifactCountCache artifactCountCache, ArtifactResponseCache artifactResponseCache) {
     this.wizardRepository = wizardRepository;
     this.artifactRepository = artifactRepository;
+    this.artifactCountCache = artifactCountCache;
+    this.artifactResponseCache = artifactResponseCache;
   }
 
   public Wizard findById(int wizardId) {
@@ -28,23 +49,55 @@ public class WizardService {
   }
 
   public Wizard save(Wizard wizard) {
+    wizard.setId(null); // Ids are generated, and a new entity with an id would be taken for a detached one
     return wizardRepository.save(wizard);
   }
 
   public Wizard update(int wizardId, Wizard newWizard) {
+    return update(wizardId, newWizard, null);
+  }
+
+  /**
+   * Updates the wizard only if it is still at expectedVersion, unless expectedVersion is null.
+   */
+  public Wizard update(int wizardId, Wizard newWizard, Long expectedVersion) {
     return wizardRepository.findById(wizardId).map(wizard -> {
+      if (expectedVersion != null && !expectedVersion.equals(wizard.getVersion())) {
+        throw new PreconditionFailedException("wizard", wizardId + "");
+      }
       wizard.setName(newWizard.getName());
+      artifactCountCache.invalidate(); // Artifacts can be searched by owner name.
+      artifactResponseCache.invalidateOwner(wizardId); // And show it.
       return wizardRepository.save(wizard);
     }).orElseThrow(() -> new NotFoundException("wizard", wizardId + ""));
   }
 
   public void delete(int wizardId) {
-    var wizardToBeDeleted = wizardRepository.findById(wizardId)
+    wizardRepository.findById(wizardId)
         .orElseThrow(() -> new NotFoundException("wizard", wizardId + ""));
 
-    // Before deletion, we will unassign this wizard's owned artifacts.
-    wizardToBeDeleted.removeAllArtifacts();
+    // Before deletion, we unassign this wizard's owned artifacts, all in one UPDATE.
+    artifactRepository.unassignOwner(wizardId, Instant.now());
     wizardRepository.deleteById(wizardId);
+    artifactCountCache.invalidate();
+    artifactResponseCache.invalidateOwner(wizardId);
+  }
+
+  /**
+   * Unassigns at most chunkSize of the wizard's artifacts, and returns how many. Called in a loop, each call
+   * committing on its own, it empties a wizard with very many artifacts without one long transaction locking them all.
+   */
+  public int unassignArtifacts(int wizardId, int chunkSize) {
+    var artifactIds = artifactRepository.findIdsByOwnerId(wizardId, Limit.of(chunkSize));
+    if (artifactIds.isEmpty()) {
+      return 0;
+    }
+    var now = Instant.now();
+    var unassigned = artifactRepository.unassignOwner(artifactIds, wizardId, now);
+    wizardRepository.adjustArtifactCount(wizardId, -unassigned, now);
+    artifactCountCache.invalidate();
+    artifactResponseCache.invalidateAll(artifactIds, List.of());
+    return unassigned;
   }
 
   public void assignArtifact(int wizardId, String artifactId) {
@@ -57,9 +110,114 @@ public class WizardService {
 
     // Artifact assignment
     // We need to see if the artifact is already owned by some wizard.
+    Integer previousOwnerId = null;
     if (artifact.hasOwner()) {
+      previousOwnerId = artifact.getOwner().getId();
+      artifactResponseCache.invalidateOwner(previousOwnerId);
       artifact.getOwner().removeArtifact(artifact);
     }
     wizard.addArtifact(artifact);
+    var countDeltas = new TreeMap<Integer, Integer>(Map.of(wizardId, 1));
+    if (previousOwnerId != null) {
+      countDeltas.merge(previousOwnerId, -1, Integer::sum);
+    }
+    adjustArtifactCounts(countDeltas, Instant.now());
+    artifactCountCache.invalidate();
+    artifactResponseCache.invalidate(artifactId);
+    artifactResponseCache.invalidateOwner(wizardId);
+  }
+
+  /**
+   * Assigns all the given artifacts to the wizard with a few UPDATEs per chunk of ids, without loading any artifact or
+   * any wizard's artifacts. Returns the number of artifacts that changed owner.
+   */
+  public int assignArtifacts(int wizardId, List<String> artifactIds) {
+    var wizard = wizardRepository.findById(wizardId)
+        .orElseThrow(() -> new NotFoundException("wizard", wizardId + ""));
+
+    var distinctIds = List.copyOf(new LinkedHashSet<>(artifactIds));
+    var countDeltas = new TreeMap<Integer, Integer>();
+    var ownerlessIds = new ArrayList<String>();
+    var now = Instant.now();
+    var assigned = 0;
+    for (int start = 0; start < distinctIds.size(); start += CHUNK_SIZE) {
+      var chunk = distinctIds.subList(start, Math.min(start + CHUNK_SIZE, distinctIds.size()));
+      var ownerships = artifactRepository.findOwnerships(chunk);
+      if (ownerships.size() < chunk.size()) {
+        var foundIds = ownerships.stream().map(ArtifactOwnership::getArtifactId).collect(Collectors.toSet());
+        var missingId = chunk.stream().filter(id -> !foundIds.contains(id)).findFirst().orElseThrow();
+        throw new NotFoundException("artifact", missingId);
+      }
+      while (!ownerships.isEmpty()) {
+        var idsByPreviousOwner = new HashMap<Integer, List<String>>(); // The null key holds the ownerless ones.
+        for (var ownership : ownerships) {
+          if (!Objects.equals(ownership.getOwnerId(), wizardId)) {
+            idsByPreviousOwner.computeIfAbsent(ownership.getOwnerId(), ownerId -> new ArrayList<>()).add(ownership.getArtifactId());
+          }
+        }
+        // Each UPDATE only takes the artifacts from the owner they were read with, so its count is exact without
+        // locking them first. Those that changed hands in between are read again.
+        var changedHands = new ArrayList<String>();
+        for (var entry : idsByPreviousOwner.entrySet()) {
+          var previousOwnerId = entry.getKey();
+          var ids = entry.getValue();
+          int moved;
+          if (previousOwnerId == null) {
+            moved = artifactRepository.assignOwnerless(ids, wizard, now);
+            ownerlessIds.addAll(ids);
+          } else {
+            moved = artifactRepository.assignOwner(ids, previousOwnerId, wizard, now);
+            countDeltas.merge(previousOwnerId, -moved, Integer::sum);
+          }
+          assigned += moved;
+          if (moved < ids.size()) {
+            changedHands.addAll(ids);
+          }
+        }
+        ownerships = changedHands.isEmpty() ? List.of() : artifactRepository.findOwnerships(changedHands);
+      }
+    }
+    var previousOwnerIds = List.copyOf(countDeltas.keySet());
+    countDeltas.merge(wizardId, assigned, Integer::sum);
+    adjustArtifactCounts(countDeltas, now);
+
+    artifactCountCache.invalidate();
+    var invalidatedOwnerIds = new ArrayList<>(previousOwnerIds);
+    invalidatedOwnerIds.add(wizardId);
+    artifactResponseCache.invalidateAll(ownerlessIds, invalidatedOwnerIds);
+    return assigned;
+  }
+
+  /**
+   * Gives all the artifacts of a wizard to another in a single UPDATE. Returns the number of artifacts transferred.
+   */
+  public int transferArtifacts(int fromWizardId, int toWizardId) {
+    var fromWizard = wizardRepository.findById(fromWizardId)
+        .orElseThrow(() -> new NotFoundException("wizard", fromWizardId + ""));
+    var toWizard = wizardRepository.findById(toWizardId)
+        .orElseThrow(() -> new NotFoundException("wizard", toWizardId + ""));
+    if (fromWizardId == toWizardId) {
+      return 0;
+    }
+
+    var now = Instant.now();
+    var transferred = artifactRepository.transferOwner(fromWizard, toWizard, now);
+    adjustArtifactCounts(new TreeMap<>(Map.of(fromWizardId, -transferred, toWizardId, transferred)), now);
+
+    artifactCountCache.invalidate();
+    artifactResponseCache.invalidateAll(List.of(), List.of(fromWizardId, toWizardId));
+    return transferred;
+  }
+
+  /**
+   * Applies the artifact count deltas in wizard id order, so that concurrent reassignments lock the wizard rows in the
+   * same order and can't deadlock.
+   */
+  private void adjustArtifactCounts(SortedMap<Integer, Integer> countDeltas, Instant now) {
+    countDeltas.forEach((wizardId, delta) -> {
+      if (delta != 0) {
+        wizardRepository.adjustArtifactCount(wizardId, delta, now);
+      }
+    });
   }
 }
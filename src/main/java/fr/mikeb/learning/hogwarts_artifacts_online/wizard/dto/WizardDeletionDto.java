@@ -0,0 +1,8 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.wizard.dto;
+
+public record WizardDeletionDto(Integer wizardId,
+                                String status, // RUNNING, DONE or FAILED
+                                long totalArtifacts, // the wizard's number of artifacts when the deletion started
+                                long unassignedArtifacts,
+                                String error // null unless FAILED
+) {}
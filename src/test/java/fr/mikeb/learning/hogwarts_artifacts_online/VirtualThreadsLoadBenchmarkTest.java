@@ -0,0 +1,177 @@
+package fr.mikeb.learning.hogwarts_artifacts_online;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Fires 2k concurrent mixed requests at the application served by platform threads, then by virtual threads.
+ * Half of them are /artifacts/summary calls to a stub LLM that answers after LLM_LATENCY: with platform threads,
+ * they end up holding all the Tomcat threads while the other requests queue behind them.
+ * The server, the stub and the clients share the JVM, whose heap also holds the stacks of the virtual threads.
+ * Run it with: mvn test -Pbenchmark -Dtest=VirtualThreadsLoadBenchmarkTest -DargLine=-Xmx1g
+ */
+@Tag("benchmark")
+@DisplayName("Benchmark of platform vs. virtual request threads under a mixed load.")
+class VirtualThreadsLoadBenchmarkTest {
+  static final int CONCURRENT_REQUESTS = 2_000;
+  static final int WARM_UP_REQUESTS = 200;
+  static final Duration LLM_LATENCY = Duration.ofSeconds(10);
+  static final String CHAT_RESPONSE = """
+      {"id":"chatcmpl-1","object":"chat.completion","created":1,"model":"gpt-3.5-turbo",
+      "choices":[{"index":0,"message":{"role":"assistant","content":"A summary."},"finish_reason":"stop"}]}""";
+
+  HttpServer llmStub;
+  HttpClient httpClient;
+
+  record RunResult(String mode, long elapsedMillis, int errors, long p50Millis, long p99Millis, double pinnedEvents) {
+    long requestsPerSecond() {
+      return CONCURRENT_REQUESTS * 1000L / elapsedMillis;
+    }
+  }
+
+  @BeforeEach
+  void setUp() throws Exception {
+    llmStub = HttpServer.create(new InetSocketAddress("localhost", 0), CONCURRENT_REQUESTS);
+    llmStub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    llmStub.createContext("/v1/chat/completions", exchange -> {
+      exchange.getRequestBody().readAllBytes();
+      try {
+        Thread.sleep(LLM_LATENCY);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      var body = CHAT_RESPONSE.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (var responseBody = exchange.getResponseBody()) {
+        responseBody.write(body);
+      }
+    });
+    llmStub.start();
+    httpClient = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .executor(Executors.newVirtualThreadPerTaskExecutor())
+        .build();
+  }
+
+  @AfterEach
+  void tearDown() {
+    httpClient.close();
+    llmStub.stop(0);
+  }
+
+  @Test
+  void benchmarkPlatformVsVirtualThreads() throws Exception {
+    var platform = run(false);
+    var virtual = run(true);
+
+    for (var result : new RunResult[]{platform, virtual}) {
+      System.out.printf("%-8s threads: %d requests in %d ms (%d req/s), p50 %d ms, p99 %d ms, %d errors, %.0f pinned virtual threads%n",
+          result.mode(), CONCURRENT_REQUESTS, result.elapsedMillis(), result.requestsPerSecond(),
+          result.p50Millis(), result.p99Millis(), result.errors(), result.pinnedEvents());
+    }
+    assertThat(virtual.errors()).isZero();
+    assertThat(virtual.requestsPerSecond()).isGreaterThan(platform.requestsPerSecond() * 5 / 4);
+  }
+
+  RunResult run(boolean virtualThreads) throws Exception {
+    var mode = virtualThreads ? "virtual" : "platform";
+    try (var context = new SpringApplicationBuilder(HogwartsArtifactsOnlineApplication.class)
+        .profiles("dev")
+        .run(
+            "--server.port=0",
+            "--server.tomcat.accept-count=" + CONCURRENT_REQUESTS,
+            "--spring.threads.virtual.enabled=" + virtualThreads,
+            "--spring.datasource.url=jdbc:h2:mem:load-" + mode,
+            "--spring.jpa.show-sql=false",
+            "--management.tracing.enabled=false",
+            "--ai.openai.endpoint=http://localhost:" + llmStub.getAddress().getPort() + "/v1/chat/completions",
+            "--logging.level.root=warn")) {
+      var baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+          + context.getEnvironment().getProperty("api.endpoint.base-url");
+
+      fire(baseUrl, new long[WARM_UP_REQUESTS], new AtomicInteger());
+
+      var latencies = new long[CONCURRENT_REQUESTS];
+      var errors = new AtomicInteger();
+      var elapsedMillis = fire(baseUrl, latencies, errors);
+
+      Arrays.sort(latencies);
+      var pinnedEvents = context.getBean(MeterRegistry.class).find("jvm.threads.virtual.pinned").counters().stream()
+          .mapToDouble(Counter::count).sum();
+      return new RunResult(mode, elapsedMillis, errors.get(), latencies[CONCURRENT_REQUESTS / 2],
+          latencies[CONCURRENT_REQUESTS * 99 / 100], pinnedEvents);
+    }
+  }
+
+  /**
+   * Sends latencies.length requests at once, each from its own virtual thread, and waits for all the responses.
+   */
+  long fire(String baseUrl, long[] latencies, AtomicInteger errors) throws InterruptedException {
+    var ready = new CountDownLatch(latencies.length);
+    var go = new CountDownLatch(1);
+    long start;
+    try (var clients = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < latencies.length; i++) {
+        int index = i;
+        clients.submit(() -> {
+          var request = request(baseUrl, index);
+          ready.countDown();
+          go.await();
+          var sent = System.nanoTime();
+          try {
+            var response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 200) {
+              errors.incrementAndGet();
+            }
+          } catch (Exception e) {
+            errors.incrementAndGet();
+          }
+          latencies[index] = (System.nanoTime() - sent) / 1_000_000;
+          return null;
+        });
+      }
+      ready.await();
+      start = System.nanoTime();
+      go.countDown();
+    } // Waits for all the requests.
+    return (System.nanoTime() - start) / 1_000_000;
+  }
+
+  /**
+   * The mix: 50% summaries waiting on the LLM, 20% pages, 10% searches and 20% single artifact reads.
+   */
+  static HttpRequest request(String baseUrl, int index) {
+    var timeout = Duration.ofMinutes(2);
+    return switch (index % 10) {
+      case 0, 1, 2, 3, 4 -> HttpRequest.newBuilder(URI.create(baseUrl + "/artifacts/summary")).timeout(timeout).build();
+      case 5, 6 -> HttpRequest.newBuilder(URI.create(baseUrl + "/artifacts?page=0&size=5")).timeout(timeout).build();
+      case 7 -> HttpRequest.newBuilder(URI.create(baseUrl + "/artifacts/search"))
+          .header("Content-Type", "application/json")
+          .POST(HttpRequest.BodyPublishers.ofString("{\"description\":\"cloak\"}"))
+          .timeout(timeout).build();
+      default -> HttpRequest.newBuilder(URI.create(baseUrl + "/artifacts/125080860174490419" + (1 + index % 6))).timeout(timeout).build();
+    };
+  }
+}
@@ -0,0 +1,70 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.dto.ArtifactDto;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+
+/**
+ * Compares the throughput of POST /artifacts (one artifact per request) with POST /artifacts/bulk.
+ * Run it with: mvn test -Pbenchmark -Dtest=ArtifactBulkBenchmarkTest
+ */
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+@AutoConfigureMockMvc(addFilters = false) // Turn off spring security
+@Tag("benchmark")
+@DisplayName("Benchmark of single vs. bulk artifact creation.")
+@ActiveProfiles(value = "dev")
+class ArtifactBulkBenchmarkTest {
+  static final int SINGLE_ITEMS = 2_000;
+  static final int BULK_ITEMS = 50_000;
+
+  @Autowired
+  MockMvc mockMvc;
+  @Autowired
+  ObjectMapper objectMapper;
+  @Autowired
+  ArtifactRepository artifactRepository;
+  @Value("${api.endpoint.base-url}")
+  String baseUrl;
+
+  @Test
+  void benchmarkSingleVsBulkCreation() throws Exception {
+    var countBefore = artifactRepository.count();
+
+    var start = System.nanoTime();
+    for (int i = 0; i < SINGLE_ITEMS; i++) {
+      mockMvc.perform(post(baseUrl + "/artifacts").contentType(MediaType.APPLICATION_JSON).content(json(i)))
+          .andExpect(jsonPath("$.flag").value(true));
+    }
+    var singlePerSecond = SINGLE_ITEMS * 1_000_000_000L / (System.nanoTime() - start);
+
+    var body = new StringBuilder();
+    for (int i = 0; i < BULK_ITEMS; i++) {
+      body.append(json(SINGLE_ITEMS + i)).append('\n');
+    }
+    start = System.nanoTime();
+    mockMvc.perform(post(baseUrl + "/artifacts/bulk").contentType(MediaType.APPLICATION_NDJSON).content(body.toString()))
+        .andExpect(jsonPath("$.flag").value(true));
+    var bulkPerSecond = BULK_ITEMS * 1_000_000_000L / (System.nanoTime() - start);
+
+    System.out.printf("Single: %d artifacts/s, bulk: %d artifacts/s (x%d)%n", singlePerSecond, bulkPerSecond, bulkPerSecond / singlePerSecond);
+    assertThat(artifactRepository.count()).isEqualTo(countBefore + SINGLE_ITEMS + BULK_ITEMS);
+    assertThat(bulkPerSecond).isGreaterThanOrEqualTo(20 * singlePerSecond);
+  }
+
+  private String json(int i) throws Exception {
+    return objectMapper.writeValueAsString(new ArtifactDto(null, "Artifact " + i, "Description " + i, "ImageUrl", null));
+  }
+}
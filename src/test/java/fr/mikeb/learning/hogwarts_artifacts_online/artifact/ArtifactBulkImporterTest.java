@@ -0,0 +1,51 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.converter.ArtifactDtoToArtifactConverter;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.dto.ArtifactDto;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.dto.BulkItemResult;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+class ArtifactBulkImporterTest {
+  @Mock
+  ArtifactService artifactService;
+
+  @Test
+  void testFailingChunkIsReportedWithTheOthers() {
+    // Given - chunks of 2, the second one failing
+    var artifactBulkImporter = new ArtifactBulkImporter(artifactService, new ArtifactDtoToArtifactConverter(),
+        Validation.buildDefaultValidatorFactory().getValidator(), 2);
+    var artifactDtos = IntStream.range(0, 5)
+        .mapToObj(i -> new ArtifactDto(null, "Artifact " + i, "Description", "ImageUrl", null))
+        .toList();
+    given(artifactService.saveAll(Mockito.anyList())).willAnswer(invocation -> {
+      List<Artifact> newArtifacts = invocation.getArgument(0);
+      if (newArtifacts.getFirst().getName().equals("Artifact 2")) {
+        throw new DataIntegrityViolationException("Duplicate entry");
+      }
+      newArtifacts.forEach(artifact -> artifact.setId("id of " + artifact.getName()));
+      return newArtifacts;
+    });
+
+    // When
+    var results = artifactBulkImporter.importAll(artifactDtos.iterator());
+
+    // Then
+    assertThat(results).extracting(BulkItemResult::index).containsExactly(0, 1, 2, 3, 4);
+    assertThat(results).extracting(BulkItemResult::success).containsExactly(true, true, false, false, true);
+    assertThat(results).extracting(BulkItemResult::id).containsExactly("id of Artifact 0", "id of Artifact 1", null, null, "id of Artifact 4");
+    assertThat(results.get(2).errors().get("chunk")).contains("Duplicate entry");
+  }
+}
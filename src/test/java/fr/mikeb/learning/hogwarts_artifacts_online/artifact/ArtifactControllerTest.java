@@ -2,7 +2,10 @@ package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.mikeb.learning.hogwarts_artifacts_online.artifact.dto.ArtifactDto;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.CursorPage;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.StatusCode;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.InvalidCursorException;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.InvalidSearchQueryException;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.NotFoundException;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,25 +19,37 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.util.LinkedMultiValueMap;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@SpringBootTest
+@SpringBootTest(properties = "artifact.response-cache.gzip=true")
 @AutoConfigureMockMvc(addFilters = false) // Turn off spring security
 @ActiveProfiles(value = "dev")
 class ArtifactControllerTest {
@@ -42,7 +57,10 @@ class ArtifactControllerTest {
   MockMvc mockMvc;
   @MockBean
   ArtifactService artifactService;
+  @Autowired
+  ArtifactResponseCache artifactResponseCache;
   List<Artifact> artifacts;
+  List<ArtifactView> artifactViews;
   @Autowired
   ObjectMapper objectMapper;
   @Value("${api.endpoint.base-url}")
@@ -50,6 +68,8 @@ class ArtifactControllerTest {
 
   @BeforeEach
   void setUp() {
+    // The context, and so the cached responses, are shared by the tests, which reuse the same ids.
+    artifactResponseCache.clear();
     this.artifacts = new ArrayList<>();
 
     Artifact a1 = new Artifact();
@@ -93,12 +113,16 @@ class ArtifactControllerTest {
     a6.setDescription("The Resurrection Stone allows the holder to bring back deceased loved ones, in a semi-physical form, and communicate with them.");
     a6.setImgUrl("ImageUrl");
     this.artifacts.add(a6);
+
+    this.artifactViews = this.artifacts.stream()
+        .map(artifact -> new ArtifactView(artifact.getId(), artifact.getName(), artifact.getDescription(), artifact.getImgUrl(), null, null, 0L))
+        .toList();
   }
 
   @Test
   void testFindArtifactByIdSuccess() throws Exception {
     // Given
-    given(artifactService.findById("1250808601744904191")).willReturn(artifacts.getFirst());
+    given(artifactService.findViewById("1250808601744904191")).willReturn(artifactViews.getFirst());
 
     // When and then
     mockMvc.perform(get(baseUrl + "/artifacts/1250808601744904191").accept(MediaType.APPLICATION_JSON))
@@ -109,10 +133,93 @@ class ArtifactControllerTest {
         .andExpect(jsonPath("$.data.name").value("Deluminator"));
   }
 
+  @Test
+  void testFindArtifactByIdNotModified() throws Exception {
+    // Given
+    var lastModified = Instant.parse("2024-10-01T10:15:30Z");
+    var artifactView = new ArtifactView("1250808601744904191", "Deluminator", "A Deluminator is a device invented by Albus Dumbledore.", "ImageUrl", 1, "Albus Dumbledore", 2L, 3L, lastModified, 5L, lastModified.minusSeconds(60));
+    given(artifactService.findViewById("1250808601744904191")).willReturn(artifactView);
+
+    // When and then - the first read returns the validators, the second one sends the ETag back
+    var eTag = mockMvc.perform(get(baseUrl + "/artifacts/1250808601744904191").accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"3.1.5.2\""))
+        .andExpect(header().dateValue(HttpHeaders.LAST_MODIFIED, lastModified.toEpochMilli()))
+        .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=10, must-revalidate, public"))
+        .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    mockMvc.perform(get(baseUrl + "/artifacts/1250808601744904191").header(HttpHeaders.IF_NONE_MATCH, eTag).accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isNotModified())
+        .andExpect(content().string(""));
+  }
+
+  @Test
+  void testFindArtifactByIdTagsEachEncoding() throws Exception {
+    // Given
+    var artifactView = new ArtifactView("1250808601744904191", "Deluminator", "A Deluminator is a device invented by Albus Dumbledore.", "ImageUrl", 1, "Albus Dumbledore", 2L, 3L, Instant.now(), 5L, null);
+    given(artifactService.findViewById("1250808601744904191")).willReturn(artifactView);
+
+    // When and then - the compressed bytes get their own tag
+    mockMvc.perform(get(baseUrl + "/artifacts/1250808601744904191").header(HttpHeaders.ACCEPT_ENCODING, "gzip").accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+        .andExpect(header().string(HttpHeaders.ETAG, "\"3.1.5.2-gz\""))
+        .andExpect(header().stringValues(HttpHeaders.VARY, Matchers.hasItem(HttpHeaders.ACCEPT_ENCODING)));
+    mockMvc.perform(get(baseUrl + "/artifacts/1250808601744904191").accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+        .andExpect(header().string(HttpHeaders.ETAG, "\"3.1.5.2\""));
+
+    // And - a copy cached in either encoding is still valid
+    mockMvc.perform(get(baseUrl + "/artifacts/1250808601744904191").header(HttpHeaders.IF_NONE_MATCH, "\"3.1.5.2\"").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"3.1.5.2\""));
+    mockMvc.perform(get(baseUrl + "/artifacts/1250808601744904191").header(HttpHeaders.IF_NONE_MATCH, "\"3.1.5.2-gz\""))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"3.1.5.2-gz\""));
+    mockMvc.perform(get(baseUrl + "/artifacts/1250808601744904191").header(HttpHeaders.IF_NONE_MATCH, "\"2.1.5.2-gz\"").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+        .andExpect(status().isOk());
+  }
+
+  @Test
+  void testFindArtifactByIdHonorsRefusedEncodings() throws Exception {
+    // Given
+    var artifactView = new ArtifactView("1250808601744904191", "Deluminator", "A Deluminator is a device invented by Albus Dumbledore.", "ImageUrl", 1, "Albus Dumbledore", 2L, 3L, Instant.now(), 5L, null);
+    given(artifactService.findViewById("1250808601744904191")).willReturn(artifactView);
+
+    // When and then - gzip refused with a zero quality, then accepted through the wildcard or with a lower quality
+    for (var refused : new String[]{"gzip;q=0", "identity, gzip;q=0", "br, gzip; Q=0.000", "*;q=0"}) {
+      mockMvc.perform(get(baseUrl + "/artifacts/1250808601744904191").header(HttpHeaders.ACCEPT_ENCODING, refused).accept(MediaType.APPLICATION_JSON))
+          .andExpect(status().isOk())
+          .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+          .andExpect(header().string(HttpHeaders.ETAG, "\"3.1.5.2\""));
+    }
+    for (var accepted : new String[]{"deflate, GZIP;q=0.5", "*", "gzip;q=1, *;q=0"}) {
+      mockMvc.perform(get(baseUrl + "/artifacts/1250808601744904191").header(HttpHeaders.ACCEPT_ENCODING, accepted).accept(MediaType.APPLICATION_JSON))
+          .andExpect(status().isOk())
+          .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+    }
+  }
+
+  @Test
+  void testFindArtifactByIdServesCachedResponse() throws Exception {
+    // Given
+    given(artifactService.findViewById("1250808601744904191")).willReturn(artifactViews.getFirst());
+    var firstBody = mockMvc.perform(get(baseUrl + "/artifacts/1250808601744904191").accept(MediaType.APPLICATION_JSON))
+        .andReturn().getResponse().getContentAsString();
+
+    // When and then - the second read returns the same bytes without reading the artifact again
+    mockMvc.perform(get(baseUrl + "/artifacts/1250808601744904191").accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+        .andExpect(content().string(firstBody))
+        .andExpect(jsonPath("$.data.name").value("Deluminator"));
+    verify(artifactService, times(1)).findViewById("1250808601744904191");
+  }
+
   @Test
   void testFindArtifactByIdNotFound() throws Exception {
     // Given
-    given(artifactService.findById("1250808601744904191")).willThrow(new NotFoundException("artifact", "1250808601744904191"));
+    given(artifactService.findViewById("1250808601744904191")).willThrow(new NotFoundException("artifact", "1250808601744904191"));
 
     // When and then
     mockMvc.perform(get(baseUrl + "/artifacts/1250808601744904191").accept(MediaType.APPLICATION_JSON))
@@ -126,7 +233,7 @@ class ArtifactControllerTest {
   void testFindAllArtifactsSuccess() throws Exception {
     // Given
     var page = PageRequest.of(0, 20);
-    var artifactPage = new PageImpl<>(artifacts, page, artifacts.size());
+    var artifactPage = new PageImpl<>(artifactViews, page, artifactViews.size());
     given(artifactService.findAll(Mockito.any(Pageable.class))).willReturn(artifactPage);
 
     var requestParams = new LinkedMultiValueMap<String, String>();
@@ -138,13 +245,82 @@ class ArtifactControllerTest {
         .andExpect(jsonPath("$.flag").value(true))
         .andExpect(jsonPath("$.code").value(StatusCode.SUCCESS))
         .andExpect(jsonPath("$.message").value("Find All Success"))
-        .andExpect(jsonPath("$.data.content", Matchers.hasSize(artifacts.size())))
+        .andExpect(jsonPath("$.data.content", Matchers.hasSize(artifactViews.size())))
         .andExpect(jsonPath("$.data.content[0].id").value("1250808601744904191"))
         .andExpect(jsonPath("$.data.content[0].name").value("Deluminator"))
         .andExpect(jsonPath("$.data.content[1].id").value("1250808601744904192"))
         .andExpect(jsonPath("$.data.content[1].name").value("Invisibility Cloak"));
   }
 
+  @Test
+  void testFindAllArtifactsWithoutCountSuccess() throws Exception {
+    // Given
+    var slice = new SliceImpl<>(artifactViews.subList(0, 2), PageRequest.of(0, 2), true);
+    given(artifactService.findAllSlice(Mockito.any(Pageable.class))).willReturn(slice);
+
+    var requestParams = new LinkedMultiValueMap<String, String>();
+    requestParams.add("count", "false");
+    requestParams.add("size", "2");
+
+    // When and then
+    mockMvc.perform(get(baseUrl + "/artifacts").accept(MediaType.APPLICATION_JSON).params(requestParams))
+        .andExpect(jsonPath("$.flag").value(true))
+        .andExpect(jsonPath("$.code").value(StatusCode.SUCCESS))
+        .andExpect(jsonPath("$.message").value("Find All Success"))
+        .andExpect(jsonPath("$.data.content", Matchers.hasSize(2)))
+        .andExpect(jsonPath("$.data.last").value(false))
+        .andExpect(jsonPath("$.data.totalElements").doesNotExist());
+    verify(artifactService, never()).findAll(Mockito.any(Pageable.class));
+  }
+
+  @Test
+  void testFindAllArtifactsByCursorSuccess() throws Exception {
+    // Given
+    var cursorPage = new CursorPage<>(artifactViews.subList(0, 2), 2, true, "next-cursor");
+    given(artifactService.findAll(eq(""), Mockito.any(Pageable.class))).willReturn(cursorPage);
+
+    var requestParams = new LinkedMultiValueMap<String, String>();
+    requestParams.add("after", "");
+    requestParams.add("size", "2");
+
+    // When and then
+    mockMvc.perform(get(baseUrl + "/artifacts").accept(MediaType.APPLICATION_JSON).params(requestParams))
+        .andExpect(jsonPath("$.flag").value(true))
+        .andExpect(jsonPath("$.code").value(StatusCode.SUCCESS))
+        .andExpect(jsonPath("$.message").value("Find All Success"))
+        .andExpect(jsonPath("$.data.content", Matchers.hasSize(2)))
+        .andExpect(jsonPath("$.data.content[0].id").value("1250808601744904191"))
+        .andExpect(jsonPath("$.data.hasNext").value(true))
+        .andExpect(jsonPath("$.data.nextCursor").value("next-cursor"));
+  }
+
+  @Test
+  void testFindAllArtifactsByCursorErrorWithInvalidCursor() throws Exception {
+    // Given
+    given(artifactService.findAll(eq("bad"), Mockito.any(Pageable.class)))
+        .willThrow(new InvalidCursorException("The provided cursor is malformed."));
+
+    // When and then
+    mockMvc.perform(get(baseUrl + "/artifacts").param("after", "bad").accept(MediaType.APPLICATION_JSON))
+        .andExpect(jsonPath("$.flag").value(false))
+        .andExpect(jsonPath("$.code").value(StatusCode.INVALID_ARGUMENT))
+        .andExpect(jsonPath("$.message").value("The provided cursor is malformed."));
+  }
+
+  @Test
+  void testFindArtifactsByCriteriaErrorWithInvalidQuery() throws Exception {
+    // Given
+    given(artifactService.findByCriteria(Mockito.anyMap(), Mockito.any(Pageable.class)))
+        .willThrow(new InvalidSearchQueryException("Expected =, ^= or ~ but found 'cloak' at position 10 of the search query."));
+
+    // When and then
+    mockMvc.perform(post(baseUrl + "/artifacts/search").contentType(MediaType.APPLICATION_JSON).content("{\"q\": \"name cloak\"}").accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.flag").value(false))
+        .andExpect(jsonPath("$.code").value(StatusCode.INVALID_ARGUMENT))
+        .andExpect(jsonPath("$.message").value("Expected =, ^= or ~ but found 'cloak' at position 10 of the search query."));
+  }
+
   @Test
   void testSummarizeArtifacts() throws Exception {
     // Given
@@ -159,6 +335,28 @@ class ArtifactControllerTest {
         .andExpect(jsonPath("$.data").value("The summary includes six artifacts, owned by three different wizards."));
   }
 
+  @Test
+  void testExportArtifactsStreamsOneJsonObjectPerLine() throws Exception {
+    // Given
+    Mockito.doAnswer(invocation -> {
+      Consumer<ArtifactView> action = invocation.getArgument(0);
+      artifactViews.forEach(action);
+      return null;
+    }).when(artifactService).exportAll(Mockito.any());
+
+    // When
+    var body = mockMvc.perform(get(baseUrl + "/artifacts/export").accept(MediaType.APPLICATION_NDJSON))
+        .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+        .andReturn().getResponse().getContentAsString();
+
+    // Then
+    var lines = body.lines().toList();
+    assertThat(lines).hasSize(artifactViews.size());
+    var first = objectMapper.readValue(lines.getFirst(), ArtifactDto.class);
+    assertThat(first.id()).isEqualTo("1250808601744904191");
+    assertThat(first.name()).isEqualTo("Deluminator");
+  }
+
   @Test
   void testAddArtifactSuccess() throws Exception {
     // Given
@@ -188,6 +386,52 @@ class ArtifactControllerTest {
         .andExpect(jsonPath("$.data.imgUrl").value(savedArtifact.getImgUrl()));
   }
 
+  @Test
+  void testAddArtifactsInBulkReportsEachItem() throws Exception {
+    // Given
+    var artifactDtos = List.of(
+        new ArtifactDto(null, "Remembrall", "A Remembrall was a magical large marble-sized glass ball.", "ImageUrl", null),
+        new ArtifactDto(null, "", "A nameless artifact.", "ImageUrl", null),
+        new ArtifactDto(null, "Time-Turner", "A Time-Turner is a magical hourglass used for time travel.", "ImageUrl", null)
+    );
+    given(artifactService.saveAll(Mockito.anyList())).willAnswer(invocation -> {
+      List<Artifact> newArtifacts = invocation.getArgument(0);
+      for (int i = 0; i < newArtifacts.size(); i++) {
+        newArtifacts.get(i).setId("125080860174490420" + i);
+      }
+      return newArtifacts;
+    });
+
+    // When and then
+    mockMvc.perform(post(baseUrl + "/artifacts/bulk").contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(artifactDtos)).accept(MediaType.APPLICATION_JSON))
+        .andExpect(jsonPath("$.flag").value(true))
+        .andExpect(jsonPath("$.code").value(StatusCode.SUCCESS))
+        .andExpect(jsonPath("$.message").value("Bulk Add Success"))
+        .andExpect(jsonPath("$.data", Matchers.hasSize(3)))
+        .andExpect(jsonPath("$.data[0].success").value(true))
+        .andExpect(jsonPath("$.data[0].id").value("1250808601744904200"))
+        .andExpect(jsonPath("$.data[1].index").value(1))
+        .andExpect(jsonPath("$.data[1].success").value(false))
+        .andExpect(jsonPath("$.data[1].errors.name").value("name is required."))
+        .andExpect(jsonPath("$.data[2].id").value("1250808601744904201"));
+  }
+
+  @Test
+  void testAddArtifactsInBulkFromNdjson() throws Exception {
+    // Given
+    var body = objectMapper.writeValueAsString(new ArtifactDto(null, "Remembrall", "A Remembrall was a magical large marble-sized glass ball.", "ImageUrl", null))
+        + "\n" + objectMapper.writeValueAsString(new ArtifactDto(null, "Time-Turner", "A Time-Turner is a magical hourglass used for time travel.", "ImageUrl", null))
+        + "\n";
+    given(artifactService.saveAll(Mockito.anyList())).willAnswer(invocation -> invocation.getArgument(0));
+
+    // When and then
+    mockMvc.perform(post(baseUrl + "/artifacts/bulk").contentType(MediaType.APPLICATION_NDJSON).content(body).accept(MediaType.APPLICATION_JSON))
+        .andExpect(jsonPath("$.flag").value(true))
+        .andExpect(jsonPath("$.data", Matchers.hasSize(2)))
+        .andExpect(jsonPath("$.data[1].index").value(1))
+        .andExpect(jsonPath("$.data[1].success").value(true));
+  }
+
   @Test
   void testUpdateArtifactSuccess() throws Exception {
     // Given
@@ -204,7 +448,9 @@ class ArtifactControllerTest {
     updatedArtifact.setDescription("A new description.");
     updatedArtifact.setImgUrl("ImageUrl");
 
-    given(artifactService.update(eq("1250808601744904192"), Mockito.any(Artifact.class))).willReturn(updatedArtifact);
+    given(artifactService.update(eq("1250808601744904192"), Mockito.any(Artifact.class), Mockito.isNull())).willReturn(updatedArtifact);
+    given(artifactService.findViewById("1250808601744904192"))
+        .willReturn(new ArtifactView("1250808601744904192", "Remembrall", "A new description.", "ImageUrl", null, null, null, 1L, Instant.now(), null, null));
 
     // When and then
     mockMvc.perform(put(baseUrl + "/artifacts/1250808601744904192").contentType(MediaType.APPLICATION_JSON).content(json).accept(MediaType.APPLICATION_JSON))
@@ -212,7 +458,39 @@ class ArtifactControllerTest {
         .andExpect(jsonPath("$.code").value(StatusCode.SUCCESS))
         .andExpect(jsonPath("$.message").value("Update Success"))
         .andExpect(jsonPath("$.data.id").value(updatedArtifact.getId()))
-        .andExpect(jsonPath("$.data.description").value(updatedArtifact.getDescription()));
+        .andExpect(jsonPath("$.data.description").value(updatedArtifact.getDescription()))
+        .andExpect(header().string(HttpHeaders.ETAG, "\"1...\""));
+  }
+
+  @Test
+  void testUpdateArtifactErrorWithStaleIfMatch() throws Exception {
+    // Given
+    var artifactDto = new ArtifactDto(null, "Remembrall", "A new description.", "ImageUrl", null);
+    given(artifactService.findViewById("1250808601744904192"))
+        .willReturn(new ArtifactView("1250808601744904192", "Remembrall", "An old description.", "ImageUrl", null, null, null, 2L, Instant.now(), null, null));
+
+    // When and then - the client read version 1, the artifact is at version 2
+    mockMvc.perform(put(baseUrl + "/artifacts/1250808601744904192").contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(artifactDto))
+            .header(HttpHeaders.IF_MATCH, "\"1...\"").accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isPreconditionFailed())
+        .andExpect(jsonPath("$.flag").value(false))
+        .andExpect(jsonPath("$.code").value(StatusCode.PRECONDITION_FAILED));
+    verify(artifactService, never()).update(Mockito.any(), Mockito.any(), Mockito.any());
+  }
+
+  @Test
+  void testUpdateArtifactErrorWithConcurrentUpdate() throws Exception {
+    // Given - no If-Match, and another update committed between the read and the write
+    var artifactDto = new ArtifactDto(null, "Remembrall", "A new description.", "ImageUrl", null);
+    given(artifactService.update(eq("1250808601744904192"), Mockito.any(Artifact.class), Mockito.isNull()))
+        .willThrow(new ObjectOptimisticLockingFailureException(Artifact.class, "1250808601744904192"));
+
+    // When and then
+    mockMvc.perform(put(baseUrl + "/artifacts/1250808601744904192").contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(artifactDto))
+            .accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isConflict())
+        .andExpect(jsonPath("$.flag").value(false))
+        .andExpect(jsonPath("$.code").value(StatusCode.CONFLICT));
   }
 
   @Test
@@ -225,7 +503,7 @@ class ArtifactControllerTest {
         null);
     String json = objectMapper.writeValueAsString(artifactDto);
 
-    given(artifactService.update(eq("1250808601744904192"), Mockito.any(Artifact.class)))
+    given(artifactService.update(eq("1250808601744904192"), Mockito.any(Artifact.class), Mockito.isNull()))
         .willThrow(new NotFoundException("artifact", "1250808601744904192"));
 
     // When and then
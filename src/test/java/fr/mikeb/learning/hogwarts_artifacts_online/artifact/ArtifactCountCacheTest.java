@@ -0,0 +1,119 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArtifactCountCacheTest {
+  ArtifactQuery filter = ArtifactSearch.parse("name ~ cloak").filter();
+  AtomicInteger counts = new AtomicInteger();
+  LongSupplier count = () -> {
+    counts.incrementAndGet();
+    return 42;
+  };
+
+  @Test
+  void testTotalIsCountedOnceUntilInvalidated() {
+    // Given
+    var artifactCountCache = new ArtifactCountCache(new SimpleAsyncTaskExecutor(), false, Duration.ofMinutes(1));
+
+    // When
+    var first = artifactCountCache.total(filter, count).getAsLong();
+    var second = artifactCountCache.total(filter, count).getAsLong();
+    artifactCountCache.invalidate();
+    var third = artifactCountCache.total(filter, count).getAsLong();
+
+    // Then
+    assertThat(first).isEqualTo(second).isEqualTo(third).isEqualTo(42);
+    assertThat(counts).hasValue(2);
+  }
+
+  @Test
+  void testCriteriaDifferingByOrderOrCaseShareATotal() {
+    // Given
+    var artifactCountCache = new ArtifactCountCache(new SimpleAsyncTaskExecutor(), false, Duration.ofMinutes(1));
+    var criteria = new LinkedHashMap<String, String>();
+    criteria.put("name", "Cloak");
+    criteria.put("ownerName", "Harry Potter");
+    var otherCriteria = new LinkedHashMap<String, String>();
+    otherCriteria.put("ownerName", "harry potter");
+    otherCriteria.put("name", "cloak");
+
+    // When
+    artifactCountCache.total(ArtifactSearch.of(criteria).filter(), count).getAsLong();
+    artifactCountCache.total(ArtifactSearch.of(otherCriteria).filter(), count).getAsLong();
+    artifactCountCache.total(ArtifactSearch.of(criteria).and(new ArtifactQuery.HasOwner()).filter(), count).getAsLong();
+
+    // Then
+    assertThat(counts).hasValue(2);
+  }
+
+  @Test
+  void testInvalidationWaitsForTheCommit() {
+    // Given
+    var artifactCountCache = new ArtifactCountCache(new SimpleAsyncTaskExecutor(), false, Duration.ofMinutes(1));
+    artifactCountCache.total(filter, count).getAsLong();
+
+    // When - a write invalidates inside a transaction
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      artifactCountCache.invalidate();
+      artifactCountCache.total(filter, count).getAsLong();
+      assertThat(counts).hasValue(1);
+      TransactionSynchronizationUtils.triggerAfterCommit();
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    artifactCountCache.total(filter, count).getAsLong();
+
+    // Then
+    assertThat(counts).hasValue(2);
+  }
+
+  @Test
+  void testTotalCountedWhileAWriteCommitsIsNotServed() {
+    // Given
+    var artifactCountCache = new ArtifactCountCache(new SimpleAsyncTaskExecutor(), false, Duration.ofMinutes(1));
+
+    // When - the count may have missed the write
+    var total = artifactCountCache.total(filter, count);
+    artifactCountCache.invalidate();
+    total.getAsLong();
+    artifactCountCache.total(filter, count).getAsLong();
+
+    // Then
+    assertThat(counts).hasValue(2);
+  }
+
+  @Test
+  void testConcurrentModeCountsOnAnotherThreadRightAway() throws InterruptedException {
+    // Given
+    var artifactCountCache = new ArtifactCountCache(new SimpleAsyncTaskExecutor(), true, Duration.ofMinutes(1));
+    var started = new CountDownLatch(1);
+    var countingThread = new AtomicReference<Thread>();
+
+    // When
+    var total = artifactCountCache.total(filter, () -> {
+      countingThread.set(Thread.currentThread());
+      started.countDown();
+      return 7;
+    });
+
+    // Then - counting started before the total was asked for
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(total.getAsLong()).isEqualTo(7);
+    assertThat(countingThread.get()).isNotEqualTo(Thread.currentThread());
+    assertThat(artifactCountCache.total(filter, count).getAsLong()).isEqualTo(7);
+  }
+}
@@ -0,0 +1,90 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Exports a catalog that could never fit in the heap if it were materialized.
+ * The benchmark profile runs the tests with -Xmx256m: loading 1M artifacts and their DTOs would need several times that.
+ * Run it with: mvn test -Pbenchmark -Dtest=ArtifactExportBenchmarkTest
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    // A file database, so the rows live on disk and not in the heap under test.
+    "spring.datasource.url=jdbc:h2:file:./target/export-benchmark/hogwarts;CACHE_SIZE=8192",
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "spring.jpa.show-sql=false"
+})
+@Tag("benchmark")
+@DisplayName("Benchmark of the NDJSON export of a large catalog under a small heap.")
+@ActiveProfiles(value = "dev")
+class ArtifactExportBenchmarkTest {
+  static final int ARTIFACTS = 1_000_000;
+  static final int BATCH_SIZE = 10_000;
+  static final String DESCRIPTION = "A synthetic artifact, with a description long enough to weigh a few hundred bytes once loaded as an entity and a DTO.";
+
+  @LocalServerPort
+  int port;
+  @Value("${api.endpoint.base-url}")
+  String baseUrl;
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+
+  @BeforeEach
+  void setUp() {
+    jdbcTemplate.update("DELETE FROM artifact WHERE id LIKE 'export-%'");
+    for (int start = 0; start < ARTIFACTS; start += BATCH_SIZE) {
+      var rows = IntStream.range(start, start + BATCH_SIZE)
+          .mapToObj(i -> new Object[]{String.format("export-%012d", i), "Artifact " + i, DESCRIPTION, "ImageUrl"})
+          .toList();
+      jdbcTemplate.batchUpdate("INSERT INTO artifact (id, name, description, img_url) VALUES (?, ?, ?, ?)", rows);
+    }
+  }
+
+  @Test
+  void benchmarkExportUnderSmallHeap() throws Exception {
+    var expectedLines = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM artifact", Long.class);
+    var runtime = Runtime.getRuntime();
+    var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + baseUrl + "/artifacts/export")).build();
+
+    var start = System.nanoTime();
+    var response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofInputStream());
+    long lines = 0;
+    long bytes = 0;
+    long peakUsedHeap = 0;
+    try (var reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines++;
+        bytes += line.length() + 1;
+        if (lines % 100_000 == 0) {
+          peakUsedHeap = Math.max(peakUsedHeap, runtime.totalMemory() - runtime.freeMemory());
+        }
+      }
+    }
+    var elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+    System.out.printf("Exported %d artifacts (%d MB) in %d ms, peak heap used %d MB of %d MB%n",
+        lines, bytes >> 20, elapsedMillis, peakUsedHeap >> 20, runtime.maxMemory() >> 20);
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(lines).isEqualTo(expectedLines);
+  }
+}
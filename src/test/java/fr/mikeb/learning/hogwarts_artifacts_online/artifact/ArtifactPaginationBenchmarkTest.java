@@ -0,0 +1,110 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.utils.IdWorker;
+import fr.mikeb.learning.hogwarts_artifacts_online.wizard.WizardRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares OFFSET/LIMIT + COUNT pagination with keyset (cursor) pagination on page 1 and page 10,000.
+ * Run it with: mvn test -Pbenchmark -Dtest=ArtifactPaginationBenchmarkTest
+ */
+@DataJpaTest
+@Tag("benchmark")
+@DisplayName("Benchmark of offset vs. cursor pagination for artifacts.")
+@ActiveProfiles(value = "dev")
+class ArtifactPaginationBenchmarkTest {
+  static final int PAGE_SIZE = 20;
+  static final int DEEP_PAGE = 10_000;
+  static final int WARMUP_ITERATIONS = 5;
+  static final int MEASURED_ITERATIONS = 20;
+
+  @Autowired
+  ArtifactRepository artifactRepository;
+  @Autowired
+  WizardRepository wizardRepository;
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+  @Autowired
+  TestEntityManager entityManager;
+  ArtifactService artifactService;
+
+  @BeforeEach
+  void setUp() {
+    artifactService = new ArtifactService(artifactRepository, wizardRepository, new IdWorker(1, 1), null, new ArtifactTextIndex(artifactRepository, null, false, false, 1_000),
+        new ArtifactCountCache(new SimpleAsyncTaskExecutor(), false, Duration.ZERO),
+        new ArtifactResponseCache(false, false, DataSize.ofMegabytes(1), Duration.ZERO));
+
+    // Ids are zero padded so that their string order is the insertion order.
+    var rows = IntStream.range(0, PAGE_SIZE * (DEEP_PAGE + 1))
+        .mapToObj(i -> new Object[]{id(i), "Artifact " + i, "Description " + i, "ImageUrl"})
+        .toList();
+    jdbcTemplate.batchUpdate("INSERT INTO artifact (id, name, description, img_url) VALUES (?, ?, ?, ?)", rows);
+  }
+
+  @Test
+  void benchmarkFirstAndDeepPage() {
+    var firstPage = PageRequest.of(0, PAGE_SIZE, Sort.by("id"));
+    var deepPage = PageRequest.of(DEEP_PAGE, PAGE_SIZE, Sort.by("id"));
+    // The cursor a client would hold after reading the 9,999 previous pages.
+    var deepCursor = ArtifactCursor.decode("", Sort.by("id"))
+        .encode(ScrollPosition.forward(Map.of("id", id(DEEP_PAGE * PAGE_SIZE - 1))));
+
+    var offsetFirst = measure(() -> artifactService.findAll(firstPage).getContent());
+    var offsetDeep = measure(() -> artifactService.findAll(deepPage).getContent());
+    var cursorFirst = measure(() -> artifactService.findAll("", firstPage).content());
+    var cursorDeep = measure(() -> artifactService.findAll(deepCursor, firstPage).content());
+
+    System.out.printf("Offset pagination: page 1 = %d us, page %d = %d us%n", offsetFirst, DEEP_PAGE, offsetDeep);
+    System.out.printf("Cursor pagination: page 1 = %d us, page %d = %d us%n", cursorFirst, DEEP_PAGE, cursorDeep);
+
+    // Both modes must return the very same deep page.
+    var offsetIds = artifactService.findAll(deepPage).map(ArtifactView::id).getContent();
+    var cursorIds = artifactService.findAll(deepCursor, firstPage).content().stream().map(ArtifactView::id).toList();
+    assertThat(cursorIds).containsExactlyElementsOf(offsetIds);
+  }
+
+  /**
+   * Returns the median latency in microseconds.
+   */
+  private long measure(Supplier<List<ArtifactView>> query) {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      query.get();
+      entityManager.clear();
+    }
+    var samples = new long[MEASURED_ITERATIONS];
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      var start = System.nanoTime();
+      query.get();
+      samples[i] = (System.nanoTime() - start) / 1_000;
+      entityManager.clear();
+    }
+    Arrays.sort(samples);
+    return samples[MEASURED_ITERATIONS / 2];
+  }
+
+  private static String id(int i) {
+    return String.format("%019d", i);
+  }
+}
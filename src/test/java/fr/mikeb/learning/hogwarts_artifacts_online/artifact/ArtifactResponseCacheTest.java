@@ -0,0 +1,127 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArtifactResponseCacheTest {
+  byte[] json = "{\"flag\":true,\"data\":{\"name\":\"Invisibility Cloak\"}}".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  void testPutResponseIsServedWithItsValidators() {
+    // Given
+    var artifactResponseCache = new ArtifactResponseCache(true, false, DataSize.ofMegabytes(1), Duration.ofMinutes(1));
+    var lastModified = Instant.parse("2024-10-01T10:15:30Z");
+    var artifactView = new ArtifactView("1", "Invisibility Cloak", "Description", "ImageUrl", 2, "Harry Potter", 2L, 3L, lastModified, 5L, null);
+
+    // When
+    artifactResponseCache.put(artifactView, json, artifactResponseCache.generation());
+    var response = artifactResponseCache.get("1");
+
+    // Then
+    assertThat(response.json()).isEqualTo(json);
+    assertThat(response.gzipped()).isNull();
+    assertThat(response.eTag()).isEqualTo(artifactView.eTag());
+    assertThat(response.lastModified()).isEqualTo(lastModified.toEpochMilli());
+    assertThat(artifactResponseCache.get("2")).isNull();
+  }
+
+  @Test
+  void testInvalidationDropsTheArtifactAndItsOwnersArtifacts() {
+    // Given
+    var artifactResponseCache = new ArtifactResponseCache(true, false, DataSize.ofMegabytes(1), Duration.ofMinutes(1));
+    artifactResponseCache.put(view("1", 2), json, artifactResponseCache.generation());
+    artifactResponseCache.put(view("2", 2), json, artifactResponseCache.generation());
+    artifactResponseCache.put(view("3", 3), json, artifactResponseCache.generation());
+    artifactResponseCache.put(view("4", null), json, artifactResponseCache.generation());
+
+    // When
+    artifactResponseCache.invalidate("4");
+    artifactResponseCache.invalidateOwner(2);
+
+    // Then
+    assertThat(artifactResponseCache.get("1")).isNull();
+    assertThat(artifactResponseCache.get("2")).isNull();
+    assertThat(artifactResponseCache.get("3")).isNotNull();
+    assertThat(artifactResponseCache.get("4")).isNull();
+  }
+
+  @Test
+  void testResponseReadWhileAWriteCommitsIsNotKept() {
+    // Given
+    var artifactResponseCache = new ArtifactResponseCache(true, false, DataSize.ofMegabytes(1), Duration.ofMinutes(1));
+    var generation = artifactResponseCache.generation();
+
+    // When - the artifact is read, then updated before its response is put
+    artifactResponseCache.invalidate("1");
+    var response = artifactResponseCache.put(view("1", 2), json, generation);
+
+    // Then - the response is still served to this reader, but not to the next ones
+    assertThat(response.json()).isEqualTo(json);
+    assertThat(artifactResponseCache.get("1")).isNull();
+    assertThat(artifactResponseCache.usedBytes()).isZero();
+  }
+
+  @Test
+  void testLeastRecentlyReadResponsesAreEvictedPastTheBudget() {
+    // Given - room for 40 responses, all put
+    var responseSize = 128 + json.length;
+    var artifactResponseCache = new ArtifactResponseCache(true, false, DataSize.ofBytes(40L * responseSize), Duration.ofMinutes(1));
+    for (int i = 0; i < 40; i++) {
+      artifactResponseCache.put(view("" + i, 1), json, artifactResponseCache.generation());
+    }
+    artifactResponseCache.get("0");
+
+    // When
+    artifactResponseCache.put(view("40", 1), json, artifactResponseCache.generation());
+
+    // Then - a quarter of the budget was freed, from the responses read the longest ago
+    assertThat(artifactResponseCache.usedBytes()).isLessThanOrEqualTo(30L * responseSize);
+    assertThat(artifactResponseCache.get("0")).isNotNull();
+    assertThat(artifactResponseCache.get("40")).isNotNull();
+    assertThat(artifactResponseCache.get("1")).isNull();
+  }
+
+  @Test
+  void testGzipKeepsBothEncodings() throws IOException {
+    // Given
+    var artifactResponseCache = new ArtifactResponseCache(true, true, DataSize.ofMegabytes(1), Duration.ofMinutes(1));
+
+    // When
+    artifactResponseCache.put(view("1", 2), json, artifactResponseCache.generation());
+
+    // Then
+    var response = artifactResponseCache.get("1");
+    try (var gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(response.gzipped()))) {
+      assertThat(gzipInputStream.readAllBytes()).isEqualTo(json);
+    }
+  }
+
+  @Test
+  void testDisabledOrExpiredResponsesAreNotServed() {
+    // Given
+    var disabled = new ArtifactResponseCache(false, false, DataSize.ofMegabytes(1), Duration.ofMinutes(1));
+    var expiring = new ArtifactResponseCache(true, false, DataSize.ofMegabytes(1), Duration.ZERO);
+
+    // When
+    disabled.put(view("1", 2), json, disabled.generation());
+    expiring.put(view("1", 2), json, expiring.generation());
+
+    // Then
+    assertThat(disabled.get("1")).isNull();
+    assertThat(expiring.get("1")).isNull();
+    assertThat(expiring.usedBytes()).isZero();
+  }
+
+  static ArtifactView view(String id, Integer ownerId) {
+    return new ArtifactView(id, "Artifact " + id, "Description", "ImageUrl", ownerId, ownerId == null ? null : "Wizard " + ownerId, 1L);
+  }
+}
@@ -0,0 +1,148 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.wizard.Wizard;
+import jakarta.persistence.criteria.JoinType;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the cost of a search built as Criteria from Specifications, as the searches used to be, with the compiled
+ * JPQL search of ArtifactViewRepository.
+ * The searches hit the primary key of a small table, so the time is mostly spent building and translating the query.
+ * Run it with: mvn test -Pbenchmark -Dtest=ArtifactSearchBenchmarkTest
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Tag("benchmark")
+@DisplayName("Benchmark of the query construction overhead of artifact searches.")
+@ActiveProfiles(value = "dev")
+class ArtifactSearchBenchmarkTest {
+  static final int ARTIFACTS = 100;
+  static final int WARMUP_ITERATIONS = 2_000;
+  static final int MEASURED_ITERATIONS = 5_000;
+
+  // The criteria keys as they used to be mapped to Specifications.
+  static final Map<String, Function<String, Specification<Artifact>>> SPEC_MAP = Map.of(
+      "id", ArtifactSpecs::hasId,
+      "name", ArtifactSpecs::containsName,
+      "ownerName", ArtifactSpecs::hasOwnerName
+  );
+
+  @Autowired
+  ArtifactRepository artifactRepository;
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+  @Autowired
+  TestEntityManager entityManager;
+
+  @BeforeEach
+  void setUp() {
+    jdbcTemplate.update("INSERT INTO wizard (id, name) VALUES (1, 'Albus Dumbledore')");
+    var rows = IntStream.range(0, ARTIFACTS)
+        .mapToObj(i -> new Object[]{id(i), "Artifact " + i, "Description " + i, "ImageUrl", 1})
+        .toList();
+    jdbcTemplate.batchUpdate("INSERT INTO artifact (id, name, description, img_url, owner_id) VALUES (?, ?, ?, ?, ?)", rows);
+  }
+
+  @Test
+  void benchmarkCriteriaVsCompiledSearch() {
+    var pageable = PageRequest.of(0, 20, Sort.by("name"));
+    IntFunction<Map<String, String>> criteria = i -> Map.of(
+        "id", id(i % ARTIFACTS),
+        "name", "artifact " + (i % ARTIFACTS),
+        "ownerName", "albus dumbledore");
+    IntFunction<List<ArtifactView>> specifications = i -> {
+      var spec = criteria.apply(i).entrySet().stream()
+          .map(entry -> SPEC_MAP.get(entry.getKey()).apply(entry.getValue()))
+          .reduce(Specification::and)
+          .orElseThrow();
+      return findViewsByCriteria(spec, pageable);
+    };
+    IntFunction<List<ArtifactView>> compiled = i -> artifactRepository.findViewSlice(ArtifactSearch.of(criteria.apply(i)).filter(), pageable).getContent();
+
+    var statistics = entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    var criteriaMicros = measure(specifications);
+    statistics.clear();
+    compiled.apply(0);
+    var firstSearchMisses = statistics.getQueryPlanCacheMissCount();
+    var compiledMicros = measure(compiled);
+
+    System.out.printf("Criteria from Specifications: %d us per search%n", criteriaMicros);
+    System.out.printf("Compiled search: %d us per search, %d plan cache misses for %d searches%n",
+        compiledMicros, statistics.getQueryPlanCacheMissCount(), 1 + WARMUP_ITERATIONS + MEASURED_ITERATIONS);
+
+    // Both must find the very same artifacts.
+    assertThat(compiled.apply(42)).containsExactlyElementsOf(specifications.apply(42)).hasSize(1);
+    // Only the first search of the shape had its JPQL parsed.
+    assertThat(statistics.getQueryPlanCacheMissCount()).isEqualTo(firstSearchMisses);
+    assertThat(compiledMicros).isLessThan(criteriaMicros);
+  }
+
+  /**
+   * The views found by a Criteria query, built anew for every search.
+   */
+  List<ArtifactView> findViewsByCriteria(Specification<Artifact> spec, Pageable pageable) {
+    var cb = entityManager.getEntityManager().getCriteriaBuilder();
+    var query = cb.createQuery(ArtifactView.class);
+    var root = query.from(Artifact.class);
+    var owner = root.<Artifact, Wizard>join("owner", JoinType.LEFT);
+    query.select(cb.construct(ArtifactView.class,
+        root.get("id"),
+        root.get("name"),
+        root.get("description"),
+        root.get("imgUrl"),
+        owner.get("id"),
+        owner.get("name"),
+        owner.<Integer>get("artifactCount").as(Long.class),
+        root.get("version"),
+        root.get("lastModified"),
+        owner.get("version"),
+        owner.get("lastModified")));
+    query.where(spec.toPredicate(root, query, cb));
+    query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+    return entityManager.getEntityManager().createQuery(query)
+        .setFirstResult((int) pageable.getOffset())
+        .setMaxResults(pageable.getPageSize())
+        .getResultList();
+  }
+
+  /**
+   * Returns the average time of a search in microseconds, after a warm-up.
+   */
+  long measure(IntFunction<List<ArtifactView>> search) {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      search.apply(i);
+      entityManager.clear();
+    }
+    var start = System.nanoTime();
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      assertThat(search.apply(i)).hasSize(1);
+      entityManager.clear();
+    }
+    return (System.nanoTime() - start) / MEASURED_ITERATIONS / 1_000;
+  }
+
+  static String id(int i) {
+    return String.format("%019d", i);
+  }
+}
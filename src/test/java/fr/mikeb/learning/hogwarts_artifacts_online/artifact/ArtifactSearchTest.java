@@ -0,0 +1,112 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.InvalidSearchQueryException;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ArtifactSearchTest {
+
+  @Test
+  void testParseHonorsPrecedenceAndParentheses() {
+    // When
+    var search = ArtifactSearch.parse("name ~ cloak or not HAS owner and owner = 2");
+    var grouped = ArtifactSearch.parse("(name ~ cloak OR NOT has owner) AND owner = 2");
+
+    // Then - NOT before AND before OR
+    var cloak = new ArtifactQuery.Term(ArtifactQuery.Field.NAME, ArtifactQuery.Operator.CONTAINS, "cloak");
+    var ownerTwo = new ArtifactQuery.Term(ArtifactQuery.Field.OWNER, ArtifactQuery.Operator.EQUALS, 2);
+    var ownerless = new ArtifactQuery.Not(new ArtifactQuery.HasOwner());
+    assertThat(search.filter()).isEqualTo(new ArtifactQuery.Or(List.of(cloak, new ArtifactQuery.And(List.of(ownerless, ownerTwo)))));
+    assertThat(grouped.filter()).isEqualTo(new ArtifactQuery.And(List.of(new ArtifactQuery.Or(List.of(cloak, ownerless)), ownerTwo)));
+    assertThat(search.sort().isSorted()).isFalse();
+  }
+
+  @Test
+  void testParseQuotedValuesAndSort() {
+    // When
+    var search = ArtifactSearch.parse("name = \"Elder \\\"OR\\\" Wand\" AND description ^= \"50%\" SORT BY name DESC, id");
+    var sortOnly = ArtifactSearch.parse("sort by name");
+
+    // Then
+    assertThat(search.filter()).isEqualTo(new ArtifactQuery.And(List.of(
+        new ArtifactQuery.Term(ArtifactQuery.Field.NAME, ArtifactQuery.Operator.EQUALS, "Elder \"OR\" Wand"),
+        new ArtifactQuery.Term(ArtifactQuery.Field.DESCRIPTION, ArtifactQuery.Operator.STARTS_WITH, "50%"))));
+    assertThat(search.sort()).isEqualTo(Sort.by(Sort.Order.desc("name"), Sort.Order.asc("id")));
+    assertThat(sortOnly.filter()).isNull();
+    assertThat(sortOnly.sortOr(Sort.by("id"))).isEqualTo(Sort.by("name"));
+  }
+
+  @Test
+  void testOfCombinesFlatCriteriaAndQuery() {
+    // Given
+    var searchCriteria = new LinkedHashMap<String, String>();
+    searchCriteria.put("name", "Cloak");
+    searchCriteria.put("ownerName", "Harry Potter");
+    searchCriteria.put("description", "");
+    searchCriteria.put("color", "red");
+    searchCriteria.put("q", "description ~ invisible OR has owner");
+
+    // When
+    var search = ArtifactSearch.of(searchCriteria);
+
+    // Then - only the top-level name and description terms can narrow the text index search
+    assertThat(search.filter()).isInstanceOf(ArtifactQuery.And.class);
+    assertThat(((ArtifactQuery.And) search.filter()).operands()).hasSize(3);
+    assertThat(search.textTerms()).isEqualTo(Map.of("name", "Cloak"));
+    assertThat(ArtifactSearch.of(Map.of()).filter()).isNull();
+  }
+
+  @Test
+  void testSameShapeCompilesToSameJpqlWithDifferentParameters() {
+    // Given
+    var cloak = ArtifactSearch.parse("name ~ cloak AND NOT ownerName = \"Harry Potter\"").filter();
+    var wand = ArtifactSearch.parse("name ~ \"100%_wand\" AND NOT ownerName = Dumbledore").filter();
+    var prefix = ArtifactSearch.parse("name ^= cloak AND NOT ownerName = Dumbledore").filter();
+
+    // When
+    var cloakJpql = new StringBuilder();
+    var cloakParameters = new ArrayList<>();
+    cloak.appendJpql(cloakJpql, cloakParameters);
+    var wandJpql = new StringBuilder();
+    var wandParameters = new ArrayList<>();
+    wand.appendJpql(wandJpql, wandParameters);
+    var boundParameters = new ArrayList<>();
+    wand.bind(boundParameters);
+
+    // Then
+    assertThat(shape(cloak)).isEqualTo(shape(wand)).isNotEqualTo(shape(prefix));
+    assertThat(cloakJpql.toString())
+        .isEqualTo(wandJpql.toString())
+        .isEqualTo("(lower(a.name) like ?1 escape '!' and not (lower(o.name) = ?2))");
+    assertThat(cloakParameters).containsExactly("%cloak%", "harry potter");
+    assertThat(wandParameters).containsExactly("%100!%!_wand%", "dumbledore").isEqualTo(boundParameters);
+  }
+
+  @Test
+  void testInvalidQueriesAreRejected() {
+    assertThatThrownBy(() -> ArtifactSearch.parse("color = red"))
+        .isInstanceOf(InvalidSearchQueryException.class)
+        .hasMessageStartingWith("Expected a field among");
+    assertThatThrownBy(() -> ArtifactSearch.parse("owner = harry")).hasMessageStartingWith("The owner must be a wizard id");
+    assertThatThrownBy(() -> ArtifactSearch.parse("owner ~ 1")).hasMessageStartingWith("The owner can only be compared with =");
+    assertThatThrownBy(() -> ArtifactSearch.parse("name ~ \"cloak")).hasMessageStartingWith("Unterminated string");
+    assertThatThrownBy(() -> ArtifactSearch.parse("name ~ cloak wand")).hasMessageStartingWith("Unexpected 'wand'");
+    assertThatThrownBy(() -> ArtifactSearch.parse("(name ~ cloak")).hasMessageStartingWith("Expected ')'");
+    assertThatThrownBy(() -> ArtifactSearch.parse("name ~")).hasMessageStartingWith("Expected a value but found the end of the query");
+    assertThatThrownBy(() -> ArtifactSearch.parse("NOT ".repeat(100) + "has owner")).hasMessageStartingWith("The query is nested too deeply");
+  }
+
+  static String shape(ArtifactQuery filter) {
+    var shape = new StringBuilder();
+    filter.appendShape(shape);
+    return shape.toString();
+  }
+}
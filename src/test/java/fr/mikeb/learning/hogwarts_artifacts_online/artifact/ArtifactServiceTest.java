@@ -9,7 +9,11 @@ import fr.mikeb.learning.hogwarts_artifacts_online.client.ai.chat.dto.ChatReques
 import fr.mikeb.learning.hogwarts_artifacts_online.client.ai.chat.dto.ChatResponse;
 import fr.mikeb.learning.hogwarts_artifacts_online.client.ai.chat.dto.Choice;
 import fr.mikeb.learning.hogwarts_artifacts_online.client.ai.chat.dto.Message;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.InvalidCursorException;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.NotFoundException;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.PreconditionFailedException;
+import fr.mikeb.learning.hogwarts_artifacts_online.wizard.Wizard;
+import fr.mikeb.learning.hogwarts_artifacts_online.wizard.WizardRepository;
 import fr.mikeb.learning.hogwarts_artifacts_online.wizard.Wizard;
 import fr.mikeb.learning.hogwarts_artifacts_online.wizard.dto.WizardDto;
 import org.junit.jupiter.api.BeforeEach;
@@ -19,29 +23,51 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 @ExtendWith(MockitoExtension.class)
 @ActiveProfiles(value = "dev")
 class ArtifactServiceTest {
+  @Mock
+  WizardRepository wizardRepository;
   @Mock
   ArtifactRepository artifactRepository;
   @Mock
   IdWorker idWorker;
   @Mock
   ChatClient chatClient;
+  @Mock
+  ArtifactTextIndex artifactTextIndex;
+  @Mock
+  ArtifactCountCache artifactCountCache;
+  @Mock
+  ArtifactResponseCache artifactResponseCache;
   @InjectMocks
   ArtifactService artifactService;
   List<Artifact> artifacts;
@@ -121,6 +147,148 @@ class ArtifactServiceTest {
     verify(artifactRepository, times(1)).findAll();
   }
 
+  @Test
+  void testFindByCriteriaUsesTextIndexCandidates() {
+    // Given
+    var searchCriteria = Map.of("name", "cloak");
+    var pageable = PageRequest.of(0, 20);
+    given(artifactTextIndex.findCandidateIds(searchCriteria)).willReturn(List.of("1250808601744904192"));
+    var artifactView = new ArtifactView("1250808601744904192", "Invisibility Cloak", "An invisibility cloak is used to make the wearer invisible.", "imageUrl", null, null, 0L);
+    given(artifactCountCache.total(Mockito.any(ArtifactQuery.class), Mockito.any())).willReturn(() -> 1L);
+    given(artifactRepository.findViewSlice(Mockito.any(ArtifactQuery.class), Mockito.eq(pageable)))
+        .willReturn(new SliceImpl<>(List.of(artifactView), pageable, false));
+
+    // When
+    var artifactPage = artifactService.findByCriteria(searchCriteria, pageable);
+
+    // Then
+    assertThat(artifactPage.getContent()).containsExactly(artifactView);
+    verify(artifactTextIndex, times(1)).findCandidateIds(searchCriteria);
+    verify(artifactRepository, times(1)).findViewSlice(Mockito.<ArtifactQuery>argThat(filter -> filter instanceof ArtifactQuery.And and
+        && and.operands().getFirst().equals(new ArtifactQuery.IdIn(List.of("1250808601744904192")))), Mockito.eq(pageable));
+  }
+
+  @Test
+  void testFindAllCountsOnlyWhenThereIsANextPage() {
+    // Given - the count cache misses, and hands back the counting function
+    var artifactViews = artifacts.stream()
+        .map(artifact -> new ArtifactView(artifact.getId(), artifact.getName(), artifact.getDescription(), artifact.getImgUrl(), null, null, 0L))
+        .toList();
+    given(artifactTextIndex.findCandidateIds(Map.of())).willReturn(null);
+    given(artifactCountCache.total(Mockito.isNull(), Mockito.any())).willAnswer(invocation -> invocation.getArgument(1));
+    given(artifactRepository.findViewSlice(Mockito.isNull(), Mockito.eq(PageRequest.of(0, 1))))
+        .willReturn(new SliceImpl<>(artifactViews.subList(0, 1), PageRequest.of(0, 1), true));
+    given(artifactRepository.findViewSlice(Mockito.isNull(), Mockito.eq(PageRequest.of(1, 1))))
+        .willReturn(new SliceImpl<>(artifactViews.subList(1, 2), PageRequest.of(1, 1), false));
+    given(artifactRepository.countViews(null)).willReturn(2L);
+
+    // When
+    var firstPage = artifactService.findAll(PageRequest.of(0, 1));
+    var lastPage = artifactService.findAll(PageRequest.of(1, 1));
+
+    // Then - the last page knows its total without counting
+    assertThat(firstPage.getTotalElements()).isEqualTo(2);
+    assertThat(lastPage.getTotalElements()).isEqualTo(2);
+    assertThat(lastPage.isLast()).isTrue();
+    verify(artifactRepository, times(1)).countViews(null);
+  }
+
+  @Test
+  void testFindSliceByCriteriaNeverCounts() {
+    // Given
+    var pageable = PageRequest.of(0, 20, Sort.by("id"));
+    given(artifactTextIndex.findCandidateIds(Map.of())).willReturn(null);
+    given(artifactRepository.findViewSlice(Mockito.any(ArtifactQuery.class), Mockito.eq(PageRequest.of(0, 20, Sort.by(Sort.Order.desc("name"))))))
+        .willReturn(new SliceImpl<>(List.of(), pageable, false));
+
+    // When - the sort of the query wins over the requested one
+    var slice = artifactService.findSliceByCriteria(Map.of("q", "has owner sort by name desc"), pageable);
+
+    // Then
+    assertThat(slice.hasNext()).isFalse();
+    verifyNoInteractions(artifactCountCache);
+    verify(artifactRepository, never()).countViews(Mockito.any());
+  }
+
+  @Test
+  void testFindAllByCursorSuccess() {
+    // Given
+    var artifactViews = artifacts.stream()
+        .map(artifact -> new ArtifactView(artifact.getId(), artifact.getName(), artifact.getDescription(), artifact.getImgUrl(), null, null, 0L))
+        .toList();
+    var window = Window.from(artifactViews, index -> ScrollPosition.forward(Map.of("id", artifactViews.get(index).id())), true);
+    given(artifactRepository.findViews(Mockito.<ArtifactQuery>isNull(), Mockito.any(Sort.class), Mockito.any(KeysetScrollPosition.class), Mockito.eq(2)))
+        .willReturn(window);
+
+    // When
+    var cursorPage = artifactService.findAll("", PageRequest.of(0, 2));
+
+    // Then
+    assertThat(cursorPage.content()).hasSize(2);
+    assertThat(cursorPage.hasNext()).isTrue();
+    var nextCursor = ArtifactCursor.decode(cursorPage.nextCursor(), Sort.unsorted());
+    assertThat(nextCursor.position().getKeys()).containsEntry("id", "1250808601744904192");
+  }
+
+  @Test
+  void testFindAllByCursorWithMalformedCursor() {
+    // When
+    var thrown = catchThrowable(() -> artifactService.findAll("not-a-cursor", PageRequest.of(0, 2)));
+
+    // Then
+    assertThat(thrown)
+        .isInstanceOf(InvalidCursorException.class)
+        .hasMessage("The provided cursor is malformed.");
+    verifyNoInteractions(artifactRepository);
+  }
+
+  @Test
+  void testFindAllByCursorWithForgedKeys() {
+    // Given - a key of the wrong type, and a key missing for the sort
+    var encoder = Base64.getUrlEncoder();
+    var wrongType = encoder.encodeToString("{\"sort\":[\"id:ASC\"],\"keys\":{\"id\":5}}".getBytes(StandardCharsets.UTF_8));
+    var missing = encoder.encodeToString("{\"sort\":[\"name:ASC\"],\"keys\":{\"id\":\"5\"}}".getBytes(StandardCharsets.UTF_8));
+
+    // When
+    var wrongTypeThrown = catchThrowable(() -> artifactService.findAll(wrongType, PageRequest.of(0, 2)));
+    var missingThrown = catchThrowable(() -> artifactService.findAll(missing, PageRequest.of(0, 2)));
+
+    // Then
+    assertThat(wrongTypeThrown).isInstanceOf(InvalidCursorException.class).hasMessage("The provided cursor is malformed.");
+    assertThat(missingThrown).isInstanceOf(InvalidCursorException.class).hasMessage("The provided cursor is malformed.");
+    verifyNoInteractions(artifactRepository);
+  }
+
+  @Test
+  void testFindAllByCursorWithUnsupportedSort() {
+    // When
+    var thrown = catchThrowable(() -> artifactService.findAll("", PageRequest.of(0, 2, Sort.by("description"))));
+
+    // Then
+    assertThat(thrown)
+        .isInstanceOf(InvalidCursorException.class)
+        .hasMessage("Cursor pagination cannot sort by description.");
+    verifyNoInteractions(artifactRepository);
+  }
+
+  @Test
+  void testExportAllHandsEveryViewToTheAction() {
+    // Given
+    given(artifactRepository.streamAllViews()).willReturn(Stream.of(
+        new ArtifactView("1250808601744904192", "Invisibility Cloak", "An invisibility cloak is used to make the wearer invisible.", "imageUrl", 2, "Harry Potter", 2L),
+        new ArtifactView("1250808601744904196", "Resurrection Stone", "The Resurrection Stone allows the holder to bring back deceased loved ones.", "imageUrl", null, null, null)
+    ));
+
+    // When
+    var exported = new ArrayList<ArtifactView>();
+    artifactService.exportAll(exported::add);
+
+    // Then
+    assertThat(exported).extracting(ArtifactView::ownerNumberOfArtifacts).containsExactly(2L, null);
+    verify(artifactRepository).streamAllViews();
+    verifyNoMoreInteractions(artifactRepository);
+  }
+
   @Test
   void testSummarizeSuccess() throws JsonProcessingException {
     // Given
@@ -172,6 +340,25 @@ class ArtifactServiceTest {
     assertThat(savedArtifact.getDescription()).isEqualTo(newArtifact.getDescription());
     assertThat(savedArtifact.getImgUrl()).isEqualTo(newArtifact.getImgUrl());
     verify(artifactRepository, times(1)).save(newArtifact);
+    verify(artifactTextIndex, times(1)).index(newArtifact);
+    verify(artifactCountCache, times(1)).invalidate();
+  }
+
+  @Test
+  void testSaveAllAssignsIdsAndInsertsInOneCall() {
+    // Given
+    var newArtifacts = List.of(new Artifact(), new Artifact());
+    given(idWorker.nextIds(2)).willReturn(new long[]{123456L, 1250808601744904191L});
+
+    // When
+    var savedArtifacts = artifactService.saveAll(newArtifacts);
+
+    // Then - one reservation for the whole batch
+    assertThat(savedArtifacts).extracting(Artifact::getId).containsExactly("123456", "1250808601744904191");
+    verify(idWorker, never()).nextId();
+    verify(artifactRepository, times(1)).insertAll(newArtifacts);
+    verify(artifactRepository, never()).save(Mockito.any());
+    verify(artifactTextIndex, times(1)).indexAll(newArtifacts);
   }
 
   @Test
@@ -197,6 +384,26 @@ class ArtifactServiceTest {
     assertThat(updatedArtifact.getDescription()).isEqualTo(update.getDescription());
     verify(artifactRepository, times(1)).findById("1250808601744904192");
     verify(artifactRepository, times(1)).save(update);
+    verify(artifactTextIndex, times(1)).index(oldArtifact);
+    verify(artifactResponseCache, times(1)).invalidate("1250808601744904192");
+  }
+
+  @Test
+  void testUpdateWithStaleVersion() {
+    // Given
+    var oldArtifact = artifacts.get(1);
+    oldArtifact.setVersion(2L);
+    given(artifactRepository.findById("1250808601744904192")).willReturn(Optional.of(oldArtifact));
+
+    // When
+    assertThrows(
+        PreconditionFailedException.class,
+        () -> artifactService.update("1250808601744904192", new Artifact(), 1L)
+    );
+
+    // Then
+    verify(artifactRepository, never()).save(Mockito.any());
+    verifyNoInteractions(artifactTextIndex, artifactResponseCache);
   }
 
   @Test
@@ -237,6 +444,25 @@ class ArtifactServiceTest {
     // Then
     verify(artifactRepository, times(1)).findById("1250808601744904192");
     verify(artifactRepository, times(1)).deleteById("1250808601744904192");
+    verify(artifactResponseCache, times(1)).invalidate("1250808601744904192");
+    verify(artifactTextIndex, times(1)).remove("1250808601744904192");
+  }
+
+  @Test
+  void testDeleteDecrementsTheOwnersArtifactCount() {
+    // Given
+    var owner = new Wizard();
+    owner.setId(2);
+    var artifact = artifacts.get(1);
+    owner.addArtifact(artifact);
+    given(artifactRepository.findById("1250808601744904192")).willReturn(Optional.of(artifact));
+
+    // When
+    artifactService.delete("1250808601744904192");
+
+    // Then
+    verify(wizardRepository, times(1)).adjustArtifactCount(Mockito.eq(2), Mockito.eq(-1), Mockito.any(Instant.class));
+    verify(artifactResponseCache, times(1)).invalidateOwner(2);
   }
 
   @Test
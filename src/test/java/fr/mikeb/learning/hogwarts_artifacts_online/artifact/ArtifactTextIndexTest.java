@@ -0,0 +1,205 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache.RedisCacheClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ArtifactTextIndexTest {
+  @Mock
+  ArtifactRepository artifactRepository;
+  @Mock
+  RedisCacheClient redisCacheClient;
+  List<ArtifactView> artifactViews;
+  ArtifactTextIndex artifactTextIndex;
+
+  @BeforeEach
+  void setUp() {
+    artifactViews = List.of(
+        new ArtifactView("1250808601744904191", "Deluminator", "A Deluminator is a device invented by Albus Dumbledore that resembles a cigarette lighter.", "ImageUrl", 1, "Albus Dumbledore", 2L),
+        new ArtifactView("1250808601744904192", "Invisibility Cloak", "An invisibility cloak is used to make the wearer invisible.", "ImageUrl", 2, "Harry Potter", 2L),
+        new ArtifactView("1250808601744904195", "The Sword Of Gryffindor", "It was once owned by Godric Gryffindor, one of the medieval founders of Hogwarts.", "ImageUrl", 3, "Neville Longbottom", 1L)
+    );
+    given(artifactRepository.findViews(Mockito.<ArtifactQuery>isNull(), Mockito.any(Sort.class), Mockito.any(KeysetScrollPosition.class), Mockito.anyInt()))
+        .willAnswer(invocation -> window());
+
+    artifactTextIndex = new ArtifactTextIndex(artifactRepository, redisCacheClient, true, true, 1_000);
+    artifactTextIndex.rebuild();
+  }
+
+  Window<ArtifactView> window() {
+    return Window.from(artifactViews, index -> ScrollPosition.forward(Map.of("id", artifactViews.get(index).id())), false);
+  }
+
+  static Artifact artifact(String id, String name, String description) {
+    var artifact = new Artifact();
+    artifact.setId(id);
+    artifact.setName(name);
+    artifact.setDescription(description);
+    return artifact;
+  }
+
+  @Test
+  void testFindCandidateIdsMatchesSubstringsIgnoringCase() {
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "CLOAK"))).containsExactly("1250808601744904192");
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "visib"))).containsExactly("1250808601744904192");
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("description", "dore"))).containsExactly("1250808601744904191");
+  }
+
+  @Test
+  void testFindCandidateIdsIntersectsCriteria() {
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "Sword", "description", "Hogwarts"))).containsExactly("1250808601744904195");
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "Cloak", "description", "Hogwarts"))).isEmpty();
+  }
+
+  @Test
+  void testFindCandidateIdsCannotHelp() {
+    // Too short for a trigram, or not a text criterion: the caller falls back to the plain LIKE query.
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "in"))).isNull();
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("ownerName", "Harry Potter"))).isNull();
+  }
+
+  @Test
+  void testIndexAndRemove() {
+    var a6 = new Artifact();
+    a6.setId("1250808601744904196");
+    a6.setName("Resurrection Stone");
+    a6.setDescription("The Resurrection Stone allows the holder to bring back deceased loved ones.");
+
+    artifactTextIndex.index(a6);
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "stone"))).containsExactly("1250808601744904196");
+
+    a6.setName("Philosopher's Stone");
+    artifactTextIndex.index(a6);
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "resurrection"))).isEmpty();
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "philosopher"))).containsExactly("1250808601744904196");
+
+    artifactTextIndex.remove("1250808601744904196");
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "stone"))).isEmpty();
+  }
+
+  @Test
+  void testFindCandidateIdsLowerCasesRegardlessOfTheDefaultLocale() {
+    var defaultLocale = Locale.getDefault();
+    try {
+      // Given - in Turkish, "I".toLowerCase() is a dotless i
+      Locale.setDefault(Locale.forLanguageTag("tr"));
+      artifactTextIndex.index(artifact("1250808601744904196", "INVISIBLE INK", "Ink that only shows under candlelight."));
+
+      // When
+      var artifactIds = artifactTextIndex.findCandidateIds(Map.of("name", "invisible ink"));
+
+      // Then
+      assertThat(artifactIds).containsExactly("1250808601744904196");
+    } finally {
+      Locale.setDefault(defaultLocale);
+    }
+  }
+
+  @Test
+  void testDocOfARemovedArtifactIsReused() {
+    // Given
+    artifactTextIndex.remove("1250808601744904191");
+
+    // When
+    artifactTextIndex.index(artifact("1250808601744904196", "Resurrection Stone", "Brings back deceased loved ones."));
+
+    // Then
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "stone"))).containsExactly("1250808601744904196");
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "deluminator"))).isEmpty();
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("description", "ve"))).isNull();
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("description", "ved"))).containsExactlyInAnyOrder("1250808601744904196");
+  }
+
+  @Test
+  void testWritesDuringARebuildAreKept() {
+    // Given - an artifact renamed and another one removed after the rebuild read them
+    given(artifactRepository.findViews(Mockito.<ArtifactQuery>isNull(), Mockito.any(Sort.class), Mockito.any(KeysetScrollPosition.class), Mockito.anyInt()))
+        .willAnswer(invocation -> {
+          var window = window();
+          artifactTextIndex.index(artifact("1250808601744904192", "Elder Wand", "The most powerful wand."));
+          artifactTextIndex.remove("1250808601744904195");
+          return window;
+        });
+
+    // When
+    artifactTextIndex.rebuild();
+
+    // Then
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "cloak"))).isEmpty();
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "wand"))).containsExactly("1250808601744904192");
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "sword"))).isEmpty();
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "deluminator"))).containsExactly("1250808601744904191");
+  }
+
+  @Test
+  void testWritesArePublished() {
+    // When
+    artifactTextIndex.indexAll(List.of(artifact("1250808601744904196", "Resurrection Stone", null), artifact("1250808601744904197", "Time-Turner", null)));
+    artifactTextIndex.remove("1250808601744904191");
+
+    // Then
+    var messages = ArgumentCaptor.forClass(String.class);
+    verify(redisCacheClient, times(2)).publish(Mockito.eq(ArtifactTextIndex.UPDATES_CHANNEL), messages.capture());
+    assertThat(messages.getAllValues()).extracting(message -> message.substring(message.indexOf(':') + 1))
+        .containsExactly("1250808601744904196,1250808601744904197", "1250808601744904191");
+  }
+
+  @Test
+  void testUpdateFromAnotherInstanceIsReadFromTheDatabase() {
+    // Given - one artifact renamed, the other one deleted
+    given(artifactRepository.findAllById(List.of("1250808601744904192", "1250808601744904195")))
+        .willReturn(List.of(artifact("1250808601744904192", "Elder Wand", "The most powerful wand.")));
+
+    // When
+    artifactTextIndex.onUpdate("another-instance:1250808601744904192,1250808601744904195");
+
+    // Then
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "wand"))).containsExactly("1250808601744904192");
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "cloak"))).isEmpty();
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "sword"))).isEmpty();
+  }
+
+  @Test
+  void testOwnUpdateIsSkipped() {
+    // Given
+    artifactTextIndex.remove("1250808601744904191");
+    var message = ArgumentCaptor.forClass(String.class);
+    verify(redisCacheClient).publish(Mockito.eq(ArtifactTextIndex.UPDATES_CHANNEL), message.capture());
+
+    // When
+    artifactTextIndex.onUpdate(message.getValue());
+
+    // Then
+    verify(artifactRepository, never()).findAllById(Mockito.any());
+  }
+
+  @Test
+  void testMalformedUpdateIsIgnored() {
+    // When - a message without the instance id, e.g. published by something else on the channel
+    artifactTextIndex.onUpdate("1250808601744904191");
+
+    // Then
+    verify(artifactRepository, never()).findAllById(Mockito.any());
+    assertThat(artifactTextIndex.findCandidateIds(Map.of("name", "deluminator"))).containsExactly("1250808601744904191");
+  }
+}
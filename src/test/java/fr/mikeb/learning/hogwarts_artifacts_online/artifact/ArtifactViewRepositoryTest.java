@@ -0,0 +1,234 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.converter.ArtifactViewToArtifactDtoConverter;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.InvalidSearchQueryException;
+import fr.mikeb.learning.hogwarts_artifacts_online.wizard.Wizard;
+import fr.mikeb.learning.hogwarts_artifacts_online.wizard.WizardRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.WindowIterator;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ActiveProfiles(value = "dev")
+class ArtifactViewRepositoryTest {
+  static final int WIZARDS = 10;
+  static final int ARTIFACTS_PER_WIZARD = 10;
+
+  @Autowired
+  ArtifactRepository artifactRepository;
+  @Autowired
+  WizardRepository wizardRepository;
+  @Autowired
+  TestEntityManager entityManager;
+  ArtifactViewToArtifactDtoConverter artifactViewToArtifactDtoConverter = new ArtifactViewToArtifactDtoConverter();
+  Statistics statistics;
+
+  @BeforeEach
+  void setUp() {
+    for (int w = 0; w < WIZARDS; w++) {
+      var wizard = new Wizard();
+      wizard.setName("Wizard " + w);
+      for (int a = 0; a < ARTIFACTS_PER_WIZARD; a++) {
+        var artifact = new Artifact();
+        artifact.setId(String.format("%019d", w * ARTIFACTS_PER_WIZARD + a));
+        artifact.setName("Artifact " + a);
+        artifact.setDescription("Description");
+        artifact.setImgUrl("ImageUrl");
+        wizard.addArtifact(artifact);
+      }
+      entityManager.persist(wizard);
+    }
+    var ownerless = new Artifact();
+    ownerless.setId("9999999999999999999");
+    ownerless.setName("Resurrection Stone");
+    ownerless.setDescription("Description");
+    ownerless.setImgUrl("ImageUrl");
+    entityManager.persist(ownerless);
+    entityManager.flush();
+    entityManager.clear();
+
+    statistics = entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+  }
+
+  @Test
+  void testFindViewsRunsOneStatementRegardlessOfPageSize() {
+    for (int pageSize : new int[]{5, 50}) {
+      // When - a page of a slice, then a window of the cursor query
+      statistics.clear();
+      var slice = artifactRepository.findViewSlice(null, PageRequest.of(0, pageSize, Sort.by("id")));
+      var window = artifactRepository.findViews(null, Sort.by("id"), ScrollPosition.keyset(), pageSize);
+      var artifactDtos = slice.map(artifactViewToArtifactDtoConverter::convert).getContent();
+
+      // Then - one statement each, the owners included
+      assertThat(artifactDtos).hasSize(pageSize);
+      assertThat(artifactDtos.getFirst().owner().numberOfArtifacts()).isEqualTo(ARTIFACTS_PER_WIZARD);
+      assertThat(window.getContent()).hasSize(pageSize);
+      assertThat(window.getContent().getLast().ownerNumberOfArtifacts()).isEqualTo(ARTIFACTS_PER_WIZARD);
+      assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+      assertThat(statistics.getEntityLoadCount()).isZero();
+      assertThat(statistics.getCollectionLoadCount()).isZero();
+      entityManager.clear();
+    }
+  }
+
+  @Test
+  void testFindViewByIdRunsOneStatement() {
+    // When
+    var artifactView = artifactRepository.findViewById("0000000000000000012").orElseThrow();
+    var ownerless = artifactRepository.findViewById("9999999999999999999").orElseThrow();
+
+    // Then
+    assertThat(artifactView.ownerName()).isEqualTo("Wizard 1");
+    assertThat(artifactView.ownerNumberOfArtifacts()).isEqualTo(ARTIFACTS_PER_WIZARD);
+    assertThat(ownerless.hasOwner()).isFalse();
+    assertThat(artifactViewToArtifactDtoConverter.convert(ownerless).owner()).isNull();
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+  }
+
+  @Test
+  void testStreamAllViews() {
+    // When
+    List<ArtifactView> artifactViews;
+    try (var stream = artifactRepository.streamAllViews()) {
+      artifactViews = stream.toList();
+    }
+
+    // Then - one statement, however large the catalog
+    assertThat(artifactViews).hasSize(WIZARDS * ARTIFACTS_PER_WIZARD + 1);
+    assertThat(artifactViews).extracting(ArtifactView::id).isSorted();
+    assertThat(artifactViews.getFirst().ownerName()).isEqualTo("Wizard 0");
+    assertThat(artifactViews.getFirst().ownerNumberOfArtifacts()).isEqualTo(ARTIFACTS_PER_WIZARD);
+    assertThat(artifactViews.getLast().hasOwner()).isFalse();
+    assertThat(artifactViews.getLast().ownerNumberOfArtifacts()).isNull();
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+  }
+
+  @Test
+  void testSearchesOfTheSameShapeReuseTheQueryPlan() {
+    // Given
+    var stone = ArtifactSearch.parse("name ^= \"resurrection\" AND (ownerName = \"wizard 3\" OR NOT HAS owner)").filter();
+    var artifact = ArtifactSearch.parse("name ^= \"artifact 1\" AND (ownerName = \"Wizard 2\" OR NOT has owner)").filter();
+    artifactRepository.findViewSlice(stone, PageRequest.of(0, 20));
+    var missesBefore = statistics.getQueryPlanCacheMissCount();
+    var hitsBefore = statistics.getQueryPlanCacheHitCount();
+
+    // When
+    var stones = artifactRepository.findViewSlice(stone, PageRequest.of(0, 20));
+    var artifacts = artifactRepository.findViewSlice(artifact, PageRequest.of(0, 20));
+
+    // Then - the JPQL was parsed once, then only the parameters changed
+    assertThat(stones.getContent()).extracting(ArtifactView::id).containsExactly("9999999999999999999");
+    assertThat(artifacts.getContent()).extracting(ArtifactView::id).containsExactly("0000000000000000021");
+    assertThat(artifacts.getContent().getFirst().ownerNumberOfArtifacts()).isEqualTo(ARTIFACTS_PER_WIZARD);
+    assertThat(statistics.getQueryPlanCacheMissCount()).isEqualTo(missesBefore);
+    assertThat(statistics.getQueryPlanCacheHitCount()).isGreaterThan(hitsBefore);
+  }
+
+  @Test
+  void testSearchPagesAreSortedAndCounted() {
+    // When
+    var filter = ArtifactSearch.parse("has owner").filter();
+    var slice = artifactRepository.findViewSlice(filter, PageRequest.of(1, 30, Sort.by("ownerName", "id")));
+
+    // Then
+    assertThat(artifactRepository.countViews(filter)).isEqualTo(WIZARDS * ARTIFACTS_PER_WIZARD);
+    assertThat(slice.getContent()).hasSize(30).extracting(ArtifactView::id).isSorted();
+    assertThat(slice.getContent().getFirst().ownerName()).isEqualTo("Wizard 3");
+  }
+
+  @Test
+  void testSortOutsideTheWhitelistIsRefused() {
+    // Given
+    var filter = ArtifactSearch.parse("has owner").filter();
+    var sort = Sort.by("imgUrl; drop table artifact");
+
+    // When and then - both for the pages and for the cursors
+    assertThatThrownBy(() -> artifactRepository.findViewSlice(filter, PageRequest.of(0, 30, sort)))
+        .isInstanceOf(InvalidSearchQueryException.class)
+        .hasMessage("Cannot sort by imgUrl; drop table artifact.");
+    assertThatThrownBy(() -> artifactRepository.findViews(filter, sort, ScrollPosition.keyset(), 30))
+        .isInstanceOf(InvalidSearchQueryException.class)
+        .hasMessage("Cannot sort by imgUrl; drop table artifact.");
+  }
+
+  @Test
+  void testFindViewSliceNeverCounts() {
+    // When
+    var firstSlice = artifactRepository.findViewSlice(null, PageRequest.of(0, 30, Sort.by("id")));
+    var lastSlice = artifactRepository.findViewSlice(null, PageRequest.of(3, 30, Sort.by("id")));
+
+    // Then - one statement per slice, fetching one more row than the page size
+    assertThat(firstSlice.getContent()).hasSize(30);
+    assertThat(firstSlice.hasNext()).isTrue();
+    assertThat(lastSlice.getContent()).hasSize(WIZARDS * ARTIFACTS_PER_WIZARD + 1 - 90);
+    assertThat(lastSlice.hasNext()).isFalse();
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    assertThat(artifactRepository.countViews(ArtifactSearch.parse("not has owner").filter())).isEqualTo(1);
+  }
+
+  @Test
+  void testSearchWindowsSeekPastTheLastKey() {
+    // Given
+    var filter = ArtifactSearch.parse("ownerName = \"wizard 1\" OR NOT has owner").filter();
+    var sort = Sort.by(Sort.Order.desc("name"));
+
+    // When - windows of 3, each one seeking past the previous
+    var artifactViews = new ArrayList<ArtifactView>();
+    WindowIterator.of(position -> artifactRepository.findViews(filter, sort, (KeysetScrollPosition) position, 3))
+        .startingAt(ScrollPosition.keyset())
+        .forEachRemaining(artifactViews::add);
+
+    // Then
+    assertThat(artifactViews).hasSize(ARTIFACTS_PER_WIZARD + 1);
+    assertThat(artifactViews).extracting(ArtifactView::id).doesNotHaveDuplicates();
+    assertThat(artifactViews).extracting(ArtifactView::name).isSortedAccordingTo(Comparator.reverseOrder());
+    assertThat(artifactViews.getFirst().name()).isEqualTo("Resurrection Stone");
+  }
+
+  @Test
+  void testVersionsChangeTheETag() {
+    // Given
+    var before = artifactRepository.findViewById("0000000000000000012").orElseThrow();
+    var otherOwnedArtifactBefore = artifactRepository.findViewById("0000000000000000013").orElseThrow();
+
+    // When - the artifact moves from Wizard 1 to Wizard 2
+    var artifact = entityManager.find(Artifact.class, "0000000000000000012");
+    var newOwner = entityManager.find(Wizard.class, artifact.getOwner().getId() + 1);
+    wizardRepository.adjustArtifactCount(artifact.getOwner().getId(), -1, Instant.now());
+    wizardRepository.adjustArtifactCount(newOwner.getId(), 1, Instant.now());
+    artifact.getOwner().removeArtifact(artifact);
+    newOwner.addArtifact(artifact);
+    entityManager.flush();
+    entityManager.clear();
+
+    // Then - the artifact got a new version, and the other artifacts of its old owner a new owner count
+    var after = artifactRepository.findViewById("0000000000000000012").orElseThrow();
+    var otherOwnedArtifactAfter = artifactRepository.findViewById("0000000000000000013").orElseThrow();
+    assertThat(after.version()).isEqualTo(before.version() + 1);
+    assertThat(after.ownerName()).isEqualTo("Wizard 2");
+    assertThat(after.eTag()).isNotEqualTo(before.eTag());
+    assertThat(after.latestModification()).isNotNull();
+    assertThat(otherOwnedArtifactAfter.version()).isEqualTo(otherOwnedArtifactBefore.version());
+    assertThat(otherOwnedArtifactAfter.ownerNumberOfArtifacts()).isEqualTo(ARTIFACTS_PER_WIZARD - 1);
+    assertThat(otherOwnedArtifactAfter.eTag()).isNotEqualTo(otherOwnedArtifactBefore.eTag());
+  }
+}
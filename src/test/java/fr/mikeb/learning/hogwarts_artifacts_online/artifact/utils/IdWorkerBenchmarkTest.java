@@ -0,0 +1,141 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the id throughput of IdWorker at 1, 8 and 64 threads, next to a monitor-based generator running the
+ * previous algorithm. A worker can't issue more than 4096 ids per millisecond, whatever the number of threads.
+ * Run it with: mvn test -Pbenchmark -Dtest=IdWorkerBenchmarkTest
+ */
+@Tag("benchmark")
+@DisplayName("Benchmark of the id generation throughput under contention.")
+class IdWorkerBenchmarkTest {
+  static final int[] THREAD_COUNTS = {1, 8, 64};
+  static final long WARM_UP_MILLIS = 1_000;
+  static final long MEASURE_MILLIS = 3_000;
+
+  @Test
+  void benchmarkLockFreeVsSynchronized() throws Exception {
+    for (int threads : THREAD_COUNTS) {
+      var synchronizedWorker = new SynchronizedIdWorker();
+      var lockFreeWorker = new IdWorker(1, 1);
+      measure(threads, WARM_UP_MILLIS, synchronizedWorker::nextId);
+      measure(threads, WARM_UP_MILLIS, lockFreeWorker::nextId);
+
+      var synchronizedPerSecond = measure(threads, MEASURE_MILLIS, synchronizedWorker::nextId);
+      var lockFreePerSecond = measure(threads, MEASURE_MILLIS, lockFreeWorker::nextId);
+
+      System.out.printf("%2d threads: synchronized %,d ids/s, lock-free %,d ids/s%n", threads, synchronizedPerSecond, lockFreePerSecond);
+      assertThat(lockFreePerSecond).isGreaterThan(synchronizedPerSecond * 4 / 5);
+    }
+  }
+
+  @Test
+  void benchmarkBatchReservationVsOneIdAtATime() throws Exception {
+    int batchSize = 5_000;
+    var idWorker = new IdWorker(1, 1);
+    for (int threads : THREAD_COUNTS) {
+      LongSupplier oneAtATime = () -> {
+        long length = 0;
+        for (int i = 0; i < batchSize; i++) {
+          length += (idWorker.nextId() + "").length();
+        }
+        return length;
+      };
+      LongSupplier batch = () -> {
+        var digits = new char[IdWorker.MAX_ID_LENGTH];
+        long length = 0;
+        for (long id : idWorker.nextIds(batchSize)) {
+          length += new String(digits, 0, IdWorker.formatId(id, digits, 0)).length();
+        }
+        return length;
+      };
+      measureBatches(threads, WARM_UP_MILLIS, oneAtATime);
+      measureBatches(threads, WARM_UP_MILLIS, batch);
+
+      var oneAtATimePerSecond = measureBatches(threads, MEASURE_MILLIS, oneAtATime) * batchSize;
+      var batchPerSecond = measureBatches(threads, MEASURE_MILLIS, batch) * batchSize;
+
+      System.out.printf("%2d threads: one at a time %,d ids/s, batches of %d %,d ids/s%n", threads, oneAtATimePerSecond, batchSize, batchPerSecond);
+      assertThat(batchPerSecond).isGreaterThan(oneAtATimePerSecond * 4 / 5);
+    }
+  }
+
+  static long measureBatches(int threads, long millis, LongSupplier batch) throws Exception {
+    var batches = new LongAdder();
+    var deadline = System.nanoTime() + millis * 1_000_000;
+    try (var executor = Executors.newFixedThreadPool(threads)) {
+      for (int t = 0; t < threads; t++) {
+        executor.submit(() -> {
+          while (System.nanoTime() < deadline) {
+            batch.getAsLong();
+            batches.increment();
+          }
+        });
+      }
+    }
+    return batches.sum() * 1000 / millis;
+  }
+
+  static long measure(int threads, long millis, LongSupplier nextId) throws Exception {
+    var drawn = new LongAdder();
+    var start = new CountDownLatch(1);
+    long deadline;
+    try (var executor = Executors.newFixedThreadPool(threads)) {
+      deadline = System.nanoTime() + millis * 1_000_000 + 100_000_000; // Leaves 100ms for the threads to start.
+      for (int t = 0; t < threads; t++) {
+        executor.submit(() -> {
+          start.await();
+          long count = 0;
+          long last = 0;
+          while ((count & 1023) != 0 || System.nanoTime() < deadline) {
+            var id = nextId.getAsLong();
+            if (id <= last) {
+              throw new IllegalStateException("Ids must increase: " + id + " after " + last);
+            }
+            last = id;
+            count++;
+          }
+          drawn.add(count);
+          return null;
+        });
+      }
+      Thread.sleep(100);
+      start.countDown();
+    }
+    return drawn.sum() * 1000 / millis;
+  }
+
+  /**
+   * The generator as it was before, a monitor around the timestamp and the sequence.
+   */
+  static class SynchronizedIdWorker {
+    private long lastTimestamp = -1L;
+    private long sequence = 0L;
+
+    synchronized long nextId() {
+      long timestamp = System.currentTimeMillis();
+      if (lastTimestamp == timestamp) {
+        sequence = (sequence + 1) & 4095;
+        if (sequence == 0) {
+          while (timestamp <= lastTimestamp) {
+            timestamp = System.currentTimeMillis();
+          }
+        }
+      } else {
+        sequence = 0L;
+      }
+      lastTimestamp = timestamp;
+      return ((timestamp - 1288834974657L) << 22) | (1L << 17) | (1L << 12) | sequence;
+    }
+  }
+}
@@ -0,0 +1,255 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdWorkerTest {
+  static final long NOW = 1_700_000_000_000L;
+  static final int SEQUENCES_PER_MILLI = 4096;
+
+  @Test
+  void testConcurrentIdsAreUniqueAndIncreasingPerThread() throws Exception {
+    // Given
+    var idWorker = new IdWorker(1, 1);
+    int threads = 16;
+    int idsPerThread = 50_000;
+    var start = new CountDownLatch(1);
+
+    // When - every thread draws ids as fast as it can, all starting at once
+    var tasks = new ArrayList<Callable<long[]>>();
+    for (int t = 0; t < threads; t++) {
+      tasks.add(() -> {
+        start.await();
+        var ids = new long[idsPerThread];
+        for (int i = 0; i < idsPerThread; i++) {
+          ids[i] = idWorker.nextId();
+        }
+        return ids;
+      });
+    }
+    var allIds = new HashSet<Long>();
+    try (var executor = Executors.newFixedThreadPool(threads)) {
+      var futures = tasks.stream().map(executor::submit).toList();
+      start.countDown();
+      for (var future : futures) {
+        var ids = future.get();
+        // Then - each thread sees increasing ids, and no id is handed out twice
+        assertThat(ids).isSorted().doesNotHaveDuplicates();
+        for (long id : ids) {
+          allIds.add(id);
+        }
+      }
+    }
+    assertThat(allIds).hasSize(threads * idsPerThread);
+  }
+
+  @Test
+  void testSequenceExhaustionWaitsForTheNextMillisecond() {
+    // Given - a clock that only moves once 5000 readings were taken
+    var readings = new AtomicLong();
+    var idWorker = new IdWorker(1, 1, 10, () -> NOW + readings.incrementAndGet() / 5_000);
+
+    // When
+    var ids = new long[SEQUENCES_PER_MILLI + 10];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = idWorker.nextId();
+    }
+
+    // Then - the 4097th id belongs to the next millisecond
+    assertThat(ids).isSorted().doesNotHaveDuplicates();
+    assertThat(timestampOf(ids[SEQUENCES_PER_MILLI - 1])).isEqualTo(timestampOf(ids[0]));
+    assertThat(timestampOf(ids[SEQUENCES_PER_MILLI])).isEqualTo(timestampOf(ids[0]) + 1);
+  }
+
+  @Test
+  void testSmallClockStepBackKeepsIdsIncreasing() {
+    // Given
+    var now = new AtomicLong(NOW);
+    var idWorker = new IdWorker(1, 1, 10, now::get);
+    var before = idWorker.nextId();
+
+    // When - the clock is set 5ms back, e.g. by NTP
+    now.addAndGet(-5);
+    var after = idWorker.nextId();
+
+    // Then
+    assertThat(after).isGreaterThan(before);
+    assertThat(timestampOf(after)).isEqualTo(timestampOf(before));
+  }
+
+  @Test
+  void testLargeClockStepBackIsRefused() {
+    // Given
+    var now = new AtomicLong(NOW);
+    var idWorker = new IdWorker(1, 1, 10, now::get);
+    idWorker.nextId();
+
+    // When
+    now.addAndGet(-1_000);
+
+    // Then
+    assertThatThrownBy(idWorker::nextId)
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("Clock moved backwards");
+  }
+
+  @Test
+  void testInstancesDoNotShareTheirState() {
+    // Given - two workers on a frozen clock
+    var workerOne = new IdWorker(1, 1, 10, () -> NOW);
+    var workerTwo = new IdWorker(2, 1, 10, () -> NOW);
+
+    // When - the first one uses up the millisecond
+    for (int i = 0; i < SEQUENCES_PER_MILLI; i++) {
+      workerOne.nextId();
+    }
+
+    // Then - the second one still starts at sequence 0 of the same millisecond
+    var id = workerTwo.nextId();
+    assertThat(id & (SEQUENCES_PER_MILLI - 1)).isZero();
+    assertThat(timestampOf(id)).isEqualTo(NOW - 1288834974657L);
+  }
+
+  @Test
+  void testNextIdsSpansMillisecondsWithOneReservationEach() {
+    // Given - a clock that moves one millisecond every 3 readings
+    var readings = new AtomicLong();
+    var idWorker = new IdWorker(1, 1, 10, () -> NOW + readings.incrementAndGet() / 3);
+    var before = idWorker.nextId();
+
+    // When - more ids than a millisecond holds
+    var ids = idWorker.nextIds(2 * SEQUENCES_PER_MILLI + 100);
+    var after = idWorker.nextId();
+
+    // Then - 3 milliseconds, so 3 reservations, each one consecutive
+    assertThat(ids).hasSize(2 * SEQUENCES_PER_MILLI + 100).isSorted().doesNotHaveDuplicates();
+    assertThat(ids[0]).isGreaterThan(before);
+    assertThat(after).isGreaterThan(ids[ids.length - 1]);
+    assertThat(Arrays.stream(ids).map(IdWorkerTest::timestampOf).distinct().count()).isEqualTo(3);
+    assertThat(ids[1] - ids[0]).isEqualTo(1);
+    assertThat(idWorker.nextIds(0)).isEmpty();
+  }
+
+  @Test
+  void testConcurrentBatchesDoNotOverlap() throws Exception {
+    // Given
+    var idWorker = new IdWorker(1, 1);
+
+    // When - 8 threads mixing batches and single ids
+    var tasks = new ArrayList<Callable<List<Long>>>();
+    for (int t = 0; t < 8; t++) {
+      tasks.add(() -> {
+        var ids = new ArrayList<Long>();
+        for (int i = 0; i < 200; i++) {
+          Arrays.stream(idWorker.nextIds(i % 7 == 0 ? 5_000 : 37)).forEach(ids::add);
+          ids.add(idWorker.nextId());
+        }
+        return ids;
+      });
+    }
+    var allIds = new HashSet<Long>();
+    long total = 0;
+    try (var executor = Executors.newFixedThreadPool(8)) {
+      for (var future : executor.invokeAll(tasks)) {
+        var ids = future.get();
+        assertThat(ids).isSorted();
+        allIds.addAll(ids);
+        total += ids.size();
+      }
+    }
+
+    // Then
+    assertThat(allIds).hasSize((int) total);
+  }
+
+  @Test
+  void testMovingToAnotherWorkerIdWhileGeneratingKeepsIdsUniqueAndInTheirLease() throws Exception {
+    // Given - the epoch millis from which each slot is leased
+    int moves = 200;
+    var idWorker = new IdWorker(0, 0);
+    var leasedFrom = new AtomicLongArray(moves + 1);
+    leasedFrom.set(0, Long.MIN_VALUE);
+    var moving = new AtomicBoolean(true);
+
+    // When - 8 threads generate ids while the worker moves from slot to slot, once per millisecond
+    var futures = new ArrayList<Future<long[]>>();
+    try (var executor = Executors.newFixedThreadPool(9)) {
+      for (int t = 0; t < 8; t++) {
+        int batchSize = t % 2 == 0 ? 1 : 50;
+        futures.add(executor.submit(() -> {
+          var ids = LongStream.builder();
+          while (moving.get()) {
+            for (long id : idWorker.nextIds(batchSize)) {
+              ids.add(id);
+            }
+          }
+          return ids.build().toArray();
+        }));
+      }
+      futures.add(executor.submit(() -> {
+        var ids = new long[moves];
+        for (int slot = 1; slot <= moves; slot++) {
+          var from = System.currentTimeMillis() + 1;
+          leasedFrom.set(slot, from);
+          idWorker.lease(slot % 32, slot / 32, from, Long.MAX_VALUE);
+          ids[slot - 1] = idWorker.nextId(); // Waits for the new lease
+        }
+        moving.set(false);
+        return ids;
+      }));
+    }
+
+    // Then - no caller got an exception, no id was handed out twice, and none carries a slot before its lease
+    var allIds = LongStream.empty();
+    for (var future : futures) {
+      var ids = future.get();
+      assertThat(ids).isSorted();
+      allIds = LongStream.concat(allIds, Arrays.stream(ids));
+    }
+    var sortedIds = allIds.sorted().toArray();
+    assertThat(IntStream.range(1, sortedIds.length).filter(i -> sortedIds[i] == sortedIds[i - 1]).count()).isZero();
+    assertThat(Arrays.stream(sortedIds).map(id -> (id >> 12) & 1023).max()).hasValue(moves);
+    assertThat(Arrays.stream(sortedIds)
+        .filter(id -> timestampOf(id) + 1288834974657L < leasedFrom.get((int) ((id >> 12) & 1023)))
+        .count()).isZero();
+  }
+
+  @Test
+  void testFormatIdWritesDigitsWithoutAllocating() {
+    // Given
+    var buffer = new char[IdWorker.MAX_ID_LENGTH + 2];
+
+    // When - the buffer is reused, a longer id then a shorter one
+    var end = IdWorker.formatId(Long.MAX_VALUE, buffer, 1);
+    var longest = new String(buffer, 1, end - 1);
+    end = IdWorker.formatId(1250808601744904191L, buffer, 0);
+    var snowflake = new String(buffer, 0, end);
+
+    // Then
+    assertThat(longest).isEqualTo(Long.toString(Long.MAX_VALUE)).hasSize(IdWorker.MAX_ID_LENGTH);
+    assertThat(snowflake).isEqualTo("1250808601744904191");
+    assertThat(new String(buffer, 0, IdWorker.formatId(0, buffer, 0))).isEqualTo("0");
+    assertThat(new String(buffer, 0, IdWorker.formatId(10, buffer, 0))).isEqualTo("10");
+    assertThatThrownBy(() -> IdWorker.formatId(-1, buffer, 0)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  static long timestampOf(long id) {
+    return id >>> 22;
+  }
+}
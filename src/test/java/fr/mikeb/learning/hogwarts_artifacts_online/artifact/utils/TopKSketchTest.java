@@ -0,0 +1,110 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.artifact.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class TopKSketchTest {
+
+  @Test
+  void testTopFindsHeavyHittersInSkewedStream() {
+    // Given
+    var sketch = new TopKSketch(3, 2048, 4);
+
+    // When - 3 heavy hitters hidden among 10,000 keys viewed once
+    for (int i = 0; i < 10_000; i++) {
+      sketch.offer("artifact-" + i);
+      if (i % 10 == 0) sketch.offer("hot-1");
+      if (i % 20 == 0) sketch.offer("hot-2");
+      if (i % 40 == 0) sketch.offer("hot-3");
+    }
+
+    // Then
+    var top = sketch.top();
+    assertThat(top).extracting(TopKSketch.RankedEntry::key).containsExactly("hot-1", "hot-2", "hot-3");
+    assertThat(top).extracting(TopKSketch.RankedEntry::rank).containsExactly(1, 2, 3);
+    assertThat(sketch.total()).isEqualTo(10_000 + 1_000 + 500 + 250);
+    var first = top.getFirst();
+    assertThat(first.estimatedCount()).isBetween(1_000L, 1_000L + first.errorBound());
+  }
+
+  @Test
+  void testDecayLetsRecentHeavyHittersOvertakeOldOnes() {
+    // Given - a key that was hot, then decayed twice
+    var sketch = new TopKSketch(1, 2048, 4);
+    for (int i = 0; i < 1_000; i++) {
+      sketch.offer("old");
+    }
+    sketch.decay();
+    sketch.decay();
+
+    // When - a key offered less than the old one in total, but more since
+    for (int i = 0; i < 300; i++) {
+      sketch.offer("new");
+    }
+
+    // Then
+    var top = sketch.top();
+    assertThat(top).extracting(TopKSketch.RankedEntry::key).containsExactly("new");
+    assertThat(top.getFirst().estimatedCount()).isBetween(300L, 300L + top.getFirst().errorBound());
+    assertThat(sketch.total()).isEqualTo(250 + 300);
+  }
+
+  @Test
+  void testKeysWithTheSameStringHashCodeAreCountedApart() {
+    // Given - "Aa" and "BB" share their String.hashCode()
+    assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+    var sketch = new TopKSketch(2, 2048, 4);
+
+    // When
+    for (int i = 0; i < 1_000; i++) {
+      sketch.offer("Aa");
+    }
+    sketch.offer("BB");
+
+    // Then - "BB" does not inherit the count of "Aa"
+    assertThat(sketch.top()).extracting(TopKSketch.RankedEntry::key, TopKSketch.RankedEntry::estimatedCount)
+        .containsExactly(tuple("Aa", 1_000L), tuple("BB", 1L));
+  }
+
+  @Test
+  void testTopIsEmptyBeforeAnyOffer() {
+    assertThat(new TopKSketch(5, 64, 2).top()).isEmpty();
+  }
+
+  @Test
+  void testConcurrentOffersAreNotLost() throws Exception {
+    // Given
+    var sketch = new TopKSketch(2, 2048, 4);
+    int threads = 8;
+    int offersPerThread = 20_000;
+    var tasks = new ArrayList<Callable<Void>>();
+    for (int t = 0; t < threads; t++) {
+      int thread = t;
+      tasks.add(() -> {
+        for (int i = 0; i < offersPerThread; i++) {
+          sketch.offer(i % 2 == 0 ? "hot-" + (i % 4 / 2) : "cold-" + thread + "-" + i);
+        }
+        return null;
+      });
+    }
+
+    // When
+    try (var executor = Executors.newFixedThreadPool(threads)) {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    }
+
+    // Then - every thread offered each hot key 5,000 times, and the count-min estimates never under-count
+    assertThat(sketch.total()).isEqualTo((long) threads * offersPerThread);
+    var top = sketch.top();
+    assertThat(top).extracting(TopKSketch.RankedEntry::key).containsExactlyInAnyOrder("hot-0", "hot-1");
+    assertThat(top).allSatisfy(entry -> assertThat(entry.estimatedCount()).isGreaterThanOrEqualTo(threads * offersPerThread / 4));
+  }
+}
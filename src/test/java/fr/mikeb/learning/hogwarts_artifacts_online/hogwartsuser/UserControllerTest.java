@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser.dto.UserDto;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.StatusCode;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.NotFoundException;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.PasswordHashingBusyException;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -28,7 +29,9 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
 @AutoConfigureMockMvc(addFilters = false)
@@ -142,6 +145,28 @@ class UserControllerTest {
         .andExpect(jsonPath("$.data.roles").value("admin user"));
   }
 
+  @Test
+  void testAddUserWhenPasswordHashingIsBusy() throws Exception {
+    var user = new HogwartsUser();
+    user.setUsername("lily");
+    user.setPassword("123456");
+    user.setEnabled(true);
+    user.setRoles("admin user");
+
+    var json = objectMapper.writeValueAsString(user);
+
+    // Given
+    given(userService.save(Mockito.any(HogwartsUser.class))).willThrow(new PasswordHashingBusyException());
+
+    // When and then
+    mockMvc.perform(post(baseUrl + "/users").contentType(MediaType.APPLICATION_JSON).content(json).accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isServiceUnavailable())
+        .andExpect(header().string("Retry-After", "1"))
+        .andExpect(jsonPath("$.flag").value(false))
+        .andExpect(jsonPath("$.code").value(StatusCode.SERVICE_UNAVAILABLE))
+        .andExpect(jsonPath("$.message").value("The server is busy, try again in a moment."));
+  }
+
   @Test
   void testUpdateUserSuccess() throws Exception {
     var update = new UserDto(3L, "tom123", false, "user");
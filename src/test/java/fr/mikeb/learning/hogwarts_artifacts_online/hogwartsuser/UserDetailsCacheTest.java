@@ -0,0 +1,250 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache.RedisCacheClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two application contexts, standing for two instances, sharing one Redis server.
+ */
+class UserDetailsCacheTest {
+  static RedisServer redisServer;
+  static int redisPort;
+  List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+  AtomicInteger lookups = new AtomicInteger();
+
+  @Configuration
+  @ImportAutoConfiguration(RedisAutoConfiguration.class)
+  @Import({UserDetailsCache.class, UserDetailsCacheConfiguration.class, RedisCacheClient.class})
+  static class Instance {
+    @Bean
+    MeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+  }
+
+  @BeforeAll
+  static void startRedis() throws IOException {
+    try (var socket = new ServerSocket(0)) {
+      redisPort = socket.getLocalPort();
+    }
+    redisServer = new RedisServer(redisPort);
+    redisServer.start();
+  }
+
+  @AfterAll
+  static void stopRedis() throws IOException {
+    redisServer.stop();
+  }
+
+  @AfterEach
+  void tearDown() {
+    contexts.forEach(ConfigurableApplicationContext::close);
+  }
+
+  ConfigurableApplicationContext startInstance(boolean enabled, String maxStaleness) {
+    var context = new SpringApplicationBuilder(Instance.class)
+        .web(WebApplicationType.NONE)
+        .run("--spring.data.redis.host=localhost",
+            "--spring.data.redis.port=" + redisPort,
+            "--security.user-details.cache.enabled=" + enabled,
+            "--security.user-details.cache.max-staleness=" + maxStaleness);
+    contexts.add(context);
+    return context;
+  }
+
+  Optional<UserPrincipal> load(String username) {
+    lookups.incrementAndGet();
+    if (!username.equals("eric")) {
+      return Optional.empty();
+    }
+    var user = new HogwartsUser();
+    user.setId(2L);
+    user.setUsername("eric");
+    user.setPassword("654321");
+    user.setEnabled(true);
+    user.setRoles("user");
+    return Optional.of(new UserPrincipal(user));
+  }
+
+  @Test
+  void testCachedUserIsNotLookedUpAgain() {
+    // Given
+    var context = startInstance(true, "1h");
+    var cache = context.getBean(UserDetailsCache.class);
+    var first = cache.get("eric", () -> load("eric"));
+
+    // When
+    var second = cache.get("eric", () -> load("eric"));
+
+    // Then
+    assertThat(second).containsSame(first.orElseThrow());
+    assertThat(second.orElseThrow().getAuthorities()).extracting("authority").containsExactly("ROLE_user");
+    assertThat(lookups).hasValue(1);
+    var meterRegistry = context.getBean(MeterRegistry.class);
+    assertThat(meterRegistry.get("user.details.cache.requests").tag("result", "hit").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("user.details.cache.requests").tag("result", "miss").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("user.details.cache.size").gauge().value()).isEqualTo(1);
+  }
+
+  @Test
+  void testUnknownUserIsNotCached() {
+    // Given
+    var cache = startInstance(true, "1h").getBean(UserDetailsCache.class);
+
+    // When
+    cache.get("harry", () -> load("harry"));
+    var second = cache.get("harry", () -> load("harry"));
+
+    // Then
+    assertThat(second).isEmpty();
+    assertThat(lookups).hasValue(2);
+  }
+
+  @Test
+  void testInvalidationOnOneInstanceReachesTheOthers() throws InterruptedException {
+    // Given - both instances cached the user, for far longer than the test
+    var first = startInstance(true, "1h").getBean(UserDetailsCache.class);
+    var second = startInstance(true, "1h").getBean(UserDetailsCache.class);
+    first.get("eric", () -> load("eric"));
+    second.get("eric", () -> load("eric"));
+
+    // When
+    second.invalidate("eric");
+
+    // Then
+    second.get("eric", () -> load("eric"));
+    assertThat(lookups).hasValue(3);
+    assertThat(awaitLookedUp(first, Duration.ofSeconds(2))).isTrue();
+  }
+
+  @Test
+  void testInvalidationDropsTheUserWhateverItsSpelling() {
+    // Given - cached under a spelling the database doesn't tell apart from the username
+    var cache = startInstance(true, "1h").getBean(UserDetailsCache.class);
+    cache.get("ERIC", () -> load("eric"));
+
+    // When
+    cache.invalidate("eric");
+
+    // Then
+    cache.get("ERIC", () -> load("eric"));
+    assertThat(lookups).hasValue(2);
+  }
+
+  @Test
+  void testUserIsLoadedAgainForAnotherSpelling() {
+    // Given
+    var cache = startInstance(true, "1h").getBean(UserDetailsCache.class);
+    cache.get("eric", () -> load("eric"));
+
+    // When
+    cache.get("Eric", () -> load("eric"));
+
+    // Then - not trusted to be the same user
+    assertThat(lookups).hasValue(2);
+  }
+
+  @Test
+  void testPrincipalIsASnapshot() {
+    // Given
+    var user = new HogwartsUser();
+    user.setId(2L);
+    user.setUsername("eric");
+    user.setPassword("654321");
+    user.setEnabled(true);
+    user.setRoles("user");
+    var principal = new UserPrincipal(user);
+
+    // When - the entity changes afterward
+    user.setPassword("changed");
+    user.setRoles("admin user");
+
+    // Then
+    assertThat(principal.getPassword()).isEqualTo("654321");
+    assertThat(principal.getAuthorities()).extracting("authority").containsExactly("ROLE_user");
+    assertThat(principal.toString()).doesNotContain("654321");
+  }
+
+  @Test
+  void testUserLoadedDuringAnInvalidationIsNotCached() {
+    // Given
+    var cache = startInstance(true, "1h").getBean(UserDetailsCache.class);
+
+    // When - the user changes while its old state is being loaded
+    cache.get("eric", () -> {
+      var loaded = load("eric");
+      cache.evict("eric");
+      return loaded;
+    });
+    cache.get("eric", () -> load("eric"));
+
+    // Then
+    assertThat(lookups).hasValue(2);
+  }
+
+  @Test
+  void testDisabledCacheAlwaysLooksUp() {
+    // Given
+    var cache = startInstance(false, "1h").getBean(UserDetailsCache.class);
+
+    // When
+    cache.get("eric", () -> load("eric"));
+    cache.get("eric", () -> load("eric"));
+
+    // Then
+    assertThat(lookups).hasValue(2);
+  }
+
+  @Test
+  void testUserIsLookedUpAgainAfterMaxStaleness() throws InterruptedException {
+    // Given
+    var cache = startInstance(true, "200ms").getBean(UserDetailsCache.class);
+    cache.get("eric", () -> load("eric"));
+
+    // When
+    Thread.sleep(300);
+    cache.get("eric", () -> load("eric"));
+
+    // Then
+    assertThat(lookups).hasValue(2);
+  }
+
+  boolean awaitLookedUp(UserDetailsCache cache, Duration timeout) throws InterruptedException {
+    var deadline = System.nanoTime() + timeout.toNanos();
+    var before = lookups.get();
+    while (true) {
+      cache.get("eric", () -> load("eric"));
+      if (lookups.get() > before) {
+        return true;
+      }
+      if (System.nanoTime() - deadline > 0) {
+        return false;
+      }
+      Thread.sleep(20);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser;
 
-import fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache.RedisCacheClient;
+import fr.mikeb.learning.hogwarts_artifacts_online.security.RefreshTokens;
+import fr.mikeb.learning.hogwarts_artifacts_online.security.TokenWhitelist;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.NotFoundException;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.PasswordChangeIllegalArgumentException;
 import org.junit.jupiter.api.BeforeEach;
@@ -35,7 +36,13 @@ class UserServiceTest {
   @Mock
   PasswordEncoder passwordEncoder;
   @Mock
-  RedisCacheClient redisCacheClient;
+  TokenWhitelist tokenWhitelist;
+  @Mock
+  RefreshTokens refreshTokens;
+  @Mock
+  UserDetailsCache userDetailsCache;
+  @Mock
+  UsernameFilter usernameFilter;
   @InjectMocks
   UserService userService;
   List<HogwartsUser> hogwartsUsers;
@@ -131,6 +138,7 @@ class UserServiceTest {
     assertThat(returnedUser.isEnabled()).isEqualTo(newUser.isEnabled());
     assertThat(returnedUser.getRoles()).isEqualTo(newUser.getRoles());
     verify(userRepository, times(1)).save(newUser);
+    verify(usernameFilter, times(1)).add("lily");
   }
 
   @Test
@@ -205,6 +213,9 @@ class UserServiceTest {
     assertThat(updatedUser.getUsername()).isEqualTo(update.getUsername());
     verify(userRepository, times(1)).findById(2L);
     verify(userRepository, times(1)).save(oldUser);
+    verify(userDetailsCache, times(1)).invalidate("eric", "eric - update");
+    verify(tokenWhitelist, times(1)).revoke("2");
+    verify(refreshTokens, times(1)).revoke(2L);
   }
 
   @Test
@@ -246,6 +257,7 @@ class UserServiceTest {
 
     // Then
     verify(userRepository, times(1)).deleteById(1L);
+    verify(userDetailsCache, times(1)).invalidate("john");
   }
 
   @Test
@@ -273,7 +285,7 @@ class UserServiceTest {
     given(passwordEncoder.matches(anyString(), anyString())).willReturn(true);
     given(passwordEncoder.encode(anyString())).willReturn("encryptedNewPassword");
     given(userRepository.save(hogwartsUser)).willReturn(hogwartsUser);
-    doNothing().when(redisCacheClient).delete(anyString());
+    doNothing().when(tokenWhitelist).revoke(anyString());
 
     // When
     userService.changePassword(2, "unencryptedOldPassword", "Abc12345", "Abc12345");
@@ -281,6 +293,7 @@ class UserServiceTest {
     // Then
     assertThat(hogwartsUser.getPassword()).isEqualTo("encryptedNewPassword");
     verify(userRepository, times(1)).save(hogwartsUser);
+    verify(userDetailsCache, times(1)).invalidate("eric");
   }
 
   @Test
@@ -336,4 +349,19 @@ class UserServiceTest {
     // Then
     assertThat(exception).isInstanceOf(PasswordChangeIllegalArgumentException.class).hasMessage("New password does not conform to password policy.");
   }
-}
\ No newline at end of file
+
+  @Test
+  void testUpdatePasswordSuccess() {
+    // Given
+    var hogwartsUser = hogwartsUsers.get(1);
+    given(userRepository.findByUsername("eric")).willReturn(Optional.of(hogwartsUser));
+    given(userRepository.save(hogwartsUser)).willReturn(hogwartsUser);
+
+    // When
+    var updated = userService.updatePassword(new UserPrincipal(hogwartsUser), "{bcrypt}rehashedPassword");
+
+    // Then
+    assertThat(updated.getPassword()).isEqualTo("{bcrypt}rehashedPassword");
+    verify(userRepository, times(1)).save(hogwartsUser);
+  }
+}
@@ -0,0 +1,144 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * A credential stuffing against 10,000 users, 95% of the logins using a username that does not exist, with and
+ * without the username filter. Then, with the filter, the time to turn down an unknown username against a known one
+ * with a wrong password, which must stay the same.
+ * Run it with: mvn test -Pbenchmark -Dtest=UsernameFilterBenchmarkTest
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Tag("benchmark")
+@DisplayName("Benchmark of logins with mostly unknown usernames.")
+@ActiveProfiles(value = "dev")
+class UsernameFilterBenchmarkTest {
+  static final int USERS = 10_000;
+  static final int LOGINS = 20_000;
+  static final int UNKNOWN_PERCENT = 95;
+  static final int TIMED_LOGINS = 30;
+
+  @Autowired
+  UserRepository userRepository;
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+  @Autowired
+  EntityManagerFactory entityManagerFactory;
+  BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder(10);
+
+  @BeforeEach
+  void setUp() {
+    var password = passwordEncoder.encode("123456");
+    var rows = IntStream.range(0, USERS)
+        .mapToObj(i -> new Object[]{i + 1000L, "user" + i, password, true, "user"})
+        .toList();
+    jdbcTemplate.batchUpdate("INSERT INTO hogwarts_user (id, username, password, enabled, roles) VALUES (?, ?, ?, ?, ?)", rows);
+  }
+
+  UserService userService(boolean filtered, SimpleMeterRegistry meterRegistry) {
+    var usernameFilter = new UsernameFilter(userRepository, null, meterRegistry, filtered, USERS, 0.01);
+    usernameFilter.subscribed();
+    usernameFilter.rebuild();
+    var userDetailsCache = new UserDetailsCache(null, meterRegistry, false, 1, Duration.ofMinutes(1));
+    return new UserService(userRepository, passwordEncoder, null, null, userDetailsCache, usernameFilter);
+  }
+
+  @Test
+  void benchmarkLoginsWithMostlyUnknownUsernames() {
+    // Given
+    var usernames = IntStream.range(0, LOGINS)
+        .mapToObj(i -> i % 100 < UNKNOWN_PERCENT ? "stuffed" + i : "user" + (i % USERS))
+        .toList();
+    var meterRegistry = new SimpleMeterRegistry();
+    var unfiltered = userService(false, new SimpleMeterRegistry());
+    var filtered = userService(true, meterRegistry);
+    var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+    // When - warmed up first
+    loadAll(unfiltered, usernames);
+    loadAll(filtered, usernames);
+    statistics.clear();
+    var unfilteredNanos = loadAll(unfiltered, usernames);
+    var unfilteredQueries = statistics.getPrepareStatementCount();
+    statistics.clear();
+    var filteredNanos = loadAll(filtered, usernames);
+    var filteredQueries = statistics.getPrepareStatementCount();
+
+    // Then
+    var absent = meterRegistry.get("username.filter.requests").tag("result", "absent").counter().count();
+    var falsePositives = meterRegistry.get("username.filter.requests").tag("result", "false_positive").counter().count();
+    System.out.printf("Without filter: %d ns and %d queries, with filter: %d ns and %d queries per 100 logins (x%d)%n",
+        unfilteredNanos * 100 / LOGINS, unfilteredQueries * 100 / LOGINS, filteredNanos * 100 / LOGINS, filteredQueries * 100 / LOGINS,
+        unfilteredNanos / filteredNanos);
+    System.out.printf("False positive rate: %.4f measured, %.4f expected%n",
+        falsePositives / (falsePositives + absent), meterRegistry.get("username.filter.expected.false.positive.rate").gauge().value());
+    assertThat(unfilteredQueries).isEqualTo(LOGINS);
+    assertThat(filteredQueries).isLessThan(LOGINS * (100 - UNKNOWN_PERCENT + 1) / 100);
+    assertThat(filteredNanos * 5).isLessThan(unfilteredNanos);
+  }
+
+  @Test
+  void benchmarkUnknownUsernameTakesAsLongAsAWrongPassword() {
+    // Given
+    var authenticationProvider = new DaoAuthenticationProvider(passwordEncoder);
+    authenticationProvider.setUserDetailsService(userService(true, new SimpleMeterRegistry()));
+    authenticationProvider.setHideUserNotFoundExceptions(false);
+
+    // When - warmed up first
+    authenticateAll(authenticationProvider, "user", BadCredentialsException.class);
+    authenticateAll(authenticationProvider, "stuffed", UsernameNotFoundException.class);
+    var wrongPasswordNanos = authenticateAll(authenticationProvider, "user", BadCredentialsException.class);
+    var unknownUsernameNanos = authenticateAll(authenticationProvider, "stuffed", UsernameNotFoundException.class);
+
+    // Then - medians, compared
+    System.out.printf("Wrong password: %d us, unknown username: %d us%n", wrongPasswordNanos / 1000, unknownUsernameNanos / 1000);
+    assertThat((double) unknownUsernameNanos / wrongPasswordNanos).isBetween(0.8, 1.25);
+  }
+
+  static long loadAll(UserService userService, List<String> usernames) {
+    var start = System.nanoTime();
+    for (var username : usernames) {
+      try {
+        assertThat(userService.loadUserByUsername(username).getUsername()).isEqualTo(username);
+      } catch (UsernameNotFoundException e) {
+        assertThat(username).startsWith("stuffed");
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  static long authenticateAll(DaoAuthenticationProvider authenticationProvider, String usernamePrefix, Class<? extends Exception> expected) {
+    var nanos = new long[TIMED_LOGINS];
+    for (int i = 0; i < TIMED_LOGINS; i++) {
+      var authentication = UsernamePasswordAuthenticationToken.unauthenticated(usernamePrefix + i, "654321");
+      var start = System.nanoTime();
+      assertThatThrownBy(() -> authenticationProvider.authenticate(authentication)).isInstanceOf(expected);
+      nanos[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(nanos);
+    return nanos[TIMED_LOGINS / 2];
+  }
+}
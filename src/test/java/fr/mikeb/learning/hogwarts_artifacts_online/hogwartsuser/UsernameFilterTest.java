@@ -0,0 +1,265 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache.RedisCacheClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Two application contexts, standing for two instances, sharing one Redis server.
+ */
+class UsernameFilterTest {
+  static RedisServer redisServer;
+  static int redisPort;
+  List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+  AtomicInteger lookups = new AtomicInteger();
+
+  @Configuration
+  @ImportAutoConfiguration(RedisAutoConfiguration.class)
+  @Import({UsernameFilter.class, UsernameFilterConfiguration.class, RedisCacheClient.class})
+  static class Instance {
+    @Bean
+    MeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+
+    @Bean
+    UserRepository userRepository() {
+      return UsernameFilterTest.userRepository(List.of("john", "eric"));
+    }
+  }
+
+  @BeforeAll
+  static void startRedis() throws IOException {
+    try (var socket = new ServerSocket(0)) {
+      redisPort = socket.getLocalPort();
+    }
+    redisServer = new RedisServer(redisPort);
+    redisServer.start();
+  }
+
+  @AfterAll
+  static void stopRedis() throws IOException {
+    redisServer.stop();
+  }
+
+  @AfterEach
+  void tearDown() {
+    contexts.forEach(ConfigurableApplicationContext::close);
+  }
+
+  ConfigurableApplicationContext startInstance() throws InterruptedException {
+    var context = new SpringApplicationBuilder(Instance.class)
+        .web(WebApplicationType.NONE)
+        .run("--spring.data.redis.host=localhost",
+            "--spring.data.redis.port=" + redisPort,
+            "--security.username-filter.enabled=true");
+    contexts.add(context);
+    // Subscribed, then rebuilt
+    var usernameFilter = context.getBean(UsernameFilter.class);
+    var deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+    while (!usernameFilter.isComplete() && System.nanoTime() - deadline < 0) {
+      Thread.sleep(20);
+    }
+    assertThat(usernameFilter.isComplete()).isTrue();
+    return context;
+  }
+
+  static UserRepository userRepository(List<String> usernames) {
+    var userRepository = mock(UserRepository.class);
+    given(userRepository.count()).willReturn((long) usernames.size());
+    given(userRepository.findAllUsernames()).willReturn(usernames);
+    return userRepository;
+  }
+
+  Optional<String> load(String username) {
+    lookups.incrementAndGet();
+    return username.equals("harry") ? Optional.empty() : Optional.of(username);
+  }
+
+  @Test
+  void testBitsHaveNoFalseNegativesAndFewFalsePositives() {
+    // Given
+    var bits = new UsernameFilter.Bits(10_000, 0.01);
+    IntStream.range(0, 10_000).forEach(i -> bits.put("user" + i));
+
+    // When
+    var falseNegatives = IntStream.range(0, 10_000).filter(i -> !bits.mightContain("user" + i)).count();
+    var falsePositives = IntStream.range(0, 100_000).filter(i -> bits.mightContain("unknown" + i)).count();
+
+    // Then
+    assertThat(falseNegatives).isZero();
+    assertThat(falsePositives / 100_000.0).isLessThan(0.02);
+    assertThat(bits.expectedFalsePositiveRate()).isBetween(0.005, 0.02);
+  }
+
+  @Test
+  void testUnknownUsernameIsTurnedDownWithoutLookup() throws InterruptedException {
+    // Given
+    var context = startInstance();
+    var usernameFilter = context.getBean(UsernameFilter.class);
+
+    // When
+    var john = usernameFilter.get("john", () -> load("john"));
+    var unknown = usernameFilter.get("draco", () -> load("draco"));
+
+    // Then
+    assertThat(john).contains("john");
+    assertThat(unknown).isEmpty();
+    assertThat(lookups).hasValue(1);
+    var meterRegistry = context.getBean(MeterRegistry.class);
+    assertThat(meterRegistry.get("username.filter.requests").tag("result", "present").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("username.filter.requests").tag("result", "absent").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void testUsernameDifferingOnlyByCaseOrAccentsIsLookedUp() throws InterruptedException {
+    // Given
+    var usernameFilter = startInstance().getBean(UsernameFilter.class);
+
+    // When - the database's collation ignores case and accents
+    var upperCase = usernameFilter.get("John", () -> load("John"));
+    var accented = usernameFilter.get("Éric", () -> load("Éric"));
+
+    // Then
+    assertThat(upperCase).contains("John");
+    assertThat(accented).contains("Éric");
+    assertThat(lookups).hasValue(2);
+  }
+
+  @Test
+  void testUnknownUsernameIsLookedUpUntilRebuiltAfterTheSubscription() {
+    // Given - built before subscribing: the additions published meanwhile may be missing
+    var meterRegistry = new SimpleMeterRegistry();
+    var usernameFilter = new UsernameFilter(userRepository(List.of("john")), null, meterRegistry, true, 100, 0.01);
+    usernameFilter.rebuild();
+    usernameFilter.subscribed();
+
+    // When
+    var missed = usernameFilter.get("draco", () -> load("draco"));
+    usernameFilter.rebuild();
+    var unknown = usernameFilter.get("harry", () -> load("harry"));
+
+    // Then
+    assertThat(missed).contains("draco");
+    assertThat(unknown).isEmpty();
+    assertThat(lookups).hasValue(1);
+    assertThat(meterRegistry.get("username.filter.requests").tag("result", "unconfirmed").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("username.filter.requests").tag("result", "absent").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void testUnknownUsernameIsLookedUpOnceUnsubscribed() {
+    // Given
+    var usernameFilter = new UsernameFilter(userRepository(List.of("john")), null, new SimpleMeterRegistry(), true, 100, 0.01);
+    usernameFilter.subscribed();
+    usernameFilter.rebuild();
+
+    // When - Redis connection lost
+    usernameFilter.unsubscribed();
+
+    // Then
+    assertThat(usernameFilter.get("draco", () -> load("draco"))).contains("draco");
+    assertThat(lookups).hasValue(1);
+  }
+
+  @Test
+  void testEveryUsernameIsLookedUpUntilTheFilterIsBuilt() {
+    // Given - not built, since no application is ready
+    var usernameFilter = new UsernameFilter(userRepository(List.of("john")), null, new SimpleMeterRegistry(), true, 100, 0.01);
+
+    // When
+    var unknown = usernameFilter.get("draco", () -> load("draco"));
+
+    // Then
+    assertThat(unknown).contains("draco");
+    assertThat(lookups).hasValue(1);
+  }
+
+  @Test
+  void testUsernameAddedDuringARebuildIsKept() {
+    // Given - a user created while the usernames are being read
+    var userRepository = mock(UserRepository.class);
+    var usernameFilter = new UsernameFilter(userRepository, null, new SimpleMeterRegistry(), true, 100, 0.01);
+    given(userRepository.count()).willReturn(1L);
+    given(userRepository.findAllUsernames()).willAnswer(invocation -> {
+      usernameFilter.put("draco");
+      return List.of("john");
+    });
+
+    // When
+    usernameFilter.rebuild();
+
+    // Then
+    assertThat(usernameFilter.get("draco", () -> load("draco"))).contains("draco");
+    assertThat(usernameFilter.get("john", () -> load("john"))).contains("john");
+  }
+
+  @Test
+  void testAdditionOnOneInstanceReachesTheOthers() throws InterruptedException {
+    // Given
+    var first = startInstance().getBean(UsernameFilter.class);
+    var second = startInstance().getBean(UsernameFilter.class);
+    assertThat(first.get("draco", () -> load("draco"))).isEmpty();
+
+    // When
+    second.add("draco");
+
+    // Then
+    assertThat(second.get("draco", () -> load("draco"))).contains("draco");
+    assertThat(awaitPresent(first, "draco", Duration.ofSeconds(2))).isTrue();
+  }
+
+  @Test
+  void testFalsePositiveIsCounted() {
+    // Given - so small that every bit is set
+    var meterRegistry = new SimpleMeterRegistry();
+    var usernameFilter = new UsernameFilter(userRepository(List.of("john")), null, meterRegistry, true, 1, 0.5);
+    usernameFilter.rebuild();
+    IntStream.range(0, 100).forEach(i -> usernameFilter.put("user" + i));
+
+    // When
+    var harry = usernameFilter.get("harry", () -> load("harry"));
+
+    // Then
+    assertThat(harry).isEmpty();
+    assertThat(lookups).hasValue(1);
+    assertThat(meterRegistry.get("username.filter.requests").tag("result", "false_positive").counter().count()).isEqualTo(1);
+  }
+
+  boolean awaitPresent(UsernameFilter usernameFilter, String username, Duration timeout) throws InterruptedException {
+    var deadline = System.nanoTime() + timeout.toNanos();
+    while (usernameFilter.get(username, () -> load(username)).isEmpty()) {
+      if (System.nanoTime() - deadline > 0) {
+        return false;
+      }
+      Thread.sleep(20);
+    }
+    return true;
+  }
+}
@@ -0,0 +1,106 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.hogwartsuser.UserRepository;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.StatusCode;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles(value = "dev")
+class AuthControllerTest {
+  @Autowired
+  MockMvc mockMvc;
+  @Autowired
+  UserRepository userRepository;
+  @MockBean
+  TokenWhitelist tokenWhitelist; // No Redis here
+  @MockBean
+  RefreshTokens refreshTokens;
+  @Value("${api.endpoint.base-url}")
+  String baseUrl;
+
+  @Test
+  void testLoginRehashesAnOutdatedPassword() throws Exception {
+    // Given - a hash of a lower strength, stored before hashes were prefixed with their algorithm
+    var eric = userRepository.findByUsername("eric").orElseThrow();
+    eric.setPassword(new BCryptPasswordEncoder(4).encode("654321"));
+    userRepository.save(eric);
+
+    // When
+    mockMvc.perform(post(baseUrl + "/users/login").with(httpBasic("eric", "654321")))
+        .andExpect(jsonPath("$.flag").value(true))
+        .andExpect(jsonPath("$.code").value(StatusCode.SUCCESS));
+
+    // Then
+    assertThat(userRepository.findByUsername("eric").orElseThrow().getPassword()).startsWith("{bcrypt}$2a$12$");
+  }
+
+  @Test
+  void testRefreshTokenSuccess() throws Exception {
+    // Given - granted at login, before eric lost the admin role
+    given(refreshTokens.use("2.refreshToken")).willReturn(Optional.of(new RefreshTokens.Grant(2, "eric", "ROLE_admin ROLE_user")));
+    given(refreshTokens.issue(new RefreshTokens.Grant(2, "eric", "ROLE_user"))).willReturn("2.newRefreshToken");
+
+    // When and then - no password
+    mockMvc.perform(post(baseUrl + "/users/token/refresh").contentType(MediaType.APPLICATION_JSON).content("{\"refreshToken\": \"2.refreshToken\"}"))
+        .andExpect(jsonPath("$.flag").value(true))
+        .andExpect(jsonPath("$.code").value(StatusCode.SUCCESS))
+        .andExpect(jsonPath("$.message").value("Refreshed JSON Web Token"))
+        .andExpect(jsonPath("$.data.token").isNotEmpty())
+        .andExpect(jsonPath("$.data.refreshToken").value("2.newRefreshToken"));
+    verify(tokenWhitelist).add(eq("2"), anyString(), eq(Duration.ofHours(2)));
+  }
+
+  @Test
+  void testRefreshTokenOfARenamedOrDisabledUser() throws Exception {
+    // Given - harry since renamed, eric's username taken over by another user's token, and tom disabled
+    given(refreshTokens.use("2.renamed")).willReturn(Optional.of(new RefreshTokens.Grant(2, "harry", "ROLE_user")));
+    given(refreshTokens.use("5.taken")).willReturn(Optional.of(new RefreshTokens.Grant(5, "eric", "ROLE_user")));
+    given(refreshTokens.use("3.disabled")).willReturn(Optional.of(new RefreshTokens.Grant(3, "tom", "ROLE_user")));
+
+    // When and then
+    for (var refreshToken : new String[]{"2.renamed", "5.taken", "3.disabled"}) {
+      mockMvc.perform(post(baseUrl + "/users/token/refresh").contentType(MediaType.APPLICATION_JSON).content("{\"refreshToken\": \"" + refreshToken + "\"}"))
+          .andExpect(status().isUnauthorized())
+          .andExpect(jsonPath("$.code").value(StatusCode.UNAUTHORIZED));
+    }
+    verify(refreshTokens, never()).issue(any());
+  }
+
+  @Test
+  void testRefreshTokenWithUsedToken() throws Exception {
+    // Given
+    given(refreshTokens.use("2.usedRefreshToken")).willReturn(Optional.empty());
+
+    // When and then
+    mockMvc.perform(post(baseUrl + "/users/token/refresh").contentType(MediaType.APPLICATION_JSON).content("{\"refreshToken\": \"2.usedRefreshToken\"}"))
+        .andExpect(status().isUnauthorized())
+        .andExpect(jsonPath("$.flag").value(false))
+        .andExpect(jsonPath("$.code").value(StatusCode.UNAUTHORIZED))
+        .andExpect(jsonPath("$.message").value("The refresh token provided is expired, revoked, already used or malformed."));
+  }
+}
@@ -0,0 +1,77 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Decodes the bearer tokens of 100 users, each sent 50 times, with and without the cache.
+ * Run it with: mvn test -Pbenchmark -Dtest=CachingJwtDecoderBenchmarkTest
+ */
+@Tag("benchmark")
+@DisplayName("Benchmark of bearer token decoding.")
+class CachingJwtDecoderBenchmarkTest {
+  static final int USERS = 100;
+  static final int REQUESTS_PER_TOKEN = 50;
+
+  @Test
+  void benchmarkDecoding() throws NoSuchAlgorithmException {
+    // Given
+    var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+    keyPairGenerator.initialize(2048);
+    var keyPair = keyPairGenerator.generateKeyPair();
+    var jwtEncoder = new NimbusJwtEncoder(new ImmutableJWKSet<>(new JWKSet(
+        new RSAKey.Builder((RSAPublicKey) keyPair.getPublic()).privateKey((RSAPrivateKey) keyPair.getPrivate()).build())));
+    var tokens = IntStream.range(0, USERS).mapToObj(i -> jwtEncoder.encode(JwtEncoderParameters.from(JwtClaimsSet.builder()
+        .issuer("self")
+        .issuedAt(Instant.now())
+        .expiresAt(Instant.now().plus(Duration.ofHours(2)))
+        .subject("user" + i)
+        .claim("authorities", "ROLE_user")
+        .build())).getTokenValue()).toList();
+    var nimbusJwtDecoder = NimbusJwtDecoder.withPublicKey((RSAPublicKey) keyPair.getPublic()).build();
+    var cachingJwtDecoder = new CachingJwtDecoder(nimbusJwtDecoder, 10_000, new SimpleMeterRegistry());
+
+    // When - warmed up first
+    decodeAll(nimbusJwtDecoder, tokens);
+    decodeAll(cachingJwtDecoder, tokens);
+    var uncachedNanos = decodeAll(nimbusJwtDecoder, tokens);
+    var cachedNanos = decodeAll(cachingJwtDecoder, tokens);
+
+    // Then
+    var decodes = USERS * REQUESTS_PER_TOKEN;
+    System.out.printf("Without cache: %d ns per decode, with cache: %d ns per decode (x%d)%n",
+        uncachedNanos / decodes, cachedNanos / decodes, uncachedNanos / cachedNanos);
+    assertThat(cachedNanos * 10).isLessThan(uncachedNanos);
+  }
+
+  static long decodeAll(JwtDecoder jwtDecoder, List<String> tokens) {
+    var start = System.nanoTime();
+    for (int i = 0; i < REQUESTS_PER_TOKEN; i++) {
+      for (var token : tokens) {
+        assertThat(jwtDecoder.decode(token).getSubject()).startsWith("user");
+      }
+    }
+    return System.nanoTime() - start;
+  }
+}
@@ -0,0 +1,104 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CachingJwtDecoderTest {
+  JwtEncoder jwtEncoder;
+  JwtDecoder jwtDecoder;
+  AtomicInteger decodes = new AtomicInteger();
+  SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @BeforeEach
+  void setUp() throws NoSuchAlgorithmException {
+    var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+    keyPairGenerator.initialize(2048);
+    var keyPair = keyPairGenerator.generateKeyPair();
+    jwtEncoder = new NimbusJwtEncoder(new ImmutableJWKSet<>(new JWKSet(
+        new RSAKey.Builder((RSAPublicKey) keyPair.getPublic()).privateKey((RSAPrivateKey) keyPair.getPrivate()).build())));
+    var nimbusJwtDecoder = NimbusJwtDecoder.withPublicKey((RSAPublicKey) keyPair.getPublic()).build();
+    jwtDecoder = token -> {
+      decodes.incrementAndGet();
+      return nimbusJwtDecoder.decode(token);
+    };
+  }
+
+  @Test
+  void testSameTokenIsDecodedOnce() {
+    // Given
+    var cachingJwtDecoder = new CachingJwtDecoder(jwtDecoder, 100, meterRegistry);
+    var token = token("john", Instant.now().plus(Duration.ofHours(2)));
+    var otherToken = token("eric", Instant.now().plus(Duration.ofHours(2)));
+
+    // When
+    var first = cachingJwtDecoder.decode(token);
+    var second = cachingJwtDecoder.decode(token);
+    var other = cachingJwtDecoder.decode(otherToken);
+
+    // Then
+    assertThat(second).isSameAs(first);
+    assertThat(other.getSubject()).isEqualTo("eric");
+    assertThat(decodes).hasValue(2);
+    assertThat(meterRegistry.counter("jwt.decoder.cache.requests", "result", "hit").count()).isEqualTo(1);
+    assertThat(meterRegistry.counter("jwt.decoder.cache.requests", "result", "miss").count()).isEqualTo(2);
+  }
+
+  @Test
+  void testExpiredTokenIsDecodedAgain() {
+    // Given - expired for the cache, though still within the clock skew allowed by the decoder
+    var cachingJwtDecoder = new CachingJwtDecoder(jwtDecoder, 100, meterRegistry);
+    var token = token("john", Instant.now().minusSeconds(1));
+
+    // When
+    cachingJwtDecoder.decode(token);
+    cachingJwtDecoder.decode(token);
+
+    // Then
+    assertThat(decodes).hasValue(2);
+  }
+
+  @Test
+  void testTamperedTokenIsNotServedFromTheCache() {
+    // Given
+    var cachingJwtDecoder = new CachingJwtDecoder(jwtDecoder, 100, meterRegistry);
+    var token = token("john", Instant.now().plus(Duration.ofHours(2)));
+    cachingJwtDecoder.decode(token);
+    var tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+    // When and then
+    assertThrows(BadJwtException.class, () -> cachingJwtDecoder.decode(tampered));
+    assertThrows(BadJwtException.class, () -> cachingJwtDecoder.decode(tampered));
+  }
+
+  String token(String subject, Instant expiresAt) {
+    var claims = JwtClaimsSet.builder()
+        .issuer("self")
+        .issuedAt(expiresAt.minus(Duration.ofHours(2)))
+        .expiresAt(expiresAt)
+        .subject(subject)
+        .build();
+    return jwtEncoder.encode(JwtEncoderParameters.from(claims)).getTokenValue();
+  }
+}
@@ -0,0 +1,64 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles(value = "dev")
+class JwksControllerTest {
+  @Autowired
+  MockMvc mockMvc;
+  @Autowired
+  JwtSigningKeys jwtSigningKeys;
+  @Autowired
+  JwtEncoder jwtEncoder;
+  @Autowired
+  JwtDecoder jwtDecoder;
+
+  @Test
+  void testFindJwkSetWithoutToken() throws Exception {
+    mockMvc.perform(get("/.well-known/jwks.json").accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.keys[0].kid").value(jwtSigningKeys.signingKey().getKeyID()))
+        .andExpect(jsonPath("$.keys[0].kty").value("RSA"))
+        .andExpect(jsonPath("$.keys[0].n").exists())
+        .andExpect(jsonPath("$.keys[0].d").doesNotExist()); // No private part
+  }
+
+  @Test
+  void testTokenCarriesTheKidOfTheKeyThatSignedIt() {
+    // Given
+    var claims = JwtClaimsSet.builder()
+        .issuer("self")
+        .issuedAt(Instant.now())
+        .expiresAt(Instant.now().plus(Duration.ofHours(2)))
+        .subject("john")
+        .build();
+
+    // When
+    var token = jwtEncoder.encode(JwtEncoderParameters.from(claims)).getTokenValue();
+    var jwt = jwtDecoder.decode(token);
+
+    // Then
+    assertThat(jwt.getHeaders()).containsEntry("kid", jwtSigningKeys.signingKey().getKeyID());
+    assertThat(jwt.getSubject()).isEqualTo("john");
+  }
+}
@@ -0,0 +1,91 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Signs and verifies tokens with every supported algorithm, through the encoder and decoder beans (without the decoder
+ * cache), and measures the size of the tokens.
+ * Run it with: mvn test -Pbenchmark -Dtest=JwtSigningAlgorithmsBenchmarkTest
+ */
+@Tag("benchmark")
+@DisplayName("Benchmark of the JWT signing algorithms.")
+class JwtSigningAlgorithmsBenchmarkTest {
+  static final int TOKENS = 2_000;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void benchmarkSigningAlgorithms() throws IOException {
+    var rs256 = measure(JWSAlgorithm.RS256);
+    var es256 = measure(JWSAlgorithm.ES256);
+
+    for (var result : List.of(rs256, es256)) {
+      System.out.printf("%s: %d signs/s, %d verifies/s, %d bytes per token%n",
+          result.algorithm(), result.signsPerSecond(), result.verifiesPerSecond(), result.tokenLength());
+    }
+    assertThat(es256.signsPerSecond()).isGreaterThan(rs256.signsPerSecond() * 2);
+    assertThat(es256.tokenLength()).isLessThan(rs256.tokenLength() - 200);
+  }
+
+  Result measure(JWSAlgorithm algorithm) throws IOException {
+    var jwtSigningKeys = new JwtSigningKeys(directory.resolve(algorithm.getName()), algorithm, Duration.ofDays(30), Duration.ofHours(3));
+    var securityConfiguration = new SecurityConfiguration(null, null, null, null, jwtSigningKeys);
+    var jwtEncoder = securityConfiguration.jwtEncoder();
+    var jwtDecoder = securityConfiguration.jwtDecoder(new SimpleMeterRegistry(), 0, List.of());
+
+    // Warm up
+    verifyAll(jwtDecoder, signAll(jwtEncoder));
+
+    var start = System.nanoTime();
+    var tokens = signAll(jwtEncoder);
+    var signNanos = System.nanoTime() - start;
+    start = System.nanoTime();
+    verifyAll(jwtDecoder, tokens);
+    var verifyNanos = System.nanoTime() - start;
+    return new Result(algorithm, TOKENS * 1_000_000_000L / signNanos, TOKENS * 1_000_000_000L / verifyNanos, tokens.getFirst().length());
+  }
+
+  static List<String> signAll(JwtEncoder jwtEncoder) {
+    var tokens = new ArrayList<String>(TOKENS);
+    for (int i = 0; i < TOKENS; i++) {
+      var claims = JwtClaimsSet.builder()
+          .issuer("self")
+          .issuedAt(Instant.now())
+          .expiresAt(Instant.now().plus(Duration.ofHours(2)))
+          .subject("user" + i)
+          .claim("userId", i)
+          .claim("authorities", "ROLE_user")
+          .build();
+      tokens.add(jwtEncoder.encode(JwtEncoderParameters.from(claims)).getTokenValue());
+    }
+    return tokens;
+  }
+
+  static void verifyAll(JwtDecoder jwtDecoder, List<String> tokens) {
+    for (var token : tokens) {
+      assertThat(jwtDecoder.decode(token).getSubject()).startsWith("user");
+    }
+  }
+
+  record Result(JWSAlgorithm algorithm, long signsPerSecond, long verifiesPerSecond, int tokenLength) {
+  }
+}
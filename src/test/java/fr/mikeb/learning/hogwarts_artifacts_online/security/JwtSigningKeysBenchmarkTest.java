@@ -0,0 +1,49 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Startup cost of the signing keys: generated on the first boot, loaded on the next ones.
+ * Run it with: mvn test -Pbenchmark -Dtest=JwtSigningKeysBenchmarkTest
+ */
+@Tag("benchmark")
+@DisplayName("Benchmark of the JWT signing keys startup.")
+class JwtSigningKeysBenchmarkTest {
+  static final int BOOTS = 20;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void benchmarkGenerationAgainstLoading() throws IOException {
+    // Warm up
+    new JwtSigningKeys(directory.resolve("warm-up"), JWSAlgorithm.RS256, Duration.ofDays(30), Duration.ofHours(3));
+
+    var generationNanos = 0L;
+    for (int i = 0; i < BOOTS; i++) {
+      var start = System.nanoTime();
+      new JwtSigningKeys(directory.resolve("first-boot-" + i), JWSAlgorithm.RS256, Duration.ofDays(30), Duration.ofHours(3));
+      generationNanos += System.nanoTime() - start;
+    }
+    var loadingNanos = 0L;
+    for (int i = 0; i < BOOTS; i++) {
+      var start = System.nanoTime();
+      new JwtSigningKeys(directory.resolve("first-boot-" + i), JWSAlgorithm.RS256, Duration.ofDays(30), Duration.ofHours(3));
+      loadingNanos += System.nanoTime() - start;
+    }
+
+    System.out.printf("First boot (RSA-2048 generated): %d us, next boots (loaded): %d us%n",
+        generationNanos / BOOTS / 1_000, loadingNanos / BOOTS / 1_000);
+    assertThat(loadingNanos * 5).isLessThan(generationNanos);
+  }
+}
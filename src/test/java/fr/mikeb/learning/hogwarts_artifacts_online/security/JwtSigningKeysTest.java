@@ -0,0 +1,138 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtSigningKeysTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void testKeyIsGeneratedOnceThenLoaded() throws Exception {
+    // Given
+    var first = new JwtSigningKeys(directory, JWSAlgorithm.RS256, Duration.ofDays(30), Duration.ofHours(3));
+
+    // When
+    var second = new JwtSigningKeys(directory, JWSAlgorithm.RS256, Duration.ofDays(30), Duration.ofHours(3));
+
+    // Then
+    assertThat(second.signingKey()).isEqualTo(first.signingKey());
+    try (var files = Files.list(directory)) {
+      assertThat(files).hasSize(1);
+    }
+  }
+
+  @Test
+  void testRotationKeepsTheReplacedKeyForTheRetention() throws IOException {
+    // Given - rotated at every refresh
+    var jwtSigningKeys = new JwtSigningKeys(directory, JWSAlgorithm.RS256, Duration.ZERO, Duration.ofHours(3));
+    var replaced = jwtSigningKeys.signingKey();
+
+    // When
+    jwtSigningKeys.refresh();
+
+    // Then - the new key signs, both verify
+    assertThat(jwtSigningKeys.signingKey().getKeyID()).isNotEqualTo(replaced.getKeyID());
+    assertThat(jwtSigningKeys.publicJwkSet().getKeyByKeyId(replaced.getKeyID())).isNotNull();
+    assertThat(jwtSigningKeys.publicJwkSet().getKeyByKeyId(replaced.getKeyID()).isPrivate()).isFalse();
+  }
+
+  @Test
+  void testReplacedKeyIsDeletedAfterTheRetention() throws IOException {
+    // Given
+    var jwtSigningKeys = new JwtSigningKeys(directory, JWSAlgorithm.RS256, Duration.ZERO, Duration.ZERO);
+    var replaced = jwtSigningKeys.signingKey();
+
+    // When
+    jwtSigningKeys.refresh();
+
+    // Then
+    assertThat(jwtSigningKeys.publicJwkSet().getKeyByKeyId(replaced.getKeyID())).isNull();
+    assertThat(jwtSigningKeys.publicJwkSet().getKeys()).hasSize(1);
+  }
+
+  @Test
+  void testKeyCreatedByAnotherInstanceIsFoundByItsKid() throws Exception {
+    // Given - two instances sharing the directory
+    var first = new JwtSigningKeys(directory, JWSAlgorithm.RS256, Duration.ofDays(30), Duration.ofHours(3));
+    var second = new JwtSigningKeys(directory, JWSAlgorithm.RS256, Duration.ZERO, Duration.ofHours(3));
+
+    // When - the second one rotates, which the first one won't see before its next refresh
+    second.refresh();
+    var kid = second.signingKey().getKeyID();
+    Thread.sleep(1_100); // Past the minimum interval between two reads of the directory
+
+    // Then
+    var matches = first.verificationKeys().get(new JWKSelector(new JWKMatcher.Builder().keyID(kid).build()), null);
+    assertThat(matches).hasSize(1);
+  }
+
+  @Test
+  void testKeyOfEveryAlgorithmIsLoadedBack() throws IOException {
+    for (var algorithm : JwtSigningKeys.ALGORITHMS) {
+      // Given
+      var first = new JwtSigningKeys(directory.resolve(algorithm.getName()), algorithm, Duration.ofDays(30), Duration.ofHours(3));
+
+      // When
+      var second = new JwtSigningKeys(directory.resolve(algorithm.getName()), algorithm, Duration.ofDays(30), Duration.ofHours(3));
+
+      // Then
+      assertThat(second.signingKey()).isEqualTo(first.signingKey());
+      assertThat(second.signingKey().getAlgorithm()).isEqualTo(algorithm);
+      assertThat(second.signingKey().isPrivate()).isTrue();
+    }
+  }
+
+  @Test
+  void testChangingTheAlgorithmRotatesTheKey() throws IOException {
+    // Given
+    var replaced = new JwtSigningKeys(directory, JWSAlgorithm.RS256, Duration.ofDays(30), Duration.ofHours(3)).signingKey();
+
+    // When - restarted with another algorithm
+    var jwtSigningKeys = new JwtSigningKeys(directory, JWSAlgorithm.ES256, Duration.ofDays(30), Duration.ofHours(3));
+
+    // Then - the RSA key still verifies the tokens it signed
+    assertThat(jwtSigningKeys.signingKey().getAlgorithm()).isEqualTo(JWSAlgorithm.ES256);
+    assertThat(jwtSigningKeys.publicJwkSet().getKeyByKeyId(replaced.getKeyID())).isNotNull();
+  }
+
+  @Test
+  void testTokenOfEveryAlgorithmIsVerified() throws IOException {
+    for (var algorithm : JwtSigningKeys.ALGORITHMS) {
+      // Given
+      var jwtSigningKeys = new JwtSigningKeys(directory.resolve(algorithm.getName()), algorithm, Duration.ofDays(30), Duration.ofHours(3));
+      var securityConfiguration = new SecurityConfiguration(null, null, null, null, jwtSigningKeys);
+      var jwtEncoder = securityConfiguration.jwtEncoder();
+      var jwtDecoder = securityConfiguration.jwtDecoder(new SimpleMeterRegistry(), 0, List.of());
+      var claims = JwtClaimsSet.builder()
+          .issuer("self")
+          .issuedAt(Instant.now())
+          .expiresAt(Instant.now().plus(Duration.ofHours(2)))
+          .subject("john")
+          .build();
+
+      // When
+      var jwt = jwtDecoder.decode(jwtEncoder.encode(JwtEncoderParameters.from(claims)).getTokenValue());
+
+      // Then
+      assertThat(jwt.getHeaders()).containsEntry("kid", jwtSigningKeys.signingKey().getKeyID());
+      assertThat(jwt.getHeaders().get("alg")).hasToString(algorithm.getName());
+      assertThat(jwt.getSubject()).isEqualTo("john");
+    }
+  }
+}
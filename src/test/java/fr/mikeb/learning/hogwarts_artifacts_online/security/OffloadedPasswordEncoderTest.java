@@ -0,0 +1,103 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.PasswordHashingBusyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OffloadedPasswordEncoderTest {
+  SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  CountDownLatch release = new CountDownLatch(1);
+  OffloadedPasswordEncoder passwordEncoder;
+
+  @AfterEach
+  void tearDown() {
+    release.countDown();
+    passwordEncoder.close();
+  }
+
+  @Test
+  void testEncodeAndMatchesRunOnThePool() {
+    // Given
+    passwordEncoder = new OffloadedPasswordEncoder(new BCryptPasswordEncoder(4), 2, 10, Duration.ofSeconds(5), meterRegistry);
+
+    // When
+    var encoded = passwordEncoder.encode("123456");
+
+    // Then
+    assertThat(passwordEncoder.matches("123456", encoded)).isTrue();
+    assertThat(passwordEncoder.matches("654321", encoded)).isFalse();
+    assertThat(meterRegistry.get("password.hashing").tag("operation", "encode").timer().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("password.hashing").tag("operation", "matches").timer().count()).isEqualTo(2);
+  }
+
+  @Test
+  void testFailsFastWhenTheQueueIsFull() throws InterruptedException {
+    // Given - one thread busy, and one password queued
+    passwordEncoder = new OffloadedPasswordEncoder(blockingPasswordEncoder(), 1, 1, Duration.ofSeconds(5), meterRegistry);
+    CompletableFuture.runAsync(() -> passwordEncoder.encode("running"));
+    CompletableFuture.runAsync(() -> passwordEncoder.encode("queued"));
+    assertThat(awaitQueued(1, Duration.ofSeconds(2))).isTrue();
+
+    // When and then
+    assertThat(passwordEncoder.upgradeEncoding("{noop}123456")).isFalse();
+    assertThatThrownBy(() -> passwordEncoder.encode("rejected")).isInstanceOf(PasswordHashingBusyException.class);
+    assertThat(meterRegistry.get("password.hashing.rejected").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void testGivesUpAfterTheTimeout() {
+    // Given - one thread busy
+    passwordEncoder = new OffloadedPasswordEncoder(blockingPasswordEncoder(), 1, 10, Duration.ofMillis(100), meterRegistry);
+    CompletableFuture.runAsync(() -> passwordEncoder.encode("running"));
+
+    // When and then
+    assertThatThrownBy(() -> passwordEncoder.matches("queued", "encoded")).isInstanceOf(PasswordHashingBusyException.class);
+    // The caller of the running one gives up too
+    assertThat(meterRegistry.get("password.hashing.rejected").counter().count()).isGreaterThanOrEqualTo(1);
+  }
+
+  boolean awaitQueued(int queued, Duration timeout) throws InterruptedException {
+    var deadline = System.nanoTime() + timeout.toNanos();
+    while (meterRegistry.get("password.hashing.queue.size").gauge().value() < queued) {
+      if (System.nanoTime() - deadline > 0) {
+        return false;
+      }
+      Thread.sleep(20);
+    }
+    return true;
+  }
+
+  PasswordEncoder blockingPasswordEncoder() {
+    return new PasswordEncoder() {
+      @Override
+      public String encode(CharSequence rawPassword) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return rawPassword.toString();
+      }
+
+      @Override
+      public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return encode(rawPassword).equals(encodedPassword);
+      }
+
+      @Override
+      public boolean upgradeEncoding(String encodedPassword) {
+        return true;
+      }
+    };
+  }
+}
@@ -0,0 +1,124 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache.RedisCacheClient;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RefreshTokensTest {
+  static RedisServer redisServer;
+  static ConfigurableApplicationContext context;
+  static RefreshTokens refreshTokens;
+
+  @Configuration
+  @ImportAutoConfiguration({RedisAutoConfiguration.class, JacksonAutoConfiguration.class})
+  @Import({RefreshTokens.class, RedisCacheClient.class})
+  static class Instance {
+  }
+
+  @BeforeAll
+  static void startRedis() throws IOException {
+    int redisPort;
+    try (var socket = new ServerSocket(0)) {
+      redisPort = socket.getLocalPort();
+    }
+    redisServer = new RedisServer(redisPort);
+    redisServer.start();
+    context = new SpringApplicationBuilder(Instance.class)
+        .web(WebApplicationType.NONE)
+        .run("--spring.data.redis.host=localhost", "--spring.data.redis.port=" + redisPort);
+    refreshTokens = context.getBean(RefreshTokens.class);
+  }
+
+  @AfterAll
+  static void stopRedis() throws IOException {
+    context.close();
+    redisServer.stop();
+  }
+
+  @Test
+  void testRefreshTokenIsGoodForOneUse() {
+    // Given
+    var grant = new RefreshTokens.Grant(1, "john", "ROLE_admin ROLE_user");
+    var refreshToken = refreshTokens.issue(grant);
+
+    // When
+    var first = refreshTokens.use(refreshToken);
+    var second = refreshTokens.use(refreshToken);
+
+    // Then
+    assertThat(first).contains(grant);
+    assertThat(second).isEmpty();
+  }
+
+  @Test
+  void testNewRefreshTokenReplacesThePreviousOne() {
+    // Given
+    var grant = new RefreshTokens.Grant(2, "eric", "ROLE_user");
+    var previous = refreshTokens.issue(grant);
+
+    // When
+    var current = refreshTokens.issue(grant);
+
+    // Then
+    assertThat(refreshTokens.use(previous)).isEmpty();
+    assertThat(refreshTokens.use(current)).contains(grant);
+  }
+
+  @Test
+  void testEveryKeyExpires() {
+    // Given
+    var redisTemplate = context.getBean(StringRedisTemplate.class);
+    refreshTokens.issue(new RefreshTokens.Grant(5, "ginny", "ROLE_user"));
+
+    // When
+    refreshTokens.issue(new RefreshTokens.Grant(5, "ginny", "ROLE_user"));
+
+    // Then
+    assertThat(redisTemplate.keys("refresh:5*")).hasSize(2)
+        .allSatisfy(key -> assertThat(redisTemplate.getExpire(key)).isPositive());
+  }
+
+  @Test
+  void testRevokedRefreshTokenIsRejected() {
+    // Given
+    var refreshToken = refreshTokens.issue(new RefreshTokens.Grant(3, "tom", "ROLE_user"));
+
+    // When
+    refreshTokens.revoke(3);
+
+    // Then
+    assertThat(refreshTokens.use(refreshToken)).isEmpty();
+  }
+
+  @Test
+  void testForgedRefreshTokenIsRejectedWithoutRevokingTheRealOne() {
+    // Given
+    var grant = new RefreshTokens.Grant(4, "lily", "ROLE_user");
+    var refreshToken = refreshTokens.issue(grant);
+
+    // When
+    var forged = refreshTokens.use("4.forged");
+    var malformed = refreshTokens.use("malformed");
+
+    // Then
+    assertThat(forged).isEmpty();
+    assertThat(malformed).isEmpty();
+    assertThat(refreshTokens.use(refreshToken)).contains(grant);
+  }
+}
@@ -0,0 +1,132 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.security;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.client.rediscache.RedisCacheClient;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two application contexts, standing for two instances, sharing one Redis server.
+ */
+class TokenWhitelistTest {
+  static final Instant EXPIRES_AT = Instant.now().plus(Duration.ofHours(2));
+
+  static RedisServer redisServer;
+  static int redisPort;
+  List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+
+  @Configuration
+  @ImportAutoConfiguration(RedisAutoConfiguration.class)
+  @Import({TokenWhitelist.class, TokenWhitelistConfiguration.class, RedisCacheClient.class})
+  static class Instance {
+  }
+
+  @BeforeAll
+  static void startRedis() throws IOException {
+    try (var socket = new ServerSocket(0)) {
+      redisPort = socket.getLocalPort();
+    }
+    redisServer = new RedisServer(redisPort);
+    redisServer.start();
+  }
+
+  @AfterAll
+  static void stopRedis() throws IOException {
+    redisServer.stop();
+  }
+
+  @AfterEach
+  void tearDown() {
+    contexts.forEach(ConfigurableApplicationContext::close);
+  }
+
+  TokenWhitelist startInstance(String maxStaleness) {
+    var context = new SpringApplicationBuilder(Instance.class)
+        .web(WebApplicationType.NONE)
+        .run("--spring.data.redis.host=localhost",
+            "--spring.data.redis.port=" + redisPort,
+            "--security.token-whitelist.cache.enabled=true",
+            "--security.token-whitelist.cache.max-staleness=" + maxStaleness);
+    contexts.add(context);
+    return context.getBean(TokenWhitelist.class);
+  }
+
+  @Test
+  void testRevocationOnOneInstanceReachesTheOthers() throws InterruptedException {
+    // Given - both instances checked, hence cached, the token, for far longer than the test
+    var first = startInstance("1h");
+    var second = startInstance("1h");
+    first.add("1", "token", Duration.ofHours(2));
+    assertThat(first.contains("1", "token", EXPIRES_AT)).isTrue();
+    assertThat(second.contains("1", "token", EXPIRES_AT)).isTrue();
+
+    // When
+    second.revoke("1");
+
+    // Then
+    assertThat(second.contains("1", "token", EXPIRES_AT)).isFalse();
+    assertThat(awaitRevoked(first, "1", "token", Duration.ofSeconds(2))).isTrue();
+  }
+
+  @Test
+  void testNewLoginRevokesThePreviousTokenEverywhere() throws InterruptedException {
+    // Given
+    var first = startInstance("1h");
+    var second = startInstance("1h");
+    first.add("2", "old-token", Duration.ofHours(2));
+    assertThat(second.contains("2", "old-token", EXPIRES_AT)).isTrue();
+
+    // When
+    first.add("2", "new-token", Duration.ofHours(2));
+
+    // Then
+    assertThat(awaitRevoked(second, "2", "old-token", Duration.ofSeconds(2))).isTrue();
+    assertThat(second.contains("2", "new-token", EXPIRES_AT)).isTrue();
+  }
+
+  @Test
+  void testRevocationWithoutMessageAppliesAfterMaxStaleness() throws InterruptedException {
+    // Given
+    var instance = startInstance("500ms");
+    var redisTemplate = contexts.getFirst().getBean(StringRedisTemplate.class);
+    redisTemplate.opsForValue().set("whitelist:3", "token");
+    assertThat(instance.contains("3", "token", EXPIRES_AT)).isTrue();
+
+    // When - the key is deleted behind the application's back, so no revocation is published
+    redisTemplate.delete("whitelist:3");
+
+    // Then - still served from memory, until max-staleness
+    assertThat(instance.contains("3", "token", EXPIRES_AT)).isTrue();
+    assertThat(awaitRevoked(instance, "3", "token", Duration.ofSeconds(2))).isTrue();
+  }
+
+  static boolean awaitRevoked(TokenWhitelist tokenWhitelist, String userId, String token, Duration timeout) throws InterruptedException {
+    var deadline = System.nanoTime() + timeout.toNanos();
+    while (tokenWhitelist.contains(userId, token, EXPIRES_AT)) {
+      if (System.nanoTime() - deadline > 0) {
+        return false;
+      }
+      Thread.sleep(20);
+    }
+    return true;
+  }
+}
@@ -0,0 +1,196 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.system.idworker;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.autoconfigure.task.TaskSchedulingAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Several application contexts, standing for several instances, sharing one Redis server.
+ */
+class WorkerIdLeaseTest {
+  static final int INSTANCES = 4;
+  static final int IDS_PER_INSTANCE = 250_000;
+
+  static RedisServer redisServer;
+  static int redisPort;
+  List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+
+  @Configuration
+  @EnableScheduling
+  @ImportAutoConfiguration({RedisAutoConfiguration.class, TaskSchedulingAutoConfiguration.class})
+  @Import(IdWorkerConfiguration.class)
+  static class Instance {
+  }
+
+  @BeforeAll
+  static void startRedis() throws IOException {
+    try (var socket = new ServerSocket(0)) {
+      redisPort = socket.getLocalPort();
+    }
+    redisServer = new RedisServer(redisPort);
+    redisServer.start();
+  }
+
+  @AfterAll
+  static void stopRedis() throws IOException {
+    redisServer.stop();
+  }
+
+  @AfterEach
+  void tearDown() {
+    contexts.forEach(ConfigurableApplicationContext::close);
+  }
+
+  ConfigurableApplicationContext startInstance() {
+    var context = new SpringApplicationBuilder(Instance.class)
+        .web(WebApplicationType.NONE)
+        .run("--spring.data.redis.host=localhost",
+            "--spring.data.redis.port=" + redisPort,
+            "--id-worker.lease.enabled=true",
+            "--id-worker.lease.ttl=3s",
+            "--id-worker.lease.max-clock-skew=100ms");
+    contexts.add(context);
+    return context;
+  }
+
+  @Test
+  void testInstancesGenerateNoDuplicateIds() throws Exception {
+    // Given
+    var leases = new ArrayList<WorkerIdLease>();
+    for (int i = 0; i < INSTANCES; i++) {
+      leases.add(startInstance().getBean(WorkerIdLease.class));
+    }
+
+    // When - all the instances generate ids at the same time, 1M in total
+    var tasks = new ArrayList<Callable<long[]>>();
+    for (var lease : leases) {
+      tasks.add(() -> lease.idWorker().nextIds(IDS_PER_INSTANCE));
+    }
+    var allIds = new long[INSTANCES * IDS_PER_INSTANCE];
+    try (var executor = Executors.newFixedThreadPool(INSTANCES)) {
+      int offset = 0;
+      for (var future : executor.invokeAll(tasks)) {
+        System.arraycopy(future.get(), 0, allIds, offset, IDS_PER_INSTANCE);
+        offset += IDS_PER_INSTANCE;
+      }
+    }
+
+    // Then
+    assertThat(leases).extracting(WorkerIdLease::slot).doesNotHaveDuplicates();
+    Arrays.sort(allIds);
+    for (int i = 1; i < allIds.length; i++) {
+      assertThat(allIds[i]).isNotEqualTo(allIds[i - 1]);
+    }
+  }
+
+  @Test
+  void testLeaseTakenByAnotherInstanceMovesTheIdWorkerToAnotherSlot() {
+    // Given
+    var context = startInstance();
+    var lease = context.getBean(WorkerIdLease.class);
+    var redisTemplate = context.getBean(StringRedisTemplate.class);
+    var lostSlot = lease.slot();
+    var before = lease.idWorker().nextId();
+
+    // When - the key now belongs to someone else, e.g. after a Redis failover
+    redisTemplate.opsForValue().set(WorkerIdLease.key(lostSlot), "another-instance");
+    lease.renew();
+
+    // Then - the ids carry the new slot
+    var after = lease.idWorker().nextId();
+    assertThat(lease.slot()).isNotEqualTo(lostSlot);
+    assertThat(redisTemplate.hasKey(WorkerIdLease.key(lease.slot()))).isTrue();
+    assertThat(after).isGreaterThan(before);
+    assertThat((after >> 12) & (WorkerIdLease.SLOTS - 1)).isEqualTo(lease.slot());
+    assertThat(context.getBean(WorkerIdLeaseHealthIndicator.class).health().getStatus()).isEqualTo(Status.UP);
+  }
+
+  @Test
+  void testLeaseLostWhileEverySlotIsTakenFencesTheIdWorkerUntilOneIsFree() {
+    // Given
+    var context = startInstance();
+    var lease = context.getBean(WorkerIdLease.class);
+    var redisTemplate = context.getBean(StringRedisTemplate.class);
+    var healthIndicator = context.getBean(WorkerIdLeaseHealthIndicator.class);
+    var keys = IntStream.range(0, WorkerIdLease.SLOTS).mapToObj(WorkerIdLease::key).toList();
+
+    // When - every slot belongs to another instance
+    redisTemplate.opsForValue().multiSet(keys.stream().collect(Collectors.toMap(key -> key, key -> "another-instance")));
+    lease.renew();
+
+    // Then
+    assertThatThrownBy(() -> lease.idWorker().nextId())
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("lease expired");
+    assertThat(healthIndicator.health().getStatus()).isEqualTo(Status.DOWN);
+
+    // When - the slots are freed, and the next renewal looks again
+    redisTemplate.delete(keys);
+    lease.renew();
+
+    // Then
+    assertThat(lease.idWorker().nextId()).isPositive();
+    assertThat(healthIndicator.health().getStatus()).isEqualTo(Status.UP);
+  }
+
+  @Test
+  void testLostLeaseIsTakenAgainWhenTheSlotIsFree() {
+    // Given
+    var context = startInstance();
+    var lease = context.getBean(WorkerIdLease.class);
+    var redisTemplate = context.getBean(StringRedisTemplate.class);
+    var before = lease.idWorker().nextId();
+
+    // When - the key vanished, e.g. Redis restarted without persistence
+    redisTemplate.delete(WorkerIdLease.key(lease.slot()));
+    lease.renew();
+
+    // Then
+    assertThat(redisTemplate.hasKey(WorkerIdLease.key(lease.slot()))).isTrue();
+    assertThat(lease.idWorker().nextId()).isGreaterThan(before);
+  }
+
+  @Test
+  void testClosingTheContextReleasesTheSlot() {
+    // Given
+    var context = startInstance();
+    var lease = context.getBean(WorkerIdLease.class);
+    var redisTemplate = context.getBean(StringRedisTemplate.class);
+    var key = WorkerIdLease.key(lease.slot());
+    assertThat(redisTemplate.hasKey(key)).isTrue();
+
+    // When
+    var otherContext = startInstance();
+    context.close();
+
+    // Then
+    assertThat(otherContext.getBean(StringRedisTemplate.class).hasKey(key)).isFalse();
+    assertThatThrownBy(() -> lease.idWorker().nextId()).isInstanceOf(IllegalStateException.class);
+  }
+}
@@ -0,0 +1,86 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.wizard;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.Artifact;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactResponseCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles(value = "dev")
+class WizardArtifactCountCheckerTest {
+  @Autowired
+  WizardRepository wizardRepository;
+  @Autowired
+  TestEntityManager entityManager;
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+
+  @Test
+  void testCheckRecountsOnlyTheDriftedWizards() {
+    // Given - two wizards with 3 artifacts each, then one artifact moved behind the application's back
+    var albus = wizardWithArtifacts("Albus Dumbledore", "1", 3);
+    var harry = wizardWithArtifacts("Harry Potter", "2", 3);
+    entityManager.flush();
+    jdbcTemplate.update("UPDATE artifact SET owner_id = ? WHERE id = '10'", harry.getId());
+    entityManager.clear();
+    var meterRegistry = new SimpleMeterRegistry();
+    var checker = new WizardArtifactCountChecker(wizardRepository,
+        new ArtifactResponseCache(true, false, DataSize.ofMegabytes(1), Duration.ofMinutes(1)), meterRegistry);
+
+    // When
+    var recounted = checker.check();
+    entityManager.clear();
+
+    // Then
+    assertThat(recounted).isEqualTo(2);
+    assertThat(wizardRepository.findById(albus.getId()).orElseThrow().getNumberOfArtifacts()).isEqualTo(2);
+    assertThat(wizardRepository.findById(harry.getId()).orElseThrow().getNumberOfArtifacts()).isEqualTo(4);
+    assertThat(meterRegistry.counter("wizard.artifact.count.repairs").count()).isEqualTo(2);
+    assertThat(checker.check()).isZero();
+  }
+
+  @Test
+  void testAdjustArtifactCountLeavesTheVersionAloneButNotTheLastModification() {
+    // Given
+    var albus = wizardWithArtifacts("Albus Dumbledore", "1", 1);
+    entityManager.flush();
+    var version = albus.getVersion();
+    entityManager.clear();
+    var now = albus.getLastModified().plusSeconds(1);
+
+    // When
+    wizardRepository.adjustArtifactCount(albus.getId(), 1, now);
+    entityManager.clear();
+
+    // Then - a client sending If-Modified-Since sees the new count
+    var reloaded = wizardRepository.findById(albus.getId()).orElseThrow();
+    assertThat(reloaded.getNumberOfArtifacts()).isEqualTo(2);
+    assertThat(reloaded.getVersion()).isEqualTo(version);
+    assertThat(reloaded.getLastModified()).isEqualTo(now);
+  }
+
+  Wizard wizardWithArtifacts(String name, String idPrefix, int numberOfArtifacts) {
+    var wizard = new Wizard();
+    wizard.setName(name);
+    for (int i = 0; i < numberOfArtifacts; i++) {
+      var artifact = new Artifact();
+      artifact.setId(idPrefix + i);
+      artifact.setName("Artifact " + idPrefix + i);
+      artifact.setDescription("Description");
+      artifact.setImgUrl("ImageUrl");
+      wizard.addArtifact(artifact);
+    }
+    return entityManager.persist(wizard);
+  }
+}
@@ -0,0 +1,105 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.wizard;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactCountCache;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactRepository;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactResponseCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.IntSupplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Moves 50k artifacts between two wizards with the set-based transfer and bulk assignment, against a few moved one by
+ * one, which loads both wizards' artifacts each time.
+ * Run it with: mvn test -Pbenchmark -Dtest=WizardBulkAssignmentBenchmarkTest
+ */
+@DataJpaTest
+@Tag("benchmark")
+@DisplayName("Benchmark of the bulk reassignment of artifacts.")
+@ActiveProfiles(value = "dev")
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // Each move commits, as it would in production.
+class WizardBulkAssignmentBenchmarkTest {
+  static final int ARTIFACTS = 50_000;
+  static final int SINGLE_ITEMS = 20;
+
+  @Autowired
+  WizardRepository wizardRepository;
+  @Autowired
+  ArtifactRepository artifactRepository;
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+  @Autowired
+  PlatformTransactionManager transactionManager;
+  WizardService wizardService;
+  List<String> artifactIds;
+
+  @AfterEach
+  void tearDown() {
+    jdbcTemplate.update("DELETE FROM artifact");
+    jdbcTemplate.update("DELETE FROM wizard");
+  }
+
+  @BeforeEach
+  void setUp() {
+    wizardService = new WizardService(wizardRepository, artifactRepository,
+        new ArtifactCountCache(new SimpleAsyncTaskExecutor(), false, Duration.ZERO),
+        new ArtifactResponseCache(true, false, DataSize.ofMegabytes(8), Duration.ofSeconds(10)));
+
+    jdbcTemplate.update("INSERT INTO wizard (id, name, artifact_count) VALUES (1, 'Albus Dumbledore', ?), (2, 'Harry Potter', 0)", ARTIFACTS);
+    artifactIds = IntStream.range(0, ARTIFACTS).mapToObj(i -> String.format("%019d", i)).toList();
+    var rows = artifactIds.stream().map(id -> new Object[]{id, "Artifact " + id, "Description", "ImageUrl", 1}).toList();
+    jdbcTemplate.batchUpdate("INSERT INTO artifact (id, name, description, img_url, owner_id, version) VALUES (?, ?, ?, ?, ?, 0)", rows);
+  }
+
+  @Test
+  void benchmarkTransferAndBulkAssignment() {
+    // A few artifacts go to Harry one by one, the rest follow in one transfer, then they all come back by id.
+    var singleMillis = measure(() -> {
+      artifactIds.subList(0, SINGLE_ITEMS).forEach(artifactId -> wizardService.assignArtifact(2, artifactId));
+      return SINGLE_ITEMS;
+    }, SINGLE_ITEMS);
+    var transferMillis = measure(() -> wizardService.transferArtifacts(1, 2), ARTIFACTS - SINGLE_ITEMS);
+    var assignmentMillis = measure(() -> wizardService.assignArtifacts(1, artifactIds), ARTIFACTS);
+
+    var singlePerSecond = SINGLE_ITEMS * 1_000L / Math.max(singleMillis, 1);
+    var transferPerSecond = (ARTIFACTS - SINGLE_ITEMS) * 1_000L / Math.max(transferMillis, 1);
+    var assignmentPerSecond = ARTIFACTS * 1_000L / Math.max(assignmentMillis, 1);
+    System.out.printf("One by one: %d artifacts/s, transfer: %d artifacts/s in %d ms, bulk assignment: %d artifacts/s in %d ms%n",
+        singlePerSecond, transferPerSecond, transferMillis, assignmentPerSecond, assignmentMillis);
+
+    assertThat(wizardRepository.findById(1).orElseThrow().getNumberOfArtifacts()).isEqualTo(ARTIFACTS);
+    assertThat(wizardRepository.findById(2).orElseThrow().getNumberOfArtifacts()).isZero();
+    assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM artifact WHERE owner_id = 1", Integer.class)).isEqualTo(ARTIFACTS);
+    assertThat(transferPerSecond).isGreaterThanOrEqualTo(20 * singlePerSecond);
+    assertThat(assignmentPerSecond).isGreaterThanOrEqualTo(20 * singlePerSecond);
+  }
+
+  /**
+   * Returns the time of the move in milliseconds, commit included.
+   */
+  long measure(IntSupplier move, int expectedMoves) {
+    var start = System.nanoTime();
+    var moves = new TransactionTemplate(transactionManager).execute(status -> move.getAsInt());
+    var millis = (System.nanoTime() - start) / 1_000_000;
+    assertThat(moves).isEqualTo(expectedMoves);
+    return millis;
+  }
+}
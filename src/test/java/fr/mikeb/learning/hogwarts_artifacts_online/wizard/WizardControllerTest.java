@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.mikeb.learning.hogwarts_artifacts_online.artifact.Artifact;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.StatusCode;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.NotFoundException;
+import fr.mikeb.learning.hogwarts_artifacts_online.wizard.dto.WizardDeletionDto;
 import fr.mikeb.learning.hogwarts_artifacts_online.wizard.dto.WizardDto;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,6 +15,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
@@ -25,11 +27,15 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
 @AutoConfigureMockMvc(addFilters = false)
@@ -41,6 +47,8 @@ class WizardControllerTest {
   ObjectMapper objectMapper;
   @MockBean
   WizardService wizardService;
+  @MockBean
+  WizardDeleter wizardDeleter;
   @Value("${api.endpoint.base-url}")
   String baseUrl;
   List<Wizard> wizards;
@@ -85,6 +93,36 @@ class WizardControllerTest {
         .andExpect(jsonPath("$.data.numberOfArtifacts").value(2));
   }
 
+  @Test
+  void testFindWizardByIdNotModified() throws Exception {
+    // Given
+    var wizard = wizards.getFirst();
+    wizard.setVersion(4L);
+    given(wizardService.findById(1)).willReturn(wizard);
+
+    // When and then
+    mockMvc.perform(get(baseUrl + "/wizards/1").header(HttpHeaders.IF_NONE_MATCH, "\"4.2\"").accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"4.2\""))
+        .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"));
+  }
+
+  @Test
+  void testUpdateWizardErrorWithStaleIfMatch() throws Exception {
+    // Given
+    var wizard = wizards.get(1);
+    wizard.setVersion(4L);
+    given(wizardService.findById(2)).willReturn(wizard);
+
+    // When and then
+    mockMvc.perform(put(baseUrl + "/wizards/2").contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(new WizardDto(null, "Harry James Potter", null)))
+            .header(HttpHeaders.IF_MATCH, "\"3.2\"").accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isPreconditionFailed())
+        .andExpect(jsonPath("$.flag").value(false))
+        .andExpect(jsonPath("$.code").value(StatusCode.PRECONDITION_FAILED));
+    verify(wizardService, never()).update(Mockito.anyInt(), Mockito.any(), Mockito.any());
+  }
+
   @Test
   void testFindWizardByIdNotFound() throws Exception {
     // Given
@@ -154,7 +192,7 @@ class WizardControllerTest {
     updatedWizard.addArtifact(new Artifact());
     updatedWizard.addArtifact(new Artifact());
 
-    given(wizardService.update(eq(2), Mockito.any(Wizard.class))).willReturn(updatedWizard);
+    given(wizardService.update(eq(2), Mockito.any(Wizard.class), Mockito.isNull())).willReturn(updatedWizard);
 
     // When and then
     mockMvc.perform(put(baseUrl + "/wizards/2").contentType(MediaType.APPLICATION_JSON).content(json).accept(MediaType.APPLICATION_JSON))
@@ -174,7 +212,7 @@ class WizardControllerTest {
         null);
     String json = objectMapper.writeValueAsString(wizardDto);
 
-    given(wizardService.update(eq(5), Mockito.any(Wizard.class)))
+    given(wizardService.update(eq(5), Mockito.any(Wizard.class), Mockito.isNull()))
         .willThrow(new NotFoundException("artifact", "5"));
 
     // When and then
@@ -253,4 +291,70 @@ class WizardControllerTest {
         .andExpect(jsonPath("$.message").value("Could not find artifact with Id 1250808601744904199 :("))
         .andExpect(jsonPath("$.data").isEmpty());
   }
-}
\ No newline at end of file
+
+  @Test
+  void testAssignArtifactsSuccess() throws Exception {
+    // Given
+    var artifactIds = List.of("1250808601744904191", "1250808601744904192");
+    given(wizardService.assignArtifacts(2, artifactIds)).willReturn(2);
+
+    // When and then
+    mockMvc.perform(put(baseUrl + "/wizards/2/artifacts").contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(artifactIds)).accept(MediaType.APPLICATION_JSON))
+        .andExpect(jsonPath("$.flag").value(true))
+        .andExpect(jsonPath("$.code").value(StatusCode.SUCCESS))
+        .andExpect(jsonPath("$.message").value("Artifacts Assignment Success"))
+        .andExpect(jsonPath("$.data").value(2));
+  }
+
+  @Test
+  void testTransferArtifactsSuccess() throws Exception {
+    // Given
+    given(wizardService.transferArtifacts(1, 2)).willReturn(3);
+
+    // When and then
+    mockMvc.perform(post(baseUrl + "/wizards/1/artifacts/transfer/2").accept(MediaType.APPLICATION_JSON))
+        .andExpect(jsonPath("$.flag").value(true))
+        .andExpect(jsonPath("$.code").value(StatusCode.SUCCESS))
+        .andExpect(jsonPath("$.message").value("Artifacts Transfer Success"))
+        .andExpect(jsonPath("$.data").value(3));
+  }
+
+  @Test
+  void testTransferArtifactsErrorWithNonExistentWizardId() throws Exception {
+    // Given
+    given(wizardService.transferArtifacts(1, 5)).willThrow(new NotFoundException("wizard", 5 + ""));
+
+    // When and then
+    mockMvc.perform(post(baseUrl + "/wizards/1/artifacts/transfer/5").accept(MediaType.APPLICATION_JSON))
+        .andExpect(jsonPath("$.flag").value(false))
+        .andExpect(jsonPath("$.code").value(StatusCode.NOT_FOUND))
+        .andExpect(jsonPath("$.message").value("Could not find wizard with Id 5 :("));
+  }
+
+  @Test
+  void testDeleteWizardAsyncAccepted() throws Exception {
+    // Given
+    given(wizardDeleter.start(2)).willReturn(new WizardDeletionDto(2, "RUNNING", 2, 0, null));
+
+    // When and then
+    mockMvc.perform(delete(baseUrl + "/wizards/2").param("async", "true").accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isAccepted())
+        .andExpect(jsonPath("$.flag").value(true))
+        .andExpect(jsonPath("$.message").value("Delete Started"))
+        .andExpect(jsonPath("$.data.status").value("RUNNING"))
+        .andExpect(jsonPath("$.data.totalArtifacts").value(2));
+    verify(wizardService, never()).delete(2);
+  }
+
+  @Test
+  void testFindWizardDeletionErrorWithNonExistentDeletion() throws Exception {
+    // Given
+    given(wizardDeleter.progress(5)).willThrow(new NotFoundException("wizard deletion", 5 + ""));
+
+    // When and then
+    mockMvc.perform(get(baseUrl + "/wizards/5/deletion").accept(MediaType.APPLICATION_JSON))
+        .andExpect(jsonPath("$.flag").value(false))
+        .andExpect(jsonPath("$.code").value(StatusCode.NOT_FOUND))
+        .andExpect(jsonPath("$.message").value("Could not find wizard deletion with Id 5 :("));
+  }
+}
@@ -0,0 +1,79 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.wizard;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.Artifact;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactCountCache;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactRepository;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactResponseCache;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.NotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DataJpaTest
+@ActiveProfiles(value = "dev")
+class WizardDeleterTest {
+  @Autowired
+  WizardRepository wizardRepository;
+  @Autowired
+  ArtifactRepository artifactRepository;
+  @Autowired
+  TestEntityManager entityManager;
+  WizardDeleter wizardDeleter;
+
+  @BeforeEach
+  void setUp() {
+    var wizardService = new WizardService(wizardRepository, artifactRepository,
+        new ArtifactCountCache(new SimpleAsyncTaskExecutor(), false, Duration.ZERO),
+        new ArtifactResponseCache(true, false, DataSize.ofMegabytes(1), Duration.ofMinutes(1)));
+    // Runs the deletion on the calling thread, in the test's transaction.
+    wizardDeleter = new WizardDeleter(wizardService, new TaskExecutorAdapter(Runnable::run), 2);
+  }
+
+  @Test
+  void testDeletionUnassignsTheArtifactsByChunksThenDeletesTheWizard() {
+    // Given
+    var albus = new Wizard();
+    albus.setName("Albus Dumbledore");
+    for (int i = 0; i < 5; i++) {
+      var artifact = new Artifact();
+      artifact.setId("10" + i);
+      artifact.setName("Artifact " + i);
+      artifact.setDescription("Description");
+      artifact.setImgUrl("ImageUrl");
+      albus.addArtifact(artifact);
+    }
+    var wizardId = entityManager.persistAndFlush(albus).getId();
+    entityManager.clear();
+
+    // When
+    var started = wizardDeleter.start(wizardId);
+    entityManager.flush();
+    entityManager.clear();
+
+    // Then
+    var deletion = wizardDeleter.progress(wizardId);
+    assertThat(started.totalArtifacts()).isEqualTo(5);
+    assertThat(deletion.status()).isEqualTo("DONE");
+    assertThat(deletion.unassignedArtifacts()).isEqualTo(5);
+    assertThat(wizardRepository.findById(wizardId)).isEmpty();
+    assertThat(artifactRepository.findById("100").orElseThrow().getOwner()).isNull();
+    assertThat(artifactRepository.findById("104").orElseThrow().getVersion()).isEqualTo(1);
+  }
+
+  @Test
+  void testDeletionOfNonExistentWizard() {
+    assertThrows(NotFoundException.class, () -> wizardDeleter.start(9999));
+    assertThrows(NotFoundException.class, () -> wizardDeleter.progress(9999));
+  }
+}
@@ -0,0 +1,147 @@
+package fr.mikeb.learning.hogwarts_artifacts_online.wizard;
+
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.Artifact;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles(value = "dev")
+@DisplayName("Artifact counts under concurrent assignments")
+class WizardServiceConcurrencyTest {
+  static final int ARTIFACTS_PER_WIZARD = 12;
+
+  @Autowired
+  WizardService wizardService;
+  @Autowired
+  WizardRepository wizardRepository;
+  @Autowired
+  ArtifactRepository artifactRepository;
+  Wizard albus;
+  Wizard harry;
+
+  @BeforeEach
+  void setUp() {
+    albus = wizardRepository.save(wizardWithArtifacts("Albus Dumbledore", "9100"));
+    harry = wizardRepository.save(wizardWithArtifacts("Harry Potter", "9200"));
+  }
+
+  @AfterEach
+  void tearDown() {
+    artifactRepository.deleteAllById(artifactIds("9100"));
+    artifactRepository.deleteAllById(artifactIds("9200"));
+    artifactRepository.deleteAllById(List.of("9300"));
+    wizardRepository.deleteAllById(List.of(albus.getId(), harry.getId()));
+  }
+
+  @Test
+  void testConcurrentAssignmentsKeepTheCountsExact() throws Exception {
+    // Given - every artifact of each wizard moves to the other one, all at once
+    var start = new CountDownLatch(1);
+    var futures = new ArrayList<Future<?>>();
+
+    // When
+    try (var executor = Executors.newFixedThreadPool(8)) {
+      for (int i = 0; i < ARTIFACTS_PER_WIZARD; i++) {
+        var fromAlbus = "9100" + i;
+        var fromHarry = "9200" + i;
+        futures.add(executor.submit(() -> assign(start, harry.getId(), fromAlbus)));
+        futures.add(executor.submit(() -> assign(start, albus.getId(), fromHarry)));
+      }
+      start.countDown();
+      for (var future : futures) {
+        future.get();
+      }
+    }
+
+    // Then - no increment was lost, and no opposite transfers deadlocked
+    assertThat(wizardRepository.findById(albus.getId()).orElseThrow().getNumberOfArtifacts()).isEqualTo(ARTIFACTS_PER_WIZARD);
+    assertThat(wizardRepository.findById(harry.getId()).orElseThrow().getNumberOfArtifacts()).isEqualTo(ARTIFACTS_PER_WIZARD);
+    assertThat(artifactRepository.findById("91000").orElseThrow().getOwner().getId()).isEqualTo(harry.getId());
+    assertThat(wizardRepository.findIdsWithWrongArtifactCount()).isEmpty();
+  }
+
+  @Test
+  void testBulkAssignmentsAndTransfersKeepTheCountsExact() throws Exception {
+    // Given
+    var ownerless = new Artifact();
+    ownerless.setId("9300");
+    ownerless.setName("Resurrection Stone");
+    ownerless.setDescription("Description");
+    ownerless.setImgUrl("ImageUrl");
+    artifactRepository.save(ownerless);
+    var harrysArtifactIds = new ArrayList<>(artifactIds("9200"));
+    harrysArtifactIds.add("9300");
+
+    // When - sequentially, then a bulk assignment racing a transfer the other way
+    var assigned = wizardService.assignArtifacts(albus.getId(), harrysArtifactIds);
+    var transferred = wizardService.transferArtifacts(albus.getId(), harry.getId());
+    var start = new CountDownLatch(1);
+    try (var executor = Executors.newFixedThreadPool(2)) {
+      var assignment = executor.submit(() -> {
+        start.await();
+        return wizardService.assignArtifacts(albus.getId(), artifactIds("9100"));
+      });
+      var transfer = executor.submit(() -> {
+        start.await();
+        return wizardService.transferArtifacts(harry.getId(), albus.getId());
+      });
+      start.countDown();
+      assignment.get();
+      transfer.get();
+    }
+
+    // Then - whichever ran first, every artifact ended up with albus
+    assertThat(assigned).isEqualTo(ARTIFACTS_PER_WIZARD + 1);
+    assertThat(transferred).isEqualTo(2 * ARTIFACTS_PER_WIZARD + 1);
+    assertThat(wizardRepository.findById(harry.getId()).orElseThrow().getNumberOfArtifacts()).isZero();
+    assertThat(wizardRepository.findById(albus.getId()).orElseThrow().getNumberOfArtifacts()).isEqualTo(2 * ARTIFACTS_PER_WIZARD + 1);
+    assertThat(artifactRepository.findById("9300").orElseThrow().getVersion()).isEqualTo(3); // Moved 3 times
+    assertThat(wizardRepository.findIdsWithWrongArtifactCount()).isEmpty();
+  }
+
+  void assign(CountDownLatch start, int wizardId, String artifactId) {
+    try {
+      start.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    wizardService.assignArtifact(wizardId, artifactId);
+  }
+
+  static Wizard wizardWithArtifacts(String name, String idPrefix) {
+    var wizard = new Wizard();
+    wizard.setName(name);
+    for (var id : artifactIds(idPrefix)) {
+      var artifact = new Artifact();
+      artifact.setId(id);
+      artifact.setName("Artifact " + id);
+      artifact.setDescription("Description");
+      artifact.setImgUrl("ImageUrl");
+      wizard.addArtifact(artifact);
+    }
+    return wizard;
+  }
+
+  static List<String> artifactIds(String idPrefix) {
+    var ids = new ArrayList<String>();
+    for (int i = 0; i < ARTIFACTS_PER_WIZARD; i++) {
+      ids.add(idPrefix + i);
+    }
+    return ids;
+  }
+}
@@ -1,16 +1,22 @@
 package fr.mikeb.learning.hogwarts_artifacts_online.wizard;
 
 import fr.mikeb.learning.hogwarts_artifacts_online.artifact.Artifact;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactCountCache;
 import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactRepository;
+import fr.mikeb.learning.hogwarts_artifacts_online.artifact.ArtifactResponseCache;
 import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.NotFoundException;
+import fr.mikeb.learning.hogwarts_artifacts_online.system.exception.PreconditionFailedException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -19,6 +25,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -29,6 +37,10 @@ class WizardServiceTest {
   ArtifactRepository artifactRepository;
   @Mock
   WizardRepository wizardRepository;
+  @Mock
+  ArtifactCountCache artifactCountCache;
+  @Mock
+  ArtifactResponseCache artifactResponseCache;
   @InjectMocks
   WizardService wizardService;
   List<Wizard> wizards;
@@ -139,6 +151,20 @@ class WizardServiceTest {
     verify(wizardRepository, times(1)).save(update);
   }
 
+  @Test
+  void testUpdateWithStaleVersion() {
+    // Given
+    var oldWizard = wizards.get(1);
+    oldWizard.setVersion(2L);
+    given(wizardRepository.findById(2)).willReturn(Optional.of(oldWizard));
+
+    // When
+    assertThrows(PreconditionFailedException.class, () -> wizardService.update(2, new Wizard(), 1L));
+
+    // Then
+    verify(wizardRepository, never()).save(oldWizard);
+  }
+
   @Test
   void testUpdateNotFound() {
     // Given
@@ -163,6 +189,7 @@ class WizardServiceTest {
     var wizard = wizards.get(1);
 
     given(wizardRepository.findById(2)).willReturn(Optional.of(wizard));
+    given(artifactRepository.unassignOwner(Mockito.eq(2), Mockito.any())).willReturn(2);
     doNothing().when(wizardRepository).deleteById(2);
 
     // When
@@ -170,7 +197,26 @@ class WizardServiceTest {
 
     // Then
     verify(wizardRepository, times(1)).findById(2);
+    verify(artifactRepository, times(1)).unassignOwner(Mockito.eq(2), Mockito.any());
     verify(wizardRepository, times(1)).deleteById(2);
+    verify(artifactResponseCache, times(1)).invalidateOwner(2);
+  }
+
+  @Test
+  void testUnassignArtifactsUpdatesOneChunk() {
+    // Given
+    var artifactIds = List.of("1250808601744904191", "1250808601744904192");
+    given(artifactRepository.findIdsByOwnerId(2, Limit.of(2))).willReturn(artifactIds);
+    given(artifactRepository.unassignOwner(Mockito.eq(artifactIds), Mockito.eq(2), Mockito.any())).willReturn(2);
+
+    // When
+    var unassigned = wizardService.unassignArtifacts(2, 2);
+
+    // Then
+    assertThat(unassigned).isEqualTo(2);
+    verify(wizardRepository, times(1)).adjustArtifactCount(Mockito.eq(2), Mockito.eq(-2), Mockito.any(Instant.class));
+    verify(artifactCountCache, times(1)).invalidate();
+    verify(artifactResponseCache, times(1)).invalidateAll(artifactIds, List.of());
   }
 
   @Test
@@ -213,6 +259,16 @@ class WizardServiceTest {
     assertThat(otherWizard.getArtifacts()).contains(a);
     verify(artifactRepository, times(1)).findById("1250808601744904191");
     verify(wizardRepository, times(1)).findById(3);
+    verify(artifactCountCache, times(1)).invalidate();
+    // The artifact shows its owner, and the owners their number of artifacts.
+    verify(artifactResponseCache, times(1)).invalidate("1250808601744904191");
+    verify(artifactResponseCache, times(1)).invalidateOwner(2);
+    verify(artifactResponseCache, times(1)).invalidateOwner(3);
+    var inOrder = inOrder(wizardRepository);
+    inOrder.verify(wizardRepository).adjustArtifactCount(Mockito.eq(2), Mockito.eq(-1), Mockito.any(Instant.class));
+    inOrder.verify(wizardRepository).adjustArtifactCount(Mockito.eq(3), Mockito.eq(1), Mockito.any(Instant.class));
+    assertThat(wizard.getNumberOfArtifacts()).isEqualTo(2);
+    assertThat(otherWizard.getNumberOfArtifacts()).isEqualTo(2);
   }
 
   @Test
@@ -259,4 +315,103 @@ class WizardServiceTest {
         .isInstanceOf(NotFoundException.class)
         .hasMessage("Could not find artifact with Id 1250808601744904192 :(");
   }
-}
\ No newline at end of file
+
+  @Test
+  void testAssignArtifactsMovesTheCountsInWizardIdOrder() {
+    // Given - an artifact of wizard 1 that wizard 3 gets in between, one of wizard 3, an ownerless one, and one wizard
+    // 2 already owns
+    var wizard = wizards.get(1);
+    var artifactIds = List.of("1250808601744904191", "1250808601744904192", "1250808601744904193", "1250808601744904194", "1250808601744904191");
+    given(wizardRepository.findById(2)).willReturn(Optional.of(wizard));
+    given(artifactRepository.findOwnerships(artifactIds.subList(0, 4))).willReturn(List.of(
+        ownership("1250808601744904191", 1),
+        ownership("1250808601744904192", 3),
+        ownership("1250808601744904193", null),
+        ownership("1250808601744904194", 2)));
+    given(artifactRepository.assignOwner(Mockito.eq(List.of("1250808601744904191")), Mockito.eq(1), Mockito.eq(wizard), Mockito.any())).willReturn(0);
+    given(artifactRepository.assignOwner(Mockito.eq(List.of("1250808601744904192")), Mockito.eq(3), Mockito.eq(wizard), Mockito.any())).willReturn(1);
+    given(artifactRepository.assignOwnerless(Mockito.eq(List.of("1250808601744904193")), Mockito.eq(wizard), Mockito.any())).willReturn(1);
+    given(artifactRepository.findOwnerships(List.of("1250808601744904191"))).willReturn(List.of(ownership("1250808601744904191", 3)));
+    given(artifactRepository.assignOwner(Mockito.eq(List.of("1250808601744904191")), Mockito.eq(3), Mockito.eq(wizard), Mockito.any())).willReturn(1);
+
+    // When
+    var assigned = wizardService.assignArtifacts(2, artifactIds);
+
+    // Then
+    assertThat(assigned).isEqualTo(3);
+    var inOrder = inOrder(wizardRepository);
+    inOrder.verify(wizardRepository).adjustArtifactCount(Mockito.eq(2), Mockito.eq(3), Mockito.any(Instant.class));
+    inOrder.verify(wizardRepository).adjustArtifactCount(Mockito.eq(3), Mockito.eq(-2), Mockito.any(Instant.class));
+    verify(wizardRepository, never()).adjustArtifactCount(Mockito.eq(1), Mockito.anyInt(), Mockito.any(Instant.class));
+    verify(artifactCountCache, times(1)).invalidate();
+    verify(artifactResponseCache, times(1)).invalidateAll(List.of("1250808601744904193"), List.of(1, 3, 2));
+  }
+
+  @Test
+  void testAssignArtifactsErrorWithNonExistentArtifactId() {
+    // Given
+    given(wizardRepository.findById(2)).willReturn(Optional.of(wizards.get(1)));
+    given(artifactRepository.findOwnerships(List.of("1250808601744904191", "1250808601744904199")))
+        .willReturn(List.of(ownership("1250808601744904191", 1)));
+
+    // When
+    var thrown = assertThrows(
+        NotFoundException.class,
+        () -> wizardService.assignArtifacts(2, List.of("1250808601744904191", "1250808601744904199"))
+    );
+
+    // Then
+    assertThat(thrown).hasMessage("Could not find artifact with Id 1250808601744904199 :(");
+    verify(artifactRepository, never()).assignOwner(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+    verify(wizardRepository, never()).adjustArtifactCount(Mockito.any(), Mockito.anyInt(), Mockito.any(Instant.class));
+  }
+
+  @Test
+  void testTransferArtifactsSuccess() {
+    // Given
+    given(wizardRepository.findById(3)).willReturn(Optional.of(wizards.get(2)));
+    given(wizardRepository.findById(1)).willReturn(Optional.of(wizards.get(0)));
+    given(artifactRepository.transferOwner(Mockito.eq(wizards.get(2)), Mockito.eq(wizards.get(0)), Mockito.any())).willReturn(5);
+
+    // When
+    var transferred = wizardService.transferArtifacts(3, 1);
+
+    // Then
+    assertThat(transferred).isEqualTo(5);
+    var inOrder = inOrder(wizardRepository);
+    inOrder.verify(wizardRepository).adjustArtifactCount(Mockito.eq(1), Mockito.eq(5), Mockito.any(Instant.class));
+    inOrder.verify(wizardRepository).adjustArtifactCount(Mockito.eq(3), Mockito.eq(-5), Mockito.any(Instant.class));
+    verify(artifactResponseCache, times(1)).invalidateAll(List.of(), List.of(3, 1));
+  }
+
+  @Test
+  void testTransferArtifactsErrorWithNonExistentWizardId() {
+    // Given
+    given(wizardRepository.findById(3)).willReturn(Optional.of(wizards.get(2)));
+    given(wizardRepository.findById(5)).willReturn(Optional.empty());
+
+    // When
+    var thrown = assertThrows(
+        NotFoundException.class,
+        () -> wizardService.transferArtifacts(3, 5)
+    );
+
+    // Then
+    assertThat(thrown).hasMessage("Could not find wizard with Id 5 :(");
+    verify(artifactRepository, never()).transferOwner(Mockito.any(), Mockito.any(), Mockito.any());
+  }
+
+  static ArtifactRepository.ArtifactOwnership ownership(String artifactId, Integer ownerId) {
+    return new ArtifactRepository.ArtifactOwnership() {
+      @Override
+      public String getArtifactId() {
+        return artifactId;
+      }
+
+      @Override
+      public Integer getOwnerId() {
+        return ownerId;
+      }
+    };
+  }
+}